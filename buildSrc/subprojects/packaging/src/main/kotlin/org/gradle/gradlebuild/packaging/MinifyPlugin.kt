@@ -38,7 +38,8 @@ open class MinifyPlugin : Plugin<Project> {
         val keepPatterns = mapOf(
             "fastutil" to setOf(
                 "it.unimi.dsi.fastutil.ints.IntOpenHashSet",
-                "it.unimi.dsi.fastutil.ints.IntSets"
+                "it.unimi.dsi.fastutil.ints.IntSets",
+                "it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap"
             )
         )
 
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.resources;
+
+import org.gradle.internal.Actions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.gradle.internal.resources.DefaultResourceLockCoordinationService.lock;
+import static org.gradle.internal.resources.DefaultResourceLockCoordinationService.unlock;
+
+/**
+ * Measures acquiring and releasing exclusive resource locks from 64 worker threads, for different numbers of locks.
+ *
+ * Each operation blocks until it holds a randomly chosen lock, does a little work and then releases the lock again.
+ */
+@Fork(1)
+@Threads(64)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class ResourceLockContentionBenchmark {
+    @Param({"1", "16", "256"})
+    int lockCount;
+
+    ResourceLockCoordinationService coordinationService;
+    ResourceLock[] locks;
+
+    @Setup
+    public void createLocks() {
+        coordinationService = new DefaultResourceLockCoordinationService();
+        locks = new ResourceLock[lockCount];
+        for (int i = 0; i < lockCount; i++) {
+            locks[i] = new ExclusiveAccessResourceLock("lock " + i, coordinationService, Actions.<ResourceLock>doNothing(), Actions.<ResourceLock>doNothing());
+        }
+    }
+
+    @Benchmark
+    public void lockAndUnlock() {
+        ResourceLock resourceLock = locks[ThreadLocalRandom.current().nextInt(lockCount)];
+        coordinationService.withStateLock(lock(resourceLock));
+        try {
+            Blackhole.consumeCPU(100);
+        } finally {
+            coordinationService.withStateLock(unlock(resourceLock));
+        }
+    }
+}
@@ -21,12 +21,31 @@
 import org.gradle.api.Transformer;
 import org.gradle.internal.UncheckedException;
 
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Coordinates changes to resource lock state.
+ *
+ * <p>Transforms run under a single state lock so that they can inspect and change any number of resource locks atomically.
+ * Threads that have to retry a transform do not wait on that lock, though. Each waiting thread parks on its own condition and
+ * is only woken when a state change may let it make progress: a thread that is blocked acquiring a resource lock held by another
+ * thread waits in that resource's queue until the resource is unlocked, every other thread is woken on any unlock.</p>
+ */
 public class DefaultResourceLockCoordinationService implements ResourceLockCoordinationService {
-    private final Object lock = new Object();
+    private final ReentrantLock lock = new ReentrantLock();
+    // The following are guarded by lock
+    private final Map<ResourceLock, Deque<Waiter>> resourceWaiters = new IdentityHashMap<ResourceLock, Deque<Waiter>>();
+    private final Set<Waiter> generalWaiters = Sets.newLinkedHashSet();
     private final ThreadLocal<List<ResourceLockState>> currentState = new ThreadLocal<List<ResourceLockState>>() {
         @Override
         protected List<ResourceLockState> initialValue() {
@@ -36,10 +55,12 @@ protected List<ResourceLockState> initialValue() {
 
     @Override
     public boolean withStateLock(Transformer<ResourceLockState.Disposition, ResourceLockState> stateLockAction) {
+        ResourceLock wokenFor = null;
         while (true) {
             DefaultResourceLockState resourceLockState = new DefaultResourceLockState();
             ResourceLockState.Disposition disposition;
-            synchronized (lock) {
+            lock.lock();
+            try {
                 try {
                     currentState.get().add(resourceLockState);
                     disposition = stateLockAction.transform(resourceLockState);
@@ -47,28 +68,92 @@ public boolean withStateLock(Transformer<ResourceLockState.Disposition, Resource
                     switch (disposition) {
                         case RETRY:
                             resourceLockState.releaseLocks();
-                            try {
-                                lock.wait();
-                            } catch (InterruptedException e) {
-                                throw UncheckedException.throwAsUncheckedException(e);
-                            }
+                            passOnWakeUp(wokenFor);
+                            wokenFor = null;
+                            // Only a plain blocking acquire is known to be waiting for nothing but the lock it failed on
+                            wokenFor = awaitStateChange(stateLockAction instanceof AcquireLocks ? resourceLockState.blockedOn : null);
                             break;
                         case FINISHED:
+                            passOnWakeUp(wokenFor);
                             maybeNotifyStateChange(resourceLockState);
                             return true;
                         case FAILED:
                             resourceLockState.releaseLocks();
+                            passOnWakeUp(wokenFor);
                             return false;
                         default:
                             throw new IllegalArgumentException("Unhandled disposition type: " + disposition.name());
                     }
                 } catch (Throwable t) {
                     resourceLockState.releaseLocks();
+                    passOnWakeUp(wokenFor);
                     throw UncheckedException.throwAsUncheckedException(t);
                 } finally {
                     currentState.get().remove(resourceLockState);
                 }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Parks the current thread until a state change may let it make progress.
+     *
+     * @return the resource lock that was unlocked to wake this thread, or null if it was woken for any other reason.
+     */
+    @Nullable
+    private ResourceLock awaitStateChange(@Nullable ResourceLock blockedOn) {
+        Waiter waiter = new Waiter(lock.newCondition());
+        if (blockedOn != null) {
+            Deque<Waiter> waiters = resourceWaiters.get(blockedOn);
+            if (waiters == null) {
+                waiters = new ArrayDeque<Waiter>();
+                resourceWaiters.put(blockedOn, waiters);
+            }
+            waiters.add(waiter);
+        } else {
+            generalWaiters.add(waiter);
+        }
+        try {
+            waiter.condition.await();
+        } catch (InterruptedException e) {
+            if (waiter.wokenFor != null) {
+                signalNext(waiter.wokenFor);
+            }
+            throw UncheckedException.throwAsUncheckedException(e);
+        } finally {
+            if (blockedOn != null) {
+                Deque<Waiter> waiters = resourceWaiters.get(blockedOn);
+                if (waiters != null && waiters.remove(waiter) && waiters.isEmpty()) {
+                    resourceWaiters.remove(blockedOn);
+                }
+            } else {
+                generalWaiters.remove(waiter);
+            }
+        }
+        return waiter.wokenFor;
+    }
+
+    /**
+     * Only one of the threads waiting for a resource is woken when it is unlocked. If that thread ends up not holding the resource,
+     * for example because it failed to acquire some other resource and rolled back, the next waiting thread gets its turn.
+     */
+    private void passOnWakeUp(@Nullable ResourceLock wokenFor) {
+        if (wokenFor != null && !wokenFor.isLocked()) {
+            signalNext(wokenFor);
+        }
+    }
+
+    private void signalNext(ResourceLock resourceLock) {
+        Deque<Waiter> waiters = resourceWaiters.get(resourceLock);
+        if (waiters != null) {
+            Waiter waiter = waiters.poll();
+            if (waiters.isEmpty()) {
+                resourceWaiters.remove(resourceLock);
             }
+            waiter.wokenFor = resourceLock;
+            waiter.condition.signal();
         }
     }
 
@@ -84,20 +169,47 @@ public ResourceLockState getCurrent() {
 
     private void maybeNotifyStateChange(DefaultResourceLockState resourceLockState) {
         if (resourceLockState.hasUnlockedResources()) {
-            notifyStateChange();
+            for (ResourceLock resourceLock : resourceLockState.unlockedResources) {
+                signalNext(resourceLock);
+            }
+            signalAll(generalWaiters);
         }
     }
 
     @Override
     public void notifyStateChange() {
-        synchronized (lock) {
-            lock.notifyAll();
+        lock.lock();
+        try {
+            for (Deque<Waiter> waiters : resourceWaiters.values()) {
+                signalAll(waiters);
+            }
+            resourceWaiters.clear();
+            signalAll(generalWaiters);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void signalAll(Collection<Waiter> waiters) {
+        for (Waiter waiter : waiters) {
+            waiter.condition.signal();
+        }
+        waiters.clear();
+    }
+
+    private static class Waiter {
+        final Condition condition;
+        ResourceLock wokenFor;
+
+        Waiter(Condition condition) {
+            this.condition = condition;
         }
     }
 
     private static class DefaultResourceLockState implements ResourceLockState {
         private Set<ResourceLock> lockedResources;
         private Set<ResourceLock> unlockedResources;
+        private ResourceLock blockedOn;
         boolean rollback;
 
         @Override
@@ -195,6 +307,10 @@ private static class AcquireLocks implements Transformer<ResourceLockState.Dispo
         public ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
             for (ResourceLock resourceLock : resourceLocks) {
                 if (!resourceLock.tryLock()) {
+                    if (blocking && resourceLockState instanceof DefaultResourceLockState && resourceLock.isLocked()) {
+                        // The lock is held by another thread, so it can only become available once that thread unlocks it
+                        ((DefaultResourceLockState) resourceLockState).blockedOn = resourceLock;
+                    }
                     return blocking ? ResourceLockState.Disposition.RETRY : ResourceLockState.Disposition.FAILED;
                 }
             }
@@ -108,6 +108,109 @@ class DefaultResourceLockCoordinationServiceTest extends ConcurrentSpec {
         lock2.lockedState
     }
 
+    def "a thread blocked on a locked resource is only woken when that resource is unlocked"() {
+        def lock1 = resourceLock("lock1", true)
+        def lock2 = resourceLock("lock2", true)
+
+        when:
+        async {
+            start {
+                coordinationService.withStateLock(lock(lock1))
+                instant.acquired
+            }
+
+            ConcurrentTestUtil.poll {
+                assert lock1.lockAttempts.get() == 1
+            }
+
+            lock2.lockedState = false
+            coordinationService.withStateLock(new Transformer<ResourceLockState.Disposition, ResourceLockState>() {
+                @Override
+                ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
+                    resourceLockState.registerUnlocked(lock2)
+                    return FINISHED
+                }
+            })
+            thread.block()
+            assert lock1.lockAttempts.get() == 1
+
+            lock1.lockedState = false
+            coordinationService.withStateLock(new Transformer<ResourceLockState.Disposition, ResourceLockState>() {
+                @Override
+                ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
+                    resourceLockState.registerUnlocked(lock1)
+                    return FINISHED
+                }
+            })
+
+            thread.blockUntil.acquired
+        }
+
+        then:
+        lock1.lockAttempts.get() == 2
+        lock1.doIsLockedByCurrentThread()
+    }
+
+    def "a thread blocked on a locked resource is woken by an explicit state change notification"() {
+        def lock1 = resourceLock("lock1", true)
+
+        when:
+        async {
+            start {
+                coordinationService.withStateLock(lock(lock1))
+                instant.acquired
+            }
+
+            ConcurrentTestUtil.poll {
+                assert lock1.lockAttempts.get() == 1
+            }
+
+            lock1.lockedState = false
+            coordinationService.notifyStateChange()
+
+            thread.blockUntil.acquired
+        }
+
+        then:
+        lock1.lockAttempts.get() == 2
+    }
+
+    def "a thread woken for a resource that it does not end up locking passes the wake up on"() {
+        def lock1 = new ExclusiveAccessResourceLock("lock1", coordinationService, Mock(Action), Mock(Action))
+        def lock2 = new ExclusiveAccessResourceLock("lock2", coordinationService, Mock(Action), Mock(Action))
+
+        when:
+        async {
+            start {
+                coordinationService.withStateLock(lock(lock1, lock2))
+                instant.locked
+                thread.blockUntil.waiting
+                coordinationService.withStateLock(unlock(lock1))
+                thread.blockUntil.secondAcquired
+                coordinationService.withStateLock(unlock(lock2))
+            }
+            thread.blockUntil.locked
+
+            start {
+                coordinationService.withStateLock(lock(lock1, lock2))
+                instant.firstAcquired
+                coordinationService.withStateLock(unlock(lock1, lock2))
+            }
+            thread.block()
+
+            start {
+                coordinationService.withStateLock(lock(lock1))
+                instant.secondAcquired
+                coordinationService.withStateLock(unlock(lock1))
+            }
+            thread.block()
+            instant.waiting
+        }
+
+        then:
+        instant.secondAcquired < instant.firstAcquired
+    }
+
     def "can nest multiple calls to withStateLock"() {
         def lock = [
             resourceLock("lock1"),
@@ -19,11 +19,13 @@ package org.gradle.internal.resources
 import org.gradle.api.Action
 
 import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
 
 
 class TestTrackedResourceLock extends AbstractTrackedResourceLock {
     final AtomicBoolean lockedState = new AtomicBoolean()
     final AtomicBoolean hasLock = new AtomicBoolean()
+    final AtomicInteger lockAttempts = new AtomicInteger()
 
     TestTrackedResourceLock(String displayName, ResourceLockCoordinationService coordinationService, Action<ResourceLock> lockAction, Action<ResourceLock> unlockAction) {
         super(displayName, coordinationService, lockAction, unlockAction)
@@ -53,6 +55,7 @@ class TestTrackedResourceLock extends AbstractTrackedResourceLock {
 
     @Override
     protected boolean acquireLock() {
+        lockAttempts.incrementAndGet()
         if (!lockedState.get()) {
             hasLock.set(true)
             lockedState.set(true)
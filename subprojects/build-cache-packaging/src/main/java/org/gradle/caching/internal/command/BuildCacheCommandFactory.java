@@ -39,9 +39,11 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class BuildCacheCommandFactory {
 
@@ -89,11 +91,25 @@ public BuildCacheKey getKey() {
         public BuildCacheLoadCommand.Result<LoadMetadata> load(InputStream input) throws IOException {
             ImmutableList.Builder<String> roots = ImmutableList.builder();
             entity.visitOutputTrees((name, type, root) -> roots.add(root.getAbsolutePath()));
-            // TODO: Actually unpack the roots inside of the action
-            virtualFileSystem.update(roots.build(), () -> {});
-            BuildCacheEntryPacker.UnpackResult unpackResult = packer.unpack(entity, input, originMetadataFactory.createReader(entity));
-            // TODO: Update the snapshots from the action
-            ImmutableSortedMap<String, CurrentFileCollectionFingerprint> snapshots = snapshotUnpackedData(unpackResult.getSnapshots());
+            AtomicReference<BuildCacheEntryPacker.UnpackResult> unpackResultRef = new AtomicReference<>();
+            AtomicReference<ImmutableSortedMap<String, CurrentFileCollectionFingerprint>> snapshotsRef = new AtomicReference<>();
+            try {
+                // The update invalidates the output roots before the action overwrites them. It does not lock the roots, so this only saves a separate
+                // invalidation. The unpacker hashes the files while writing them, so record those snapshots instead of walking the outputs again
+                virtualFileSystem.update(roots.build(), () -> {
+                    try {
+                        BuildCacheEntryPacker.UnpackResult result = packer.unpack(entity, input, originMetadataFactory.createReader(entity));
+                        unpackResultRef.set(result);
+                        snapshotsRef.set(snapshotUnpackedData(result.getSnapshots()));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            BuildCacheEntryPacker.UnpackResult unpackResult = unpackResultRef.get();
+            ImmutableSortedMap<String, CurrentFileCollectionFingerprint> snapshots = snapshotsRef.get();
             return new Result<LoadMetadata>() {
                 @Override
                 public long getArtifactEntryCount() {
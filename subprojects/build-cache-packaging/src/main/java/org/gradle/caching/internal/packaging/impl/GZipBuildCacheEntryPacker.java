@@ -16,6 +16,8 @@
 
 package org.gradle.caching.internal.packaging.impl;
 
+import com.google.common.io.ByteStreams;
+import org.apache.commons.io.input.CloseShieldInputStream;
 import org.gradle.caching.internal.CacheableEntity;
 import org.gradle.caching.internal.origin.OriginReader;
 import org.gradle.caching.internal.origin.OriginWriter;
@@ -46,7 +48,10 @@ public PackResult pack(CacheableEntity entity, Map<String, CurrentFileCollection
     @Override
     public UnpackResult unpack(CacheableEntity entity, InputStream input, OriginReader readOrigin) throws IOException {
         try (GZIPInputStream gzipInput = new GZIPInputStream(input)) {
-            return delegate.unpack(entity, gzipInput, readOrigin);
+            UnpackResult result = delegate.unpack(entity, new CloseShieldInputStream(gzipInput), readOrigin);
+            // Read up to the end of the compressed data, so its checksum gets verified
+            ByteStreams.exhaust(gzipInput);
+            return result;
         }
     }
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl;
+
+import com.google.common.io.ByteStreams;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.gradle.caching.internal.CacheableEntity;
+import org.gradle.caching.internal.origin.OriginReader;
+import org.gradle.caching.internal.origin.OriginWriter;
+import org.gradle.caching.internal.packaging.BuildCacheEntryPacker;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Compresses build cache entries like {@link GZipBuildCacheEntryPacker}, but compresses independent blocks of the entry in parallel.
+ * <p>
+ * The result is a valid multi-member GZIP stream that older versions can still unpack.
+ * Entries that were not written by this packer are unpacked sequentially.
+ */
+public class ParallelGZipBuildCacheEntryPacker implements BuildCacheEntryPacker, Stoppable {
+    private final BuildCacheEntryPacker delegate;
+    private final ExecutorFactory executorFactory;
+    private final int parallelism;
+    private final int blockSize;
+    private ManagedExecutor executor;
+
+    public ParallelGZipBuildCacheEntryPacker(BuildCacheEntryPacker delegate, ExecutorFactory executorFactory, int parallelism) {
+        this(delegate, executorFactory, parallelism, ParallelGZipOutputStream.DEFAULT_BLOCK_SIZE);
+    }
+
+    public ParallelGZipBuildCacheEntryPacker(BuildCacheEntryPacker delegate, ExecutorFactory executorFactory, int parallelism, int blockSize) {
+        this.delegate = delegate;
+        this.executorFactory = executorFactory;
+        this.parallelism = parallelism;
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public PackResult pack(CacheableEntity entity, Map<String, CurrentFileCollectionFingerprint> fingerprints, OutputStream output, OriginWriter writeOrigin) throws IOException {
+        try (ParallelGZipOutputStream gzipOutput = new ParallelGZipOutputStream(output, getExecutor(), blockSize, maxPendingBlocks())) {
+            return delegate.pack(entity, fingerprints, gzipOutput, writeOrigin);
+        }
+    }
+
+    @Override
+    public UnpackResult unpack(CacheableEntity entity, InputStream input, OriginReader readOrigin) throws IOException {
+        PushbackInputStream pushbackInput = new PushbackInputStream(input, ParallelGZipOutputStream.HEADER_SIZE);
+        byte[] header = new byte[ParallelGZipOutputStream.HEADER_SIZE];
+        int headerLength = readHeader(pushbackInput, header);
+        pushbackInput.unread(header, 0, headerLength);
+        try (InputStream gzipInput = ParallelGZipInputStream.hasParallelGZipHeader(header, headerLength)
+            ? new ParallelGZipInputStream(pushbackInput, getExecutor(), maxPendingBlocks())
+            : new GZIPInputStream(pushbackInput)) {
+            UnpackResult result = delegate.unpack(entity, new CloseShieldInputStream(gzipInput), readOrigin);
+            // Read up to the end of the compressed data, so its checksums get verified
+            ByteStreams.exhaust(gzipInput);
+            return result;
+        }
+    }
+
+    private static int readHeader(InputStream input, byte[] header) throws IOException {
+        int length = 0;
+        while (length < header.length) {
+            int read = input.read(header, length, header.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+
+    private int maxPendingBlocks() {
+        // Keep every thread busy while the caller is writing or reading the next blocks
+        return parallelism * 2;
+    }
+
+    private synchronized Executor getExecutor() {
+        if (executor == null) {
+            executor = executorFactory.create("Build cache entry compression", parallelism);
+        }
+        return executor;
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.stop();
+            executor = null;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import static org.gradle.caching.internal.packaging.impl.ParallelGZipOutputStream.HEADER_SIZE;
+import static org.gradle.caching.internal.packaging.impl.ParallelGZipOutputStream.SUBFIELD_ID1;
+import static org.gradle.caching.internal.packaging.impl.ParallelGZipOutputStream.SUBFIELD_ID2;
+import static org.gradle.caching.internal.packaging.impl.ParallelGZipOutputStream.TRAILER_SIZE;
+
+/**
+ * Reads a GZIP stream written by {@link ParallelGZipOutputStream}, decompressing the members ahead of the reader in parallel.
+ */
+public class ParallelGZipInputStream extends InputStream {
+    // Members are never larger than a block, this only guards against allocating huge buffers for corrupt input
+    private static final int MAX_MEMBER_SIZE = 64 * 1024 * 1024;
+
+    private final InputStream input;
+    private final Executor executor;
+    private final int maxPendingBlocks;
+    private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<Future<byte[]>>();
+    private boolean inputExhausted;
+    private byte[] block = new byte[0];
+    private int position;
+
+    public ParallelGZipInputStream(InputStream input, Executor executor, int maxPendingBlocks) {
+        this.input = input;
+        this.executor = executor;
+        this.maxPendingBlocks = maxPendingBlocks;
+    }
+
+    /**
+     * Returns whether the given bytes start with the header of a member written by {@link ParallelGZipOutputStream}.
+     */
+    public static boolean hasParallelGZipHeader(byte[] header, int length) {
+        return length >= HEADER_SIZE
+            && (header[0] & 0xff) == 0x1f
+            && (header[1] & 0xff) == 0x8b
+            && header[2] == 8
+            && header[3] == 4
+            && readShort(header, 10) == 8
+            && header[12] == SUBFIELD_ID1
+            && header[13] == SUBFIELD_ID2
+            && readShort(header, 14) == 4;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        return block[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        int count = Math.min(length, block.length - position);
+        System.arraycopy(block, position, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return block.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Future<byte[]> pendingBlock : pendingBlocks) {
+            pendingBlock.cancel(false);
+        }
+        pendingBlocks.clear();
+        input.close();
+    }
+
+    private boolean ensureAvailable() throws IOException {
+        while (position == block.length) {
+            fillPendingBlocks();
+            if (pendingBlocks.isEmpty()) {
+                return false;
+            }
+            block = takeNextBlock();
+            position = 0;
+        }
+        return true;
+    }
+
+    private void fillPendingBlocks() throws IOException {
+        while (!inputExhausted && pendingBlocks.size() < maxPendingBlocks) {
+            final byte[] member = readMember();
+            if (member == null) {
+                inputExhausted = true;
+                return;
+            }
+            FutureTask<byte[]> task = new FutureTask<byte[]>(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    return decompressMember(member);
+                }
+            });
+            pendingBlocks.add(task);
+            executor.execute(task);
+        }
+    }
+
+    private byte[] takeNextBlock() throws IOException {
+        Future<byte[]> next = pendingBlocks.removeFirst();
+        try {
+            return next.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while decompressing build cache entry");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Could not decompress build cache entry", cause);
+        }
+    }
+
+    private byte[] readMember() throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        int headerLength = readFully(header, 0, HEADER_SIZE);
+        if (headerLength == 0) {
+            return null;
+        }
+        if (!hasParallelGZipHeader(header, headerLength)) {
+            throw new ZipException("Not in parallel GZIP format");
+        }
+        int memberSize = readInt(header, 16);
+        if (memberSize < HEADER_SIZE + TRAILER_SIZE || memberSize > MAX_MEMBER_SIZE) {
+            throw new ZipException("Invalid GZIP member size " + memberSize);
+        }
+        byte[] member = new byte[memberSize];
+        System.arraycopy(header, 0, member, 0, HEADER_SIZE);
+        if (readFully(member, HEADER_SIZE, memberSize - HEADER_SIZE) != memberSize - HEADER_SIZE) {
+            throw new EOFException("Unexpected end of GZIP stream");
+        }
+        return member;
+    }
+
+    private int readFully(byte[] buffer, int offset, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int read = input.read(buffer, offset + total, length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    static byte[] decompressMember(byte[] member) throws IOException {
+        int trailer = member.length - TRAILER_SIZE;
+        int expectedCrc = readInt(member, trailer);
+        int size = readInt(member, trailer + 4);
+        if (size < 0 || size > MAX_MEMBER_SIZE) {
+            throw new ZipException("Invalid GZIP member length " + size);
+        }
+        byte[] data = new byte[size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(member, HEADER_SIZE, trailer - HEADER_SIZE);
+            int count = 0;
+            while (count < size && !inflater.finished()) {
+                int inflated = inflater.inflate(data, count, size - count);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new EOFException("Unexpected end of GZIP member");
+                }
+                count += inflated;
+            }
+            if (count != size || !inflater.finished() && inflater.inflate(new byte[1]) != 0) {
+                throw new ZipException("Corrupt GZIP trailer");
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, size);
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new ZipException("Corrupt GZIP trailer");
+        }
+        return data;
+    }
+
+    private static int readShort(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xff) | (buffer[offset + 1] & 0xff) << 8;
+    }
+
+    private static int readInt(byte[] buffer, int offset) {
+        return readShort(buffer, offset) | readShort(buffer, offset + 2) << 16;
+    }
+}
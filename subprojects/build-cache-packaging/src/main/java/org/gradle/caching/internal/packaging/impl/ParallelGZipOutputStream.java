@@ -0,0 +1,218 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl;
+
+import org.gradle.caching.internal.chunking.ContentDefinedChunker;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a GZIP stream that consists of one member per block of input, with the blocks compressed in parallel.
+ * <p>
+ * Blocks are cut at content-defined boundaries, so identical sections of the input produce identical members even when
+ * the data before them changes. This keeps similar entries similar after compression.
+ * <p>
+ * A GZIP stream may consist of several concatenated members, so the result can be read by any GZIP decoder.
+ * Each member carries its own compressed size in an extra header field, which allows {@link ParallelGZipInputStream} to
+ * split the stream into members without decompressing it, and to decompress the members in parallel, too.
+ */
+public class ParallelGZipOutputStream extends OutputStream {
+    static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    // Header with FEXTRA set and a single "GB" subfield that holds the size of the member
+    static final int HEADER_SIZE = 20;
+    static final int TRAILER_SIZE = 8;
+    static final byte SUBFIELD_ID1 = 'G';
+    static final byte SUBFIELD_ID2 = 'B';
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int FEXTRA = 4;
+    private static final int OS_UNKNOWN = 0xff;
+
+    private final OutputStream output;
+    private final Executor executor;
+    private final int maxPendingBlocks;
+    private final ContentDefinedChunker chunker;
+    private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<Future<byte[]>>();
+    private byte[] block;
+    private int count;
+    private boolean written;
+    private boolean closed;
+
+    /**
+     * @param blockSize the maximum size of a block, blocks are half as large on average
+     */
+    public ParallelGZipOutputStream(OutputStream output, Executor executor, int blockSize, int maxPendingBlocks) {
+        this.output = output;
+        this.executor = executor;
+        this.maxPendingBlocks = maxPendingBlocks;
+        this.chunker = new ContentDefinedChunker(blockSize / 4, Integer.highestOneBit(Math.max(1, blockSize / 4)), blockSize);
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        block[count++] = (byte) b;
+        if (count == block.length) {
+            submitBlock(chunker.findBoundary(block, 0, count));
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            int chunk = Math.min(length, block.length - count);
+            System.arraycopy(bytes, offset, block, count, chunk);
+            count += chunk;
+            offset += chunk;
+            length -= chunk;
+            if (count == block.length) {
+                submitBlock(chunker.findBoundary(block, 0, count));
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // Only complete blocks are compressed, so that flushing does not make the result worse
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (!written && count == 0) {
+                // An empty stream still needs a member to be valid GZIP
+                submitBlock(0);
+            }
+            while (count > 0) {
+                int length = chunker.findBoundary(block, 0, count);
+                submitBlock(length < 0 ? count : length);
+            }
+            while (!pendingBlocks.isEmpty()) {
+                writeNextBlock();
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    private void submitBlock(final int length) throws IOException {
+        final byte[] data = block;
+        FutureTask<byte[]> task = new FutureTask<byte[]>(new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                return compressMember(data, length);
+            }
+        });
+        if (pendingBlocks.size() >= maxPendingBlocks) {
+            writeNextBlock();
+        }
+        pendingBlocks.add(task);
+        executor.execute(task);
+        block = new byte[data.length];
+        count -= length;
+        System.arraycopy(data, length, block, 0, count);
+        written = true;
+    }
+
+    private void writeNextBlock() throws IOException {
+        Future<byte[]> next = pendingBlocks.removeFirst();
+        try {
+            output.write(next.get());
+        } catch (InterruptedException e) {
+            cancelPendingBlocks();
+            throw new InterruptedIOException("Interrupted while compressing build cache entry");
+        } catch (ExecutionException e) {
+            cancelPendingBlocks();
+            throw new IOException("Could not compress build cache entry", e.getCause());
+        }
+    }
+
+    private void cancelPendingBlocks() {
+        for (Future<byte[]> pendingBlock : pendingBlocks) {
+            pendingBlock.cancel(false);
+        }
+        pendingBlocks.clear();
+    }
+
+    static byte[] compressMember(byte[] data, int length) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            // Incompressible data grows by a few bytes per 16 KB stored block
+            byte[] member = new byte[HEADER_SIZE + length + (length >> 12) + 64 + TRAILER_SIZE];
+            int size = HEADER_SIZE;
+            while (!deflater.finished()) {
+                if (size == member.length - TRAILER_SIZE) {
+                    byte[] larger = new byte[member.length * 2];
+                    System.arraycopy(member, 0, larger, 0, size);
+                    member = larger;
+                }
+                size += deflater.deflate(member, size, member.length - TRAILER_SIZE - size);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, length);
+            int memberSize = size + TRAILER_SIZE;
+            writeShort(member, 0, GZIP_MAGIC);
+            member[2] = 8; // CM = deflate
+            member[3] = FEXTRA;
+            // MTIME (4 bytes) and XFL stay zero
+            member[9] = (byte) OS_UNKNOWN;
+            writeShort(member, 10, 8); // XLEN
+            member[12] = SUBFIELD_ID1;
+            member[13] = SUBFIELD_ID2;
+            writeShort(member, 14, 4); // LEN
+            writeInt(member, 16, memberSize);
+            writeInt(member, size, (int) crc.getValue());
+            writeInt(member, size + 4, length);
+            if (memberSize == member.length) {
+                return member;
+            }
+            byte[] result = new byte[memberSize];
+            System.arraycopy(member, 0, result, 0, memberSize);
+            return result;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void writeShort(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >>> 8);
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        writeShort(buffer, offset, value);
+        writeShort(buffer, offset + 2, value >>> 16);
+    }
+}
@@ -160,9 +160,23 @@ private static void createTarEntry(String path, long size, int mode, TarArchiveO
     public UnpackResult unpack(CacheableEntity entity, InputStream input, OriginReader readOrigin) throws IOException {
         try (TarArchiveInputStream tarInput = new TarArchiveInputStream(input, ENCODING.name())) {
             return unpack(entity, tarInput, readOrigin);
+        } catch (IOException | RuntimeException e) {
+            // Don't leave partially unpacked outputs behind, e.g. when the entry was truncated
+            removeOutputs(entity, e);
+            throw e;
         }
     }
 
+    private void removeOutputs(CacheableEntity entity, Exception failure) {
+        entity.visitOutputTrees((name, type, root) -> {
+            try {
+                deleter.deleteRecursively(root);
+            } catch (IOException e) {
+                failure.addSuppressed(e);
+            }
+        });
+    }
+
     private UnpackResult unpack(CacheableEntity entity, TarArchiveInputStream tarInput, OriginReader readOriginAction) throws IOException {
         ImmutableMap.Builder<String, CacheableTree> treesBuilder = ImmutableMap.builder();
         entity.visitOutputTrees((name, type, root) -> treesBuilder.put(name, new CacheableTree(type, root)));
@@ -79,7 +79,7 @@ class BuildCacheCommandFactoryTest extends Specification {
 
         then:
         1 * originFactory.createReader(entity) >> originReader
-        1 * virtualFileSystem.update([outputDir.absolutePath, outputFile.absolutePath], _)
+        1 * virtualFileSystem.update([outputDir.absolutePath, outputFile.absolutePath], _) >> { locations, Runnable action -> action.run() }
 
         then:
         1 * packer.unpack(entity, input, originReader) >> new BuildCacheEntryPacker.UnpackResult(originMetadata, 123L, fileSnapshots)
@@ -115,7 +115,7 @@ class BuildCacheCommandFactoryTest extends Specification {
 
         then:
         1 * originFactory.createReader(entity) >> originReader
-        1 * virtualFileSystem.update([outputFile.absolutePath], _)
+        1 * virtualFileSystem.update([outputFile.absolutePath], _) >> { locations, Runnable action -> action.run() }
 
         then:
         1 * packer.unpack(entity, input, originReader) >> {
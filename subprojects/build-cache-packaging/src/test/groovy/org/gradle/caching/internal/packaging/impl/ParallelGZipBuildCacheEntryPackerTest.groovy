@@ -0,0 +1,176 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl
+
+import org.gradle.caching.internal.CacheableEntity
+import org.gradle.caching.internal.origin.OriginReader
+import org.gradle.caching.internal.origin.OriginWriter
+import org.gradle.caching.internal.packaging.BuildCacheEntryPacker
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.zip.GZIPInputStream
+import java.util.zip.GZIPOutputStream
+import java.util.zip.ZipException
+
+class ParallelGZipBuildCacheEntryPackerTest extends Specification {
+    def executorFactory = new DefaultExecutorFactory()
+    def delegate = Mock(BuildCacheEntryPacker)
+    def packer = new ParallelGZipBuildCacheEntryPacker(delegate, executorFactory, 4, 1024)
+    def entity = Stub(CacheableEntity)
+
+    def cleanup() {
+        packer.stop()
+        executorFactory.stop()
+    }
+
+    @Unroll
+    def "packed entry of #size bytes can be unpacked by plain and parallel GZIP decoders"() {
+        def data = content(size)
+        def output = new ByteArrayOutputStream()
+        byte[] unpacked = null
+
+        when:
+        packer.pack(entity, [:], output, Stub(OriginWriter))
+
+        then:
+        1 * delegate.pack(entity, [:], _, _) >> { entity, fingerprints, OutputStream stream, writeOrigin ->
+            stream.write(data)
+            new BuildCacheEntryPacker.PackResult(1)
+        }
+
+        and:
+        new GZIPInputStream(new ByteArrayInputStream(output.toByteArray())).bytes == data
+
+        when:
+        packer.unpack(entity, new ByteArrayInputStream(output.toByteArray()), Stub(OriginReader))
+
+        then:
+        1 * delegate.unpack(entity, _, _) >> { entity, InputStream stream, readOrigin ->
+            unpacked = stream.bytes
+            null
+        }
+        unpacked == data
+
+        where:
+        size << [0, 1, 1023, 1024, 1025, 100000]
+    }
+
+    @Unroll
+    def "unpacks entry of #size bytes compressed as a single GZIP member"() {
+        def data = content(size)
+        def output = new ByteArrayOutputStream()
+        new GZIPOutputStream(output).withStream { it.write(data) }
+        byte[] unpacked = null
+
+        when:
+        packer.unpack(entity, new ByteArrayInputStream(output.toByteArray()), Stub(OriginReader))
+
+        then:
+        1 * delegate.unpack(entity, _, _) >> { entity, InputStream stream, readOrigin ->
+            unpacked = stream.bytes
+            null
+        }
+        unpacked == data
+
+        where:
+        size << [0, 100000]
+    }
+
+    def "entries are compatible with the non-parallel GZIP packer"() {
+        def data = content(100000)
+        def gzipPacker = new GZipBuildCacheEntryPacker(delegate)
+        def parallelOutput = new ByteArrayOutputStream()
+        def gzipOutput = new ByteArrayOutputStream()
+        def unpacked = []
+        delegate.pack(entity, [:], _, _) >> { entity, fingerprints, OutputStream stream, writeOrigin ->
+            stream.write(data)
+            new BuildCacheEntryPacker.PackResult(1)
+        }
+        delegate.unpack(entity, _, _) >> { entity, InputStream stream, readOrigin ->
+            unpacked << stream.bytes
+            null
+        }
+
+        when:
+        packer.pack(entity, [:], parallelOutput, Stub(OriginWriter))
+        gzipPacker.pack(entity, [:], gzipOutput, Stub(OriginWriter))
+        gzipPacker.unpack(entity, new ByteArrayInputStream(parallelOutput.toByteArray()), Stub(OriginReader))
+        packer.unpack(entity, new ByteArrayInputStream(gzipOutput.toByteArray()), Stub(OriginReader))
+
+        then:
+        unpacked == [data, data]
+    }
+
+    def "detects corrupt members"() {
+        def output = new ByteArrayOutputStream()
+        new ParallelGZipOutputStream(output, { it.run() }, 1024, 2).withStream { it.write(content(5000)) }
+        def bytes = output.toByteArray()
+        // Flip a bit in the CRC of the last member
+        bytes[bytes.length - 6] ^= 1
+
+        when:
+        new ParallelGZipInputStream(new ByteArrayInputStream(bytes), { it.run() }, 2).bytes
+
+        then:
+        thrown(ZipException)
+    }
+
+    def "detects truncated stream"() {
+        def output = new ByteArrayOutputStream()
+        new ParallelGZipOutputStream(output, { it.run() }, 1024, 2).withStream { it.write(content(5000)) }
+        def bytes = Arrays.copyOf(output.toByteArray(), output.size() - 3)
+
+        when:
+        new ParallelGZipInputStream(new ByteArrayInputStream(bytes), { it.run() }, 2).bytes
+
+        then:
+        thrown(EOFException)
+    }
+
+    def "inserting data only changes the members around the insertion"() {
+        def data = content(20000)
+        def shifted = new byte[data.length + 100]
+        System.arraycopy(data, 0, shifted, 100, data.length)
+
+        when:
+        def original = compress(data)
+        def modified = compress(shifted)
+
+        then:
+        def tailLength = (int) (original.length / 2)
+        Arrays.copyOfRange(original, original.length - tailLength, original.length) == Arrays.copyOfRange(modified, modified.length - tailLength, modified.length)
+        new GZIPInputStream(new ByteArrayInputStream(modified)).bytes == shifted
+    }
+
+    private static byte[] compress(byte[] data) {
+        def output = new ByteArrayOutputStream()
+        new ParallelGZipOutputStream(output, { it.run() }, 1024, 2).withStream { it.write(data) }
+        return output.toByteArray()
+    }
+
+    private static byte[] content(int size) {
+        def random = new Random(1234L)
+        def data = new byte[size]
+        for (int i = 0; i < size; i++) {
+            // Mix compressible and random content
+            data[i] = (byte) (random.nextInt(10) < 7 ? 'a' + random.nextInt(4) : random.nextInt())
+        }
+        return data
+    }
+}
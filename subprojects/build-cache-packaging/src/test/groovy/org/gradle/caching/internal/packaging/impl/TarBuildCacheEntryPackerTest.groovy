@@ -69,6 +69,24 @@ class TarBuildCacheEntryPackerTest extends AbstractTarBuildCacheEntryPackerSpec
         result.entries == 4
     }
 
+    def "removes partially unpacked outputs when entry is truncated"() {
+        def sourceOutputDir = temporaryFolder.file("source").createDir()
+        sourceOutputDir.file("data.txt") << ("output" * 20000)
+        def targetOutputDir = temporaryFolder.file("target").createDir()
+        targetOutputDir.file("stale.txt") << "stale"
+        def output = new ByteArrayOutputStream()
+        pack output, prop(DIRECTORY, sourceOutputDir)
+        def bytes = output.toByteArray()
+
+        when:
+        def input = new ByteArrayInputStream(bytes, 0, bytes.length.intdiv(2) as int)
+        unpack input, prop(DIRECTORY, targetOutputDir)
+
+        then:
+        thrown IOException
+        targetOutputDir.assertDoesNotExist()
+    }
+
     @Unroll
     def "can pack tree with missing #type (pre-existing as: #preExistsAs)"() {
         def sourceOutput = temporaryFolder.file("source")
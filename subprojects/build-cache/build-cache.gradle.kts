@@ -47,6 +47,8 @@ dependencies {
         }
     }
 
+    jmhImplementation(project(":buildCachePackaging"))
+    jmhImplementation(project(":core"))
     jmhImplementation("io.airlift:aircompressor:0.8")
     jmhImplementation("org.iq80.snappy:snappy:0.4")
     jmhImplementation("org.kamranzafar:jtar:2.3")
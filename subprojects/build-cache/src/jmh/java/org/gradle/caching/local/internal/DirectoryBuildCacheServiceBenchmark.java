@@ -0,0 +1,225 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.caching.local.internal;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.Action;
+import org.gradle.cache.PersistentCache;
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.cache.PersistentIndexedCacheParameters;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.internal.Factory;
+import org.gradle.internal.resource.local.DefaultPathKeyFileStore;
+import org.gradle.internal.resource.local.FileAccessTracker;
+import org.gradle.internal.serialize.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stresses the local directory cache with many threads loading and storing unrelated entries at the same time.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class DirectoryBuildCacheServiceBenchmark {
+    private static final int EXISTING_ENTRIES = 1000;
+    private static final byte[] CONTENT = new byte[16 * 1024];
+
+    File cacheDir;
+    File sourceDir;
+    DirectoryBuildCacheService service;
+    AtomicInteger counter;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws IOException {
+        cacheDir = Files.createTempDirectory("build-cache-benchmark").toFile();
+        sourceDir = Files.createTempDirectory("build-cache-benchmark-sources").toFile();
+        service = new DirectoryBuildCacheService(
+            new DefaultPathKeyFileStore(cacheDir),
+            new UnlockedPersistentCache(cacheDir),
+            new DefaultBuildCacheTempFileStore(cacheDir),
+            new FileAccessTracker() {
+                @Override
+                public void markAccessed(File file) {
+                }
+
+                @Override
+                public void markAccessed(Collection<File> files) {
+                }
+            },
+            ".failed"
+        );
+        counter = new AtomicInteger();
+        for (int i = 0; i < EXISTING_ENTRIES; i++) {
+            service.storeLocally(new Key("existing-" + i), newSourceFile());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws IOException {
+        service.close();
+        FileUtils.forceDelete(cacheDir);
+        FileUtils.forceDelete(sourceDir);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void load(Blackhole blackhole) {
+        loadRandomEntry(blackhole);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void store() throws IOException {
+        storeNewEntry();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(6)
+    public void mixedLoad(Blackhole blackhole) {
+        loadRandomEntry(blackhole);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public void mixedStore() throws IOException {
+        storeNewEntry();
+    }
+
+    private void loadRandomEntry(final Blackhole blackhole) {
+        service.loadLocally(new Key("existing-" + ThreadLocalRandom.current().nextInt(EXISTING_ENTRIES)), new Action<File>() {
+            @Override
+            public void execute(File file) {
+                blackhole.consume(file.length());
+            }
+        });
+    }
+
+    private void storeNewEntry() throws IOException {
+        service.storeLocally(new Key("new-" + counter.incrementAndGet()), newSourceFile());
+    }
+
+    private File newSourceFile() throws IOException {
+        File file = new File(sourceDir, "source-" + counter.incrementAndGet());
+        Files.write(file.toPath(), CONTENT);
+        return file;
+    }
+
+    private static class Key implements BuildCacheKey {
+        private final String hashCode;
+
+        private Key(String hashCode) {
+            this.hashCode = hashCode;
+        }
+
+        @Override
+        public String getHashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public byte[] toByteArray() {
+            return hashCode.getBytes();
+        }
+
+        @Override
+        public String getDisplayName() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * Stands in for the cross-process lock, which is reentrant within a single process and so doesn't affect the contention measured here.
+     */
+    private static class UnlockedPersistentCache implements PersistentCache {
+        private final File baseDir;
+
+        private UnlockedPersistentCache(File baseDir) {
+            this.baseDir = baseDir;
+        }
+
+        @Override
+        public File getBaseDir() {
+            return baseDir;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "benchmark cache";
+        }
+
+        @Override
+        public Collection<File> getReservedCacheFiles() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public <K, V> PersistentIndexedCache<K, V> createCache(PersistentIndexedCacheParameters<K, V> parameters) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <K, V> PersistentIndexedCache<K, V> createCache(String name, Class<K> keyType, Serializer<V> valueSerializer) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T> T useCache(Factory<? extends T> action) {
+            return action.create();
+        }
+
+        @Override
+        public void useCache(Runnable action) {
+            action.run();
+        }
+
+        @Override
+        public <T> T withFileLock(Factory<? extends T> action) {
+            return action.create();
+        }
+
+        @Override
+        public void withFileLock(Runnable action) {
+            action.run();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.chunking;
+
+import java.util.Random;
+
+/**
+ * Splits data into chunks at positions that depend only on the surrounding content, using a gear rolling hash.
+ * <p>
+ * Inserting or removing bytes only changes the chunks around the modification, the chunk boundaries before and after it stay the same.
+ * This makes identical parts of similar data end up in identical chunks.
+ */
+public class ContentDefinedChunker {
+    private static final int WINDOW_SIZE = 64;
+    private static final long[] GEAR = createGearTable();
+
+    private final int minSize;
+    private final int maxSize;
+    private final long mask;
+
+    /**
+     * @param minSize the minimum size of a chunk, except for the last one
+     * @param averageSize the average number of bytes after the minimum size until a boundary is found, must be a power of two
+     * @param maxSize the maximum size of a chunk
+     */
+    public ContentDefinedChunker(int minSize, int averageSize, int maxSize) {
+        if (Integer.bitCount(averageSize) != 1) {
+            throw new IllegalArgumentException("Average chunk size must be a power of two: " + averageSize);
+        }
+        if (minSize < 0 || maxSize < minSize || maxSize <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid chunk size range [%d, %d]", minSize, maxSize));
+        }
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        int bits = Integer.numberOfTrailingZeros(averageSize);
+        // The highest bits of the hash depend on all bytes in the window
+        this.mask = bits == 0 ? 0 : -1L << (64 - bits);
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the length of the chunk that starts at the given offset, or -1 if the given data ends before a boundary is found.
+     * The chunk never exceeds the maximum size, so -1 is only returned when less than the maximum size of data is given.
+     */
+    public int findBoundary(byte[] data, int offset, int length) {
+        int limit = Math.min(length, maxSize);
+        if (limit <= minSize) {
+            return length >= maxSize ? maxSize : -1;
+        }
+        long hash = 0;
+        // Only hash the bytes that can influence the first possible boundary, so that it only depends on the chunk itself
+        int start = Math.max(0, minSize - WINDOW_SIZE);
+        for (int i = start; i < limit; i++) {
+            hash = (hash << 1) + GEAR[data[offset + i] & 0xff];
+            if (i >= minSize && (hash & mask) == 0) {
+                return i + 1;
+            }
+        }
+        return length >= maxSize ? maxSize : -1;
+    }
+
+    private static long[] createGearTable() {
+        // The table must be the same everywhere, as it determines where chunks end up
+        Random random = new Random(0x4772616465L);
+        long[] table = new long[256];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = random.nextLong();
+        }
+        return table;
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import org.gradle.api.GradleException;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.internal.chunking.ContentDefinedChunker;
+import org.gradle.caching.internal.controller.service.BuildCacheServiceHandle;
+import org.gradle.caching.internal.controller.service.LoadTarget;
+import org.gradle.caching.internal.controller.service.LocalBuildCacheServiceHandle;
+import org.gradle.caching.internal.controller.service.StoreTarget;
+import org.gradle.caching.local.internal.BuildCacheTempFileStore;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hashing;
+import org.gradle.internal.hash.PrimitiveHasher;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores build cache entries as a manifest that lists the content-defined chunks of the entry.
+ * <p>
+ * Each chunk is stored as a separate entry keyed by the hash of its content, so chunks that are shared between
+ * entries are only stored and transferred once. Chunks and manifests are ordinary entries for the build cache services.
+ * <p>
+ * The local and the remote cache can evict chunks independently, so a chunk found in the local cache is still stored in the remote cache,
+ * unless it has been stored in or loaded from the remote cache during this build. A manifest is only stored in the remote cache once all of
+ * its chunks are known to be there, so the remote handle must store synchronously.
+ */
+class ChunkedBuildCacheEntries {
+    private static final byte[] MANIFEST_MAGIC = "GRCHUNK1".getBytes(StandardCharsets.US_ASCII);
+    private static final int HASH_LENGTH = 16;
+    // Large enough to keep the number of requests per entry low
+    private static final ContentDefinedChunker CHUNKER = new ContentDefinedChunker(64 * 1024, 256 * 1024, 1024 * 1024);
+
+    private final LocalBuildCacheServiceHandle local;
+    private final BuildCacheServiceHandle remote;
+    private final BuildCacheTempFileStore tmp;
+    private final Set<HashCode> remoteChunks = ConcurrentHashMap.newKeySet();
+
+    ChunkedBuildCacheEntries(LocalBuildCacheServiceHandle local, BuildCacheServiceHandle remote, BuildCacheTempFileStore tmp) {
+        this.local = local;
+        this.remote = remote;
+        this.tmp = tmp;
+    }
+
+    /**
+     * Stores the chunks of the given entry that are missing, followed by the manifest of the entry.
+     */
+    void store(BuildCacheKey key, File entry) {
+        List<Chunk> chunks = storeChunks(entry);
+        tmp.withTempFile(key, manifest -> {
+            writeManifest(chunks, manifest);
+            if (remote.canStore() && isStoredRemotely(chunks)) {
+                remote.store(key, new StoreTarget(manifest));
+            }
+            if (local.canStore()) {
+                local.store(key, manifest);
+            }
+        });
+    }
+
+    private List<Chunk> storeChunks(File entry) {
+        ImmutableList.Builder<Chunk> chunks = ImmutableList.builder();
+        byte[] buffer = new byte[CHUNKER.getMaxSize()];
+        try (InputStream input = new FileInputStream(entry)) {
+            int count = 0;
+            boolean endOfInput = false;
+            while (true) {
+                while (!endOfInput && count < buffer.length) {
+                    int read = input.read(buffer, count, buffer.length - count);
+                    if (read < 0) {
+                        endOfInput = true;
+                    } else {
+                        count += read;
+                    }
+                }
+                if (count == 0) {
+                    break;
+                }
+                int length = CHUNKER.findBoundary(buffer, 0, count);
+                if (length < 0) {
+                    // The rest of the entry
+                    length = count;
+                }
+                chunks.add(storeChunk(buffer, length));
+                count -= length;
+                System.arraycopy(buffer, length, buffer, 0, count);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return chunks.build();
+    }
+
+    private Chunk storeChunk(byte[] buffer, int length) {
+        Chunk chunk = new Chunk(hash(buffer, length), length);
+        boolean storeRemotely = remote.canStore() && !remoteChunks.contains(chunk.hash);
+        boolean storeLocally = local.canStore() && !(local.canLoad() && isStoredLocally(chunk));
+        if (!storeRemotely && !storeLocally) {
+            return chunk;
+        }
+        tmp.withTempFile(chunk, file -> {
+            try (OutputStream output = new FileOutputStream(file)) {
+                output.write(buffer, 0, length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (storeRemotely) {
+                remote.store(chunk, new StoreTarget(file));
+                // The handle is disabled when storing fails
+                if (remote.canStore()) {
+                    remoteChunks.add(chunk.hash);
+                }
+            }
+            if (storeLocally) {
+                local.store(chunk, file);
+            }
+        });
+        return chunk;
+    }
+
+    private boolean isStoredRemotely(List<Chunk> chunks) {
+        for (Chunk chunk : chunks) {
+            if (!remoteChunks.contains(chunk.hash)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isStoredLocally(Chunk chunk) {
+        boolean[] found = new boolean[1];
+        local.load(chunk, file -> found[0] = true);
+        return found[0];
+    }
+
+    /**
+     * Returns whether the given stream starts with a manifest. The stream must support marks, and is reset to where it started.
+     */
+    static boolean startsWithManifest(InputStream input) throws IOException {
+        byte[] magic = new byte[MANIFEST_MAGIC.length];
+        input.mark(magic.length);
+        int read = ByteStreams.read(input, magic, 0, magic.length);
+        input.reset();
+        return read == magic.length && Arrays.equals(magic, MANIFEST_MAGIC);
+    }
+
+    /**
+     * Returns the chunks listed in the given manifest, or {@code null} if the file is not a manifest.
+     */
+    @Nullable
+    List<Chunk> readManifest(File file) {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            byte[] magic = new byte[MANIFEST_MAGIC.length];
+            if (input.read(magic) != magic.length || !Arrays.equals(magic, MANIFEST_MAGIC)) {
+                return null;
+            }
+            int count = input.readInt();
+            ImmutableList.Builder<Chunk> chunks = ImmutableList.builder();
+            for (int i = 0; i < count; i++) {
+                byte[] hash = new byte[HASH_LENGTH];
+                input.readFully(hash);
+                int length = input.readInt();
+                if (length <= 0 || length > CHUNKER.getMaxSize()) {
+                    throw new IllegalStateException("Invalid chunk length in build cache entry manifest: " + length);
+                }
+                chunks.add(new Chunk(HashCode.fromBytes(hash), length));
+            }
+            return chunks.build();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeManifest(List<Chunk> chunks, File file) {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            output.write(MANIFEST_MAGIC);
+            output.writeInt(chunks.size());
+            for (Chunk chunk : chunks) {
+                output.write(chunk.hash.toByteArray());
+                output.writeInt(chunk.length);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the contents of the given chunks to the target file, loading them from the local cache first, and from the remote cache next.
+     * Chunks loaded from the remote cache are stored locally.
+     *
+     * @return whether all chunks were found.
+     */
+    boolean assemble(List<Chunk> chunks, File target) {
+        try (OutputStream output = new FileOutputStream(target)) {
+            for (Chunk chunk : chunks) {
+                byte[] content = loadChunk(chunk);
+                if (content == null) {
+                    return false;
+                }
+                output.write(content);
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Nullable
+    private byte[] loadChunk(Chunk chunk) {
+        byte[][] content = new byte[1][];
+        if (local.canLoad()) {
+            local.load(chunk, file -> content[0] = readChunk(chunk, file));
+            if (content[0] != null) {
+                return content[0];
+            }
+        }
+        if (remote.canLoad()) {
+            tmp.withTempFile(chunk, file -> {
+                LoadTarget loadTarget = new LoadTarget(file);
+                remote.load(chunk, loadTarget);
+                if (loadTarget.isLoaded()) {
+                    content[0] = readChunk(chunk, file);
+                    remoteChunks.add(chunk.hash);
+                    if (local.canStore()) {
+                        local.store(chunk, file);
+                    }
+                }
+            });
+        }
+        return content[0];
+    }
+
+    private static byte[] readChunk(Chunk chunk, File file) {
+        if (file.length() != chunk.length) {
+            throw new GradleException("Build cache chunk " + chunk.getHashCode() + " has an unexpected size");
+        }
+        byte[] content;
+        try {
+            content = Files.toByteArray(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (!hash(content, content.length).equals(chunk.hash)) {
+            throw new GradleException("Build cache chunk " + chunk.getHashCode() + " is corrupt");
+        }
+        return content;
+    }
+
+    private static HashCode hash(byte[] buffer, int length) {
+        // The hash function is fixed, as chunks are shared with other builds
+        PrimitiveHasher hasher = Hashing.md5().newPrimitiveHasher();
+        hasher.putBytes(buffer, 0, length);
+        return hasher.hash();
+    }
+
+    static class Chunk implements BuildCacheKey {
+        private final HashCode hash;
+        private final int length;
+
+        Chunk(HashCode hash, int length) {
+            this.hash = hash;
+            this.length = length;
+        }
+
+        @Override
+        public String getHashCode() {
+            return hash.toString();
+        }
+
+        @Override
+        public byte[] toByteArray() {
+            return hash.toByteArray();
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "chunk " + getHashCode();
+        }
+
+        @Override
+        public String toString() {
+            return getDisplayName();
+        }
+    }
+}
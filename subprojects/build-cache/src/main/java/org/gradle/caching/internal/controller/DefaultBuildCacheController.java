@@ -17,7 +17,13 @@
 package org.gradle.caching.internal.controller;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Closer;
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.Files;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.ProxyInputStream;
+import org.apache.commons.io.input.TeeInputStream;
 import org.gradle.api.Action;
 import org.gradle.api.GradleException;
 import org.gradle.caching.BuildCacheKey;
@@ -26,6 +32,7 @@
 import org.gradle.caching.internal.controller.operations.PackOperationResult;
 import org.gradle.caching.internal.controller.operations.UnpackOperationDetails;
 import org.gradle.caching.internal.controller.operations.UnpackOperationResult;
+import org.gradle.caching.internal.controller.service.AsyncStoringBuildCacheServiceHandle;
 import org.gradle.caching.internal.controller.service.BuildCacheServiceHandle;
 import org.gradle.caching.internal.controller.service.BuildCacheServiceRole;
 import org.gradle.caching.internal.controller.service.BuildCacheServicesConfiguration;
@@ -40,21 +47,28 @@
 import org.gradle.caching.local.internal.DefaultBuildCacheTempFileStore;
 import org.gradle.caching.local.internal.LocalBuildCacheService;
 import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.operations.BuildOperationContext;
 import org.gradle.internal.operations.BuildOperationDescriptor;
 import org.gradle.internal.operations.BuildOperationExecutor;
 import org.gradle.internal.operations.RunnableBuildOperation;
 
 import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.util.List;
 import java.util.Optional;
 
 public class DefaultBuildCacheController implements BuildCacheController {
+    private static final int MAX_CONCURRENT_REMOTE_STORES = 4;
+    private static final int MAX_QUEUED_REMOTE_STORES = 64;
+    private static final int REMOTE_STORE_ATTEMPTS = 3;
 
     @VisibleForTesting
     final BuildCacheServiceHandle remote;
@@ -63,8 +77,11 @@ public class DefaultBuildCacheController implements BuildCacheController {
     final LocalBuildCacheServiceHandle local;
 
     private final BuildCacheTempFileStore tmp;
+    private final ChunkedBuildCacheEntries chunkedEntries;
     private final BuildOperationExecutor buildOperationExecutor;
     private final boolean emitDebugLogging;
+    private final boolean storeChunked;
+    private final boolean streamRemoteLoads;
 
     private boolean closed;
 
@@ -74,12 +91,53 @@ public DefaultBuildCacheController(
         File gradleUserHomeDir,
         boolean logStackTraces,
         boolean emitDebugLogging
+    ) {
+        this(config, buildOperationExecutor, gradleUserHomeDir, logStackTraces, emitDebugLogging, false);
+    }
+
+    /**
+     * @param storeChunked whether to store entries as chunks that can be shared with other entries. Chunked entries are always loaded.
+     */
+    public DefaultBuildCacheController(
+        BuildCacheServicesConfiguration config,
+        BuildOperationExecutor buildOperationExecutor,
+        File gradleUserHomeDir,
+        boolean logStackTraces,
+        boolean emitDebugLogging,
+        boolean storeChunked
+    ) {
+        this(config, buildOperationExecutor, gradleUserHomeDir, logStackTraces, emitDebugLogging, storeChunked, false, false, null);
+    }
+
+    /**
+     * @param storeRemoteAsync whether to store entries in the remote cache in the background. Chunked entries are always stored synchronously.
+     * @param streamRemoteLoads whether to unpack entries from the remote cache while downloading them, instead of downloading them to a temporary file first.
+     * A failure while downloading the entry then fails the load, as outputs may have been partially overwritten already.
+     * @param executorFactory used for background work, required when storing in the background.
+     */
+    public DefaultBuildCacheController(
+        BuildCacheServicesConfiguration config,
+        BuildOperationExecutor buildOperationExecutor,
+        File gradleUserHomeDir,
+        boolean logStackTraces,
+        boolean emitDebugLogging,
+        boolean storeChunked,
+        boolean storeRemoteAsync,
+        boolean streamRemoteLoads,
+        @Nullable ExecutorFactory executorFactory
     ) {
         this.buildOperationExecutor = buildOperationExecutor;
         this.emitDebugLogging = emitDebugLogging;
+        this.storeChunked = storeChunked;
+        this.streamRemoteLoads = streamRemoteLoads;
         this.local = toLocalHandle(config.getLocal(), config.isLocalPush());
-        this.remote = toRemoteHandle(config.getRemote(), config.isRemotePush(), buildOperationExecutor, logStackTraces);
+        BuildCacheServiceHandle remoteHandle = toRemoteHandle(config.getRemote(), config.isRemotePush(), buildOperationExecutor, logStackTraces, storeRemoteAsync ? REMOTE_STORE_ATTEMPTS : 1);
+        this.remote = storeRemoteAsync && remoteHandle.canStore()
+            ? new AsyncStoringBuildCacheServiceHandle(remoteHandle, buildOperationExecutor, executorFactory, new File(gradleUserHomeDir, "build-cache-tmp"), MAX_CONCURRENT_REMOTE_STORES, MAX_QUEUED_REMOTE_STORES)
+            : remoteHandle;
         this.tmp = toTempFileStore(config.getLocal(), gradleUserHomeDir);
+        // Chunks have to be confirmed in the remote cache before the manifest is stored
+        this.chunkedEntries = new ChunkedBuildCacheEntries(local, remoteHandle, tmp);
     }
 
     @Override
@@ -98,7 +156,10 @@ public <T> Optional<T> load(BuildCacheLoadCommand<T> command) {
 
         if (local.canLoad()) {
             try {
-                local.load(command.getKey(), unpack);
+                ChunkAwareUnpack<T> localUnpack = new ChunkAwareUnpack<>(unpack);
+                local.load(command.getKey(), localUnpack);
+                // Chunks are loaded after releasing the entry, as loading them can store chunks locally
+                localUnpack.unpackChunks();
             } catch (Exception e) {
                 throw new GradleException("Build cache entry " + command.getKey().getHashCode() + " from local build cache is invalid", e);
             }
@@ -110,18 +171,34 @@ public <T> Optional<T> load(BuildCacheLoadCommand<T> command) {
 
         if (remote.canLoad()) {
             tmp.withTempFile(command.getKey(), file -> {
-                LoadTarget loadTarget = new LoadTarget(file);
-                remote.load(command.getKey(), loadTarget);
+                boolean loaded;
+                boolean unpackFromFile;
+                if (streamRemoteLoads) {
+                    StreamingLoadTarget<T> loadTarget = new StreamingLoadTarget<>(file, local.canStore(), unpack);
+                    remote.load(command.getKey(), loadTarget);
+                    if (loadTarget.unpackFailure != null) {
+                        throw new GradleException("Build cache entry " + command.getKey().getHashCode() + " from remote build cache is invalid", loadTarget.unpackFailure);
+                    }
+                    loaded = loadTarget.isLoaded();
+                    unpackFromFile = loaded && loadTarget.manifest;
+                } else {
+                    LoadTarget loadTarget = new LoadTarget(file);
+                    remote.load(command.getKey(), loadTarget);
+                    loaded = loadTarget.isLoaded();
+                    unpackFromFile = loaded;
+                }
 
-                if (loadTarget.isLoaded()) {
+                if (unpackFromFile) {
                     try {
-                        unpack.execute(file);
+                        ChunkAwareUnpack<T> remoteUnpack = new ChunkAwareUnpack<>(unpack);
+                        remoteUnpack.execute(file);
+                        remoteUnpack.unpackChunks();
                     } catch (Exception e) {
                         throw new GradleException("Build cache entry " + command.getKey().getHashCode() + " from remote build cache is invalid", e);
                     }
-                    if (local.canStore()) {
-                        local.store(command.getKey(), file);
-                    }
+                }
+                if (loaded && local.canStore() && unpack.result != null) {
+                    local.store(command.getKey(), file);
                 }
             });
         }
@@ -132,6 +209,37 @@ public <T> Optional<T> load(BuildCacheLoadCommand<T> command) {
             : Optional.of(result.getMetadata());
     }
 
+    /**
+     * Unpacks an entry directly, or remembers its chunks if the entry is a manifest of chunks.
+     */
+    private class ChunkAwareUnpack<T> implements Action<File> {
+        private final Unpack<T> unpack;
+        private List<ChunkedBuildCacheEntries.Chunk> chunks;
+
+        private ChunkAwareUnpack(Unpack<T> unpack) {
+            this.unpack = unpack;
+        }
+
+        @Override
+        public void execute(File file) {
+            chunks = chunkedEntries.readManifest(file);
+            if (chunks == null) {
+                unpack.execute(file);
+            }
+        }
+
+        void unpackChunks() {
+            if (chunks == null) {
+                return;
+            }
+            tmp.withTempFile(unpack.command.getKey(), file -> {
+                if (chunkedEntries.assemble(chunks, file)) {
+                    unpack.execute(file);
+                }
+            });
+        }
+    }
+
     private class Unpack<T> implements Action<File> {
         private final BuildCacheLoadCommand<T> command;
 
@@ -143,10 +251,21 @@ private Unpack(BuildCacheLoadCommand<T> command) {
 
         @Override
         public void execute(File file) {
+            try (InputStream input = new FileInputStream(file)) {
+                unpack(input, file.length());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * @param archiveSize the size of the entry, or -1 if it is not known yet.
+         */
+        void unpack(InputStream input, long archiveSize) {
             buildOperationExecutor.run(new RunnableBuildOperation() {
                 @Override
                 public void run(BuildOperationContext context) {
-                    try (InputStream input = new FileInputStream(file)) {
+                    try {
                         result = command.load(input);
                     } catch (IOException e) {
                         throw new UncheckedIOException(e);
@@ -159,13 +278,88 @@ public void run(BuildOperationContext context) {
                 @Override
                 public BuildOperationDescriptor.Builder description() {
                     return BuildOperationDescriptor.displayName("Unpack build cache entry " + command.getKey().getHashCode())
-                        .details(new UnpackOperationDetails(command.getKey(), file.length()))
+                        .details(new UnpackOperationDetails(command.getKey(), archiveSize))
                         .progressDisplayName("Unpacking build cache entry");
                 }
             });
         }
     }
 
+    /**
+     * Unpacks an entry from the remote cache while it is being downloaded. The entry is copied to the given file on the way
+     * when it should be stored in the local cache as well. Chunk manifests are only downloaded, as their chunks need to be loaded separately.
+     * When the download fails part way, the failure is passed on to the remote cache, which reports it as a miss.
+     */
+    private class StreamingLoadTarget<T> extends LoadTarget {
+        private final File file;
+        private final boolean copyToFile;
+        private final Unpack<T> unpack;
+        private boolean loaded;
+        private boolean manifest;
+        private long loadedSize = -1;
+        private Exception unpackFailure;
+        private IOException readFailure;
+
+        private StreamingLoadTarget(File file, boolean copyToFile, Unpack<T> unpack) {
+            super(file);
+            this.file = file;
+            this.copyToFile = copyToFile;
+            this.unpack = unpack;
+        }
+
+        @Override
+        public void readFrom(InputStream input) throws IOException {
+            if (loaded) {
+                input.close();
+                throw new IllegalStateException("Build cache entry has already been read");
+            }
+            try (CountingInputStream countingInput = new CountingInputStream(new BufferedInputStream(input))) {
+                if (ChunkedBuildCacheEntries.startsWithManifest(countingInput)) {
+                    manifest = true;
+                    Files.asByteSink(file).writeFrom(countingInput);
+                } else {
+                    unpackWhileReading(countingInput);
+                }
+                loaded = unpackFailure == null;
+                loadedSize = countingInput.getCount();
+            }
+        }
+
+        private void unpackWhileReading(InputStream input) throws IOException {
+            try (OutputStream copy = copyToFile ? new FileOutputStream(file) : ByteStreams.nullOutputStream()) {
+                InputStream teeInput = new TeeInputStream(new ProxyInputStream(input) {
+                    @Override
+                    protected void handleIOException(IOException e) throws IOException {
+                        readFailure = e;
+                        throw e;
+                    }
+                }, copy);
+                try {
+                    unpack.unpack(new CloseShieldInputStream(teeInput), -1);
+                } catch (Exception e) {
+                    if (readFailure != null) {
+                        // The download was interrupted. The unpacker has removed the partial outputs, so let the remote cache report a miss
+                        throw readFailure;
+                    }
+                    unpackFailure = e;
+                    return;
+                }
+                // Read the rest of the entry, so the local copy is complete
+                ByteStreams.exhaust(teeInput);
+            }
+        }
+
+        @Override
+        public boolean isLoaded() {
+            return loaded;
+        }
+
+        @Override
+        public long getLoadedSize() {
+            return loadedSize;
+        }
+    }
+
     @Override
     public void store(BuildCacheStoreCommand command) {
         if (!local.canStore() && !remote.canStore()) {
@@ -178,6 +372,11 @@ public void store(BuildCacheStoreCommand command) {
         tmp.withTempFile(command.getKey(), file -> {
             pack.execute(file);
 
+            if (storeChunked) {
+                chunkedEntries.store(key, file);
+                return;
+            }
+
             if (remote.canStore()) {
                 remote.store(key, new StoreTarget(file));
             }
@@ -233,10 +432,10 @@ public void close() throws IOException {
         }
     }
 
-    private static BuildCacheServiceHandle toRemoteHandle(@Nullable BuildCacheService service, boolean push, BuildOperationExecutor buildOperationExecutor, boolean logStackTraces) {
+    private static BuildCacheServiceHandle toRemoteHandle(@Nullable BuildCacheService service, boolean push, BuildOperationExecutor buildOperationExecutor, boolean logStackTraces, int storeAttempts) {
         return service == null
             ? NullBuildCacheServiceHandle.INSTANCE
-            : new OpFiringBuildCacheServiceHandle(service, push, BuildCacheServiceRole.REMOTE, buildOperationExecutor, logStackTraces);
+            : new OpFiringBuildCacheServiceHandle(service, push, BuildCacheServiceRole.REMOTE, buildOperationExecutor, logStackTraces, storeAttempts);
     }
 
     private static LocalBuildCacheServiceHandle toLocalHandle(@Nullable LocalBuildCacheService local, boolean localPush) {
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller.operations;
+
+import org.gradle.caching.internal.operations.BuildCacheRemoteStoreDrainBuildOperationType;
+
+public class StoreDrainOperationResult implements BuildCacheRemoteStoreDrainBuildOperationType.Result {
+
+    private final int storedCount;
+    private final int failedCount;
+    private final long storedBytes;
+    private final long uploadTimeMillis;
+    private final int maxQueueDepth;
+
+    public StoreDrainOperationResult(int storedCount, int failedCount, long storedBytes, long uploadTimeMillis, int maxQueueDepth) {
+        this.storedCount = storedCount;
+        this.failedCount = failedCount;
+        this.storedBytes = storedBytes;
+        this.uploadTimeMillis = uploadTimeMillis;
+        this.maxQueueDepth = maxQueueDepth;
+    }
+
+    @Override
+    public int getStoredCount() {
+        return storedCount;
+    }
+
+    @Override
+    public int getFailedCount() {
+        return failedCount;
+    }
+
+    @Override
+    public long getStoredBytes() {
+        return storedBytes;
+    }
+
+    @Override
+    public long getUploadTimeMillis() {
+        return uploadTimeMillis;
+    }
+
+    @Override
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller.service;
+
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.BuildCacheService;
+import org.gradle.caching.internal.controller.operations.StoreDrainOperationDetails;
+import org.gradle.caching.internal.controller.operations.StoreDrainOperationResult;
+import org.gradle.caching.internal.controller.operations.StoreQueueOperationDetails;
+import org.gradle.caching.internal.controller.operations.StoreQueueOperationResult;
+import org.gradle.caching.local.internal.BuildCacheTempFileStore;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationDescriptor;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.CurrentBuildOperationPreservingRunnable;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.util.GFileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stores entries in the background, so that slow uploads do not hold up the work that produced the entries.
+ * <p>
+ * Entries are copied to a spool file before they are queued, as callers may move or delete the original once
+ * {@link #store(BuildCacheKey, StoreTarget)} returns. Entries which cannot be spooled are stored directly instead,
+ * so any failure to read them is reported by the delegate like any other store failure.
+ * The queue is bounded, storing blocks while the queue is full. Closing the handle waits for all queued entries to be stored.
+ */
+public class AsyncStoringBuildCacheServiceHandle implements BuildCacheServiceHandle {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncStoringBuildCacheServiceHandle.class);
+
+    private final BuildCacheServiceHandle delegate;
+    private final BuildOperationExecutor buildOperationExecutor;
+    private final File spoolDir;
+    private final Semaphore queueCapacity;
+    private final ManagedExecutor executor;
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicInteger storedCount = new AtomicInteger();
+    private final AtomicInteger failedCount = new AtomicInteger();
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final AtomicLong uploadTimeNanos = new AtomicLong();
+
+    public AsyncStoringBuildCacheServiceHandle(
+        BuildCacheServiceHandle delegate,
+        BuildOperationExecutor buildOperationExecutor,
+        ExecutorFactory executorFactory,
+        File spoolDir,
+        int maxConcurrentStores,
+        int maxQueuedEntries
+    ) {
+        this.delegate = delegate;
+        this.buildOperationExecutor = buildOperationExecutor;
+        this.spoolDir = spoolDir;
+        this.queueCapacity = new Semaphore(maxQueuedEntries);
+        this.executor = executorFactory.create("Build cache upload", maxConcurrentStores);
+    }
+
+    @Nullable
+    @Override
+    public BuildCacheService getService() {
+        return delegate.getService();
+    }
+
+    @Override
+    public boolean canLoad() {
+        return delegate.canLoad();
+    }
+
+    @Override
+    public void load(BuildCacheKey key, LoadTarget loadTarget) {
+        delegate.load(key, loadTarget);
+    }
+
+    @Override
+    public boolean canStore() {
+        return delegate.canStore();
+    }
+
+    @Override
+    public void store(BuildCacheKey key, StoreTarget storeTarget) {
+        buildOperationExecutor.run(new RunnableBuildOperation() {
+            @Override
+            public void run(BuildOperationContext context) {
+                try {
+                    queueCapacity.acquire();
+                } catch (InterruptedException e) {
+                    throw UncheckedException.throwAsUncheckedException(e);
+                }
+                File spoolFile;
+                try {
+                    spoolFile = spool(key, storeTarget);
+                } catch (RuntimeException e) {
+                    queueCapacity.release();
+                    LOGGER.debug("Could not spool entry {} for remote build cache, storing it directly", key.getDisplayName(), e);
+                    delegate.store(key, storeTarget.retry());
+                    context.setResult(new StoreQueueOperationResult(queueDepth.get()));
+                    return;
+                }
+                int depth = queueDepth.incrementAndGet();
+                maxQueueDepth.accumulateAndGet(depth, Math::max);
+                try {
+                    // Attach the operations of the background store to the operation that queued the entry
+                    executor.execute(new CurrentBuildOperationPreservingRunnable(() -> storeInBackground(key, spoolFile)));
+                } catch (RuntimeException e) {
+                    GFileUtils.deleteQuietly(spoolFile);
+                    queueDepth.decrementAndGet();
+                    queueCapacity.release();
+                    throw e;
+                }
+                context.setResult(new StoreQueueOperationResult(depth));
+            }
+
+            @Override
+            public BuildOperationDescriptor.Builder description() {
+                return BuildOperationDescriptor.displayName("Queue entry " + key.getDisplayName() + " for remote build cache")
+                    .details(new StoreQueueOperationDetails(key, storeTarget.getSize()))
+                    .progressDisplayName("Queueing for remote build cache");
+            }
+        });
+    }
+
+    private File spool(BuildCacheKey key, StoreTarget storeTarget) {
+        try {
+            GFileUtils.mkdirs(spoolDir);
+            File spoolFile = File.createTempFile(key.getHashCode() + "-", BuildCacheTempFileStore.PARTIAL_FILE_SUFFIX, spoolDir);
+            try (OutputStream output = new FileOutputStream(spoolFile)) {
+                storeTarget.writeTo(output);
+            } catch (IOException | RuntimeException e) {
+                GFileUtils.deleteQuietly(spoolFile);
+                throw e;
+            }
+            return spoolFile;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void storeInBackground(BuildCacheKey key, File spoolFile) {
+        try {
+            // Skip the remaining entries once the service has been disabled due to an error
+            if (!delegate.canStore()) {
+                failedCount.incrementAndGet();
+                return;
+            }
+            long size = spoolFile.length();
+            long start = System.nanoTime();
+            delegate.store(key, new StoreTarget(spoolFile));
+            uploadTimeNanos.addAndGet(System.nanoTime() - start);
+            if (delegate.canStore()) {
+                storedCount.incrementAndGet();
+                storedBytes.addAndGet(size);
+            } else {
+                failedCount.incrementAndGet();
+            }
+        } finally {
+            GFileUtils.deleteQuietly(spoolFile);
+            queueDepth.decrementAndGet();
+            queueCapacity.release();
+        }
+    }
+
+    /**
+     * Waits for all queued entries to be stored.
+     */
+    private void drain() {
+        buildOperationExecutor.run(new RunnableBuildOperation() {
+            @Override
+            public void run(BuildOperationContext context) {
+                executor.stop();
+                context.setResult(new StoreDrainOperationResult(
+                    storedCount.get(),
+                    failedCount.get(),
+                    storedBytes.get(),
+                    TimeUnit.NANOSECONDS.toMillis(uploadTimeNanos.get()),
+                    maxQueueDepth.get()
+                ));
+            }
+
+            @Override
+            public BuildOperationDescriptor.Builder description() {
+                return BuildOperationDescriptor.displayName("Wait for queued entries to be stored in remote build cache")
+                    .details(new StoreDrainOperationDetails(queueDepth.get()))
+                    .progressDisplayName("Uploading to remote build cache");
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        try {
+            drain();
+        } finally {
+            delegate.close();
+        }
+    }
+}
@@ -23,24 +23,35 @@
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
 
 public class BaseBuildCacheServiceHandle implements BuildCacheServiceHandle {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(OpFiringBuildCacheServiceHandle.class);
+    private static final long STORE_RETRY_DELAY_MILLIS = 200;
 
     protected final BuildCacheService service;
 
     protected final BuildCacheServiceRole role;
     private final boolean pushEnabled;
     private final boolean logStackTraces;
+    private final int storeAttempts;
 
-    private boolean disabled;
+    private volatile boolean disabled;
 
     public BaseBuildCacheServiceHandle(BuildCacheService service, boolean push, BuildCacheServiceRole role, boolean logStackTraces) {
+        this(service, push, role, logStackTraces, 1);
+    }
+
+    /**
+     * @param storeAttempts how many times to try storing an entry before giving up on the service
+     */
+    public BaseBuildCacheServiceHandle(BuildCacheService service, boolean push, BuildCacheServiceRole role, boolean logStackTraces, int storeAttempts) {
         this.role = role;
         this.service = service;
         this.pushEnabled = push;
         this.logStackTraces = logStackTraces;
+        this.storeAttempts = storeAttempts;
     }
 
     @Nullable
@@ -82,10 +93,42 @@ public boolean canStore() {
     public final void store(BuildCacheKey key, StoreTarget storeTarget) {
         String description = "Store entry " + key.getDisplayName() + " in " + role.getDisplayName() + " build cache";
         LOGGER.debug(description);
+        StoreTarget target = storeTarget;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                storeInner(description, key, target);
+                return;
+            } catch (Exception e) {
+                if (attempt >= storeAttempts || !isTransient(e) || !backOff(attempt)) {
+                    failure("store", "in", key, e);
+                    return;
+                }
+                LOGGER.debug("Could not store entry {} in {} build cache, retrying", key.getDisplayName(), role.getDisplayName(), e);
+                target = target.retry();
+            }
+        }
+    }
+
+    /**
+     * Only failures caused by I/O errors, like a dropped connection, are worth retrying.
+     * Errors reported by the service itself, like an HTTP 4xx response, are not.
+     */
+    private static boolean isTransient(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean backOff(int attempt) {
         try {
-            storeInner(description, key, storeTarget);
-        } catch (Exception e) {
-            failure("store", "in", key, e);
+            Thread.sleep(STORE_RETRY_DELAY_MILLIS << (attempt - 1));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
         }
     }
 
@@ -37,7 +37,11 @@ public class OpFiringBuildCacheServiceHandle extends BaseBuildCacheServiceHandle
     private final BuildOperationExecutor buildOperationExecutor;
 
     public OpFiringBuildCacheServiceHandle(BuildCacheService service, boolean push, BuildCacheServiceRole role, BuildOperationExecutor buildOperationExecutor, boolean logStackTraces) {
-        super(service, push, role, logStackTraces);
+        this(service, push, role, buildOperationExecutor, logStackTraces, 1);
+    }
+
+    public OpFiringBuildCacheServiceHandle(BuildCacheService service, boolean push, BuildCacheServiceRole role, BuildOperationExecutor buildOperationExecutor, boolean logStackTraces, int storeAttempts) {
+        super(service, push, role, logStackTraces, storeAttempts);
         this.buildOperationExecutor = buildOperationExecutor;
     }
 
@@ -50,6 +50,13 @@ public void writeTo(OutputStream output) throws IOException {
         }
     }
 
+    /**
+     * Returns a new target to store the same entry again, after an attempt to store it failed.
+     */
+    public StoreTarget retry() {
+        return new StoreTarget(file);
+    }
+
     public boolean isStored() {
         return stored;
     }
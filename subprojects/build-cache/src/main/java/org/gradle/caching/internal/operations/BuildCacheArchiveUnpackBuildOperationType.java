@@ -29,6 +29,9 @@ public interface Details {
          */
         String getCacheKey();
 
+        /**
+         * The size of the archive in bytes, or -1 when the archive is unpacked while it is being downloaded.
+         */
         long getArchiveSize();
 
     }
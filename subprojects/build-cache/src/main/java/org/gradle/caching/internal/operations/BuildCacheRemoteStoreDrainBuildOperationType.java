@@ -0,0 +1,68 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.operations;
+
+import org.gradle.internal.operations.BuildOperationType;
+
+/**
+ * Waiting for the entries queued to be stored in the remote build cache, when the build cache is closed.
+ *
+ * The result summarizes all entries stored in the background during the build.
+ */
+public final class BuildCacheRemoteStoreDrainBuildOperationType implements BuildOperationType<BuildCacheRemoteStoreDrainBuildOperationType.Details, BuildCacheRemoteStoreDrainBuildOperationType.Result> {
+
+    public interface Details {
+
+        /**
+         * The number of entries still waiting to be stored.
+         */
+        int getQueueDepth();
+
+    }
+
+    public interface Result {
+
+        /**
+         * The number of entries stored in the background.
+         */
+        int getStoredCount();
+
+        /**
+         * The number of entries that could not be stored.
+         */
+        int getFailedCount();
+
+        /**
+         * The number of bytes stored in the background.
+         */
+        long getStoredBytes();
+
+        /**
+         * The time spent storing entries, summed up over all uploads.
+         */
+        long getUploadTimeMillis();
+
+        /**
+         * The largest number of entries waiting to be stored at the same time.
+         */
+        int getMaxQueueDepth();
+
+    }
+
+    private BuildCacheRemoteStoreDrainBuildOperationType() {
+    }
+}
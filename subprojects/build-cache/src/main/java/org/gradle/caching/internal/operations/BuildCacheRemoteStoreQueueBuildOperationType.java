@@ -0,0 +1,54 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.operations;
+
+import org.gradle.internal.operations.BuildOperationType;
+
+/**
+ * Queueing an entry to be stored in the remote build cache in the background.
+ *
+ * The operation lasts as long as the entry takes to be copied and to be accepted by the queue,
+ * which includes waiting for queued entries to be stored when the queue is full.
+ */
+public final class BuildCacheRemoteStoreQueueBuildOperationType implements BuildOperationType<BuildCacheRemoteStoreQueueBuildOperationType.Details, BuildCacheRemoteStoreQueueBuildOperationType.Result> {
+
+    public interface Details {
+
+        /**
+         * The cache key.
+         */
+        String getCacheKey();
+
+        /**
+         * The number of bytes of the queued cache artifact.
+         */
+        long getArchiveSize();
+
+    }
+
+    public interface Result {
+
+        /**
+         * The number of entries waiting to be stored, including this one.
+         */
+        int getQueueDepth();
+
+    }
+
+    private BuildCacheRemoteStoreQueueBuildOperationType() {
+    }
+}
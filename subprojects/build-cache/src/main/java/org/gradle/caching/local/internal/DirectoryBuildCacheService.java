@@ -17,6 +17,7 @@
 package org.gradle.caching.local.internal;
 
 import com.google.common.io.Closer;
+import com.google.common.util.concurrent.Striped;
 import org.gradle.api.Action;
 import org.gradle.api.UncheckedIOException;
 import org.gradle.cache.PersistentCache;
@@ -26,34 +27,58 @@
 import org.gradle.caching.BuildCacheKey;
 import org.gradle.caching.BuildCacheService;
 import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
 import org.gradle.internal.resource.local.FileAccessTracker;
 import org.gradle.internal.resource.local.LocallyAvailableResource;
 import org.gradle.internal.resource.local.PathKeyFileStore;
 import org.gradle.util.GFileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class DirectoryBuildCacheService implements LocalBuildCacheService, BuildCacheService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DirectoryBuildCacheService.class);
 
     private final PathKeyFileStore fileStore;
     private final PersistentCache persistentCache;
     private final BuildCacheTempFileStore tempFileStore;
     private final FileAccessTracker fileAccessTracker;
     private final String failedFileSuffix;
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    @Nullable
+    private final LeastRecentlyUsedEntryIndex entryIndex;
+    @Nullable
+    private final ManagedExecutor evictionExecutor;
+    private final AtomicBoolean evictionScheduled = new AtomicBoolean();
+    // Entries are only ever replaced by renaming a complete file into place, so operations on different keys don't need to exclude each other
+    private final Striped<ReadWriteLock> locks = Striped.readWriteLock(Runtime.getRuntime().availableProcessors() * 4);
 
     public DirectoryBuildCacheService(PathKeyFileStore fileStore, PersistentCache persistentCache, BuildCacheTempFileStore tempFileStore, FileAccessTracker fileAccessTracker, String failedFileSuffix) {
+        this(fileStore, persistentCache, tempFileStore, fileAccessTracker, failedFileSuffix, null, null);
+    }
+
+    /**
+     * Creates a cache that keeps itself below the maximum size of the given index, when present, by evicting the least recently used entries in the background.
+     */
+    DirectoryBuildCacheService(PathKeyFileStore fileStore, PersistentCache persistentCache, BuildCacheTempFileStore tempFileStore, FileAccessTracker fileAccessTracker, String failedFileSuffix,
+                               @Nullable LeastRecentlyUsedEntryIndex entryIndex, @Nullable ExecutorFactory executorFactory) {
         this.fileStore = fileStore;
         this.persistentCache = persistentCache;
         this.tempFileStore = tempFileStore;
         this.fileAccessTracker = fileAccessTracker;
         this.failedFileSuffix = failedFileSuffix;
+        this.entryIndex = entryIndex;
+        this.evictionExecutor = entryIndex != null && executorFactory != null
+            ? executorFactory.create("Build cache eviction")
+            : null;
     }
 
     private static class LoadAction implements Action<File> {
@@ -94,6 +119,7 @@ public void loadLocally(final BuildCacheKey key, final Action<? super File> read
         persistentCache.withFileLock(new Runnable() {
             @Override
             public void run() {
+                ReadWriteLock lock = locks.get(key.getHashCode());
                 lock.readLock().lock();
                 try {
                     loadInsideLock(key, reader);
@@ -112,6 +138,9 @@ private void loadInsideLock(BuildCacheKey key, Action<? super File> reader) {
 
         File file = resource.getFile();
         fileAccessTracker.markAccessed(file);
+        if (entryIndex != null) {
+            entryIndex.accessed(key.getHashCode(), file.length());
+        }
 
         try {
             reader.execute(file);
@@ -122,6 +151,9 @@ private void loadInsideLock(BuildCacheKey key, Action<? super File> reader) {
             GFileUtils.deleteQuietly(failedFile);
             //noinspection ResultOfMethodCallIgnored
             file.renameTo(failedFile);
+            if (entryIndex != null) {
+                entryIndex.removed(key.getHashCode());
+            }
 
             throw UncheckedException.throwAsUncheckedException(e);
         }
@@ -155,6 +187,7 @@ public void storeLocally(final BuildCacheKey key, final File file) {
         persistentCache.withFileLock(new Runnable() {
             @Override
             public void run() {
+                ReadWriteLock lock = locks.get(key.getHashCode());
                 lock.writeLock().lock();
                 try {
                     storeInsideLock(key, file);
@@ -163,11 +196,62 @@ public void run() {
                 }
             }
         });
+        if (evictionExecutor != null && entryIndex.isOverMaxSize() && evictionScheduled.compareAndSet(false, true)) {
+            evictionExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // Check again after finishing, in case a store pushed the cache over its size after the last eviction
+                    do {
+                        try {
+                            evictLeastRecentlyUsedEntries();
+                        } catch (Exception e) {
+                            LOGGER.warn("Could not remove least recently used entries from the build cache.", e);
+                        } finally {
+                            evictionScheduled.set(false);
+                        }
+                    } while (entryIndex.isOverMaxSize() && evictionScheduled.compareAndSet(false, true));
+                }
+            });
+        }
     }
 
     private void storeInsideLock(BuildCacheKey key, File file) {
         LocallyAvailableResource resource = fileStore.move(key.getHashCode(), file);
         fileAccessTracker.markAccessed(resource.getFile());
+        if (entryIndex != null) {
+            entryIndex.stored(key.getHashCode(), resource.getFile().length());
+        }
+    }
+
+    private void evictLeastRecentlyUsedEntries() {
+        final AtomicBoolean evicted = new AtomicBoolean(true);
+        while (evicted.get()) {
+            // Take the file lock for each entry so other processes using the cache aren't locked out for the whole eviction
+            persistentCache.withFileLock(new Runnable() {
+                @Override
+                public void run() {
+                    String key = entryIndex.nextEviction();
+                    evicted.set(key != null);
+                    if (key != null) {
+                        evict(key);
+                    }
+                }
+            });
+        }
+    }
+
+    private void evict(String key) {
+        ReadWriteLock lock = locks.get(key);
+        lock.writeLock().lock();
+        try {
+            LocallyAvailableResource resource = fileStore.get(key);
+            if (resource != null) {
+                GFileUtils.deleteQuietly(resource.getFile());
+            }
+            entryIndex.removed(key);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     @Override
@@ -182,6 +266,20 @@ public void run() {
 
     @Override
     public void close() {
-        persistentCache.close();
+        try {
+            if (evictionExecutor != null) {
+                evictionExecutor.stop();
+            }
+            if (entryIndex != null) {
+                persistentCache.withFileLock(new Runnable() {
+                    @Override
+                    public void run() {
+                        entryIndex.flush();
+                    }
+                });
+            }
+        } finally {
+            persistentCache.close();
+        }
     }
 }
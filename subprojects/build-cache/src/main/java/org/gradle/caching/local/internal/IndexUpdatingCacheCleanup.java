@@ -0,0 +1,82 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal;
+
+import org.gradle.cache.CleanableStore;
+import org.gradle.cache.CleanupProgressMonitor;
+import org.gradle.cache.FileLock;
+import org.gradle.cache.FileLockManager;
+import org.gradle.cache.internal.FilesFinder;
+import org.gradle.cache.internal.LeastRecentlyUsedCacheCleanup;
+import org.gradle.internal.file.FileAccessTimeJournal;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.gradle.cache.FileLockManager.LockMode.Exclusive;
+import static org.gradle.cache.internal.filelock.LockOptionsBuilder.mode;
+
+/**
+ * Deletes entries not accessed within the specified number of days and records their removal in the entry index,
+ * so the index does not count them towards the size of the cache.
+ * <p>
+ * The cleanup runs after the cache has released its file lock, so the lock is acquired again to write the removals to the journal.
+ */
+class IndexUpdatingCacheCleanup extends LeastRecentlyUsedCacheCleanup {
+    private final LeastRecentlyUsedEntryIndex entryIndex;
+    private final FileLockManager fileLockManager;
+    private final File cacheDir;
+    private final List<String> deletedEntries = new ArrayList<String>();
+
+    IndexUpdatingCacheCleanup(FilesFinder eligibleFilesFinder, FileAccessTimeJournal journal, long numberOfDays,
+                              LeastRecentlyUsedEntryIndex entryIndex, FileLockManager fileLockManager, File cacheDir) {
+        super(eligibleFilesFinder, journal, numberOfDays);
+        this.entryIndex = entryIndex;
+        this.fileLockManager = fileLockManager;
+        this.cacheDir = cacheDir;
+    }
+
+    @Override
+    public void clean(CleanableStore cleanableStore, CleanupProgressMonitor progressMonitor) {
+        super.clean(cleanableStore, progressMonitor);
+        if (deletedEntries.isEmpty()) {
+            return;
+        }
+        FileLock lock = fileLockManager.lock(cacheDir, mode(Exclusive), cleanableStore.getDisplayName());
+        try {
+            for (String key : deletedEntries) {
+                entryIndex.removed(key);
+            }
+            entryIndex.flush();
+        } finally {
+            lock.close();
+            deletedEntries.clear();
+        }
+    }
+
+    @Override
+    protected boolean shouldDelete(File file) {
+        return !LeastRecentlyUsedEntryIndex.isJournalFile(file) && super.shouldDelete(file);
+    }
+
+    @Override
+    protected void handleDeletion(File file) {
+        super.handleDeletion(file);
+        deletedEntries.add(file.getName());
+    }
+}
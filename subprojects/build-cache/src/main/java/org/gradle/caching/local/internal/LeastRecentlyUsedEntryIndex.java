@@ -0,0 +1,328 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.caching.local.internal;
+
+import org.gradle.api.UncheckedIOException;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UTFDataFormatException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps track of the size of the entries in a directory build cache and of the order in which they were last used,
+ * so the cache can be kept below a maximum size without walking the cache directory.
+ *
+ * <p>The index is persisted as an append-only journal in the cache directory. Recording a store, use or removal only updates
+ * the index in memory and buffers the record, the buffered records are appended to the journal by {@link #flush()}. Each
+ * process sharing the cache directory replays the records the other processes appended since it last looked at the journal,
+ * so all methods must be called while holding the cache's file lock. Once the journal contains many more records than there
+ * are entries, it is rewritten with a new generation, which tells the other processes to read it again from the start.</p>
+ */
+class LeastRecentlyUsedEntryIndex {
+    static final String JOURNAL_FILE_NAME = "entries.journal";
+
+    private static final Pattern ENTRY_FILE_NAME = Pattern.compile("[0-9a-f]+");
+    private static final int MAGIC = 0x47424331;
+    private static final int HEADER_SIZE = 12;
+    private static final int MIN_RECORDS_TO_COMPACT = 1000;
+    private static final byte STORED = 1;
+    private static final byte ACCESSED = 2;
+    private static final byte REMOVED = 3;
+    private static final Random RANDOM = new Random();
+
+    private final File cacheDir;
+    private final File journalFile;
+    private final long maxSize;
+    private final long targetSize;
+    // Least recently used first
+    private final Map<String, Long> entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    // Records that have been applied to the entries, but not appended to the journal yet
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final DataOutputStream pendingOutput = new DataOutputStream(pending);
+    private long totalSize;
+    private long generation;
+    private long offset;
+    private int records;
+
+    /**
+     * @param maxSize the size above which entries should be evicted. Eviction removes entries until the cache is 10% below this size again.
+     */
+    LeastRecentlyUsedEntryIndex(File cacheDir, long maxSize) {
+        this.cacheDir = cacheDir;
+        this.journalFile = new File(cacheDir, JOURNAL_FILE_NAME);
+        this.maxSize = maxSize;
+        this.targetSize = maxSize - maxSize / 10;
+    }
+
+    static boolean isJournalFile(File file) {
+        return file.getName().startsWith(JOURNAL_FILE_NAME);
+    }
+
+    synchronized void stored(String key, long size) {
+        record(STORED, key, size);
+    }
+
+    /**
+     * Records a use of the given entry. Entries that are not in the index yet, e.g. because they were stored by an older Gradle version, are added.
+     */
+    synchronized void accessed(String key, long size) {
+        record(ACCESSED, key, size);
+    }
+
+    synchronized void removed(String key) {
+        record(REMOVED, key, 0);
+    }
+
+    /**
+     * Returns whether entries need to be evicted, as far as this process knows.
+     */
+    synchronized boolean isOverMaxSize() {
+        return totalSize > maxSize;
+    }
+
+    /**
+     * Returns the least recently used entry when the cache is above its target size, or {@code null} when no more entries need to be evicted.
+     */
+    @Nullable
+    synchronized String nextEviction() {
+        flush();
+        if (totalSize <= targetSize || entries.isEmpty()) {
+            return null;
+        }
+        return entries.keySet().iterator().next();
+    }
+
+    /**
+     * Appends the buffered records to the journal, after reading the records other processes appended in the meantime.
+     * The records stay buffered when they cannot be written, so they are written by the next flush.
+     */
+    synchronized void flush() {
+        try {
+            RandomAccessFile journal = openJournal();
+            try {
+                if (pending.size() > 0) {
+                    journal.seek(offset);
+                    journal.write(pending.toByteArray());
+                    offset += pending.size();
+                    pending.reset();
+                }
+            } finally {
+                journal.close();
+            }
+            if (records > MIN_RECORDS_TO_COMPACT && records > 2 * entries.size()) {
+                rewriteJournal();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void record(byte type, String key, long size) {
+        try {
+            if (offset == 0) {
+                // Read the journal once, so this process knows the size of the cache before it appends anything
+                openJournal().close();
+            }
+            writeRecord(pendingOutput, type, key, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        apply(type, key, size);
+    }
+
+    private RandomAccessFile openJournal() throws IOException {
+        RandomAccessFile journal = new RandomAccessFile(journalFile, "rw");
+        try {
+            if (catchUp(journal)) {
+                return journal;
+            }
+        } catch (IOException e) {
+            journal.close();
+            throw e;
+        }
+        journal.close();
+        rebuildFromCacheDirectory();
+        journal = new RandomAccessFile(journalFile, "rw");
+        catchUp(journal);
+        return journal;
+    }
+
+    /**
+     * Reads the records appended to the journal since this process last read it. Returns {@code false} when the journal is missing or corrupt.
+     */
+    private boolean catchUp(RandomAccessFile journal) throws IOException {
+        long length = journal.length();
+        if (length < HEADER_SIZE) {
+            return false;
+        }
+        journal.seek(0);
+        if (journal.readInt() != MAGIC) {
+            return false;
+        }
+        long journalGeneration = journal.readLong();
+        boolean reset = offset == 0 || journalGeneration != generation || length < offset;
+        if (reset) {
+            entries.clear();
+            totalSize = 0;
+            records = 0;
+            offset = HEADER_SIZE;
+            generation = journalGeneration;
+        }
+        long previousOffset = offset;
+        if (!replay(journal, length)) {
+            return false;
+        }
+        if (reset || offset != previousOffset) {
+            // The buffered records are more recent than the records read from the journal
+            replayPending();
+        }
+        return true;
+    }
+
+    private boolean replay(RandomAccessFile journal, long length) throws IOException {
+        if (length == offset) {
+            return true;
+        }
+
+        byte[] appended = new byte[(int) (length - offset)];
+        journal.seek(offset);
+        journal.readFully(appended);
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(appended));
+        int read = 0;
+        try {
+            while (read < appended.length) {
+                byte type = input.readByte();
+                if (type < STORED || type > REMOVED) {
+                    return false;
+                }
+                String key = input.readUTF();
+                long size = input.readLong();
+                apply(type, key, size);
+                read = appended.length - input.available();
+            }
+        } catch (EOFException e) {
+            // A process stopped while appending a record, drop the incomplete record
+            journal.setLength(offset + read);
+        } catch (UTFDataFormatException e) {
+            return false;
+        }
+        offset += read;
+        return true;
+    }
+
+    private void replayPending() throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(pending.toByteArray()));
+        while (input.available() > 0) {
+            apply(input.readByte(), input.readUTF(), input.readLong());
+        }
+    }
+
+    private void apply(byte type, String key, long size) {
+        records++;
+        switch (type) {
+            case STORED:
+                add(key, size);
+                break;
+            case ACCESSED:
+                if (entries.get(key) == null) {
+                    add(key, size);
+                }
+                break;
+            case REMOVED:
+                Long previousSize = entries.remove(key);
+                if (previousSize != null) {
+                    totalSize -= previousSize;
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown record type " + type + " in " + journalFile);
+        }
+    }
+
+    private void add(String key, long size) {
+        Long previousSize = entries.put(key, size);
+        totalSize += previousSize == null ? size : size - previousSize;
+    }
+
+    /**
+     * Creates the index for an existing cache directory, ordering the entries by their modification time.
+     */
+    private void rebuildFromCacheDirectory() throws IOException {
+        entries.clear();
+        totalSize = 0;
+        File[] files = cacheDir.listFiles();
+        if (files != null) {
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(File o1, File o2) {
+                    return Long.compare(o1.lastModified(), o2.lastModified());
+                }
+            });
+            for (File file : files) {
+                if (file.isFile() && ENTRY_FILE_NAME.matcher(file.getName()).matches()) {
+                    add(file.getName(), file.length());
+                }
+            }
+        }
+        replayPending();
+        rewriteJournal();
+    }
+
+    private void rewriteJournal() throws IOException {
+        long newGeneration = RANDOM.nextLong();
+        File tempFile = new File(cacheDir, JOURNAL_FILE_NAME + ".tmp");
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(tempFile));
+        try {
+            output.writeInt(MAGIC);
+            output.writeLong(newGeneration);
+            for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                writeRecord(output, STORED, entry.getKey(), entry.getValue());
+            }
+        } finally {
+            output.close();
+        }
+        if (!tempFile.renameTo(journalFile)) {
+            if (!journalFile.delete() || !tempFile.renameTo(journalFile)) {
+                throw new IOException("Could not replace " + journalFile);
+            }
+        }
+        generation = newGeneration;
+        offset = journalFile.length();
+        records = entries.size();
+        // The rewritten journal contains the buffered records as well
+        pending.reset();
+    }
+
+    private static void writeRecord(DataOutputStream output, byte type, String key, long size) throws IOException {
+        output.writeByte(type);
+        output.writeUTF(key);
+        output.writeLong(size);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.chunking
+
+import spock.lang.Specification
+
+class ContentDefinedChunkerTest extends Specification {
+    def chunker = new ContentDefinedChunker(1024, 1024, 8192)
+
+    def "chunks are within size limits"() {
+        def data = content(100000)
+
+        expect:
+        def chunks = chunks(data)
+        chunks.sum() == data.length
+        chunks.init().every { it >= 1024 && it <= 8192 }
+    }
+
+    def "does not find boundary before maximum size in data that is too short"() {
+        def data = new byte[8192]
+
+        expect:
+        chunker.findBoundary(data, 0, 1000) == -1
+        // Constant data has no boundaries
+        chunker.findBoundary(data, 0, 8000) == -1
+        chunker.findBoundary(data, 0, 8192) == 8192
+    }
+
+    def "boundaries after an insertion stay the same"() {
+        def data = content(100000)
+        def modified = new byte[data.length + 10]
+        System.arraycopy(data, 0, modified, 10, data.length)
+
+        when:
+        def original = chunks(data)
+        def shifted = chunks(modified)
+
+        then:
+        original.size() > 10
+        original.subList(2, original.size()) == shifted.subList(shifted.size() - original.size() + 2, shifted.size())
+    }
+
+    private List<Integer> chunks(byte[] data) {
+        def chunks = []
+        int offset = 0
+        while (offset < data.length) {
+            int length = chunker.findBoundary(data, offset, data.length - offset)
+            if (length < 0) {
+                length = data.length - offset
+            }
+            chunks << length
+            offset += length
+        }
+        return chunks
+    }
+
+    private static byte[] content(int size) {
+        def data = new byte[size]
+        new Random(1234L).nextBytes(data)
+        return data
+    }
+}
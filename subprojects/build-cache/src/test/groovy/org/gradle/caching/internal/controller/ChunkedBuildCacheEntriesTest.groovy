@@ -0,0 +1,301 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller
+
+import org.gradle.api.Action
+import org.gradle.api.GradleException
+import org.gradle.caching.BuildCacheEntryReader
+import org.gradle.caching.BuildCacheEntryWriter
+import org.gradle.caching.BuildCacheKey
+import org.gradle.caching.BuildCacheService
+import org.gradle.caching.internal.controller.service.BuildCacheServicesConfiguration
+import org.gradle.caching.local.internal.DefaultBuildCacheTempFileStore
+import org.gradle.caching.local.internal.LocalBuildCacheService
+import org.gradle.internal.operations.TestBuildOperationExecutor
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class ChunkedBuildCacheEntriesTest extends Specification {
+    @Rule
+    final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+
+    def local = new InMemoryLocalService(tmpDir.createDir("tmp"))
+    def remote = new InMemoryRemoteService()
+    def operations = new TestBuildOperationExecutor()
+
+    def "stores entry as chunks and loads it back"() {
+        def content = content(3 * 1024 * 1024, 1)
+        def controller = controller(true)
+
+        when:
+        controller.store(storeCommand("entry", content))
+
+        then:
+        local.entries["entry"].length < 1024
+        remote.entries["entry"] == local.entries["entry"]
+        local.entries.size() > 3
+        remote.entries.keySet() == local.entries.keySet()
+
+        when:
+        def loaded = load(controller, "entry")
+
+        then:
+        loaded == content
+    }
+
+    def "stores chunks shared with other entries only once"() {
+        def content = content(3 * 1024 * 1024, 1)
+        def modified = new byte[content.length + 100]
+        System.arraycopy(content, 0, modified, 100, content.length)
+        def controller = controller(true)
+
+        when:
+        controller.store(storeCommand("first", content))
+        def chunksOfFirst = remote.entries.size() - 1
+        remote.stored.clear()
+        controller.store(storeCommand("second", modified))
+
+        then:
+        // The manifest and the chunk that contains the modification
+        remote.stored.size() <= 3
+        remote.stored.size() < chunksOfFirst
+        load(controller, "second") == modified
+        load(controller, "first") == content
+    }
+
+    def "stores chunks found in the local cache in the remote cache when they are missing there"() {
+        def content = content(3 * 1024 * 1024, 6)
+        def modified = new byte[content.length + 100]
+        System.arraycopy(content, 0, modified, 100, content.length)
+        controller(true).store(storeCommand("first", content))
+        // The remote cache evicted everything, while the local cache still has the chunks
+        remote.entries.clear()
+
+        when:
+        controller(true).store(storeCommand("second", modified))
+        local.entries.clear()
+
+        then:
+        remote.entries.containsKey("second")
+        load(controller(true), "second") == modified
+    }
+
+    def "does not store manifest in the remote cache when a chunk could not be stored there"() {
+        def content = content(3 * 1024 * 1024, 7)
+        def chunkStores = 0
+        remote.beforeStore = { BuildCacheKey key ->
+            if (++chunkStores == 2) {
+                throw new IOException("Broken pipe")
+            }
+        }
+
+        when:
+        controller(true).store(storeCommand("entry", content))
+
+        then:
+        !remote.entries.containsKey("entry")
+        local.entries.containsKey("entry")
+        load(controller(true), "entry") == content
+    }
+
+    def "loads chunked entry from remote and stores chunks locally"() {
+        def content = content(2 * 1024 * 1024, 2)
+        controller(true).store(storeCommand("entry", content))
+        local.entries.clear()
+
+        when:
+        def loaded = load(controller(false), "entry")
+
+        then:
+        loaded == content
+        local.entries.keySet() == remote.entries.keySet()
+    }
+
+    def "loads entries that are not chunked"() {
+        def content = content(1024, 3)
+        def controller = controller(false)
+
+        when:
+        controller.store(storeCommand("entry", content))
+
+        then:
+        local.entries["entry"] == content
+
+        when:
+        def loaded = load(controller(true), "entry")
+
+        then:
+        loaded == content
+    }
+
+    def "missing chunk is a cache miss"() {
+        def content = content(2 * 1024 * 1024, 4)
+        def controller = controller(true)
+        controller.store(storeCommand("entry", content))
+        def chunk = local.entries.keySet().find { it != "entry" }
+        local.entries.remove(chunk)
+        remote.entries.remove(chunk)
+
+        expect:
+        load(controller, "entry") == null
+    }
+
+    def "corrupt chunk makes entry invalid"() {
+        def content = content(2 * 1024 * 1024, 5)
+        def controller = controller(true)
+        controller.store(storeCommand("entry", content))
+        def chunk = local.entries.keySet().find { it != "entry" }
+        def bytes = local.entries[chunk]
+        bytes[0] = (byte) (bytes[0] ^ 1)
+
+        when:
+        load(controller, "entry")
+
+        then:
+        def e = thrown(GradleException)
+        e.message == "Build cache entry entry from local build cache is invalid"
+        e.cause.message == "Build cache chunk ${chunk} is corrupt"
+    }
+
+    private DefaultBuildCacheController controller(boolean storeChunked) {
+        new DefaultBuildCacheController(
+            new BuildCacheServicesConfiguration(local, true, remote, true),
+            operations,
+            tmpDir.file("dir"),
+            false,
+            false,
+            storeChunked
+        )
+    }
+
+    private byte[] load(BuildCacheController controller, String hashCode) {
+        byte[] loaded = null
+        def command = Stub(BuildCacheLoadCommand) {
+            getKey() >> key(hashCode)
+            load(_ as InputStream) >> { InputStream input ->
+                loaded = input.bytes
+                input.close()
+                Stub(BuildCacheLoadCommand.Result) {
+                    getMetadata() >> "metadata"
+                }
+            }
+        }
+        controller.load(command)
+        return loaded
+    }
+
+    private BuildCacheStoreCommand storeCommand(String hashCode, byte[] content) {
+        Stub(BuildCacheStoreCommand) {
+            getKey() >> key(hashCode)
+            store(_ as OutputStream) >> { OutputStream output ->
+                output.write(content)
+                output.close()
+                Stub(BuildCacheStoreCommand.Result)
+            }
+        }
+    }
+
+    private static BuildCacheKey key(String hashCode) {
+        new BuildCacheKey() {
+            @Override
+            String getHashCode() {
+                return hashCode
+            }
+
+            @Override
+            byte[] toByteArray() {
+                return hashCode.bytes
+            }
+
+            @Override
+            String getDisplayName() {
+                return hashCode
+            }
+        }
+    }
+
+    private static byte[] content(int size, long seed) {
+        def random = new Random(seed)
+        def data = new byte[size]
+        random.nextBytes(data)
+        return data
+    }
+
+    private static class InMemoryLocalService implements LocalBuildCacheService {
+        final Map<String, byte[]> entries = [:]
+        final DefaultBuildCacheTempFileStore tempFileStore
+
+        InMemoryLocalService(File tmpDir) {
+            tempFileStore = new DefaultBuildCacheTempFileStore(tmpDir)
+        }
+
+        @Override
+        void loadLocally(BuildCacheKey key, Action<? super File> reader) {
+            def content = entries[key.hashCode]
+            if (content != null) {
+                tempFileStore.withTempFile(key) { File file ->
+                    file.bytes = content
+                    reader.execute(file)
+                }
+            }
+        }
+
+        @Override
+        void storeLocally(BuildCacheKey key, File file) {
+            entries[key.hashCode] = file.bytes
+        }
+
+        @Override
+        void withTempFile(BuildCacheKey key, Action<? super File> action) {
+            tempFileStore.withTempFile(key, action)
+        }
+
+        @Override
+        void close() {
+        }
+    }
+
+    private static class InMemoryRemoteService implements BuildCacheService {
+        final Map<String, byte[]> entries = [:]
+        final List<String> stored = []
+        Closure beforeStore = {}
+
+        @Override
+        boolean load(BuildCacheKey key, BuildCacheEntryReader reader) {
+            def content = entries[key.hashCode]
+            if (content == null) {
+                return false
+            }
+            reader.readFrom(new ByteArrayInputStream(content))
+            return true
+        }
+
+        @Override
+        void store(BuildCacheKey key, BuildCacheEntryWriter writer) {
+            beforeStore(key)
+            def output = new ByteArrayOutputStream()
+            writer.writeTo(output)
+            entries[key.hashCode] = output.toByteArray()
+            stored << key.hashCode
+        }
+
+        @Override
+        void close() {
+        }
+    }
+}
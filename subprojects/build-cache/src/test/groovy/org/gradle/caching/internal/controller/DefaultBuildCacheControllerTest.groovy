@@ -17,12 +17,16 @@
 package org.gradle.caching.internal.controller
 
 import org.gradle.api.Action
+import org.gradle.api.GradleException
 import org.gradle.caching.BuildCacheEntryReader
 import org.gradle.caching.BuildCacheEntryWriter
 import org.gradle.caching.BuildCacheKey
 import org.gradle.caching.BuildCacheService
 import org.gradle.caching.internal.controller.service.BuildCacheServicesConfiguration
+import org.gradle.caching.internal.operations.BuildCacheRemoteStoreDrainBuildOperationType
+import org.gradle.caching.internal.operations.BuildCacheRemoteStoreQueueBuildOperationType
 import org.gradle.caching.local.internal.LocalBuildCacheService
+import org.gradle.internal.concurrent.DefaultExecutorFactory
 import org.gradle.internal.operations.TestBuildOperationExecutor
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
 import spock.lang.Specification
@@ -77,12 +81,17 @@ class DefaultBuildCacheControllerTest extends Specification {
     }
 
     def operations = new TestBuildOperationExecutor()
+    def executorFactory = new DefaultExecutorFactory()
 
     @Rule
     final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
 
     interface Local extends BuildCacheService, LocalBuildCacheService {}
 
+    def cleanup() {
+        executorFactory.stop()
+    }
+
     BuildCacheController getController() {
         new DefaultBuildCacheController(
             new BuildCacheServicesConfiguration(
@@ -98,6 +107,44 @@ class DefaultBuildCacheControllerTest extends Specification {
         )
     }
 
+    BuildCacheController getAsyncStoringController() {
+        new DefaultBuildCacheController(
+            new BuildCacheServicesConfiguration(
+                local,
+                localPush,
+                remote,
+                remotePush
+            ),
+            operations,
+            tmpDir.file("dir"),
+            false,
+            false,
+            false,
+            true,
+            false,
+            executorFactory
+        )
+    }
+
+    BuildCacheController getStreamingController() {
+        new DefaultBuildCacheController(
+            new BuildCacheServicesConfiguration(
+                local,
+                localPush,
+                remote,
+                remotePush
+            ),
+            operations,
+            tmpDir.file("dir"),
+            false,
+            false,
+            false,
+            false,
+            true,
+            null
+        )
+    }
+
     def "does suppress exceptions from load"() {
         given:
         1 * remote.load(key, _) >> { throw new RuntimeException() }
@@ -239,6 +286,139 @@ class DefaultBuildCacheControllerTest extends Specification {
         0 * remote.store(key, _)
     }
 
+    def "stores in remote cache in the background and waits for queued stores when closed"() {
+        given:
+        def controller = getAsyncStoringController()
+
+        when:
+        controller.store(storeCommand)
+        controller.close()
+
+        then:
+        1 * local.storeLocally(key, _)
+        1 * remote.store(key, _) >> { BuildCacheKey key, BuildCacheEntryWriter writer ->
+            writer.writeTo(new ByteArrayOutputStream())
+        }
+        1 * remote.close()
+
+        and:
+        operations.log.mostRecentResult(BuildCacheRemoteStoreQueueBuildOperationType).queueDepth == 1
+        def drained = operations.log.mostRecentResult(BuildCacheRemoteStoreDrainBuildOperationType)
+        drained.storedCount == 1
+        drained.failedCount == 0
+        drained.maxQueueDepth == 1
+    }
+
+    def "retries background stores before disabling the remote cache"() {
+        given:
+        def controller = getAsyncStoringController()
+
+        when:
+        controller.store(storeCommand)
+        controller.close()
+
+        then:
+        2 * remote.store(key, _) >> { throw new RuntimeException("first") } >> { BuildCacheKey key, BuildCacheEntryWriter writer ->
+            writer.writeTo(new ByteArrayOutputStream())
+        }
+
+        and:
+        def drained = operations.log.mostRecentResult(BuildCacheRemoteStoreDrainBuildOperationType)
+        drained.storedCount == 1
+        drained.failedCount == 0
+    }
+
+    def "unpacks remote entry while loading it and stores a copy locally"() {
+        given:
+        String unpacked = null
+        def streamingLoadCommand = Stub(BuildCacheLoadCommand) {
+            getKey() >> key
+            load(_ as InputStream) >> { InputStream input ->
+                def bytes = new byte[2]
+                input.read(bytes)
+                unpacked = new String(bytes)
+                input.close()
+                Stub(BuildCacheLoadCommand.Result) {
+                    getMetadata() >> loadmetadata
+                }
+            }
+        }
+        1 * local.loadLocally(key, _) // miss
+        1 * remote.load(key, _) >> { BuildCacheKey key, BuildCacheEntryReader reader ->
+            reader.readFrom(new ByteArrayInputStream("foo".bytes))
+            true
+        }
+
+        when:
+        def result = streamingController.load(streamingLoadCommand)
+
+        then:
+        result.get() == loadmetadata
+        unpacked == "fo"
+        1 * local.storeLocally(key, _) >> { BuildCacheKey key, File file ->
+            assert file.text == "foo"
+        }
+    }
+
+    def "fails load when unpacking a remote entry while loading it fails"() {
+        given:
+        def failure = new IOException("Connection reset")
+        def streamingLoadCommand = Stub(BuildCacheLoadCommand) {
+            getKey() >> key
+            load(_ as InputStream) >> { InputStream input ->
+                input.read()
+                throw failure
+            }
+        }
+        1 * local.loadLocally(key, _) // miss
+        1 * remote.load(key, _) >> { BuildCacheKey key, BuildCacheEntryReader reader ->
+            reader.readFrom(new ByteArrayInputStream("foo".bytes))
+            true
+        }
+
+        when:
+        streamingController.load(streamingLoadCommand)
+
+        then:
+        def e = thrown(GradleException)
+        e.message == "Build cache entry key from remote build cache is invalid"
+        e.cause.cause == failure
+        0 * local.storeLocally(key, _)
+    }
+
+    def "treats interrupted download of a remote entry that is unpacked while loading it as a miss"() {
+        given:
+        def streamingLoadCommand = Stub(BuildCacheLoadCommand) {
+            getKey() >> key
+            load(_ as InputStream) >> { InputStream input ->
+                while (input.read() != -1) {
+                }
+                Stub(BuildCacheLoadCommand.Result) {
+                    getMetadata() >> loadmetadata
+                }
+            }
+        }
+        def truncatedInput = new SequenceInputStream(new ByteArrayInputStream("fo".bytes), new InputStream() {
+            @Override
+            int read() throws IOException {
+                throw new IOException("Premature end of Content-Length delimited message body")
+            }
+        })
+        1 * local.loadLocally(key, _) // miss
+        1 * remote.load(key, _) >> { BuildCacheKey key, BuildCacheEntryReader reader ->
+            reader.readFrom(truncatedInput)
+            true
+        }
+
+        when:
+        def result = streamingController.load(streamingLoadCommand)
+
+        then:
+        noExceptionThrown()
+        !result.present
+        0 * local.storeLocally(key, _)
+    }
+
     def "close only closes once"() {
         when:
         def controller = getController()
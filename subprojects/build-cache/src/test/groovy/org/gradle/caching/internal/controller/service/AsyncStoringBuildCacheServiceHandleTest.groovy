@@ -0,0 +1,101 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller.service
+
+import org.gradle.caching.BuildCacheKey
+import org.gradle.caching.internal.operations.BuildCacheRemoteStoreDrainBuildOperationType
+import org.gradle.internal.concurrent.ExecutorFactory
+import org.gradle.internal.concurrent.ManagedExecutor
+import org.gradle.internal.operations.TestBuildOperationExecutor
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+import spock.lang.Timeout
+
+import java.util.concurrent.RejectedExecutionException
+
+class AsyncStoringBuildCacheServiceHandleTest extends Specification {
+
+    @Rule
+    final TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider()
+
+    def key = Mock(BuildCacheKey) {
+        getHashCode() >> "key"
+        getDisplayName() >> "key"
+    }
+    def delegate = Mock(BuildCacheServiceHandle) {
+        canStore() >> true
+    }
+    def executor = Mock(ManagedExecutor)
+    def executorFactory = Mock(ExecutorFactory) {
+        create(_ as String, _ as int) >> executor
+    }
+    def operations = new TestBuildOperationExecutor()
+    def spoolDir = temporaryFolder.file("spool")
+    def handle = new AsyncStoringBuildCacheServiceHandle(delegate, operations, executorFactory, spoolDir, 1, 1)
+
+    @Timeout(10)
+    def "releases queue slot when the entry cannot be handed to the executor"() {
+        given:
+        def entry = temporaryFolder.file("entry") << "entry"
+
+        when:
+        handle.store(key, new StoreTarget(entry))
+
+        then:
+        thrown RejectedExecutionException
+        1 * executor.execute(_) >> { throw new RejectedExecutionException() }
+        spoolDir.list().length == 0
+
+        when:
+        handle.store(key, new StoreTarget(entry))
+
+        then:
+        1 * executor.execute(_) >> { Runnable runnable -> runnable.run() }
+        1 * delegate.store(key, _)
+
+        when:
+        handle.close()
+
+        then:
+        operations.log.mostRecentDetails(BuildCacheRemoteStoreDrainBuildOperationType).queueDepth == 0
+        1 * delegate.close()
+    }
+
+    @Timeout(10)
+    def "stores entry directly when it cannot be spooled"() {
+        given:
+        def entry = temporaryFolder.file("entry") << "entry"
+        spoolDir << "not a directory"
+        def stored = new ByteArrayOutputStream()
+
+        when:
+        handle.store(key, new StoreTarget(entry))
+
+        then:
+        noExceptionThrown()
+        0 * executor.execute(_)
+        1 * delegate.store(key, _) >> { BuildCacheKey storedKey, StoreTarget target -> target.writeTo(stored) }
+        stored.toString() == "entry"
+
+        when:
+        handle.store(key, new StoreTarget(entry))
+
+        then:
+        1 * delegate.store(key, _)
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller.service
+
+import org.gradle.caching.BuildCacheException
+import org.gradle.caching.BuildCacheKey
+import org.gradle.caching.BuildCacheService
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class BaseBuildCacheServiceHandleTest extends Specification {
+
+    @Rule
+    final TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider()
+
+    def key = Mock(BuildCacheKey) {
+        getDisplayName() >> "key"
+    }
+    def service = Mock(BuildCacheService)
+    def handle = new BaseBuildCacheServiceHandle(service, true, BuildCacheServiceRole.REMOTE, false, 3)
+
+    def "retries storing entry after transient I/O failures"() {
+        given:
+        def entry = temporaryFolder.file("entry") << "entry"
+
+        when:
+        handle.store(key, new StoreTarget(entry))
+
+        then:
+        2 * service.store(key, _) >> { throw new BuildCacheException("Connection reset", new IOException("Connection reset")) }
+
+        then:
+        1 * service.store(key, _)
+        handle.canStore()
+    }
+
+    def "does not retry storing entry when the service rejects it"() {
+        given:
+        def entry = temporaryFolder.file("entry") << "entry"
+
+        when:
+        handle.store(key, new StoreTarget(entry))
+
+        then:
+        1 * service.store(key, _) >> { throw new BuildCacheException("Storing entry at 'http://cache/key' response status 413: Payload Too Large") }
+        0 * service.store(_, _)
+        !handle.canStore()
+    }
+
+    def "gives up on the service after the last attempt"() {
+        given:
+        def entry = temporaryFolder.file("entry") << "entry"
+
+        when:
+        handle.store(key, new StoreTarget(entry))
+
+        then:
+        3 * service.store(key, _) >> { throw new BuildCacheException("Connection reset", new IOException("Connection reset")) }
+        !handle.canStore()
+    }
+}
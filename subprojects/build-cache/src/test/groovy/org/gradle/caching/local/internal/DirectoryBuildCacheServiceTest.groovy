@@ -20,6 +20,7 @@ import org.gradle.cache.PersistentCache
 import org.gradle.caching.BuildCacheEntryReader
 import org.gradle.caching.BuildCacheEntryWriter
 import org.gradle.caching.BuildCacheKey
+import org.gradle.internal.concurrent.DefaultExecutorFactory
 import org.gradle.internal.resource.local.DefaultPathKeyFileStore
 import org.gradle.internal.resource.local.FileAccessTracker
 import org.gradle.test.fixtures.file.CleanupTestDirectory
@@ -28,6 +29,9 @@ import org.gradle.util.UsesNativeServices
 import org.junit.Rule
 import spock.lang.Specification
 
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
 @UsesNativeServices
 @CleanupTestDirectory
 class DirectoryBuildCacheServiceTest extends Specification {
@@ -132,4 +136,66 @@ class DirectoryBuildCacheServiceTest extends Specification {
         1 * fileAccessTracker.markAccessed(cachedFile)
         loaded
     }
+
+    def "stores and loads of different keys do not block each other"() {
+        def otherHashCode = (1..100).collect { "abcd$it".toString() }.find { !service.locks.get(it).is(service.locks.get(hashCode)) }
+        def otherKey = Mock(BuildCacheKey) {
+            getHashCode() >> otherHashCode
+        }
+        def otherFile = temporaryFolder.createFile("other")
+        otherFile.text = "other"
+        service.storeLocally(otherKey, otherFile)
+        def originalFile = temporaryFolder.createFile("foo")
+        originalFile.text = "bar"
+        def storing = new CountDownLatch(1)
+        def otherKeyUsed = new CountDownLatch(2)
+        def waitedForOtherKey = false
+
+        when:
+        def storeThread = Thread.start {
+            service.storeLocally(key, originalFile)
+        }
+        assert storing.await(10, TimeUnit.SECONDS)
+        service.loadLocally(otherKey, { file -> assert file.text == "other" })
+        def newFile = temporaryFolder.createFile("new")
+        newFile.text = "new"
+        service.storeLocally(otherKey, newFile)
+        storeThread.join()
+
+        then:
+        waitedForOtherKey
+        fileAccessTracker.markAccessed(_) >> { File file ->
+            if (file.name == hashCode) {
+                storing.countDown()
+                waitedForOtherKey = otherKeyUsed.await(10, TimeUnit.SECONDS)
+            } else {
+                otherKeyUsed.countDown()
+            }
+        }
+    }
+
+    def "evicts least recently used entries when the cache grows beyond its maximum size"() {
+        def entryIndex = new LeastRecentlyUsedEntryIndex(cacheDir, 1000)
+        def service = new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, fileAccessTracker, ".failed", entryIndex, new DefaultExecutorFactory())
+        def keys = (10..29).collect { index ->
+            Mock(BuildCacheKey) {
+                getHashCode() >> "abcd$index".toString()
+            }
+        }
+
+        when:
+        keys.eachWithIndex { entryKey, index ->
+            def file = temporaryFolder.createFile("entry-$index")
+            file.bytes = new byte[100]
+            service.storeLocally(entryKey, file)
+            service.loadLocally(keys[0], {})
+        }
+        service.close()
+
+        then:
+        def entries = cacheDir.listFiles().findAll { it.name.startsWith("abcd") }
+        entries.sum { it.length() } <= 1000
+        entries.contains(cacheDir.file("abcd10"))
+        !entries.contains(cacheDir.file("abcd11"))
+    }
 }
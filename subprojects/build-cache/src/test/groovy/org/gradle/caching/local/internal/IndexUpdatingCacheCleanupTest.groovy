@@ -0,0 +1,75 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal
+
+import org.gradle.cache.CleanableStore
+import org.gradle.cache.CleanupProgressMonitor
+import org.gradle.cache.FileLock
+import org.gradle.cache.FileLockManager
+import org.gradle.cache.internal.SingleDepthFilesFinder
+import org.gradle.internal.file.FileAccessTimeJournal
+import org.gradle.test.fixtures.file.CleanupTestDirectory
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+@CleanupTestDirectory
+class IndexUpdatingCacheCleanupTest extends Specification {
+    @Rule TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider()
+    def cacheDir = temporaryFolder.createDir("cache")
+    def journal = cacheDir.file(LeastRecentlyUsedEntryIndex.JOURNAL_FILE_NAME)
+    def cleanableStore = Stub(CleanableStore) {
+        getBaseDir() >> cacheDir
+        getDisplayName() >> "cache"
+    }
+    def fileAccessTimeJournal = Stub(FileAccessTimeJournal) {
+        getLastAccessTime(_) >> { File file -> file.lastModified() }
+    }
+    def fileLockManager = Mock(FileLockManager)
+    def index = new LeastRecentlyUsedEntryIndex(cacheDir, 100)
+    def cleanup = new IndexUpdatingCacheCleanup(new SingleDepthFilesFinder(1), fileAccessTimeJournal, 1, index, fileLockManager, cacheDir)
+
+    def "records removal of deleted entries in the index"() {
+        given:
+        def fiveDaysAgo = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(5)
+        def unused = cacheDir.file("0a")
+        unused.bytes = new byte[60]
+        unused.lastModified = fiveDaysAgo
+        def used = cacheDir.file("0b")
+        used.bytes = new byte[60]
+        index.stored("0a", 60)
+        index.stored("0b", 60)
+        index.flush()
+        journal.lastModified = fiveDaysAgo
+        def lock = Mock(FileLock)
+
+        when:
+        cleanup.clean(cleanableStore, Stub(CleanupProgressMonitor))
+
+        then:
+        1 * fileLockManager.lock(cacheDir, _, "cache") >> lock
+        1 * lock.close()
+
+        and:
+        unused.assertDoesNotExist()
+        used.assertExists()
+        journal.assertExists()
+        new LeastRecentlyUsedEntryIndex(cacheDir, 100).nextEviction() == null
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal
+
+import org.gradle.api.UncheckedIOException
+import org.gradle.test.fixtures.file.CleanupTestDirectory
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+@CleanupTestDirectory
+class LeastRecentlyUsedEntryIndexTest extends Specification {
+    @Rule TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider()
+    def cacheDir = temporaryFolder.createDir("cache")
+    def journal = cacheDir.file(LeastRecentlyUsedEntryIndex.JOURNAL_FILE_NAME)
+    def index = new LeastRecentlyUsedEntryIndex(cacheDir, 100)
+
+    def "evicts least recently used entries until the cache is below its target size"() {
+        when:
+        index.stored("01", 40)
+        index.stored("02", 40)
+        index.accessed("01", 40)
+
+        then:
+        !index.isOverMaxSize()
+        index.nextEviction() == null
+
+        when:
+        index.stored("03", 40)
+
+        then:
+        index.isOverMaxSize()
+        index.nextEviction() == "02"
+
+        when:
+        index.removed("02")
+
+        then:
+        !index.isOverMaxSize()
+        index.nextEviction() == null
+    }
+
+    def "sees entries recorded by other processes"() {
+        def otherIndex = new LeastRecentlyUsedEntryIndex(cacheDir, 100)
+
+        when:
+        index.stored("01", 60)
+        index.flush()
+        otherIndex.stored("02", 60)
+        otherIndex.flush()
+
+        then:
+        index.nextEviction() == "01"
+        otherIndex.nextEviction() == "01"
+
+        when:
+        otherIndex.removed("01")
+        otherIndex.flush()
+
+        then:
+        index.nextEviction() == null
+    }
+
+    def "buffers records until they are flushed"() {
+        def otherIndex = new LeastRecentlyUsedEntryIndex(cacheDir, 100)
+
+        when:
+        index.stored("01", 60)
+        index.stored("02", 60)
+
+        then:
+        index.isOverMaxSize()
+        otherIndex.nextEviction() == null
+
+        when:
+        index.flush()
+
+        then:
+        otherIndex.nextEviction() == "01"
+    }
+
+    def "keeps buffered records when they cannot be written"() {
+        given:
+        index.stored("01", 60)
+        journal.delete()
+        journal.createDir()
+
+        when:
+        index.flush()
+
+        then:
+        thrown UncheckedIOException
+
+        when:
+        journal.deleteDir()
+        index.stored("02", 60)
+        index.flush()
+
+        then:
+        new LeastRecentlyUsedEntryIndex(cacheDir, 100).nextEviction() == "01"
+    }
+
+    def "adds entries that are accessed but not in the index"() {
+        when:
+        index.accessed("01", 60)
+        index.accessed("02", 60)
+
+        then:
+        index.nextEviction() == "01"
+    }
+
+    def "ignores incomplete record at the end of the journal"() {
+        given:
+        index.stored("01", 60)
+        index.flush()
+        journal << ([1, 0, 32, 48] as byte[])
+
+        when:
+        index.stored("02", 60)
+        index.flush()
+
+        then:
+        new LeastRecentlyUsedEntryIndex(cacheDir, 100).nextEviction() == "01"
+    }
+
+    def "compacts the journal once it contains many more records than entries"() {
+        def otherIndex = new LeastRecentlyUsedEntryIndex(cacheDir, 100)
+        otherIndex.stored("01", 10)
+        otherIndex.flush()
+
+        when:
+        3000.times {
+            index.accessed(it % 2 == 0 ? "02" : "03", 30)
+        }
+        index.flush()
+
+        then:
+        // Each record takes 13 bytes
+        journal.length() < 3000 * 13 / 2
+        otherIndex.nextEviction() == null
+
+        when:
+        otherIndex.stored("04", 40)
+        otherIndex.flush()
+
+        then:
+        index.nextEviction() == "01"
+    }
+
+    def "indexes existing cache directory by modification time"() {
+        given:
+        cacheDir.file("0a").bytes = new byte[60]
+        cacheDir.file("0b").bytes = new byte[60]
+        cacheDir.file("0b").lastModified = 1000
+        cacheDir.file("gc.properties").bytes = new byte[600]
+        cacheDir.file("0c.failed").bytes = new byte[600]
+
+        expect:
+        index.nextEviction() == "0b"
+    }
+
+    def "rebuilds index when the journal is corrupt"() {
+        given:
+        index.stored("01", 60)
+        journal.bytes = new byte[20]
+        cacheDir.file("0a").bytes = new byte[120]
+
+        expect:
+        new LeastRecentlyUsedEntryIndex(cacheDir, 100).nextEviction() == "0a"
+    }
+}
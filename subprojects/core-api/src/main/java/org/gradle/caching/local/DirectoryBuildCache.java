@@ -16,6 +16,7 @@
 
 package org.gradle.caching.local;
 
+import org.gradle.api.Incubating;
 import org.gradle.caching.configuration.AbstractBuildCache;
 
 import javax.annotation.Nullable;
@@ -29,6 +30,7 @@
 public class DirectoryBuildCache extends AbstractBuildCache {
     private Object directory;
     private int removeUnusedEntriesAfterDays = 7;
+    private long maxSizeInMB;
 
     /**
      * Returns the directory to use to store the build cache.
@@ -69,4 +71,32 @@ public void setRemoveUnusedEntriesAfterDays(int removeUnusedEntriesAfterDays) {
         }
         this.removeUnusedEntriesAfterDays = removeUnusedEntriesAfterDays;
     }
+
+    /**
+     * Returns the maximum size of the cache in megabytes, or 0 if the size of the cache is not limited. Defaults to 0.
+     *
+     * @since 6.1
+     */
+    @Incubating
+    public long getMaxSizeInMB() {
+        return maxSizeInMB;
+    }
+
+    /**
+     * Sets the maximum size of the cache in megabytes. Defaults to 0, which means that the size of the cache is not limited.
+     *
+     * When the cache grows beyond this size, the least recently used entries are removed in the background.
+     * Unused entries are still garbage collected after {@link #getRemoveUnusedEntriesAfterDays()} days.
+     *
+     * Must not be negative.
+     *
+     * @since 6.1
+     */
+    @Incubating
+    public void setMaxSizeInMB(long maxSizeInMB) {
+        if (maxSizeInMB < 0) {
+            throw new IllegalArgumentException("Directory build cache size limit must not be negative.");
+        }
+        this.maxSizeInMB = maxSizeInMB;
+    }
 }
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.plan;
+
+import org.gradle.api.Action;
+import org.gradle.api.Project;
+import org.gradle.internal.resources.ResourceLock;
+import org.gradle.internal.resources.ResourceLockState;
+import org.gradle.internal.work.WorkerLeaseRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Measures selecting and completing all the nodes of an execution plan with a fixed number of workers, for plans of different sizes.
+ *
+ * The nodes are synthetic: each node depends on up to three of the 200 nodes before it, writes to an output directory of its own and runs for a random number of simulated ticks.
+ * Every 50th node runs much longer than the others, so the nodes waiting for it pile up in the execution queue.
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class ExecutionPlanSelectionBenchmark {
+    private static final WorkerLeaseRegistry.WorkerLease WORKER_LEASE = (WorkerLeaseRegistry.WorkerLease) Proxy.newProxyInstance(
+        ExecutionPlanSelectionBenchmark.class.getClassLoader(),
+        new Class<?>[]{WorkerLeaseRegistry.WorkerLease.class},
+        (proxy, method, args) -> method.getName().equals("tryLock") ? Boolean.TRUE : null
+    );
+    private static final ResourceLockState RESOURCE_LOCK_STATE = (ResourceLockState) Proxy.newProxyInstance(
+        ExecutionPlanSelectionBenchmark.class.getClassLoader(),
+        new Class<?>[]{ResourceLockState.class},
+        (proxy, method, args) -> null
+    );
+
+    @Param({"1000", "10000", "50000"})
+    int nodeCount;
+
+    @Param({"16"})
+    int workers;
+
+    DefaultExecutionPlan plan;
+
+    @Setup(Level.Invocation)
+    public void createPlan() {
+        Random random = new Random(1234);
+        List<BenchmarkNode> nodes = new ArrayList<>(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            BenchmarkNode node = new BenchmarkNode(i, i % 50 == 0 ? 2000 : 1 + random.nextInt(100));
+            for (int dependency = 0; dependency < 3 && i > 0; dependency++) {
+                node.addDependencySuccessor(nodes.get(i - 1 - random.nextInt(Math.min(i, 200))));
+            }
+            nodes.add(node);
+        }
+        for (BenchmarkNode node : nodes) {
+            node.require();
+            node.dependenciesProcessed();
+        }
+        plan = new DefaultExecutionPlan(null, null, new TaskDependencyResolver(Collections.emptyList()));
+        plan.addNodes(nodes);
+        plan.determineExecutionPlan();
+    }
+
+    @Benchmark
+    public long selectAllNodes() {
+        PriorityQueue<BenchmarkNode> runningNodes = new PriorityQueue<>(workers, Comparator.comparingLong(node -> node.finishTick));
+        long tick = 0;
+        while (true) {
+            while (runningNodes.size() < workers) {
+                BenchmarkNode node = (BenchmarkNode) plan.selectNext(WORKER_LEASE, RESOURCE_LOCK_STATE);
+                if (node == null) {
+                    break;
+                }
+                node.finishTick = tick + node.ticks;
+                runningNodes.add(node);
+            }
+            BenchmarkNode finishedNode = runningNodes.poll();
+            if (finishedNode == null) {
+                return tick;
+            }
+            tick = finishedNode.finishTick;
+            plan.finishedExecuting(finishedNode);
+        }
+    }
+
+    private static class BenchmarkNode extends Node {
+        private final int id;
+        private final int ticks;
+        private long finishTick;
+
+        BenchmarkNode(int id, int ticks) {
+            this.id = id;
+            this.ticks = ticks;
+        }
+
+        @Override
+        public Throwable getNodeFailure() {
+            return null;
+        }
+
+        @Override
+        public void rethrowNodeFailure() {
+        }
+
+        @Override
+        public void prepareForExecution() {
+        }
+
+        @Override
+        public void resolveDependencies(TaskDependencyResolver dependencyResolver, Action<Node> processHardSuccessor) {
+        }
+
+        @Override
+        public Set<Node> getFinalizers() {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public void resolveMutations() {
+            MutationInfo mutations = getMutationInfo();
+            mutations.outputPaths.add(File.separator + "build" + File.separator + "node" + id);
+            mutations.hasOutputs = true;
+            mutations.resolved = true;
+        }
+
+        @Override
+        public boolean isPublicNode() {
+            return true;
+        }
+
+        @Override
+        public boolean requiresMonitoring() {
+            return false;
+        }
+
+        @Override
+        public Project getProjectToLock() {
+            return null;
+        }
+
+        @Override
+        public Project getOwningProject() {
+            return null;
+        }
+
+        @Override
+        public List<? extends ResourceLock> getResourcesToLock() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public String toString() {
+            return "node " + id;
+        }
+
+        @Override
+        public int compareTo(Node other) {
+            return Integer.compare(id, ((BenchmarkNode) other).id);
+        }
+    }
+}
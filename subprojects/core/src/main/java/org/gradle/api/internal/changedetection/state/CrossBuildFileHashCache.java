@@ -23,15 +23,18 @@
 import org.gradle.cache.PersistentIndexedCache;
 import org.gradle.cache.PersistentIndexedCacheParameters;
 import org.gradle.cache.internal.InMemoryCacheDecoratorFactory;
+import org.gradle.internal.hash.Hashing;
 
 import javax.annotation.Nullable;
 import java.io.Closeable;
 import java.io.File;
+import java.util.Collections;
 
 import static org.gradle.cache.internal.filelock.LockOptionsBuilder.mode;
 
 public class CrossBuildFileHashCache implements Closeable {
     public static final String FILE_HASHES_CACHE_KEY = "fileHashes";
+    public static final String HASH_ALGORITHM_PROPERTY = "hashAlgorithm";
 
     private final PersistentCache cache;
     private final InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory;
@@ -41,6 +44,8 @@ public CrossBuildFileHashCache(@Nullable File cacheDir, CacheRepository reposito
         CacheBuilder cacheBuilder = cacheDir != null ? repository.cache(cacheDir) : repository.cache(FILE_HASHES_CACHE_KEY);
         cache = cacheBuilder
             .withDisplayName("file hash cache")
+            // Stored hashes are only valid for the hash function that created them
+            .withProperties(Collections.singletonMap(HASH_ALGORITHM_PROPERTY, Hashing.contentFunction().getAlgorithm()))
             .withLockOptions(mode(FileLockManager.LockMode.None)) // Lock on demand
             .open();
     }
@@ -15,6 +15,7 @@
  */
 package org.gradle.api.internal.changedetection.state;
 
+import com.google.common.collect.ImmutableMap;
 import org.gradle.cache.CacheRepository;
 import org.gradle.cache.FileLockManager;
 import org.gradle.cache.PersistentCache;
@@ -22,6 +23,8 @@
 import org.gradle.cache.PersistentIndexedCacheParameters;
 import org.gradle.cache.internal.InMemoryCacheDecoratorFactory;
 import org.gradle.internal.execution.history.ExecutionHistoryCacheAccess;
+import org.gradle.internal.execution.history.impl.DefaultPreviousExecutionStateSerializer;
+import org.gradle.internal.hash.Hashing;
 
 import javax.annotation.Nullable;
 import java.io.Closeable;
@@ -29,6 +32,8 @@
 import static org.gradle.cache.internal.filelock.LockOptionsBuilder.mode;
 
 public class DefaultExecutionHistoryCacheAccess implements ExecutionHistoryCacheAccess, Closeable {
+    private static final String FORMAT_VERSION_PROPERTY = "formatVersion";
+
     private final InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory;
     private final PersistentCache cache;
 
@@ -37,6 +42,11 @@ public DefaultExecutionHistoryCacheAccess(@Nullable Object scope, CacheRepositor
         cache = cacheRepository
                 .cache(scope, "executionHistory")
                 .withDisplayName("execution history cache")
+                .withProperties(ImmutableMap.of(
+                    // Recorded fingerprints are only comparable when taken with the same hash function
+                    CrossBuildFileHashCache.HASH_ALGORITHM_PROPERTY, Hashing.contentFunction().getAlgorithm(),
+                    FORMAT_VERSION_PROPERTY, String.valueOf(DefaultPreviousExecutionStateSerializer.FORMAT_VERSION)
+                ))
                 .withLockOptions(mode(FileLockManager.LockMode.None)) // Lock on demand
                 .open();
     }
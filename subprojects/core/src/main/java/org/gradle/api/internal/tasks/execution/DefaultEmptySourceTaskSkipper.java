@@ -34,6 +34,7 @@
 import java.io.UncheckedIOException;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 public class DefaultEmptySourceTaskSkipper implements EmptySourceTaskSkipper {
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultEmptySourceTaskSkipper.class);
@@ -56,9 +57,10 @@ public DefaultEmptySourceTaskSkipper(
     }
 
     @Override
-    public Optional<ExecutionOutcome> skipIfEmptySources(TaskInternal task, boolean hasSourceFiles, FileCollection inputFiles, FileCollection sourceFiles, Map<String, FileCollectionFingerprint> outputFileSnapshots) {
+    public Optional<ExecutionOutcome> skipIfEmptySources(TaskInternal task, boolean hasSourceFiles, FileCollection inputFiles, FileCollection sourceFiles, Supplier<? extends Map<String, FileCollectionFingerprint>> previousOutputFileSnapshots) {
         if (hasSourceFiles && sourceFiles.isEmpty()) {
             ExecutionOutcome skipOutcome;
+            Map<String, FileCollectionFingerprint> outputFileSnapshots = previousOutputFileSnapshots.get();
             if (outputFileSnapshots.isEmpty()) {
                 LOGGER.info("Skipping {} as it has no source files and no previous output files.", task);
                 skipOutcome = ExecutionOutcome.SHORT_CIRCUITED;
@@ -23,7 +23,8 @@
 
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 public interface EmptySourceTaskSkipper {
-    Optional<ExecutionOutcome> skipIfEmptySources(TaskInternal task, boolean hasSourceFiles, FileCollection inputFiles, FileCollection sourceFiles, Map<String, FileCollectionFingerprint> outputFileSnapshots);
+    Optional<ExecutionOutcome> skipIfEmptySources(TaskInternal task, boolean hasSourceFiles, FileCollection inputFiles, FileCollection sourceFiles, Supplier<? extends Map<String, FileCollectionFingerprint>> outputFileSnapshots);
 }
@@ -99,6 +99,7 @@
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Supplier;
 
 import static org.gradle.internal.work.AsyncWorkTracker.ProjectLockRetention.RELEASE_AND_REACQUIRE_PROJECT_LOCKS;
 import static org.gradle.internal.work.AsyncWorkTracker.ProjectLockRetention.RELEASE_PROJECT_LOCKS;
@@ -510,7 +511,7 @@ public void validate(WorkValidationContext validationContext) {
         }
 
         @Override
-        public Optional<ExecutionOutcome> skipIfInputsEmpty(ImmutableSortedMap<String, FileCollectionFingerprint> outputFilesAfterPreviousExecution) {
+        public Optional<ExecutionOutcome> skipIfInputsEmpty(Supplier<ImmutableSortedMap<String, FileCollectionFingerprint>> outputFilesAfterPreviousExecution) {
             TaskProperties properties = context.getTaskProperties();
             FileCollection inputFiles = properties.getInputFiles();
             FileCollection sourceFiles = properties.getSourceFiles();
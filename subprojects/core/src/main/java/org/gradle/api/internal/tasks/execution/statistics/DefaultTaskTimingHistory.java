@@ -0,0 +1,249 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.execution.statistics;
+
+import org.gradle.api.internal.TaskInternal;
+import org.gradle.api.internal.tasks.TaskStateInternal;
+import org.gradle.api.internal.tasks.execution.ExecuteTaskBuildOperationDetails;
+import org.gradle.cache.CacheRepository;
+import org.gradle.cache.FileLockManager;
+import org.gradle.cache.PersistentCache;
+import org.gradle.caching.internal.operations.BuildCacheArchivePackBuildOperationType;
+import org.gradle.caching.internal.operations.BuildCacheArchiveUnpackBuildOperationType;
+import org.gradle.internal.operations.BuildOperationDescriptor;
+import org.gradle.internal.operations.BuildOperationListener;
+import org.gradle.internal.operations.BuildOperationListenerManager;
+import org.gradle.internal.operations.OperationFinishEvent;
+import org.gradle.internal.operations.OperationIdentifier;
+import org.gradle.internal.operations.OperationProgressEvent;
+import org.gradle.internal.operations.OperationStartEvent;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+import org.gradle.util.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.gradle.cache.internal.filelock.LockOptionsBuilder.mode;
+
+/**
+ * Records the timings of the tasks executed in a build tree from the task execution build operations, and keeps them in a
+ * small file next to the other caches of the root build.
+ *
+ * The file is read when the history is created and written when it is closed. When several builds of the same tree run at
+ * the same time, the last one to finish wins.
+ */
+public class DefaultTaskTimingHistory implements TaskTimingHistory, Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DefaultTaskTimingHistory.class);
+
+    private static final String CACHE_KEY = "taskHistory";
+    private static final String STATE_FILE_NAME = "task-timings.bin";
+    private static final int FORMAT_VERSION = 1;
+    // Tasks that have not run for this many builds are dropped, so the file does not grow with renamed or removed tasks
+    private static final int MAX_BUILDS_WITHOUT_EXECUTION = 50;
+
+    private final PersistentCache cache;
+    private final BuildOperationListenerManager buildOperationListenerManager;
+    private final Recorder recorder = new Recorder();
+    private final Map<String, TaskTimings> timings = new ConcurrentHashMap<>();
+    private final int currentBuild;
+
+    public DefaultTaskTimingHistory(Object scope, CacheRepository cacheRepository, BuildOperationListenerManager buildOperationListenerManager) {
+        this.cache = cacheRepository
+            .cache(scope, CACHE_KEY)
+            .withDisplayName("task timing history")
+            .withLockOptions(mode(FileLockManager.LockMode.None)) // Lock on demand
+            .open();
+        this.buildOperationListenerManager = buildOperationListenerManager;
+        this.currentBuild = load() + 1;
+        buildOperationListenerManager.addListener(recorder);
+    }
+
+    @Nullable
+    @Override
+    public TaskTimings getTimings(Path taskIdentityPath) {
+        return timings.get(taskIdentityPath.getPath());
+    }
+
+    private void record(TaskInternal task, long durationMillis, long outputSize) {
+        TaskStateInternal state = task.getState();
+        if (!state.isActionable() || state.getFailure() != null || state.getOutcome() == null) {
+            return;
+        }
+        timings.compute(task.getIdentityPath().getPath(), (path, previous) -> previous == null
+            ? TaskTimings.first(durationMillis, state.getOutcome(), outputSize, currentBuild)
+            : previous.withExecution(durationMillis, state.getOutcome(), outputSize, currentBuild));
+    }
+
+    @Override
+    public void close() {
+        buildOperationListenerManager.removeListener(recorder);
+        try {
+            store();
+        } finally {
+            cache.close();
+        }
+    }
+
+    /**
+     * Reads the stored timings and returns the number of the build that stored them.
+     */
+    private int load() {
+        File stateFile = new File(cache.getBaseDir(), STATE_FILE_NAME);
+        try {
+            return cache.useCache(() -> {
+                if (!stateFile.isFile()) {
+                    return 0;
+                }
+                try {
+                    KryoBackedDecoder decoder = new KryoBackedDecoder(new FileInputStream(stateFile));
+                    try {
+                        int formatVersion = decoder.readSmallInt();
+                        if (formatVersion != FORMAT_VERSION) {
+                            LOGGER.info("Ignoring task timing history with format version {}", formatVersion);
+                            return 0;
+                        }
+                        int build = decoder.readSmallInt();
+                        int count = decoder.readSmallInt();
+                        for (int i = 0; i < count; i++) {
+                            String path = decoder.readString();
+                            long[] recentDurations = new long[decoder.readSmallInt()];
+                            for (int j = 0; j < recentDurations.length; j++) {
+                                recentDurations[j] = decoder.readSmallLong();
+                            }
+                            int outOfDateExecutions = decoder.readSmallInt();
+                            int cacheHits = decoder.readSmallInt();
+                            long outputSize = decoder.readSmallLong();
+                            int lastBuild = decoder.readSmallInt();
+                            timings.put(path, new TaskTimings(recentDurations, outOfDateExecutions, cacheHits, outputSize, lastBuild));
+                        }
+                        return build;
+                    } finally {
+                        decoder.close();
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException("Could not read task timing history from " + stateFile, e);
+                }
+            });
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not load the task timing history, starting with an empty history", e);
+            timings.clear();
+            return 0;
+        }
+    }
+
+    private void store() {
+        timings.values().removeIf(taskTimings -> taskTimings.getLastBuild() <= currentBuild - MAX_BUILDS_WITHOUT_EXECUTION);
+        File stateFile = new File(cache.getBaseDir(), STATE_FILE_NAME);
+        File tempFile = new File(cache.getBaseDir(), STATE_FILE_NAME + ".tmp");
+        try {
+            cache.useCache(() -> {
+                try {
+                    KryoBackedEncoder encoder = new KryoBackedEncoder(new FileOutputStream(tempFile));
+                    try {
+                        encoder.writeSmallInt(FORMAT_VERSION);
+                        encoder.writeSmallInt(currentBuild);
+                        encoder.writeSmallInt(timings.size());
+                        for (Map.Entry<String, TaskTimings> entry : timings.entrySet()) {
+                            TaskTimings taskTimings = entry.getValue();
+                            encoder.writeString(entry.getKey());
+                            long[] recentDurations = taskTimings.getRecentDurationsMillis();
+                            encoder.writeSmallInt(recentDurations.length);
+                            for (long duration : recentDurations) {
+                                encoder.writeSmallLong(duration);
+                            }
+                            encoder.writeSmallInt(taskTimings.getOutOfDateExecutions());
+                            encoder.writeSmallInt(taskTimings.getCacheHits());
+                            encoder.writeSmallLong(taskTimings.getOutputSize());
+                            encoder.writeSmallInt(taskTimings.getLastBuild());
+                        }
+                    } finally {
+                        encoder.close();
+                    }
+                    Files.move(tempFile.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (Exception e) {
+                    throw new RuntimeException("Could not write task timing history to " + stateFile, e);
+                }
+            });
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not store the task timing history", e);
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Follows each task execution and the build cache operations nested in it.
+     */
+    private class Recorder implements BuildOperationListener {
+        private final Map<OperationIdentifier, TaskExecution> running = new ConcurrentHashMap<>();
+
+        @Override
+        public void started(BuildOperationDescriptor buildOperation, OperationStartEvent startEvent) {
+            if (buildOperation.getDetails() instanceof ExecuteTaskBuildOperationDetails) {
+                running.put(buildOperation.getId(), new TaskExecution(((ExecuteTaskBuildOperationDetails) buildOperation.getDetails()).getTask()));
+            } else if (buildOperation.getParentId() != null) {
+                TaskExecution execution = running.get(buildOperation.getParentId());
+                if (execution != null) {
+                    running.put(buildOperation.getId(), execution);
+                }
+            }
+        }
+
+        @Override
+        public void progress(OperationIdentifier operationIdentifier, OperationProgressEvent progressEvent) {
+        }
+
+        @Override
+        public void finished(BuildOperationDescriptor buildOperation, OperationFinishEvent finishEvent) {
+            TaskExecution execution = running.remove(buildOperation.getId());
+            if (execution == null) {
+                return;
+            }
+            Object details = buildOperation.getDetails();
+            Object result = finishEvent.getResult();
+            if (result instanceof BuildCacheArchivePackBuildOperationType.Result) {
+                execution.outputSize = ((BuildCacheArchivePackBuildOperationType.Result) result).getArchiveSize();
+            } else if (details instanceof BuildCacheArchiveUnpackBuildOperationType.Details) {
+                // The size is not known up front when the archive is unpacked while it is being downloaded
+                long archiveSize = ((BuildCacheArchiveUnpackBuildOperationType.Details) details).getArchiveSize();
+                if (archiveSize > 0) {
+                    execution.outputSize = archiveSize;
+                }
+            } else if (details instanceof ExecuteTaskBuildOperationDetails) {
+                record(execution.task, finishEvent.getEndTime() - finishEvent.getStartTime(), execution.outputSize);
+            }
+        }
+    }
+
+    private static class TaskExecution {
+        final TaskInternal task;
+        volatile long outputSize;
+
+        TaskExecution(TaskInternal task) {
+            this.task = task;
+        }
+    }
+}
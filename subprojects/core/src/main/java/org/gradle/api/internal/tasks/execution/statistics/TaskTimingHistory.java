@@ -0,0 +1,32 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.execution.statistics;
+
+import org.gradle.util.Path;
+
+import javax.annotation.Nullable;
+
+/**
+ * Timings of the tasks of a build tree, as recorded in previous builds of that tree.
+ */
+public interface TaskTimingHistory {
+    /**
+     * Returns what was recorded for the task with the given identity path, or null if the task did not run in recent builds.
+     */
+    @Nullable
+    TaskTimings getTimings(Path taskIdentityPath);
+}
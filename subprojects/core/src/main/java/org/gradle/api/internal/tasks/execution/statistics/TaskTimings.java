@@ -0,0 +1,119 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.execution.statistics;
+
+import org.gradle.api.internal.tasks.TaskExecutionOutcome;
+
+import java.util.Arrays;
+
+/**
+ * What was recorded about the recent executions of a task in previous builds.
+ */
+public final class TaskTimings {
+    static final int MAX_RECENT_DURATIONS = 5;
+    // Cache hits are counted over a sliding window, so the ratio follows changes in how the task is built
+    static final int MAX_OUT_OF_DATE_EXECUTIONS = 20;
+
+    private final long[] recentDurations;
+    private final int outOfDateExecutions;
+    private final int cacheHits;
+    private final long outputSize;
+    private final int lastBuild;
+
+    TaskTimings(long[] recentDurations, int outOfDateExecutions, int cacheHits, long outputSize, int lastBuild) {
+        this.recentDurations = recentDurations;
+        this.outOfDateExecutions = outOfDateExecutions;
+        this.cacheHits = cacheHits;
+        this.outputSize = outputSize;
+        this.lastBuild = lastBuild;
+    }
+
+    static TaskTimings first(long durationMillis, TaskExecutionOutcome outcome, long outputSize, int build) {
+        return new TaskTimings(new long[0], 0, 0, 0, build).withExecution(durationMillis, outcome, outputSize, build);
+    }
+
+    /**
+     * Returns the durations of the most recent executions in milliseconds, oldest first.
+     */
+    public long[] getRecentDurationsMillis() {
+        return recentDurations.clone();
+    }
+
+    /**
+     * Returns the average duration of the most recent executions in milliseconds.
+     */
+    public long getEstimatedDurationMillis() {
+        if (recentDurations.length == 0) {
+            return 0;
+        }
+        long total = 0;
+        for (long duration : recentDurations) {
+            total += duration;
+        }
+        return total / recentDurations.length;
+    }
+
+    /**
+     * Returns the share of the recent executions that were not up-to-date which were loaded from the build cache.
+     */
+    public double getCacheHitRatio() {
+        return outOfDateExecutions == 0 ? 0 : (double) cacheHits / outOfDateExecutions;
+    }
+
+    /**
+     * Returns the size in bytes of the build cache entry last stored or loaded for the task, or 0 when unknown.
+     */
+    public long getOutputSize() {
+        return outputSize;
+    }
+
+    int getOutOfDateExecutions() {
+        return outOfDateExecutions;
+    }
+
+    int getCacheHits() {
+        return cacheHits;
+    }
+
+    int getLastBuild() {
+        return lastBuild;
+    }
+
+    TaskTimings withExecution(long durationMillis, TaskExecutionOutcome outcome, long outputSize, int build) {
+        long[] durations;
+        if (recentDurations.length < MAX_RECENT_DURATIONS) {
+            durations = Arrays.copyOf(recentDurations, recentDurations.length + 1);
+        } else {
+            durations = Arrays.copyOfRange(recentDurations, 1, MAX_RECENT_DURATIONS + 1);
+        }
+        durations[durations.length - 1] = durationMillis;
+
+        int outOfDateExecutions = this.outOfDateExecutions;
+        int cacheHits = this.cacheHits;
+        if (outcome == TaskExecutionOutcome.EXECUTED || outcome == TaskExecutionOutcome.FROM_CACHE) {
+            if (outOfDateExecutions == MAX_OUT_OF_DATE_EXECUTIONS) {
+                outOfDateExecutions /= 2;
+                cacheHits /= 2;
+            }
+            outOfDateExecutions++;
+            if (outcome == TaskExecutionOutcome.FROM_CACHE) {
+                cacheHits++;
+            }
+        }
+        return new TaskTimings(durations, outOfDateExecutions, cacheHits, outputSize > 0 ? outputSize : this.outputSize, build);
+    }
+}
@@ -32,6 +32,7 @@
 import org.gradle.caching.local.DirectoryBuildCache;
 import org.gradle.caching.local.internal.DirectoryBuildCacheService;
 import org.gradle.internal.Cast;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.operations.BuildOperationContext;
 import org.gradle.internal.operations.BuildOperationDescriptor;
 import org.gradle.internal.operations.BuildOperationExecutor;
@@ -52,6 +53,11 @@ public final class BuildCacheControllerFactory {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(BuildCacheControllerFactory.class);
 
+    public static final String CHUNKED_ENTRIES_PROPERTY = "org.gradle.unsafe.build-cache.chunked-entries";
+    public static final String ASYNC_REMOTE_STORE_PROPERTY = "org.gradle.unsafe.build-cache.async-remote-store";
+    public static final String STREAMING_REMOTE_LOAD_PROPERTY = "org.gradle.unsafe.build-cache.streaming-remote-load";
+    public static final String PARALLEL_COMPRESSION_PROPERTY = "org.gradle.unsafe.build-cache.parallel-compression";
+
     public enum BuildCacheMode {
         ENABLED, DISABLED
     }
@@ -69,7 +75,8 @@ public static BuildCacheController create(
         final RemoteAccessMode remoteAccessMode,
         final boolean logStackTraces,
         final boolean emitDebugLogging,
-        final Instantiator instantiator
+        final Instantiator instantiator,
+        final ExecutorFactory executorFactory
     ) {
         return buildOperationExecutor.call(new CallableBuildOperation<BuildCacheController>() {
             @Override
@@ -120,7 +127,11 @@ public BuildCacheController call(BuildOperationContext context) {
                         buildOperationExecutor,
                         gradleUserHomeDir,
                         logStackTraces,
-                        emitDebugLogging
+                        emitDebugLogging,
+                        Boolean.getBoolean(CHUNKED_ENTRIES_PROPERTY),
+                        Boolean.getBoolean(ASYNC_REMOTE_STORE_PROPERTY),
+                        Boolean.getBoolean(STREAMING_REMOTE_LOAD_PROPERTY),
+                        executorFactory
                     );
                 }
             }
@@ -27,10 +27,13 @@
 import org.gradle.caching.internal.origin.OriginMetadataFactory;
 import org.gradle.caching.internal.packaging.BuildCacheEntryPacker;
 import org.gradle.caching.internal.packaging.impl.GZipBuildCacheEntryPacker;
+import org.gradle.caching.internal.packaging.impl.ParallelGZipBuildCacheEntryPacker;
 import org.gradle.caching.internal.packaging.impl.TarBuildCacheEntryPacker;
 import org.gradle.caching.internal.services.BuildCacheControllerFactory.BuildCacheMode;
 import org.gradle.caching.internal.services.BuildCacheControllerFactory.RemoteAccessMode;
 import org.gradle.internal.SystemProperties;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ParallelismConfigurationManager;
 import org.gradle.internal.file.Deleter;
 import org.gradle.internal.hash.StreamHasher;
 import org.gradle.internal.instantiation.InstantiatorFactory;
@@ -59,10 +62,18 @@ BuildCacheEntryPacker createResultPacker(
         Deleter deleter,
         FileSystem fileSystem,
         StreamHasher fileHasher,
-        StringInterner stringInterner
+        StringInterner stringInterner,
+        ExecutorFactory executorFactory,
+        ParallelismConfigurationManager parallelismConfigurationManager
     ) {
-        return new GZipBuildCacheEntryPacker(
-            new TarBuildCacheEntryPacker(deleter, fileSystem, fileHasher, stringInterner));
+        TarBuildCacheEntryPacker tarPacker = new TarBuildCacheEntryPacker(deleter, fileSystem, fileHasher, stringInterner);
+        if (!Boolean.getBoolean(BuildCacheControllerFactory.PARALLEL_COMPRESSION_PROPERTY)) {
+            return new GZipBuildCacheEntryPacker(tarPacker);
+        }
+        return new ParallelGZipBuildCacheEntryPacker(
+            tarPacker,
+            executorFactory,
+            parallelismConfigurationManager.getParallelismConfiguration().getMaxWorkerCount());
     }
 
     OriginMetadataFactory createOriginMetadataFactory(
@@ -137,7 +148,8 @@ private BuildCacheController doCreateBuildCacheController(ServiceRegistry servic
             remoteAccessMode,
             logStackTraces,
             emitDebugLogging,
-            instantiatorFactory.inject(serviceRegistry)
+            instantiatorFactory.inject(serviceRegistry),
+            serviceRegistry.get(ExecutorFactory.class)
         );
     }
 
@@ -52,13 +52,16 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * A reusable implementation of ExecutionPlan. The {@link #addEntryTasks(java.util.Collection)} and {@link #clear()} methods are NOT threadsafe, and callers must synchronize access to these methods.
@@ -69,7 +72,8 @@ public class DefaultExecutionPlan implements ExecutionPlan {
 
     private final Set<Node> entryNodes = new LinkedHashSet<>();
     private final NodeMapping nodeMapping = new NodeMapping();
-    private final List<Node> executionQueue = Lists.newLinkedList();
+    private final Set<Node> executionQueue = Sets.newLinkedHashSet();
+    private final Map<Node, Integer> queuePositions = Maps.newIdentityHashMap();
     private final Map<Project, ResourceLock> projectLocks = Maps.newHashMap();
     private final FailureCollector failureCollector = new FailureCollector();
     private final TaskNodeFactory taskNodeFactory;
@@ -79,19 +83,38 @@ public class DefaultExecutionPlan implements ExecutionPlan {
     private boolean continueOnFailure;
 
     private final Set<Node> runningNodes = Sets.newIdentityHashSet();
+    private final PathTrie runningMutationPaths = new PathTrie();
     private final Set<Node> filteredNodes = Sets.newIdentityHashSet();
     private final Set<Node> producedButNotYetConsumed = Sets.newIdentityHashSet();
     private final Map<Pair<Node, Node>, Boolean> reachableCache = Maps.newHashMap();
     private final List<Node> dependenciesWhichRequireMonitoring = Lists.newArrayList();
-    private boolean maybeNodesReady;
+    private final Map<Node, Long> remainingPathDurations = Maps.newIdentityHashMap();
+    private final Deque<Node> newlyReadyNodes = new ArrayDeque<>();
+    private final NavigableSet<Node> readyNodes;
+    private final NavigableSet<Node> readyDestroyers = new TreeSet<>(Comparator.comparingInt(queuePositions::get));
     private final GradleInternal gradle;
+    @Nullable
+    private final NodeDurationEstimator durationEstimator;
 
     private boolean buildCancelled;
 
     public DefaultExecutionPlan(GradleInternal gradle, TaskNodeFactory taskNodeFactory, TaskDependencyResolver dependencyResolver) {
+        this(gradle, taskNodeFactory, dependencyResolver, null);
+    }
+
+    /**
+     * Creates an execution plan which, when given a duration estimator, starts the ready nodes with the longest remaining path first.
+     * Without an estimator, nodes are started in the order of the execution queue.
+     */
+    public DefaultExecutionPlan(GradleInternal gradle, TaskNodeFactory taskNodeFactory, TaskDependencyResolver dependencyResolver, @Nullable NodeDurationEstimator durationEstimator) {
         this.gradle = gradle;
         this.taskNodeFactory = taskNodeFactory;
         this.dependencyResolver = dependencyResolver;
+        this.durationEstimator = durationEstimator;
+        Comparator<Node> queueOrder = Comparator.comparingInt(queuePositions::get);
+        this.readyNodes = new TreeSet<>(durationEstimator == null
+            ? queueOrder
+            : Comparator.comparingLong((Node node) -> remainingPathDurations.getOrDefault(node, 0L)).reversed().thenComparing(queueOrder));
     }
 
     @Override
@@ -326,14 +349,43 @@ public NodeInVisitingSegment apply(Node node) {
             }
         }
         executionQueue.clear();
+        queuePositions.clear();
+        readyNodes.clear();
+        readyDestroyers.clear();
+        newlyReadyNodes.clear();
         dependencyResolver.clear();
         Iterables.addAll(executionQueue, nodeMapping);
         for (Node node : executionQueue) {
-            maybeNodesReady |= node.updateAllDependenciesComplete() && node.isReady();
+            queuePositions.put(node, queuePositions.size());
+        }
+        if (durationEstimator != null) {
+            determineRemainingPathDurations(durationEstimator);
+        }
+        for (Node node : executionQueue) {
+            node.updateAllDependenciesComplete();
+            if (node.allDependenciesComplete() && node.isReady()) {
+                newlyReadyNodes.add(node);
+            }
         }
         this.dependenciesWhichRequireMonitoring.addAll(dependenciesWhichRequireMonitoring);
     }
 
+    /**
+     * Calculates for each node the estimated duration of the longest chain of nodes which cannot start before the node completes, including the node itself.
+     * The execution queue has the successors of a node before the node, so walking it backwards visits the nodes waiting for a node before the node itself.
+     */
+    private void determineRemainingPathDurations(NodeDurationEstimator durationEstimator) {
+        remainingPathDurations.clear();
+        Map<Node, Long> longestWaitingPaths = Maps.newIdentityHashMap();
+        for (Node node : Lists.reverse(new ArrayList<>(executionQueue))) {
+            long remainingPathDuration = durationEstimator.estimateDurationMillis(node) + longestWaitingPaths.getOrDefault(node, 0L);
+            remainingPathDurations.put(node, remainingPathDuration);
+            for (Node successor : node.getAllSuccessors()) {
+                longestWaitingPaths.merge(successor, remainingPathDuration, Math::max);
+            }
+        }
+    }
+
     private void maybeRemoveProcessedShouldRunAfterEdge(Deque<GraphEdge> walkedShouldRunAfterEdges, Node node) {
         GraphEdge edge = walkedShouldRunAfterEdges.peek();
         if (edge != null && edge.to.equals(node)) {
@@ -469,12 +521,18 @@ public void clear() {
         entryNodes.clear();
         nodeMapping.clear();
         executionQueue.clear();
+        queuePositions.clear();
+        readyNodes.clear();
+        readyDestroyers.clear();
+        newlyReadyNodes.clear();
         projectLocks.clear();
         failureCollector.clearFailures();
         producedButNotYetConsumed.clear();
         reachableCache.clear();
         dependenciesWhichRequireMonitoring.clear();
+        remainingPathDurations.clear();
         runningNodes.clear();
+        runningMutationPaths.clear();
     }
 
     @Override
@@ -521,36 +579,94 @@ public Node selectNext(WorkerLeaseRegistry.WorkerLease workerLease, ResourceLock
                 iterator.remove();
             }
         }
-        if (!maybeNodesReady) {
-            return null;
-        }
-        Iterator<Node> iterator = executionQueue.iterator();
-        boolean foundReadyNode = false;
-        while (iterator.hasNext()) {
-            Node node = iterator.next();
-            if (node.isReady() && node.allDependenciesComplete()) {
-                foundReadyNode = true;
-                MutationInfo mutations = getResolvedMutationInfo(node);
-
-                if (!tryAcquireLocksForNode(node, workerLease, mutations)) {
-                    resourceLockState.releaseLocks();
-                    continue;
-                }
+        addNewlyReadyNodes();
+        removeStaleReadyDestroyers();
 
-                if (node.allDependenciesSuccessful()) {
-                    node.startExecution(this::recordNodeExecutionStarted);
-                } else {
-                    node.skipExecution(this::recordNodeCompleted);
-                }
+        Node firstReadyDestroyer = readyDestroyers.isEmpty() ? null : readyDestroyers.first();
+        for (Iterator<Node> iterator = readyNodes.iterator(); iterator.hasNext();) {
+            Node node = iterator.next();
+            if (!node.isReady() || !node.allDependenciesComplete()) {
+                iterator.remove();
+                readyDestroyers.remove(node);
+                continue;
+            }
+            if (firstReadyDestroyer != null && !isQueuedBefore(node, firstReadyDestroyer)) {
+                continue;
+            }
+            if (tryStartOrSkipExecution(node, workerLease, resourceLockState)) {
                 iterator.remove();
                 return node;
             }
         }
-        LOGGER.debug("No node could be selected, nodes ready: {}", foundReadyNode);
-        maybeNodesReady = foundReadyNode;
+        if (firstReadyDestroyer != null) {
+            // No node may overtake a ready destroyer, so try it and all the ready nodes after it in the order of the execution queue
+            List<Node> nodesFromFirstReadyDestroyer = new ArrayList<>(readyNodes);
+            nodesFromFirstReadyDestroyer.removeIf(node -> isQueuedBefore(node, firstReadyDestroyer));
+            nodesFromFirstReadyDestroyer.sort(Comparator.comparingInt(queuePositions::get));
+            for (Node node : nodesFromFirstReadyDestroyer) {
+                if (tryStartOrSkipExecution(node, workerLease, resourceLockState)) {
+                    readyNodes.remove(node);
+                    readyDestroyers.remove(node);
+                    return node;
+                }
+            }
+        }
+        LOGGER.debug("No node could be selected, nodes ready: {}", !readyNodes.isEmpty());
         return null;
     }
 
+    /**
+     * Moves the nodes whose dependencies completed since the last selection into the ready set.
+     *
+     * When nodes are prioritized by their remaining path, the mutations of the nodes are resolved here, to find the nodes which destroy files.
+     * Such nodes are only ordered relative to other nodes by the execution queue, e.g. for {@code gradle clean build}.
+     */
+    private void addNewlyReadyNodes() {
+        Node node;
+        while ((node = newlyReadyNodes.poll()) != null) {
+            if (!executionQueue.contains(node) || !node.isReady() || !node.allDependenciesComplete()) {
+                continue;
+            }
+            if (readyNodes.add(node) && durationEstimator != null && !getResolvedMutationInfo(node).destroyablePaths.isEmpty()) {
+                readyDestroyers.add(node);
+            }
+        }
+    }
+
+    private void removeStaleReadyDestroyers() {
+        while (!readyDestroyers.isEmpty()) {
+            Node destroyer = readyDestroyers.first();
+            if (destroyer.isReady() && destroyer.allDependenciesComplete()) {
+                return;
+            }
+            readyDestroyers.remove(destroyer);
+            readyNodes.remove(destroyer);
+        }
+    }
+
+    private boolean isQueuedBefore(Node node, Node other) {
+        return queuePositions.get(node) < queuePositions.get(other);
+    }
+
+    private boolean tryStartOrSkipExecution(Node node, WorkerLeaseRegistry.WorkerLease workerLease, ResourceLockState resourceLockState) {
+        MutationInfo mutations = getResolvedMutationInfo(node);
+        if (!tryAcquireLocksForNode(node, workerLease, mutations)) {
+            resourceLockState.releaseLocks();
+            return false;
+        }
+        executionQueue.remove(node);
+        startOrSkipExecution(node);
+        return true;
+    }
+
+    private void startOrSkipExecution(Node node) {
+        if (node.allDependenciesSuccessful()) {
+            node.startExecution(this::recordNodeExecutionStarted);
+        } else {
+            node.skipExecution(this::recordNodeCompleted);
+        }
+    }
+
     private boolean tryAcquireLocksForNode(Node node, WorkerLeaseRegistry.WorkerLease workerLease, MutationInfo mutations) {
         if (!tryLockProjectFor(node)) {
             LOGGER.debug("Cannot acquire project lock for node {}", node);
@@ -571,7 +687,9 @@ private boolean tryAcquireLocksForNode(Node node, WorkerLeaseRegistry.WorkerLeas
 
     private void updateAllDependenciesCompleteForPredecessors(Node node) {
         for (Node predecessor : node.getAllPredecessors()) {
-            maybeNodesReady |= predecessor.updateAllDependenciesComplete() && predecessor.isReady();
+            if (predecessor.updateAllDependenciesComplete() && predecessor.isReady()) {
+                newlyReadyNodes.add(predecessor);
+            }
         }
     }
 
@@ -633,13 +751,9 @@ private boolean canRunWithCurrentlyExecutedNodes(Node node, MutationInfo mutatio
     }
 
     private boolean hasNodeWithOverlappingMutations(Set<String> candidateMutationPaths) {
-        if (!candidateMutationPaths.isEmpty()) {
-            for (Node runningNode : runningNodes) {
-                MutationInfo runningMutations = runningNode.getMutationInfo();
-                Iterable<String> runningMutationPaths = Iterables.concat(runningMutations.outputPaths, runningMutations.destroyablePaths);
-                if (hasOverlap(candidateMutationPaths, runningMutationPaths)) {
-                    return true;
-                }
+        for (String candidateMutationPath : candidateMutationPaths) {
+            if (runningMutationPaths.containsOverlapping(candidateMutationPath)) {
+                return true;
             }
         }
         return false;
@@ -732,10 +846,21 @@ private static String getOverLappedPath(String firstPath, String secondPath) {
 
     private void recordNodeExecutionStarted(Node node) {
         runningNodes.add(node);
+        MutationInfo mutations = node.getMutationInfo();
+        mutations.outputPaths.forEach(runningMutationPaths::add);
+        mutations.destroyablePaths.forEach(runningMutationPaths::add);
+    }
+
+    private void recordNodeExecutionFinished(Node node) {
+        runningNodes.remove(node);
+        MutationInfo mutations = node.getMutationInfo();
+        mutations.outputPaths.forEach(runningMutationPaths::remove);
+        mutations.destroyablePaths.forEach(runningMutationPaths::remove);
     }
 
     private void recordNodeCompleted(Node node) {
         LOGGER.debug("Node {} completed, executed: {}", node, node.isExecuted());
+        executionQueue.remove(node);
         MutationInfo mutations = node.getMutationInfo();
         for (Node producer : node.getDependencySuccessors()) {
             MutationInfo producerMutations = producer.getMutationInfo();
@@ -756,7 +881,6 @@ public void finishedExecuting(Node node) {
         try {
             if (!node.isComplete()) {
                 enforceFinalizers(node);
-                maybeNodesReady = true;
                 if (node.isFailed()) {
                     LOGGER.debug("Node {} failed", node);
                     handleFailure(node);
@@ -764,7 +888,7 @@ public void finishedExecuting(Node node) {
                     LOGGER.debug("Node {} finished executing", node);
                 }
 
-                runningNodes.remove(node);
+                recordNodeExecutionFinished(node);
                 node.finishExecution(this::recordNodeCompleted);
             } else {
                 LOGGER.debug("Already completed node {} reported as finished executing", node);
@@ -775,11 +899,13 @@ public void finishedExecuting(Node node) {
         }
     }
 
-    private static void enforceFinalizers(Node node) {
+    private void enforceFinalizers(Node node) {
         for (Node finalizerNode : node.getFinalizers()) {
             if (finalizerNode.isRequired() || finalizerNode.isMustNotRun()) {
                 Set<Node> enforcedNodes = Sets.newHashSet();
                 enforceWithDependencies(finalizerNode, enforcedNodes);
+                // Nodes which must not run are not in the ready set, even when their dependencies are complete
+                newlyReadyNodes.addAll(enforcedNodes);
             }
         }
     }
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.plan;
+
+/**
+ * Estimates how long a node takes to execute, so that the execution plan can start the nodes on the longest remaining path first.
+ */
+public interface NodeDurationEstimator {
+    /**
+     * Gives every node the same weight, which makes the longest remaining path the one with the most nodes.
+     */
+    NodeDurationEstimator UNIFORM = node -> 1;
+
+    /**
+     * Returns the expected duration of the given node in milliseconds.
+     */
+    long estimateDurationMillis(Node node);
+}
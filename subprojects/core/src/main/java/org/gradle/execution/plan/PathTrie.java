@@ -0,0 +1,127 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.plan;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A multiset of absolute file paths, organized by their segments, so that the paths overlapping a given path can be found without looking at all the paths.
+ * Two paths overlap when they are the same, or when one of them is an ancestor of the other.
+ */
+class PathTrie {
+    private final Entry root = new Entry();
+
+    public void add(String path) {
+        Entry current = root;
+        int start = 0;
+        int end;
+        do {
+            end = segmentEnd(path, start);
+            current.descendants++;
+            current = current.children.computeIfAbsent(path.substring(start, end), segment -> new Entry());
+            start = end + 1;
+        } while (end < path.length());
+        current.count++;
+    }
+
+    /**
+     * Removes one occurrence of the given path, which must have been added before.
+     */
+    public void remove(String path) {
+        List<Entry> entries = new ArrayList<>();
+        List<String> segments = new ArrayList<>();
+        Entry current = root;
+        int start = 0;
+        int end;
+        do {
+            end = segmentEnd(path, start);
+            String segment = path.substring(start, end);
+            entries.add(current);
+            segments.add(segment);
+            current = current.children.get(segment);
+            if (current == null) {
+                return;
+            }
+            start = end + 1;
+        } while (end < path.length());
+        if (current.count == 0) {
+            return;
+        }
+
+        current.count--;
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            Entry parent = entries.get(i);
+            parent.descendants--;
+            if (current.count == 0 && current.descendants == 0) {
+                parent.children.remove(segments.get(i));
+            }
+            current = parent;
+        }
+    }
+
+    /**
+     * Returns whether the trie contains the given path, an ancestor of it or a descendant of it.
+     */
+    public boolean containsOverlapping(String path) {
+        Entry current = root;
+        int start = 0;
+        int end;
+        do {
+            end = segmentEnd(path, start);
+            current = current.children.get(path.substring(start, end));
+            if (current == null) {
+                return false;
+            }
+            start = end + 1;
+            if (end < path.length() && current.count > 0) {
+                // The trie contains an ancestor of the path
+                return true;
+            }
+        } while (end < path.length());
+        return current.count > 0 || current.descendants > 0;
+    }
+
+    public boolean isEmpty() {
+        return root.descendants == 0;
+    }
+
+    public void clear() {
+        root.children.clear();
+        root.descendants = 0;
+    }
+
+    private static int segmentEnd(String path, int start) {
+        int separator = path.indexOf(File.separatorChar, start);
+        return separator < 0 ? path.length() : separator;
+    }
+
+    private static class Entry {
+        private final Map<String, Entry> children = new HashMap<>(4);
+        /**
+         * The number of times the path ending at this entry has been added.
+         */
+        private int count;
+        /**
+         * The number of paths below this entry, counting each time a path has been added.
+         */
+        private int descendants;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.plan;
+
+import org.gradle.api.internal.tasks.execution.statistics.TaskTimingHistory;
+import org.gradle.api.internal.tasks.execution.statistics.TaskTimings;
+
+/**
+ * Estimates the duration of task nodes from how long the tasks took in recent builds.
+ *
+ * Every node counts for at least one millisecond, so nodes without history, such as new tasks or transforms, still make a path longer.
+ */
+public class TaskTimingHistoryDurationEstimator implements NodeDurationEstimator {
+    private final TaskTimingHistory history;
+
+    public TaskTimingHistoryDurationEstimator(TaskTimingHistory history) {
+        this.history = history;
+    }
+
+    @Override
+    public long estimateDurationMillis(Node node) {
+        if (node instanceof LocalTaskNode) {
+            TaskTimings timings = history.getTimings(((LocalTaskNode) node).getTask().getIdentityPath());
+            if (timings != null) {
+                return Math.max(1, timings.getEstimatedDurationMillis());
+            }
+        }
+        return 1;
+    }
+}
@@ -33,6 +33,7 @@
 import org.gradle.cache.internal.DefaultProcessMetaDataProvider;
 import org.gradle.cache.internal.locklistener.DefaultFileLockContentionHandler;
 import org.gradle.cache.internal.locklistener.FileLockContentionHandler;
+import org.gradle.cache.internal.locklistener.SharedMemoryFileLockContentionHandler;
 import org.gradle.internal.Factory;
 import org.gradle.internal.concurrent.DefaultExecutorFactory;
 import org.gradle.internal.concurrent.ExecutorFactory;
@@ -51,12 +52,21 @@
 import org.gradle.process.internal.ExecFactory;
 import org.gradle.process.internal.ExecHandleFactory;
 
+import java.io.File;
+
 /**
  * Defines the basic global services of a given process. This includes the Gradle CLI, daemon and tooling API provider. These services
  * should be as few as possible to keep the CLI startup fast. Global services that are only needed for the process running the build should go in
  * {@link GlobalScopeServices}.
  */
 public class BasicGlobalScopeServices {
+    /**
+     * When set to {@value #SHARED_MEMORY_FILE_LOCK_COORDINATION}, processes negotiate the release of contended cache locks through
+     * a memory-mapped file in the temporary directory instead of UDP messages. All processes sharing a cache need to use the same mode.
+     */
+    public static final String FILE_LOCK_COORDINATION_PROPERTY = "org.gradle.unsafe.file-lock-coordination";
+    public static final String SHARED_MEMORY_FILE_LOCK_COORDINATION = "shared-memory";
+
     void configure(ServiceRegistration serviceRegistration) {
         serviceRegistration.addProvider(new MessagingServices());
     }
@@ -69,7 +79,11 @@ FileLockManager createFileLockManager(ProcessEnvironment processEnvironment, Fil
     }
 
 
-    DefaultFileLockContentionHandler createFileLockContentionHandler(ExecutorFactory executorFactory, InetAddressFactory inetAddressFactory) {
+    FileLockContentionHandler createFileLockContentionHandler(ExecutorFactory executorFactory, InetAddressFactory inetAddressFactory) {
+        if (SHARED_MEMORY_FILE_LOCK_COORDINATION.equals(System.getProperty(FILE_LOCK_COORDINATION_PROPERTY))) {
+            File coordinationFile = new File(System.getProperty("java.io.tmpdir"), "gradle-file-lock-coordination-" + System.getProperty("user.name") + ".bin");
+            return new SharedMemoryFileLockContentionHandler(coordinationFile, executorFactory);
+        }
         return new DefaultFileLockContentionHandler(
             executorFactory,
             inetAddressFactory);
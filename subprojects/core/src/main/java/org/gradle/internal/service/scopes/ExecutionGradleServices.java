@@ -41,6 +41,7 @@
 import org.gradle.internal.execution.history.changes.ExecutionStateChangeDetector;
 import org.gradle.internal.execution.history.impl.DefaultExecutionHistoryStore;
 import org.gradle.internal.execution.history.impl.DefaultOutputFilesRepository;
+import org.gradle.internal.execution.history.impl.ExecutionHistoryLoadExecutor;
 import org.gradle.internal.execution.impl.DefaultWorkExecutor;
 import org.gradle.internal.execution.steps.BroadcastChangingOutputsStep;
 import org.gradle.internal.execution.steps.CacheStep;
@@ -77,10 +78,16 @@
 import org.gradle.util.GradleVersion;
 
 import java.util.Collections;
+import java.util.concurrent.Executor;
 
 import static org.gradle.cache.internal.filelock.LockOptionsBuilder.mode;
 
 public class ExecutionGradleServices {
+    /**
+     * Loads the previous execution state of work in the background while its inputs and outputs are being snapshotted.
+     */
+    public static final String SPECULATIVE_STATE_LOADING_PROPERTY = "org.gradle.unsafe.execution.speculative-state-loading";
+
     ExecutionHistoryCacheAccess createCacheAccess(Gradle gradle, CacheRepository cacheRepository, InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory) {
         return new DefaultExecutionHistoryCacheAccess(gradle, cacheRepository, inMemoryCacheDecoratorFactory);
     }
@@ -121,6 +128,10 @@ PlanExecutor createPlanExecutor(
         );
     }
 
+    ExecutionHistoryLoadExecutor createExecutionHistoryLoadExecutor(ExecutorFactory executorFactory, ParallelismConfigurationManager parallelismConfigurationManager) {
+        return new ExecutionHistoryLoadExecutor(executorFactory, parallelismConfigurationManager.getParallelismConfiguration().getMaxWorkerCount());
+    }
+
     OutputChangeListener createOutputChangeListener(ListenerManager listenerManager) {
         return listenerManager.getBroadcaster(OutputChangeListener.class);
     }
@@ -134,6 +145,7 @@ public WorkExecutor<ExecutionRequestContext, CachingResult> createWorkExecutor(
         BuildScanPluginApplied buildScanPlugin,
         ClassLoaderHierarchyHasher classLoaderHierarchyHasher,
         Deleter deleter,
+        ExecutionHistoryLoadExecutor executionHistoryLoadExecutor,
         ExecutionStateChangeDetector changeDetector,
         OutputChangeListener outputChangeListener,
         OutputFilesRepository outputFilesRepository,
@@ -142,13 +154,14 @@ public WorkExecutor<ExecutionRequestContext, CachingResult> createWorkExecutor(
         ValidateStep.ValidationWarningReporter validationWarningReporter,
         ValueSnapshotter valueSnapshotter
     ) {
+        Executor stateLoadExecutor = Boolean.getBoolean(SPECULATIVE_STATE_LOADING_PROPERTY) ? executionHistoryLoadExecutor : null;
         // @formatter:off
         return new DefaultWorkExecutor<>(
-            new LoadExecutionStateStep<>(
+            new LoadExecutionStateStep<>(stateLoadExecutor,
             new MarkSnapshottingInputsStartedStep<>(
             new SkipEmptyWorkStep<>(
             new ValidateStep<>(validationWarningReporter,
-            new CaptureStateBeforeExecutionStep(buildOperationExecutor, classLoaderHierarchyHasher, valueSnapshotter, overlappingOutputDetector,
+            new CaptureStateBeforeExecutionStep(buildOperationExecutor, classLoaderHierarchyHasher, valueSnapshotter, overlappingOutputDetector, stateLoadExecutor != null,
             new ResolveCachingStateStep(buildCacheController, buildScanPlugin.isBuildScanPluginApplied(),
             new MarkSnapshottingInputsFinishedStep<>(
             new ResolveChangesStep<>(changeDetector,
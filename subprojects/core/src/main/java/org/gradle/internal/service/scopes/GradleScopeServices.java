@@ -30,6 +30,8 @@
 import org.gradle.api.internal.plugins.PluginTarget;
 import org.gradle.api.internal.project.ProjectInternal;
 import org.gradle.api.internal.project.ProjectStateRegistry;
+import org.gradle.api.internal.tasks.execution.statistics.DefaultTaskTimingHistory;
+import org.gradle.api.internal.tasks.execution.statistics.TaskTimingHistory;
 import org.gradle.api.internal.tasks.options.OptionReader;
 import org.gradle.api.invocation.Gradle;
 import org.gradle.api.services.internal.BuildServiceRegistryInternal;
@@ -63,11 +65,13 @@
 import org.gradle.execution.commandline.CommandLineTaskParser;
 import org.gradle.execution.plan.DependencyResolver;
 import org.gradle.execution.plan.LocalTaskNodeExecutor;
+import org.gradle.execution.plan.NodeDurationEstimator;
 import org.gradle.execution.plan.NodeExecutor;
 import org.gradle.execution.plan.PlanExecutor;
 import org.gradle.execution.plan.TaskDependencyResolver;
 import org.gradle.execution.plan.TaskNodeDependencyResolver;
 import org.gradle.execution.plan.TaskNodeFactory;
+import org.gradle.execution.plan.TaskTimingHistoryDurationEstimator;
 import org.gradle.execution.plan.WorkNodeDependencyResolver;
 import org.gradle.execution.plan.WorkNodeExecutor;
 import org.gradle.execution.taskgraph.DefaultTaskExecutionGraph;
@@ -89,6 +93,7 @@
 import org.gradle.internal.logging.LoggingManagerInternal;
 import org.gradle.internal.logging.text.StyledTextOutputFactory;
 import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.BuildOperationListenerManager;
 import org.gradle.internal.reflect.Instantiator;
 import org.gradle.internal.resources.ResourceLockCoordinationService;
 import org.gradle.internal.resources.SharedResourceLeaseRegistry;
@@ -115,6 +120,12 @@
  */
 public class GradleScopeServices extends DefaultServiceRegistry {
 
+    /**
+     * Starts the ready nodes of the execution plan with the longest remaining path first, instead of in the order of the execution queue.
+     * The length of a path is estimated from how long its tasks took in recent builds.
+     */
+    public static final String CRITICAL_PATH_SCHEDULING_PROPERTY = "org.gradle.unsafe.execution.critical-path-scheduling";
+
     private final CompositeStoppable registries = new CompositeStoppable();
 
     public GradleScopeServices(final ServiceRegistry parent, final GradleInternal gradle) {
@@ -245,7 +256,10 @@ TaskExecutionGraphInternal createTaskExecutionGraph(
         ProjectStateRegistry projectStateRegistry,
         ServiceRegistry gradleScopedServices
     ) {
-        return new DefaultTaskExecutionGraph(planExecutor, nodeExecutors, buildOperationExecutor, listenerBuildOperationDecorator, coordinationService, gradleInternal, taskNodeFactory, dependencyResolver, graphListeners, taskListeners, projectStateRegistry, gradleScopedServices);
+        NodeDurationEstimator durationEstimator = Boolean.getBoolean(CRITICAL_PATH_SCHEDULING_PROPERTY)
+            ? new TaskTimingHistoryDurationEstimator(gradleScopedServices.get(TaskTimingHistory.class))
+            : null;
+        return new DefaultTaskExecutionGraph(planExecutor, nodeExecutors, buildOperationExecutor, listenerBuildOperationDecorator, coordinationService, gradleInternal, taskNodeFactory, dependencyResolver, graphListeners, taskListeners, projectStateRegistry, gradleScopedServices, durationEstimator);
     }
 
     ServiceRegistryFactory createServiceRegistryFactory(final ServiceRegistry services) {
@@ -289,6 +303,17 @@ protected ConfigurationTargetIdentifier createConfigurationTargetIdentifier(Grad
         return ConfigurationTargetIdentifier.of(gradle);
     }
 
+    // Note: This would be better housed in a scope that encapsulated the tree of Gradle objects.
+    // as we don't have this right now we simulate it by reaching up the tree.
+    protected TaskTimingHistory createTaskTimingHistory(GradleInternal gradle, CacheRepository cacheRepository, BuildOperationListenerManager buildOperationListenerManager) {
+        if (gradle.getParent() == null) {
+            return new DefaultTaskTimingHistory(gradle, cacheRepository, buildOperationListenerManager);
+        } else {
+            // Don't hand out the root build's instance itself, as this registry would close it at the end of this build
+            return gradle.getRoot().getServices().get(TaskTimingHistory.class)::getTimings;
+        }
+    }
+
     // Note: This would be better housed in a scope that encapsulated the tree of Gradle objects.
     // as we don't have this right now we simulate it by reaching up the tree.
     protected BuildInvocationScopeId createBuildScopeId(GradleInternal gradle) {
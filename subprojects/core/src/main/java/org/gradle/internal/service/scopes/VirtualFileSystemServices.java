@@ -42,8 +42,14 @@
 import org.gradle.cache.internal.InMemoryCacheDecoratorFactory;
 import org.gradle.cache.internal.VersionStrategy;
 import org.gradle.initialization.RootBuildLifecycleListener;
+import org.gradle.initialization.layout.BuildLayout;
+import org.gradle.initialization.layout.BuildLayoutConfiguration;
+import org.gradle.initialization.layout.BuildLayoutFactory;
 import org.gradle.initialization.layout.ProjectCacheDir;
+import org.gradle.internal.build.BuildStateRegistry;
+import org.gradle.internal.build.IncludedBuildState;
 import org.gradle.internal.classloader.ClasspathHasher;
+import org.gradle.internal.concurrent.ParallelismConfigurationManager;
 import org.gradle.internal.event.ListenerManager;
 import org.gradle.internal.execution.OutputChangeListener;
 import org.gradle.internal.file.PathToFileResolver;
@@ -69,13 +75,21 @@
 import org.gradle.internal.hash.HashCode;
 import org.gradle.internal.hash.StreamHasher;
 import org.gradle.internal.nativeintegration.filesystem.FileSystem;
+import org.gradle.internal.os.OperatingSystem;
 import org.gradle.internal.serialize.HashCodeSerializer;
 import org.gradle.internal.service.ServiceRegistration;
+import org.gradle.internal.snapshot.impl.DirectorySnapshotterParallelism;
+import org.gradle.internal.snapshot.impl.UnchangedSnapshotCollector;
+import org.gradle.internal.vfs.CompleteFileSystemLocationSnapshotSerializer;
+import org.gradle.internal.vfs.DefaultDirectorySnapshotterParallelism;
 import org.gradle.internal.vfs.RoutingVirtualFileSystem;
 import org.gradle.internal.vfs.VirtualFileSystem;
+import org.gradle.internal.vfs.VirtualFileSystemStateStore;
 import org.gradle.internal.vfs.WatchingVirtualFileSystem;
 import org.gradle.internal.vfs.impl.DefaultVirtualFileSystem;
 import org.gradle.internal.vfs.impl.DefaultWatchingVirtualFileSystem;
+import org.gradle.internal.vfs.watch.FileWatcherRegistryFactory;
+import org.gradle.internal.vfs.watch.impl.FileTreeWatcherRegistryFactory;
 import org.gradle.internal.vfs.watch.impl.JdkFileWatcherRegistryFactory;
 import org.gradle.util.SingleMessageLogger;
 import org.slf4j.Logger;
@@ -85,6 +99,8 @@
 import java.io.File;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -123,6 +139,21 @@ public class VirtualFileSystemServices extends AbstractPluginServiceRegistry {
      */
     public static final String VFS_DROP_PROPERTY = "org.gradle.unsafe.vfs.drop";
 
+    /**
+     * When retention is enabled, this system property can be used to persist the VFS state to disk,
+     * so it can be restored after a daemon restart without hashing the known files again.
+     *
+     * @see #VFS_RETENTION_ENABLED_PROPERTY
+     */
+    public static final String VFS_PERSISTENCE_ENABLED_PROPERTY = "org.gradle.unsafe.vfs.persistence";
+
+    /**
+     * System property to enable walking and hashing directory trees in parallel when snapshotting them.
+     *
+     * The number of threads used is bounded by the maximum number of workers.
+     */
+    public static final String VFS_PARALLEL_SNAPSHOTTING_PROPERTY = "org.gradle.unsafe.vfs.parallel-snapshotting";
+
     public static boolean isPartialInvalidationEnabled(Map<String, String> systemPropertiesArgs) {
         return getSystemProperty(VFS_PARTIAL_INVALIDATION_ENABLED_PROPERTY, systemPropertiesArgs) != null
             || isRetentionEnabled(systemPropertiesArgs);
@@ -132,6 +163,15 @@ public static boolean isRetentionEnabled(Map<String, String> systemPropertiesArg
         return getSystemProperty(VFS_RETENTION_ENABLED_PROPERTY, systemPropertiesArgs) != null;
     }
 
+    public static boolean isPersistenceEnabled(Map<String, String> systemPropertiesArgs) {
+        return isRetentionEnabled(systemPropertiesArgs)
+            && getSystemProperty(VFS_PERSISTENCE_ENABLED_PROPERTY, systemPropertiesArgs) != null;
+    }
+
+    public static boolean isParallelSnapshottingEnabled(Map<String, String> systemPropertiesArgs) {
+        return getSystemProperty(VFS_PARALLEL_SNAPSHOTTING_PROPERTY, systemPropertiesArgs) != null;
+    }
+
     public static List<File> getChangedPathsSinceLastBuild(PathToFileResolver resolver, Map<String, String> systemPropertiesArgs) {
         String changeList = getSystemProperty(VFS_CHANGES_SINCE_LAST_BUILD_PROPERTY, systemPropertiesArgs);
         if (changeList == null) {
@@ -144,6 +184,29 @@ public static List<File> getChangedPathsSinceLastBuild(PathToFileResolver resolv
     }
 
     @Nullable
+    /**
+     * Uses native recursive watches where the JDK supports them, and a watch per directory everywhere else.
+     */
+    public static FileWatcherRegistryFactory createFileWatcherRegistryFactory(OperatingSystem operatingSystem) {
+        return operatingSystem.isWindows()
+            ? new FileTreeWatcherRegistryFactory()
+            : new JdkFileWatcherRegistryFactory();
+    }
+
+    private static File buildRootDirectory(GradleInternal gradle) {
+        BuildLayout buildLayout = gradle.getServices().get(BuildLayoutFactory.class)
+            .getLayoutFor(new BuildLayoutConfiguration(gradle.getStartParameter()));
+        return buildLayout.getRootDirectory();
+    }
+
+    private static List<File> buildRootDirectories(GradleInternal gradle) {
+        return Stream.concat(
+            Stream.of(buildRootDirectory(gradle)),
+            gradle.getServices().get(BuildStateRegistry.class).getIncludedBuilds().stream()
+                .map(IncludedBuildState::getRootDirectory)
+        ).collect(Collectors.toList());
+    }
+
     private static String getSystemProperty(String systemProperty, Map<String, String> systemPropertiesArgs) {
         return systemPropertiesArgs.getOrDefault(systemProperty, System.getProperty(systemProperty));
     }
@@ -156,27 +219,57 @@ CrossBuildFileHashCache createCrossBuildFileHashCache(CacheRepository cacheRepos
                 return new CrossBuildFileHashCache(null, cacheRepository, inMemoryCacheDecoratorFactory);
             }
 
-            FileHasher createCachingFileHasher(StringInterner stringInterner, CrossBuildFileHashCache fileStore, FileSystem fileSystem, GlobalScopeFileTimeStampInspector fileTimeStampInspector, StreamHasher streamHasher) {
-                CachingFileHasher fileHasher = new CachingFileHasher(new DefaultFileHasher(streamHasher), fileStore, stringInterner, fileTimeStampInspector, "fileHashes", fileSystem);
+            FileHasher createCachingFileHasher(StringInterner stringInterner, CrossBuildFileHashCache fileStore, FileSystem fileSystem, GlobalScopeFileTimeStampInspector fileTimeStampInspector, StreamHasher streamHasher, WellKnownFileLocations wellKnownFileLocations) {
+                // Only files in immutable locations are safe to memory map, as they are never truncated while being hashed
+                DefaultFileHasher hasher = new DefaultFileHasher(streamHasher, file -> wellKnownFileLocations.isImmutable(file.getPath()));
+                CachingFileHasher fileHasher = new CachingFileHasher(hasher, fileStore, stringInterner, fileTimeStampInspector, "fileHashes", fileSystem);
                 fileTimeStampInspector.attach(fileHasher);
                 return fileHasher;
             }
 
+            DefaultDirectorySnapshotterParallelism createDirectorySnapshotterParallelism(ParallelismConfigurationManager parallelismConfigurationManager, ListenerManager listenerManager) {
+                DefaultDirectorySnapshotterParallelism directorySnapshotterParallelism = new DefaultDirectorySnapshotterParallelism(parallelismConfigurationManager);
+                listenerManager.addListener(new RootBuildLifecycleListener() {
+                    @Override
+                    public void afterStart(GradleInternal gradle) {
+                        directorySnapshotterParallelism.setEnabled(isParallelSnapshottingEnabled(gradle.getStartParameter().getSystemPropertiesArgs()));
+                    }
+
+                    @Override
+                    public void beforeComplete(GradleInternal gradle) {
+                    }
+                });
+                return directorySnapshotterParallelism;
+            }
+
+            VirtualFileSystemStateStore createVirtualFileSystemStateStore(CacheRepository cacheRepository, Stat stat, StringInterner stringInterner) {
+                return new VirtualFileSystemStateStore(
+                    cacheRepository,
+                    new CompleteFileSystemLocationSnapshotSerializer(stringInterner),
+                    new UnchangedSnapshotCollector(stat, DirectoryScanner.getDefaultExcludes())
+                );
+            }
+
             VirtualFileSystem createVirtualFileSystem(
+                DirectorySnapshotterParallelism directorySnapshotterParallelism,
                 FileHasher hasher,
                 FileSystem fileSystem,
                 ListenerManager listenerManager,
+                OperatingSystem operatingSystem,
                 Stat stat,
                 StringInterner stringInterner,
+                VirtualFileSystemStateStore stateStore,
                 WellKnownFileLocations wellKnownFileLocations
             ) {
+                Set<File> buildRootsWithLoadedState = ConcurrentHashMap.newKeySet();
                 WatchingVirtualFileSystem virtualFileSystem = new DefaultWatchingVirtualFileSystem(
-                    new JdkFileWatcherRegistryFactory(),
+                    createFileWatcherRegistryFactory(operatingSystem),
                     new DefaultVirtualFileSystem(
                         hasher,
                         stringInterner,
                         stat,
                         fileSystem.isCaseSensitive() ? CASE_SENSITIVE : CASE_INSENSITIVE,
+                        directorySnapshotterParallelism,
                         DirectoryScanner.getDefaultExcludes()
                     ),
                     path -> !wellKnownFileLocations.isImmutable(path.toString())
@@ -188,6 +281,12 @@ public void afterStart(GradleInternal gradle) {
                         Map<String, String> systemPropertiesArgs = startParameter.getSystemPropertiesArgs();
                         if (isRetentionEnabled(systemPropertiesArgs)) {
                             SingleMessageLogger.incubatingFeatureUsed("Virtual file system retention");
+                            if (isPersistenceEnabled(systemPropertiesArgs)) {
+                                File buildRootDirectory = buildRootDirectory(gradle);
+                                if (buildRootsWithLoadedState.add(buildRootDirectory)) {
+                                    stateStore.load(virtualFileSystem, buildRootDirectory);
+                                }
+                            }
                             FileResolver fileResolver = new BaseDirFileResolver(startParameter.getCurrentDir(), () -> {
                                 throw new UnsupportedOperationException();
                             });
@@ -215,8 +314,12 @@ public void afterStart(GradleInternal gradle) {
 
                     @Override
                     public void beforeComplete(GradleInternal gradle) {
-                        if (isRetentionEnabled(gradle.getStartParameter().getSystemPropertiesArgs())) {
-                            virtualFileSystem.startWatching();
+                        Map<String, String> systemPropertiesArgs = gradle.getStartParameter().getSystemPropertiesArgs();
+                        if (isRetentionEnabled(systemPropertiesArgs)) {
+                            if (isPersistenceEnabled(systemPropertiesArgs)) {
+                                stateStore.store(virtualFileSystem, buildRootDirectory(gradle));
+                            }
+                            virtualFileSystem.startWatching(buildRootDirectories(gradle));
                         } else {
                             virtualFileSystem.invalidateAll();
                         }
@@ -265,6 +368,7 @@ FileHasher createFileHasher(FileHasher globalHasher, CrossBuildFileHashCache cac
             }
 
             VirtualFileSystem createVirtualFileSystem(
+                DirectorySnapshotterParallelism directorySnapshotterParallelism,
                 FileHasher hasher,
                 ListenerManager listenerManager,
                 StartParameter startParameter,
@@ -279,6 +383,7 @@ VirtualFileSystem createVirtualFileSystem(
                     stringInterner,
                     stat,
                     fileSystem.isCaseSensitive() ? CASE_SENSITIVE : CASE_INSENSITIVE,
+                    directorySnapshotterParallelism,
                     DirectoryScanner.getDefaultExcludes()
                 );
                 RoutingVirtualFileSystem routingVirtualFileSystem = new RoutingVirtualFileSystem(
@@ -37,6 +37,7 @@
 import org.gradle.internal.file.Deleter;
 import org.gradle.internal.file.impl.DefaultDeleter;
 import org.gradle.internal.hash.DefaultStreamHasher;
+import org.gradle.internal.hash.Hashing;
 import org.gradle.internal.hash.StreamHasher;
 import org.gradle.internal.instantiation.InstantiatorFactory;
 import org.gradle.internal.logging.events.OutputEventListener;
@@ -101,8 +102,9 @@ FilePropertyFactory createFilePropertyFactory(FileResolver fileResolver, FileCol
         return new DefaultFilePropertyFactory(fileResolver, fileCollectionFactory);
     }
 
-    StreamHasher createStreamHasher() {
-        return new DefaultStreamHasher();
+    StreamHasher createStreamHasher(OperatingSystem os) {
+        // Mapped files cannot be deleted on Windows until the mapping is garbage collected
+        return new DefaultStreamHasher(Hashing.contentFunction(), !os.isWindows());
     }
 
     TemporaryFileProvider createTemporaryFileProvider() {
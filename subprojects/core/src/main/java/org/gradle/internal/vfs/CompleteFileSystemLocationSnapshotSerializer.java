@@ -0,0 +1,126 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.vfs;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Interner;
+import org.gradle.internal.file.FileType;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.serialize.AbstractSerializer;
+import org.gradle.internal.serialize.Decoder;
+import org.gradle.internal.serialize.Encoder;
+import org.gradle.internal.serialize.HashCodeSerializer;
+import org.gradle.internal.snapshot.CompleteDirectorySnapshot;
+import org.gradle.internal.snapshot.CompleteFileSystemLocationSnapshot;
+import org.gradle.internal.snapshot.FileMetadata;
+import org.gradle.internal.snapshot.MissingFileSnapshot;
+import org.gradle.internal.snapshot.RegularFileSnapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Serializes a complete snapshot including all of its descendants.
+ *
+ * Only the root stores its absolute path, descendants only store their name.
+ * Directory hashes are stored as well, so the Merkle tree doesn't need to be recalculated when reading.
+ */
+public class CompleteFileSystemLocationSnapshotSerializer extends AbstractSerializer<CompleteFileSystemLocationSnapshot> {
+    private static final byte REGULAR_FILE = 0;
+    private static final byte DIRECTORY = 1;
+    private static final byte MISSING = 2;
+
+    private final HashCodeSerializer hashCodeSerializer = new HashCodeSerializer();
+    private final Interner<String> stringInterner;
+
+    public CompleteFileSystemLocationSnapshotSerializer(Interner<String> stringInterner) {
+        this.stringInterner = stringInterner;
+    }
+
+    @Override
+    public CompleteFileSystemLocationSnapshot read(Decoder decoder) throws IOException {
+        String absolutePath = stringInterner.intern(decoder.readString());
+        String name = stringInterner.intern(decoder.readString());
+        return read(decoder, absolutePath, name);
+    }
+
+    private CompleteFileSystemLocationSnapshot read(Decoder decoder, String absolutePath, String name) throws IOException {
+        byte type = decoder.readByte();
+        switch (type) {
+            case REGULAR_FILE:
+                HashCode contentHash = hashCodeSerializer.read(decoder);
+                FileMetadata metadata = new FileMetadata(decoder.readLong(), decoder.readLong());
+                return new RegularFileSnapshot(absolutePath, name, contentHash, metadata);
+            case DIRECTORY:
+                HashCode directoryHash = hashCodeSerializer.read(decoder);
+                int childCount = decoder.readSmallInt();
+                ImmutableList.Builder<CompleteFileSystemLocationSnapshot> children = ImmutableList.builderWithExpectedSize(childCount);
+                for (int i = 0; i < childCount; i++) {
+                    String childName = stringInterner.intern(decoder.readString());
+                    String childPath = stringInterner.intern(childPath(absolutePath, childName));
+                    children.add(read(decoder, childPath, childName));
+                }
+                return new CompleteDirectorySnapshot(absolutePath, name, children.build(), directoryHash);
+            case MISSING:
+                return new MissingFileSnapshot(absolutePath, name);
+            default:
+                throw new IllegalStateException("Unknown snapshot type: " + type);
+        }
+    }
+
+    @Override
+    public void write(Encoder encoder, CompleteFileSystemLocationSnapshot snapshot) throws IOException {
+        encoder.writeString(snapshot.getAbsolutePath());
+        encoder.writeString(snapshot.getName());
+        writeContents(encoder, snapshot);
+    }
+
+    private void writeContents(Encoder encoder, CompleteFileSystemLocationSnapshot snapshot) throws IOException {
+        FileType type = snapshot.getType();
+        switch (type) {
+            case RegularFile:
+                RegularFileSnapshot regularFile = (RegularFileSnapshot) snapshot;
+                encoder.writeByte(REGULAR_FILE);
+                hashCodeSerializer.write(encoder, regularFile.getHash());
+                encoder.writeLong(regularFile.getMetadata().getSize());
+                encoder.writeLong(regularFile.getMetadata().getLastModified());
+                break;
+            case Directory:
+                List<CompleteFileSystemLocationSnapshot> children = ((CompleteDirectorySnapshot) snapshot).getChildren();
+                encoder.writeByte(DIRECTORY);
+                hashCodeSerializer.write(encoder, snapshot.getHash());
+                encoder.writeSmallInt(children.size());
+                for (CompleteFileSystemLocationSnapshot child : children) {
+                    encoder.writeString(child.getName());
+                    writeContents(encoder, child);
+                }
+                break;
+            case Missing:
+                encoder.writeByte(MISSING);
+                break;
+            default:
+                throw new AssertionError("Unknown file type: " + type);
+        }
+    }
+
+    private static String childPath(String parentPath, String childName) {
+        return parentPath.endsWith(File.separator)
+            ? parentPath + childName
+            : parentPath + File.separatorChar + childName;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.vfs;
+
+import org.gradle.concurrent.ParallelismConfiguration;
+import org.gradle.internal.concurrent.ParallelismConfigurationManager;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.snapshot.impl.DirectorySnapshotterParallelism;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Snapshots directories in a fork-join pool sized by the maximum number of workers, when enabled for the current build.
+ *
+ * The pool is re-created when the maximum number of workers changes. A replaced pool is shut down, which lets snapshotting already running in it finish.
+ */
+public class DefaultDirectorySnapshotterParallelism implements DirectorySnapshotterParallelism, Stoppable {
+    private final ParallelismConfigurationManager parallelismConfigurationManager;
+    private volatile boolean enabled;
+    private ForkJoinPool forkJoinPool;
+
+    public DefaultDirectorySnapshotterParallelism(ParallelismConfigurationManager parallelismConfigurationManager) {
+        this.parallelismConfigurationManager = parallelismConfigurationManager;
+    }
+
+    /**
+     * Enables or disables parallel snapshotting, as configured for the build which is about to start.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Nullable
+    @Override
+    public synchronized ForkJoinPool getForkJoinPool() {
+        if (!enabled) {
+            return null;
+        }
+        ParallelismConfiguration parallelismConfiguration = parallelismConfigurationManager.getParallelismConfiguration();
+        int maxWorkerCount = Math.max(1, parallelismConfiguration.getMaxWorkerCount());
+        if (forkJoinPool == null || forkJoinPool.getParallelism() != maxWorkerCount) {
+            if (forkJoinPool != null) {
+                forkJoinPool.shutdown();
+            }
+            forkJoinPool = new ForkJoinPool(maxWorkerCount);
+        }
+        return forkJoinPool;
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (forkJoinPool != null) {
+            forkJoinPool.shutdown();
+            forkJoinPool = null;
+        }
+    }
+}
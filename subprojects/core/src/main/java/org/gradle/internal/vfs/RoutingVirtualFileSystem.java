@@ -63,6 +63,7 @@ public void read(String location, SnapshottingFilter filter, Consumer<CompleteFi
     @Override
     public void update(Iterable<String> locations, Runnable action) {
         if (Iterables.isEmpty(locations)) {
+            action.run();
             return;
         }
         if (vfsRetained.getAsBoolean()) {
@@ -76,8 +77,8 @@ public void update(Iterable<String> locations, Runnable action) {
                 gradleUserHomeVirtualFileSystem.update(locations, action);
             } else {
                 Iterable<String> mutableLocations = Iterables.filter(locations, location -> !gradleUserHomeFileLocations.isImmutable(location));
-                gradleUserHomeVirtualFileSystem.update(immutableLocations, action);
-                buildScopedVirtualFileSystem.update(mutableLocations, action);
+                // Invalidate the locations in both file systems before running the action once
+                gradleUserHomeVirtualFileSystem.update(immutableLocations, () -> buildScopedVirtualFileSystem.update(mutableLocations, action));
             }
         }
     }
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.vfs;
+
+import org.gradle.cache.CacheRepository;
+import org.gradle.cache.FileLockManager;
+import org.gradle.cache.PersistentCache;
+import org.gradle.internal.hash.Hashing;
+import org.gradle.internal.serialize.Serializer;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+import org.gradle.internal.snapshot.CompleteFileSystemLocationSnapshot;
+import org.gradle.internal.snapshot.impl.UnchangedSnapshotCollector;
+import org.gradle.internal.time.Time;
+import org.gradle.internal.time.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.gradle.cache.internal.filelock.LockOptionsBuilder.mode;
+
+/**
+ * Persists the snapshots of a {@link WatchingVirtualFileSystem} to disk, so they survive daemon restarts.
+ *
+ * When loading, the snapshots are only validated by checking file metadata and directory entries,
+ * so files don't need to be hashed again. Only the parts of the snapshots which are still up-to-date are restored.
+ *
+ * The state is kept per build root directory, so builds of different projects sharing the Gradle user home don't overwrite each other's state.
+ */
+public class VirtualFileSystemStateStore implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualFileSystemStateStore.class);
+
+    private static final String CACHE_KEY = "vfs";
+    private static final String STATE_FILE_PREFIX = "vfs-state-";
+    private static final String STATE_FILE_SUFFIX = ".bin";
+    private static final int FORMAT_VERSION = 1;
+
+    private final CacheRepository cacheRepository;
+    private final Serializer<CompleteFileSystemLocationSnapshot> snapshotSerializer;
+    private final UnchangedSnapshotCollector unchangedSnapshotCollector;
+    private PersistentCache cache;
+    /**
+     * The roots which are known to be on disk, per build root directory. Snapshots are immutable, so unchanged roots are the same instances.
+     */
+    private final Map<File, List<CompleteFileSystemLocationSnapshot>> persistedRoots = new ConcurrentHashMap<>();
+
+    public VirtualFileSystemStateStore(CacheRepository cacheRepository, Serializer<CompleteFileSystemLocationSnapshot> snapshotSerializer, UnchangedSnapshotCollector unchangedSnapshotCollector) {
+        this.cacheRepository = cacheRepository;
+        this.snapshotSerializer = snapshotSerializer;
+        this.unchangedSnapshotCollector = unchangedSnapshotCollector;
+    }
+
+    /**
+     * Writes the current state of the virtual file system to disk for the given build,
+     * unless it didn't change since it was last stored or loaded for that build.
+     */
+    public void store(WatchingVirtualFileSystem virtualFileSystem, File buildRootDirectory) {
+        Timer timer = Time.startTimer();
+        List<CompleteFileSystemLocationSnapshot> roots = collectRoots(virtualFileSystem);
+        if (isSameInstances(roots, persistedRoots.getOrDefault(buildRootDirectory, Collections.emptyList()))) {
+            LOGGER.debug("Virtual file system state did not change, not storing it");
+            return;
+        }
+        PersistentCache cache = getCache();
+        File stateFile = stateFile(cache, buildRootDirectory);
+        File tempFile = new File(stateFile.getPath() + ".tmp");
+        try {
+            cache.useCache(() -> {
+                try {
+                    KryoBackedEncoder encoder = new KryoBackedEncoder(new FileOutputStream(tempFile));
+                    try {
+                        encoder.writeSmallInt(FORMAT_VERSION);
+                        encoder.writeSmallInt(roots.size());
+                        for (CompleteFileSystemLocationSnapshot root : roots) {
+                            snapshotSerializer.write(encoder, root);
+                        }
+                    } finally {
+                        encoder.close();
+                    }
+                    Files.move(tempFile.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (Exception e) {
+                    throw new RuntimeException("Could not write virtual file system state to " + stateFile, e);
+                }
+            });
+            persistedRoots.put(buildRootDirectory, roots);
+            LOGGER.info("Stored {} virtual file system roots in {}", roots.size(), timer.getElapsed());
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not store the virtual file system state", e);
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Restores the snapshots stored for the given build from disk which are still up-to-date into the virtual file system.
+     */
+    public void load(WatchingVirtualFileSystem virtualFileSystem, File buildRootDirectory) {
+        Timer timer = Time.startTimer();
+        PersistentCache cache = getCache();
+        File stateFile = stateFile(cache, buildRootDirectory);
+        try {
+            List<CompleteFileSystemLocationSnapshot> roots = cache.useCache(() -> readRoots(stateFile));
+            if (roots == null) {
+                return;
+            }
+            int restored = 0;
+            for (CompleteFileSystemLocationSnapshot root : roots) {
+                List<CompleteFileSystemLocationSnapshot> unchanged = new ArrayList<>();
+                unchangedSnapshotCollector.collectUnchanged(root, unchanged::add);
+                for (CompleteFileSystemLocationSnapshot snapshot : unchanged) {
+                    virtualFileSystem.updateWithKnownSnapshot(snapshot);
+                }
+                restored += unchanged.size();
+            }
+            persistedRoots.put(buildRootDirectory, collectRoots(virtualFileSystem));
+            LOGGER.info("Restored {} virtual file system roots from {} stored roots in {}", restored, roots.size(), timer.getElapsed());
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not load the virtual file system state, starting with an empty state", e);
+            virtualFileSystem.invalidateAll();
+        }
+    }
+
+    private static File stateFile(PersistentCache cache, File buildRootDirectory) {
+        String buildKey = Hashing.hashString(buildRootDirectory.getAbsolutePath()).toString();
+        return new File(cache.getBaseDir(), STATE_FILE_PREFIX + buildKey + STATE_FILE_SUFFIX);
+    }
+
+    private static List<CompleteFileSystemLocationSnapshot> collectRoots(WatchingVirtualFileSystem virtualFileSystem) {
+        List<CompleteFileSystemLocationSnapshot> roots = new ArrayList<>();
+        virtualFileSystem.visitSnapshotRoots(roots::add);
+        return roots;
+    }
+
+    private static boolean isSameInstances(List<CompleteFileSystemLocationSnapshot> roots, List<CompleteFileSystemLocationSnapshot> otherRoots) {
+        if (roots.size() != otherRoots.size()) {
+            return false;
+        }
+        for (int i = 0; i < roots.size(); i++) {
+            if (roots.get(i) != otherRoots.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Nullable
+    private List<CompleteFileSystemLocationSnapshot> readRoots(File stateFile) {
+        if (!stateFile.isFile()) {
+            return null;
+        }
+        try {
+            KryoBackedDecoder decoder = new KryoBackedDecoder(new FileInputStream(stateFile));
+            try {
+                int formatVersion = decoder.readSmallInt();
+                if (formatVersion != FORMAT_VERSION) {
+                    LOGGER.info("Ignoring virtual file system state with format version {}", formatVersion);
+                    return null;
+                }
+                int count = decoder.readSmallInt();
+                List<CompleteFileSystemLocationSnapshot> roots = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    roots.add(snapshotSerializer.read(decoder));
+                }
+                return roots;
+            } finally {
+                decoder.close();
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Could not read virtual file system state from " + stateFile, e);
+        }
+    }
+
+    private synchronized PersistentCache getCache() {
+        if (cache == null) {
+            cache = cacheRepository.cache(CACHE_KEY)
+                .withDisplayName("virtual file system state")
+                .withLockOptions(mode(FileLockManager.LockMode.None)) // Lock on demand
+                .open();
+        }
+        return cache;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (cache != null) {
+            cache.close();
+            cache = null;
+        }
+    }
+}
@@ -23,6 +23,7 @@ import org.gradle.cache.PersistentCache
 import org.gradle.cache.internal.InMemoryCacheDecoratorFactory
 import org.gradle.cache.internal.TestCrossBuildInMemoryCacheFactory
 import org.gradle.cache.internal.filelock.LockOptionsBuilder
+import org.gradle.internal.hash.Hashing
 import spock.lang.Specification
 
 class DefaultPreviousExecutionCacheAccessTest extends Specification {
@@ -39,6 +40,7 @@ class DefaultPreviousExecutionCacheAccessTest extends Specification {
         then:
         1 * cacheRepository.cache(gradle, "executionHistory") >> cacheBuilder
         1 * cacheBuilder.withDisplayName(_) >> cacheBuilder
+        1 * cacheBuilder.withProperties([hashAlgorithm: Hashing.contentFunction().algorithm]) >> cacheBuilder
         1 * cacheBuilder.withLockOptions(LockOptionsBuilder.mode(FileLockManager.LockMode.None)) >> cacheBuilder
         1 * cacheBuilder.open() >> backingCache
         0 * _._
@@ -46,7 +46,7 @@ class DefaultEmptySourceTaskSkipperTest extends Specification {
 
     def "skips task when sourceFiles are empty and previous output is empty"() {
         when:
-        def outcome = skipper.skipIfEmptySources(task, true, inputFiles, sourceFiles, [:])
+        def outcome = skipper.skipIfEmptySources(task, true, inputFiles, sourceFiles, { [:] })
 
         then:
         outcome.get() == ExecutionOutcome.SHORT_CIRCUITED
@@ -65,7 +65,7 @@ class DefaultEmptySourceTaskSkipperTest extends Specification {
         def previousOutputFiles = fingerprint(previousFile)
 
         when:
-        def outcome = skipper.skipIfEmptySources(task, true, inputFiles, sourceFiles, previousOutputFiles)
+        def outcome = skipper.skipIfEmptySources(task, true, inputFiles, sourceFiles, { previousOutputFiles })
 
         then:
         outcome.get() == ExecutionOutcome.EXECUTED_NON_INCREMENTALLY
@@ -94,7 +94,7 @@ class DefaultEmptySourceTaskSkipperTest extends Specification {
         def previousOutputFiles = fingerprint(previousFile)
 
         when:
-        def outcome = skipper.skipIfEmptySources(task, true, inputFiles, sourceFiles, previousOutputFiles)
+        def outcome = skipper.skipIfEmptySources(task, true, inputFiles, sourceFiles, { previousOutputFiles })
 
         then:
         outcome.get() == ExecutionOutcome.SHORT_CIRCUITED
@@ -139,7 +139,7 @@ class DefaultEmptySourceTaskSkipperTest extends Specification {
         overlappingFile << "overlapping file"
 
         when:
-        def outcome = skipper.skipIfEmptySources(task, true, inputFiles, sourceFiles, previousOutputFiles)
+        def outcome = skipper.skipIfEmptySources(task, true, inputFiles, sourceFiles, { previousOutputFiles })
 
         then:
         outcome.get() == ExecutionOutcome.EXECUTED_NON_INCREMENTALLY
@@ -177,7 +177,7 @@ class DefaultEmptySourceTaskSkipperTest extends Specification {
         def previousOutputFiles = fingerprint(previousFile)
 
         when:
-        skipper.skipIfEmptySources(task, true, inputFiles, sourceFiles, previousOutputFiles)
+        skipper.skipIfEmptySources(task, true, inputFiles, sourceFiles, { previousOutputFiles })
 
         then:
         def ex = thrown Exception
@@ -200,7 +200,7 @@ class DefaultEmptySourceTaskSkipperTest extends Specification {
 
     def "does not skip when sourceFiles are not empty"() {
         when:
-        def outcome = skipper.skipIfEmptySources(task, true, inputFiles, sourceFiles, [:])
+        def outcome = skipper.skipIfEmptySources(task, true, inputFiles, sourceFiles, { [:] })
 
         then:
         !outcome.present
@@ -215,7 +215,7 @@ class DefaultEmptySourceTaskSkipperTest extends Specification {
 
     def "does not skip when it has not declared any source files"() {
         when:
-        def outcome = skipper.skipIfEmptySources(task, false, inputFiles, sourceFiles, [:])
+        def outcome = skipper.skipIfEmptySources(task, false, inputFiles, sourceFiles, { [:] })
 
         then:
         !outcome.present
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.execution.statistics
+
+import org.gradle.api.internal.TaskInternal
+import org.gradle.api.internal.tasks.TaskExecutionOutcome
+import org.gradle.api.internal.tasks.TaskStateInternal
+import org.gradle.api.internal.tasks.execution.ExecuteTaskBuildOperationDetails
+import org.gradle.cache.internal.DefaultCacheRepository
+import org.gradle.cache.internal.DefaultCacheScopeMapping
+import org.gradle.caching.internal.operations.BuildCacheArchivePackBuildOperationType
+import org.gradle.execution.plan.LocalTaskNode
+import org.gradle.internal.operations.BuildOperationDescriptor
+import org.gradle.internal.operations.BuildOperationListener
+import org.gradle.internal.operations.BuildOperationListenerManager
+import org.gradle.internal.operations.OperationFinishEvent
+import org.gradle.internal.operations.OperationIdentifier
+import org.gradle.internal.operations.OperationStartEvent
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.testfixtures.internal.InMemoryCacheFactory
+import org.gradle.util.GradleVersion
+import org.gradle.util.Path
+import org.junit.Rule
+import spock.lang.Specification
+
+class DefaultTaskTimingHistoryTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def cacheRepository = new DefaultCacheRepository(new DefaultCacheScopeMapping(tmpDir.file("user-home"), tmpDir.file("build-dir"), GradleVersion.current()), new InMemoryCacheFactory())
+    def buildOperationListenerManager = Mock(BuildOperationListenerManager)
+    BuildOperationListener listener
+    long nextOperationId = 1
+
+    def setup() {
+        buildOperationListenerManager.addListener(_) >> { BuildOperationListener listener -> this.listener = listener }
+    }
+
+    def "records task executions and reads them back in the next build"() {
+        def history = newHistory()
+
+        when:
+        executeTask(":a", TaskExecutionOutcome.EXECUTED, 300, 1234)
+        executeTask(":b", TaskExecutionOutcome.FROM_CACHE, 20, 0)
+        history.close()
+        history = newHistory()
+
+        then:
+        history.getTimings(Path.path(":a")).recentDurationsMillis == [300] as long[]
+        history.getTimings(Path.path(":a")).outputSize == 1234
+        history.getTimings(Path.path(":a")).cacheHitRatio == 0
+        history.getTimings(Path.path(":b")).cacheHitRatio == 1
+        history.getTimings(Path.path(":c")) == null
+
+        when:
+        executeTask(":a", TaskExecutionOutcome.UP_TO_DATE, 100, 0)
+        history.close()
+        history = newHistory()
+
+        then:
+        history.getTimings(Path.path(":a")).recentDurationsMillis == [300, 100] as long[]
+        history.getTimings(Path.path(":a")).estimatedDurationMillis == 200
+        history.getTimings(Path.path(":a")).outputSize == 1234
+
+        cleanup:
+        history?.close()
+    }
+
+    def "does not record failed or non-actionable tasks"() {
+        def history = newHistory()
+        def failedState = new TaskStateInternal()
+        failedState.setOutcome(new RuntimeException("broken"))
+        def nonActionableState = new TaskStateInternal()
+        nonActionableState.setOutcome(TaskExecutionOutcome.EXECUTED)
+        nonActionableState.setActionable(false)
+
+        when:
+        executeTask(":failed", failedState, 100, 0)
+        executeTask(":lifecycle", nonActionableState, 100, 0)
+
+        then:
+        history.getTimings(Path.path(":failed")) == null
+        history.getTimings(Path.path(":lifecycle")) == null
+
+        cleanup:
+        history.close()
+    }
+
+    def "drops tasks that have not been executed in recent builds"() {
+        def history = newHistory()
+        executeTask(":old", TaskExecutionOutcome.EXECUTED, 100, 0)
+        history.close()
+
+        when:
+        50.times {
+            history = newHistory()
+            executeTask(":new", TaskExecutionOutcome.EXECUTED, 100, 0)
+            history.close()
+        }
+        history = newHistory()
+
+        then:
+        history.getTimings(Path.path(":old")) == null
+        history.getTimings(Path.path(":new")) != null
+
+        cleanup:
+        history.close()
+    }
+
+    private DefaultTaskTimingHistory newHistory() {
+        return new DefaultTaskTimingHistory(tmpDir.file("build-dir"), cacheRepository, buildOperationListenerManager)
+    }
+
+    private void executeTask(String path, TaskExecutionOutcome outcome, long duration, long archiveSize) {
+        def state = new TaskStateInternal()
+        state.setOutcome(outcome)
+        state.setActionable(true)
+        executeTask(path, state, duration, archiveSize)
+    }
+
+    private void executeTask(String path, TaskStateInternal state, long duration, long archiveSize) {
+        def task = Stub(TaskInternal) {
+            getIdentityPath() >> Path.path(path)
+            getState() >> state
+        }
+        def taskOperation = BuildOperationDescriptor.displayName("Task $path")
+            .details(new ExecuteTaskBuildOperationDetails(Stub(LocalTaskNode) { getTask() >> task }))
+            .build(new OperationIdentifier(nextOperationId++), null)
+        listener.started(taskOperation, new OperationStartEvent(0))
+        if (archiveSize > 0) {
+            def packOperation = BuildOperationDescriptor.displayName("Pack $path")
+                .build(new OperationIdentifier(nextOperationId++), taskOperation.id)
+            listener.started(packOperation, new OperationStartEvent(0))
+            listener.finished(packOperation, new OperationFinishEvent(0, 1, null, Stub(BuildCacheArchivePackBuildOperationType.Result) {
+                getArchiveSize() >> archiveSize
+            }))
+        }
+        listener.finished(taskOperation, new OperationFinishEvent(1000, 1000 + duration, null, null))
+    }
+}
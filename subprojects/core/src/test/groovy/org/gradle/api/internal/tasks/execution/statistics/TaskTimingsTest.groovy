@@ -0,0 +1,73 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.execution.statistics
+
+import spock.lang.Specification
+
+import static org.gradle.api.internal.tasks.TaskExecutionOutcome.EXECUTED
+import static org.gradle.api.internal.tasks.TaskExecutionOutcome.FROM_CACHE
+import static org.gradle.api.internal.tasks.TaskExecutionOutcome.UP_TO_DATE
+
+class TaskTimingsTest extends Specification {
+
+    def "estimates the duration from the most recent executions"() {
+        def timings = TaskTimings.first(1000, EXECUTED, 0, 1)
+
+        when:
+        [10, 20, 30, 40, 50].each {
+            timings = timings.withExecution(it, UP_TO_DATE, 0, 2)
+        }
+
+        then:
+        timings.recentDurationsMillis == [10, 20, 30, 40, 50] as long[]
+        timings.estimatedDurationMillis == 30
+    }
+
+    def "cache hit ratio only counts executions that were not up-to-date"() {
+        def timings = TaskTimings.first(100, EXECUTED, 0, 1)
+            .withExecution(10, FROM_CACHE, 0, 2)
+            .withExecution(1, UP_TO_DATE, 0, 3)
+            .withExecution(10, FROM_CACHE, 0, 4)
+
+        expect:
+        timings.cacheHitRatio == 2d / 3
+    }
+
+    def "cache hit ratio follows the recent executions"() {
+        def timings = TaskTimings.first(100, EXECUTED, 0, 1)
+        (TaskTimings.MAX_OUT_OF_DATE_EXECUTIONS - 1).times {
+            timings = timings.withExecution(100, EXECUTED, 0, 1)
+        }
+
+        when:
+        TaskTimings.MAX_OUT_OF_DATE_EXECUTIONS.times {
+            timings = timings.withExecution(10, FROM_CACHE, 0, 2)
+        }
+
+        then:
+        timings.cacheHitRatio > 0.5
+    }
+
+    def "keeps the last known output size"() {
+        def timings = TaskTimings.first(100, EXECUTED, 1234, 1)
+
+        expect:
+        timings.outputSize == 1234
+        timings.withExecution(1, UP_TO_DATE, 0, 2).outputSize == 1234
+        timings.withExecution(10, FROM_CACHE, 2345, 2).outputSize == 2345
+    }
+}
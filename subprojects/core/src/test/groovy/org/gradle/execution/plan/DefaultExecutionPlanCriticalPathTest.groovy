@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.plan
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static org.gradle.execution.plan.ExecutionPlanSimulator.RECORDED_DURATIONS
+import static org.gradle.execution.plan.ExecutionPlanSimulator.simulate
+
+class DefaultExecutionPlanCriticalPathTest extends Specification {
+
+    def graph = """
+        :a 10
+        :b 10
+        :c 10
+        :compile 100
+        :test 100 :compile
+    """
+
+    def "starts nodes in the order of the execution queue without a duration estimator"() {
+        when:
+        def result = simulate(graph, 2, null)
+
+        then:
+        result.startOrder == [":a", ":b", ":c", ":compile", ":test"]
+        result.makespan == 210
+    }
+
+    @Unroll
+    def "starts the node with the longest remaining path first with #estimator durations"() {
+        when:
+        def result = simulate(graph, 2, durationEstimator)
+
+        then:
+        result.startOrder == [":compile", ":a", ":b", ":c", ":test"]
+        result.makespan == 200
+
+        where:
+        estimator  | durationEstimator
+        "recorded" | RECORDED_DURATIONS
+        "uniform"  | NodeDurationEstimator.UNIFORM
+    }
+
+    def "uses the order of the execution queue for nodes with the same remaining path"() {
+        when:
+        def result = simulate("""
+            :c 10
+            :a 10
+            :b 10
+        """, 1, RECORDED_DURATIONS)
+
+        then:
+        result.startOrder == [":c", ":a", ":b"]
+    }
+
+    def "counts the duration of all nodes waiting for a node"() {
+        when:
+        def result = simulate("""
+            :long 50
+            :short 10
+            :first 10 :short
+            :second 10 :first
+            :third 45 :second
+        """, 1, RECORDED_DURATIONS)
+
+        then:
+        result.startOrder == [":short", ":first", ":second", ":long", ":third"]
+    }
+
+    def "does not start nodes ahead of a ready node which destroys files"() {
+        when:
+        def result = simulate("""
+            :compile 100
+            :clean 10 destroys=/build
+            :jar 10 :compile
+            :javadoc 200
+        """, 1, RECORDED_DURATIONS)
+
+        then:
+        result.startOrder == [":compile", ":clean", ":javadoc", ":jar"]
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.plan
+
+import org.gradle.api.Action
+import org.gradle.api.Project
+import org.gradle.internal.resources.ResourceLock
+import org.gradle.internal.resources.ResourceLockState
+import org.gradle.internal.work.WorkerLeaseRegistry
+
+import javax.annotation.Nullable
+
+/**
+ * Replays a recorded task graph against {@link DefaultExecutionPlan} on a simulated clock, so that the makespan of scheduling policies can be compared.
+ *
+ * <p>Each line of a recorded graph has the path of a node, its duration in milliseconds and the paths of the nodes it depends on.
+ * A node which destroys files lists the destroyed paths with a {@code destroys=} prefix:</p>
+ *
+ * <pre>
+ * :clean 120 destroys=/build
+ * :lib:compileJava 4200
+ * :app:compileJava 3100 :lib:compileJava
+ * </pre>
+ */
+class ExecutionPlanSimulator {
+    /**
+     * Estimates the duration of a node with the duration recorded for it.
+     */
+    static final NodeDurationEstimator RECORDED_DURATIONS = { Node node -> ((SimulatedNode) node).durationMillis } as NodeDurationEstimator
+
+    private static final WorkerLeaseRegistry.WorkerLease WORKER_LEASE = [tryLock: { true }] as WorkerLeaseRegistry.WorkerLease
+    private static final ResourceLockState RESOURCE_LOCK_STATE = [registerLocked: {}, registerUnlocked: {}, releaseLocks: {}] as ResourceLockState
+
+    /**
+     * Executes the recorded graph with the given number of workers, prioritizing nodes with the given duration estimator when present.
+     */
+    static Result simulate(String recordedGraph, int workers, @Nullable NodeDurationEstimator durationEstimator) {
+        // Only the scheduling part of the plan is used, which does not need the build or the task node factory
+        def plan = new DefaultExecutionPlan(null, null, new TaskDependencyResolver([]), durationEstimator)
+        plan.addNodes(parse(recordedGraph))
+        plan.determineExecutionPlan()
+
+        def running = new PriorityQueue<RunningNode>()
+        def startOrder = []
+        long now = 0
+        while (true) {
+            while (running.size() < workers) {
+                def node = (SimulatedNode) plan.selectNext(WORKER_LEASE, RESOURCE_LOCK_STATE)
+                if (node == null) {
+                    break
+                }
+                startOrder << node.path
+                running.add(new RunningNode(node, now + node.durationMillis, startOrder.size()))
+            }
+            if (running.empty) {
+                break
+            }
+            def finished = running.poll()
+            now = finished.finishTime
+            plan.finishedExecuting(finished.node)
+        }
+        assert plan.allNodesComplete()
+        return new Result(now, startOrder)
+    }
+
+    private static List<SimulatedNode> parse(String recordedGraph) {
+        Map<String, SimulatedNode> nodes = [:]
+        Map<SimulatedNode, List<String>> dependencies = [:]
+        recordedGraph.readLines()*.trim().findAll { !it.empty }.each { line ->
+            def parts = line.split(/\s+/) as List<String>
+            def node = new SimulatedNode(parts[0], Long.parseLong(parts[1]))
+            parts.drop(2).each { part ->
+                if (part.startsWith("destroys=")) {
+                    node.destroyablePaths << part.substring("destroys=".length())
+                } else {
+                    dependencies.get(node, []) << part
+                }
+            }
+            nodes[node.path] = node
+        }
+        dependencies.each { node, paths ->
+            paths.each { node.addDependencySuccessor(nodes[it]) }
+        }
+        nodes.values().each {
+            it.require()
+            it.dependenciesProcessed()
+        }
+        return nodes.values() as List
+    }
+
+    static class Result {
+        final long makespan
+        final List<String> startOrder
+
+        Result(long makespan, List<String> startOrder) {
+            this.makespan = makespan
+            this.startOrder = startOrder
+        }
+
+        @Override
+        String toString() {
+            return "makespan: ${makespan}ms, start order: ${startOrder}"
+        }
+    }
+
+    private static class RunningNode implements Comparable<RunningNode> {
+        final SimulatedNode node
+        final long finishTime
+        final int startSequence
+
+        RunningNode(SimulatedNode node, long finishTime, int startSequence) {
+            this.node = node
+            this.finishTime = finishTime
+            this.startSequence = startSequence
+        }
+
+        @Override
+        int compareTo(RunningNode other) {
+            return finishTime <=> other.finishTime ?: startSequence <=> other.startSequence
+        }
+    }
+
+    private static class SimulatedNode extends Node {
+        final String path
+        final long durationMillis
+        final Set<String> destroyablePaths = [] as Set
+
+        SimulatedNode(String path, long durationMillis) {
+            this.path = path
+            this.durationMillis = durationMillis
+        }
+
+        @Override
+        Throwable getNodeFailure() {
+            return null
+        }
+
+        @Override
+        void rethrowNodeFailure() {
+        }
+
+        @Override
+        void prepareForExecution() {
+        }
+
+        @Override
+        void resolveDependencies(TaskDependencyResolver dependencyResolver, Action<Node> processHardSuccessor) {
+        }
+
+        @Override
+        Set<Node> getFinalizers() {
+            return [] as Set
+        }
+
+        @Override
+        void resolveMutations() {
+            mutationInfo.destroyablePaths.addAll(destroyablePaths)
+            mutationInfo.resolved = true
+        }
+
+        @Override
+        boolean isPublicNode() {
+            return true
+        }
+
+        @Override
+        boolean requiresMonitoring() {
+            return false
+        }
+
+        @Override
+        Project getProjectToLock() {
+            return null
+        }
+
+        @Override
+        Project getOwningProject() {
+            return null
+        }
+
+        @Override
+        List<? extends ResourceLock> getResourcesToLock() {
+            return []
+        }
+
+        @Override
+        String toString() {
+            return path
+        }
+
+        @Override
+        int compareTo(Node other) {
+            return path <=> ((SimulatedNode) other).path
+        }
+    }
+}
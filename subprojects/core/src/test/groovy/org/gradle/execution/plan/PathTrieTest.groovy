@@ -0,0 +1,90 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.plan
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class PathTrieTest extends Specification {
+    def trie = new PathTrie()
+
+    @Unroll
+    def "#query overlaps with #paths: #overlapping"() {
+        given:
+        paths.each { trie.add(path(it)) }
+
+        expect:
+        trie.containsOverlapping(path(query)) == overlapping
+
+        where:
+        paths                    | query            | overlapping
+        []                       | "/a"             | false
+        ["/a/b"]                 | "/a/b"           | true
+        ["/a/b"]                 | "/a"             | true
+        ["/a/b"]                 | "/a/b/c"         | true
+        ["/a/b"]                 | "/a/bc"          | false
+        ["/a/bc"]                | "/a/b"           | false
+        ["/a/b"]                 | "/a/c"           | false
+        ["/a/b/c", "/d"]         | "/a/b"           | true
+        ["/a/b/c", "/d"]         | "/d/e"           | true
+        ["/a/b/c", "/d"]         | "/e"             | false
+    }
+
+    def "paths can be added several times and removed again"() {
+        given:
+        trie.add(path("/a/b"))
+        trie.add(path("/a/b"))
+        trie.add(path("/a/c/d"))
+
+        when:
+        trie.remove(path("/a/b"))
+
+        then:
+        trie.containsOverlapping(path("/a/b"))
+
+        when:
+        trie.remove(path("/a/b"))
+
+        then:
+        !trie.containsOverlapping(path("/a/b"))
+        trie.containsOverlapping(path("/a"))
+        trie.containsOverlapping(path("/a/c"))
+
+        when:
+        trie.remove(path("/a/c/d"))
+
+        then:
+        !trie.containsOverlapping(path("/a"))
+        trie.empty
+    }
+
+    def "removing a path which has not been added does nothing"() {
+        given:
+        trie.add(path("/a/b"))
+
+        when:
+        trie.remove(path("/a"))
+        trie.remove(path("/a/b/c"))
+
+        then:
+        trie.containsOverlapping(path("/a/b"))
+    }
+
+    private static String path(String path) {
+        return path.replace('/' as char, File.separatorChar)
+    }
+}
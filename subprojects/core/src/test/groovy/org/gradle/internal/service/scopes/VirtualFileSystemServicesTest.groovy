@@ -0,0 +1,38 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.service.scopes
+
+import org.gradle.internal.os.OperatingSystem
+import org.gradle.internal.vfs.watch.impl.FileTreeWatcherRegistryFactory
+import org.gradle.internal.vfs.watch.impl.JdkFileWatcherRegistryFactory
+import spock.lang.Specification
+
+class VirtualFileSystemServicesTest extends Specification {
+
+    def "selects file watcher registry for #operatingSystem"() {
+        expect:
+        def factory = VirtualFileSystemServices.createFileWatcherRegistryFactory(operatingSystem)
+        factory.class == expectedFactory
+        factory.watchingRecursively == recursive
+
+        where:
+        operatingSystem         | expectedFactory                | recursive
+        OperatingSystem.WINDOWS | FileTreeWatcherRegistryFactory | true
+        OperatingSystem.LINUX   | JdkFileWatcherRegistryFactory  | false
+        OperatingSystem.MAC_OS  | JdkFileWatcherRegistryFactory  | false
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.vfs
+
+import com.google.common.collect.Interners
+import org.gradle.internal.file.FileType
+import org.gradle.internal.hash.HashCode
+import org.gradle.internal.serialize.SerializerSpec
+import org.gradle.internal.snapshot.CompleteDirectorySnapshot
+import org.gradle.internal.snapshot.CompleteFileSystemLocationSnapshot
+import org.gradle.internal.snapshot.FileMetadata
+import org.gradle.internal.snapshot.MissingFileSnapshot
+import org.gradle.internal.snapshot.RegularFileSnapshot
+
+class CompleteFileSystemLocationSnapshotSerializerTest extends SerializerSpec {
+    def serializer = new CompleteFileSystemLocationSnapshotSerializer(Interners.newStrongInterner())
+    def root = new File("root").absolutePath
+
+    def "serializes regular file"() {
+        def file = new RegularFileSnapshot(root, "root", HashCode.fromInt(1234), new FileMetadata(12, 34))
+
+        when:
+        def result = serialize(file, serializer)
+
+        then:
+        assertSameSnapshot(result, file)
+    }
+
+    def "serializes missing file"() {
+        def missing = new MissingFileSnapshot(root, "root")
+
+        when:
+        def result = serialize(missing, serializer)
+
+        then:
+        assertSameSnapshot(result, missing)
+    }
+
+    def "serializes directory with files, missing files and nested directories"() {
+        def subDir = new CompleteDirectorySnapshot(child(root, "sub"), "sub", [
+            new RegularFileSnapshot(child(root, "sub", "nested.txt"), "nested.txt", HashCode.fromInt(3), new FileMetadata(3, 30))
+        ], HashCode.fromInt(4))
+        def emptyDir = new CompleteDirectorySnapshot(child(root, "empty"), "empty", [], HashCode.fromInt(5))
+        def directory = new CompleteDirectorySnapshot(root, "root", [
+            new RegularFileSnapshot(child(root, "a.txt"), "a.txt", HashCode.fromInt(1), new FileMetadata(1, 10)),
+            emptyDir,
+            new MissingFileSnapshot(child(root, "missing"), "missing"),
+            subDir
+        ], HashCode.fromInt(6))
+
+        when:
+        def result = serialize(directory, serializer)
+
+        then:
+        assertSameSnapshot(result, directory)
+    }
+
+    private static String child(String parent, String... names) {
+        return ([parent] + names.toList()).join(File.separator)
+    }
+
+    private static void assertSameSnapshot(CompleteFileSystemLocationSnapshot actual, CompleteFileSystemLocationSnapshot expected) {
+        assert actual.class == expected.class
+        assert actual.absolutePath == expected.absolutePath
+        assert actual.name == expected.name
+        assert actual.type == expected.type
+        switch (expected.type) {
+            case FileType.RegularFile:
+                assert actual.hash == expected.hash
+                assert ((RegularFileSnapshot) actual).metadata == ((RegularFileSnapshot) expected).metadata
+                break
+            case FileType.Directory:
+                assert actual.hash == expected.hash
+                def actualChildren = ((CompleteDirectorySnapshot) actual).children
+                def expectedChildren = ((CompleteDirectorySnapshot) expected).children
+                assert actualChildren.size() == expectedChildren.size()
+                [actualChildren, expectedChildren].transpose().each { actualChild, expectedChild ->
+                    assertSameSnapshot(actualChild, expectedChild)
+                }
+                break
+        }
+    }
+}
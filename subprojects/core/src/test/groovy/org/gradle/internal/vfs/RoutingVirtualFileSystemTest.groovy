@@ -127,8 +127,18 @@ class RoutingVirtualFileSystemTest extends Specification {
         when:
         routingVirtualFileSystem.update([userHomeFile.absolutePath, projectFile.absolutePath], updateAction)
         then:
-        1 * gradleUserHomeVirtualFileSystem.update({ it as List == [userHomeFile.absolutePath] }, updateAction)
+        1 * gradleUserHomeVirtualFileSystem.update({ it as List == [userHomeFile.absolutePath] }, _) >> { locations, Runnable action -> action.run() }
         1 * buildSessionScopedVirtualFileSystem.update({ it as List == [projectFile.absolutePath] }, updateAction)
         0 * _
     }
+
+    def "runs update action once when there are no locations"() {
+        def updateAction = Mock(Runnable)
+
+        when:
+        routingVirtualFileSystem.update([], updateAction)
+        then:
+        1 * updateAction.run()
+        0 * _
+    }
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.vfs
+
+import com.google.common.collect.Interners
+import org.gradle.cache.internal.DefaultCacheRepository
+import org.gradle.cache.internal.DefaultCacheScopeMapping
+import org.gradle.internal.hash.HashCode
+import org.gradle.internal.snapshot.CompleteFileSystemLocationSnapshot
+import org.gradle.internal.snapshot.FileMetadata
+import org.gradle.internal.snapshot.RegularFileSnapshot
+import org.gradle.internal.snapshot.impl.UnchangedSnapshotCollector
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.testfixtures.internal.InMemoryCacheFactory
+import org.gradle.util.GradleVersion
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.function.Consumer
+
+class VirtualFileSystemStateStoreTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+
+    def cacheRepository = new DefaultCacheRepository(new DefaultCacheScopeMapping(tmpDir.file("user-home"), tmpDir.file("build-dir"), GradleVersion.current()), new InMemoryCacheFactory())
+    def unchangedSnapshotCollector = Stub(UnchangedSnapshotCollector) {
+        collectUnchanged(_, _) >> { CompleteFileSystemLocationSnapshot snapshot, Consumer<CompleteFileSystemLocationSnapshot> unchanged ->
+            unchanged.accept(snapshot)
+        }
+    }
+    def stateStore = new VirtualFileSystemStateStore(cacheRepository, new CompleteFileSystemLocationSnapshotSerializer(Interners.newStrongInterner()), unchangedSnapshotCollector)
+
+    def cleanup() {
+        stateStore.close()
+    }
+
+    def "keeps the state of different builds apart"() {
+        def firstBuild = tmpDir.createDir("first")
+        def secondBuild = tmpDir.createDir("second")
+        def firstSnapshot = fileSnapshot(firstBuild, 1)
+        def secondSnapshot = fileSnapshot(secondBuild, 2)
+
+        when:
+        stateStore.store(virtualFileSystemWith(firstSnapshot), firstBuild)
+        stateStore.store(virtualFileSystemWith(secondSnapshot), secondBuild)
+        def firstRestored = restore(firstBuild)
+        def secondRestored = restore(secondBuild)
+
+        then:
+        firstRestored*.absolutePath == [firstSnapshot.absolutePath]
+        secondRestored*.absolutePath == [secondSnapshot.absolutePath]
+    }
+
+    def "restores nothing for a build without stored state"() {
+        def firstBuild = tmpDir.createDir("first")
+        stateStore.store(virtualFileSystemWith(fileSnapshot(firstBuild, 1)), firstBuild)
+
+        expect:
+        restore(tmpDir.createDir("other")).empty
+    }
+
+    private List<CompleteFileSystemLocationSnapshot> restore(File buildRootDirectory) {
+        List<CompleteFileSystemLocationSnapshot> restored = []
+        def virtualFileSystem = Stub(WatchingVirtualFileSystem) {
+            updateWithKnownSnapshot(_) >> { CompleteFileSystemLocationSnapshot snapshot -> restored << snapshot }
+        }
+        stateStore.load(virtualFileSystem, buildRootDirectory)
+        return restored
+    }
+
+    private WatchingVirtualFileSystem virtualFileSystemWith(CompleteFileSystemLocationSnapshot... roots) {
+        Stub(WatchingVirtualFileSystem) {
+            visitSnapshotRoots(_) >> { Consumer<CompleteFileSystemLocationSnapshot> visitor -> roots.each { visitor.accept(it) } }
+        }
+    }
+
+    private static RegularFileSnapshot fileSnapshot(File buildRootDirectory, int hash) {
+        def file = new File(buildRootDirectory, "build.gradle")
+        new RegularFileSnapshot(file.absolutePath, file.name, HashCode.fromInt(hash), new FileMetadata(hash, hash))
+    }
+}
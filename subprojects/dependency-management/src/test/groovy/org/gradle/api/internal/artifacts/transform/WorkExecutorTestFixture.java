@@ -155,6 +155,7 @@ public boolean delete(File target) throws IOException {
             buildScanPluginApplied,
             classLoaderHierarchyHasher,
             deleter,
+            null,
             new DefaultExecutionStateChangeDetector(),
             outputChangeListener,
             outputFilesRepository,
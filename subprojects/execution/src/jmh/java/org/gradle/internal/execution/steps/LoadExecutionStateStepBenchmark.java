@@ -0,0 +1,119 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.steps;
+
+import org.gradle.internal.Try;
+import org.gradle.internal.execution.AfterPreviousExecutionContext;
+import org.gradle.internal.execution.ExecutionOutcome;
+import org.gradle.internal.execution.ExecutionRequestContext;
+import org.gradle.internal.execution.Result;
+import org.gradle.internal.execution.UnitOfWork;
+import org.gradle.internal.execution.history.AfterPreviousExecutionState;
+import org.gradle.internal.execution.history.ExecutionHistoryStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures the per-work overhead of loading the previous execution state for up-to-date work,
+ * with the state loaded before snapshotting starts or speculatively in the background.
+ *
+ * The work is synthetic: loading the history sleeps for the given latency and snapshotting burns the given amount of CPU.
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class LoadExecutionStateStepBenchmark {
+    private static final Result UP_TO_DATE = () -> Try.successful(ExecutionOutcome.UP_TO_DATE);
+
+    @Param({"false", "true"})
+    boolean speculative;
+
+    @Param({"50", "500"})
+    long loadLatencyMicros;
+
+    @Param({"10000"})
+    long snapshotTokens;
+
+    ExecutorService loadExecutor;
+    LoadExecutionStateStep<ExecutionRequestContext, Result> step;
+    ExecutionRequestContext context;
+
+    @Setup(Level.Trial)
+    public void setup(Blackhole blackhole) {
+        loadExecutor = Executors.newFixedThreadPool(1);
+        step = new LoadExecutionStateStep<>(speculative ? loadExecutor : null, (AfterPreviousExecutionContext context) -> {
+            Blackhole.consumeCPU(snapshotTokens);
+            blackhole.consume(context.getAfterPreviousExecutionState());
+            return UP_TO_DATE;
+        });
+        ExecutionHistoryStore historyStore = (ExecutionHistoryStore) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ExecutionHistoryStore.class}, (proxy, method, args) -> {
+            if (method.getName().equals("load")) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(loadLatencyMicros));
+                return Optional.<AfterPreviousExecutionState>empty();
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+        UnitOfWork work = (UnitOfWork) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{UnitOfWork.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getIdentity":
+                    return "work";
+                case "getExecutionHistoryStore":
+                    return Optional.of(historyStore);
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+        context = new ExecutionRequestContext() {
+            @Override
+            public Optional<String> getRebuildReason() {
+                return Optional.empty();
+            }
+
+            @Override
+            public UnitOfWork getWork() {
+                return work;
+            }
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        loadExecutor.shutdown();
+    }
+
+    @Benchmark
+    public Result executeUpToDateWork() {
+        return step.execute(context);
+    }
+}
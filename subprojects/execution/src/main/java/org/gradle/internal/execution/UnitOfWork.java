@@ -100,8 +100,10 @@ interface WorkValidationContext {
      * Checks if this work has empty inputs. If the work cannot be skipped, {@link Optional#empty()} is returned.
      * If it can, either {@link ExecutionOutcome#EXECUTED_NON_INCREMENTALLY} or {@link ExecutionOutcome#SHORT_CIRCUITED} is
      * returned depending on whether cleanup of existing outputs had to be performed.
+     *
+     * The outputs of the previous execution should only be requested when the work is skipped.
      */
-    default Optional<ExecutionOutcome> skipIfInputsEmpty(ImmutableSortedMap<String, FileCollectionFingerprint> outputFilesAfterPreviousExecution) {
+    default Optional<ExecutionOutcome> skipIfInputsEmpty(Supplier<ImmutableSortedMap<String, FileCollectionFingerprint>> outputFilesAfterPreviousExecution) {
         return Optional.empty();
     }
 
@@ -33,11 +33,16 @@
 import java.util.Map;
 
 public class DefaultPreviousExecutionStateSerializer extends AbstractSerializer<AfterPreviousExecutionState> {
-    private final Serializer<FileCollectionFingerprint> fileCollectionFingerprintSerializer;
+    /**
+     * Version of the format written by this serializer. Needs to be increased whenever the format changes.
+     */
+    public static final int FORMAT_VERSION = 3;
+
+    private final FileCollectionFingerprintSerializer fileCollectionFingerprintSerializer;
     private final Serializer<ImplementationSnapshot> implementationSnapshotSerializer;
     private final Serializer<ValueSnapshot> valueSnapshotSerializer = new SnapshotSerializer();
 
-    public DefaultPreviousExecutionStateSerializer(Serializer<FileCollectionFingerprint> fileCollectionFingerprintSerializer) {
+    public DefaultPreviousExecutionStateSerializer(FileCollectionFingerprintSerializer fileCollectionFingerprintSerializer) {
         this.fileCollectionFingerprintSerializer = fileCollectionFingerprintSerializer;
         this.implementationSnapshotSerializer = new ImplementationSnapshot.SerializerImpl();
     }
@@ -61,8 +66,10 @@ public AfterPreviousExecutionState read(Decoder decoder) throws Exception {
         ImmutableList<ImplementationSnapshot> taskActionImplementations = taskActionImplementationsBuilder.build();
 
         ImmutableSortedMap<String, ValueSnapshot> inputProperties = readInputProperties(decoder);
-        ImmutableSortedMap<String, FileCollectionFingerprint> inputFilesFingerprints = readFingerprints(decoder);
-        ImmutableSortedMap<String, FileCollectionFingerprint> outputFilesFingerprints = readFingerprints(decoder);
+        // Shared by the root paths of all file properties of the entry
+        StringTable strings = new StringTable();
+        ImmutableSortedMap<String, FileCollectionFingerprint> inputFilesFingerprints = readFingerprints(decoder, strings);
+        ImmutableSortedMap<String, FileCollectionFingerprint> outputFilesFingerprints = readFingerprints(decoder, strings);
 
         boolean successful = decoder.readBoolean();
 
@@ -91,8 +98,9 @@ public void write(Encoder encoder, AfterPreviousExecutionState execution) throws
         }
 
         writeInputProperties(encoder, execution.getInputProperties());
-        writeFingerprints(encoder, execution.getInputFileProperties());
-        writeFingerprints(encoder, execution.getOutputFileProperties());
+        StringTable strings = new StringTable();
+        writeFingerprints(encoder, execution.getInputFileProperties(), strings);
+        writeFingerprints(encoder, execution.getOutputFileProperties(), strings);
 
         encoder.writeBoolean(execution.isSuccessful());
     }
@@ -121,22 +129,22 @@ public void writeInputProperties(Encoder encoder, ImmutableMap<String, ValueSnap
         }
     }
 
-    private ImmutableSortedMap<String, FileCollectionFingerprint> readFingerprints(Decoder decoder) throws Exception {
+    private ImmutableSortedMap<String, FileCollectionFingerprint> readFingerprints(Decoder decoder, StringTable strings) throws Exception {
         int count = decoder.readSmallInt();
         ImmutableSortedMap.Builder<String, FileCollectionFingerprint> builder = ImmutableSortedMap.naturalOrder();
         for (int fingerprintIdx = 0; fingerprintIdx < count; fingerprintIdx++) {
             String property = decoder.readString();
-            FileCollectionFingerprint fingerprint = fileCollectionFingerprintSerializer.read(decoder);
+            FileCollectionFingerprint fingerprint = fileCollectionFingerprintSerializer.read(decoder, strings);
             builder.put(property, fingerprint);
         }
         return builder.build();
     }
 
-    private void writeFingerprints(Encoder encoder, Map<String, FileCollectionFingerprint> fingerprints) throws Exception {
+    private void writeFingerprints(Encoder encoder, Map<String, FileCollectionFingerprint> fingerprints, StringTable strings) throws Exception {
         encoder.writeSmallInt(fingerprints.size());
         for (Map.Entry<String, FileCollectionFingerprint> entry : fingerprints.entrySet()) {
             encoder.writeString(entry.getKey());
-            fileCollectionFingerprintSerializer.write(encoder, entry.getValue());
+            fileCollectionFingerprintSerializer.write(encoder, entry.getValue(), strings);
         }
     }
 
@@ -26,10 +26,20 @@
 import org.gradle.internal.serialize.Encoder;
 import org.gradle.internal.serialize.HashCodeSerializer;
 import org.gradle.internal.serialize.Serializer;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Map;
 
+/**
+ * Writes the root hashes of a file collection fingerprint up front, followed by the fingerprints of the individual files as a separate block.
+ *
+ * When reading, the block is only decoded once the individual fingerprints are requested.
+ * Comparing the root hashes is usually enough to tell that a file collection did not change, so the individual fingerprints are rarely needed.
+ */
 public class FileCollectionFingerprintSerializer implements Serializer<FileCollectionFingerprint> {
 
     private final FingerprintMapSerializer fingerprintMapSerializer;
@@ -44,44 +54,69 @@ public FileCollectionFingerprintSerializer(StringInterner stringInterner) {
 
     @Override
     public FileCollectionFingerprint read(Decoder decoder) throws IOException {
-        Map<String, FileSystemLocationFingerprint> fingerprints = fingerprintMapSerializer.read(decoder);
-        if (fingerprints.isEmpty()) {
+        return read(decoder, new StringTable());
+    }
+
+    public FileCollectionFingerprint read(Decoder decoder, StringTable strings) throws IOException {
+        boolean empty = decoder.readBoolean();
+        if (empty) {
             return FileCollectionFingerprint.EMPTY;
         }
-        ImmutableMultimap<String, HashCode> rootHashes = readRootHashes(decoder);
-        return new SerializableFileCollectionFingerprint(fingerprints, rootHashes);
+        ImmutableMultimap<String, HashCode> rootHashes = readRootHashes(decoder, strings);
+        byte[] encodedFingerprints = decoder.readBinary();
+        return new LazyFileCollectionFingerprint(rootHashes, () -> decodeFingerprints(encodedFingerprints));
     }
 
-    private ImmutableMultimap<String, HashCode> readRootHashes(Decoder decoder) throws IOException {
+    private ImmutableMultimap<String, HashCode> readRootHashes(Decoder decoder, StringTable strings) throws IOException {
         int numberOfRoots = decoder.readSmallInt();
         if (numberOfRoots == 0) {
             return ImmutableMultimap.of();
         }
         ImmutableMultimap.Builder<String, HashCode> builder = ImmutableMultimap.builder();
         for (int i = 0; i < numberOfRoots; i++) {
-            String absolutePath = stringInterner.intern(decoder.readString());
+            String absolutePath = stringInterner.intern(strings.read(decoder));
             HashCode rootHash = hashCodeSerializer.read(decoder);
             builder.put(absolutePath, rootHash);
         }
         return builder.build();
     }
 
+    private Map<String, FileSystemLocationFingerprint> decodeFingerprints(byte[] encodedFingerprints) throws IOException {
+        KryoBackedDecoder decoder = new KryoBackedDecoder(new ByteArrayInputStream(encodedFingerprints));
+        return fingerprintMapSerializer.read(decoder, new StringTable());
+    }
+
     @Override
     public void write(Encoder encoder, FileCollectionFingerprint value) throws Exception {
-        fingerprintMapSerializer.write(encoder, value.getFingerprints());
-        if (!value.getFingerprints().isEmpty()) {
-            writeRootHashes(encoder, value.getRootHashes());
+        write(encoder, value, new StringTable());
+    }
+
+    public void write(Encoder encoder, FileCollectionFingerprint value, StringTable strings) throws IOException {
+        Map<String, FileSystemLocationFingerprint> fingerprints = value.getFingerprints();
+        encoder.writeBoolean(fingerprints.isEmpty());
+        if (!fingerprints.isEmpty()) {
+            writeRootHashes(encoder, value.getRootHashes(), strings);
+            encoder.writeBinary(encodeFingerprints(fingerprints));
         }
     }
 
-    private void writeRootHashes(Encoder encoder, ImmutableMultimap<String, HashCode> rootHashes) throws IOException {
+    private void writeRootHashes(Encoder encoder, ImmutableMultimap<String, HashCode> rootHashes, StringTable strings) throws IOException {
         encoder.writeSmallInt(rootHashes.size());
         for (Map.Entry<String, HashCode> entry : rootHashes.entries()) {
-            encoder.writeString(entry.getKey());
+            strings.write(encoder, entry.getKey());
             hashCodeSerializer.write(encoder, entry.getValue());
         }
     }
 
+    private byte[] encodeFingerprints(Map<String, FileSystemLocationFingerprint> fingerprints) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        KryoBackedEncoder encoder = new KryoBackedEncoder(bytes);
+        // The block is decoded on its own, so it cannot refer to strings of the rest of the entry
+        fingerprintMapSerializer.write(encoder, fingerprints, new StringTable());
+        encoder.flush();
+        return bytes.toByteArray();
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (!super.equals(obj)) {
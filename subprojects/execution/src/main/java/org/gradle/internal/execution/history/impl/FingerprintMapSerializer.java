@@ -32,13 +32,26 @@
 import java.io.IOException;
 import java.util.Map;
 
+/**
+ * Writes fingerprints in a compact form:
+ *
+ * <ul>
+ *     <li>each absolute path is written as the length of the prefix it shares with the previous path followed by the rest of the path,</li>
+ *     <li>the file type and the kind of normalization are packed into a single byte,</li>
+ *     <li>normalized paths that are a suffix of the absolute path, like relative paths and file names, are written as their length,</li>
+ *     <li>other normalized paths go through a {@link StringTable}.</li>
+ * </ul>
+ */
 public class FingerprintMapSerializer extends AbstractSerializer<Map<String, FileSystemLocationFingerprint>> {
-    private static final byte DEFAULT_NORMALIZATION = 1;
-    private static final byte IGNORED_PATH_NORMALIZATION = 2;
+    private static final int DIR_FINGERPRINT = 1;
+    private static final int MISSING_FILE_FINGERPRINT = 2;
+    private static final int REGULAR_FILE_FINGERPRINT = 3;
+    private static final int FILE_TYPE_MASK = 3;
 
-    private static final byte DIR_FINGERPRINT = 1;
-    private static final byte MISSING_FILE_FINGERPRINT = 2;
-    private static final byte REGULAR_FILE_FINGERPRINT = 3;
+    private static final int NORMALIZATION_SHIFT = 2;
+    private static final int DEFAULT_NORMALIZATION = 1;
+    private static final int IGNORED_PATH_NORMALIZATION = 2;
+    private static final int SUFFIX_NORMALIZATION = 3;
 
     private final HashCodeSerializer hashCodeSerializer = new HashCodeSerializer();
     private final StringInterner stringInterner;
@@ -49,25 +62,42 @@ public FingerprintMapSerializer(StringInterner stringInterner) {
 
     @Override
     public Map<String, FileSystemLocationFingerprint> read(Decoder decoder) throws IOException {
+        return read(decoder, new StringTable());
+    }
+
+    public Map<String, FileSystemLocationFingerprint> read(Decoder decoder, StringTable strings) throws IOException {
         int fingerprintCount = decoder.readSmallInt();
         ImmutableMap.Builder<String, FileSystemLocationFingerprint> fingerprints = ImmutableMap.builderWithExpectedSize(fingerprintCount);
+        String previousPath = "";
         for (int i = 0; i < fingerprintCount; i++) {
-            String absolutePath = stringInterner.intern(decoder.readString());
-            FileSystemLocationFingerprint fingerprint = readFingerprint(decoder);
+            int sharedPrefixLength = decoder.readSmallInt();
+            if (sharedPrefixLength > previousPath.length()) {
+                throw new RuntimeException("Unable to read serialized file fingerprint. Unrecognized path prefix found in the data stream.");
+            }
+            String absolutePath = stringInterner.intern(previousPath.substring(0, sharedPrefixLength) + decoder.readString());
+            FileSystemLocationFingerprint fingerprint = readFingerprint(decoder, absolutePath, strings);
             fingerprints.put(absolutePath, fingerprint);
+            previousPath = absolutePath;
         }
         return fingerprints.build();
     }
 
-    private FileSystemLocationFingerprint readFingerprint(Decoder decoder) throws IOException {
-        FileType fileType = readFileType(decoder);
+    private FileSystemLocationFingerprint readFingerprint(Decoder decoder, String absolutePath, StringTable strings) throws IOException {
+        int header = decoder.readByte();
+        FileType fileType = readFileType(header & FILE_TYPE_MASK);
         HashCode contentHash = readContentHash(fileType, decoder);
 
-        byte fingerprintKind = decoder.readByte();
-        switch (fingerprintKind) {
+        switch (header >> NORMALIZATION_SHIFT) {
             case DEFAULT_NORMALIZATION:
-                String normalizedPath = decoder.readString();
+                String normalizedPath = strings.read(decoder);
                 return new DefaultFileSystemLocationFingerprint(stringInterner.intern(normalizedPath), fileType, contentHash);
+            case SUFFIX_NORMALIZATION:
+                int normalizedPathLength = decoder.readSmallInt();
+                if (normalizedPathLength > absolutePath.length()) {
+                    throw new RuntimeException("Unable to read serialized file fingerprint. Unrecognized normalized path found in the data stream.");
+                }
+                String pathSuffix = absolutePath.substring(absolutePath.length() - normalizedPathLength);
+                return new DefaultFileSystemLocationFingerprint(stringInterner.intern(pathSuffix), fileType, contentHash);
             case IGNORED_PATH_NORMALIZATION:
                 return IgnoredPathFileSystemLocationFingerprint.create(fileType, contentHash);
             default:
@@ -88,8 +118,7 @@ private HashCode readContentHash(FileType fileType, Decoder decoder) throws IOEx
         }
     }
 
-    private FileType readFileType(Decoder decoder) throws IOException {
-        byte fileKind = decoder.readByte();
+    private static FileType readFileType(int fileKind) {
         switch (fileKind) {
             case DIR_FINGERPRINT:
                 return FileType.Directory;
@@ -104,14 +133,35 @@ private FileType readFileType(Decoder decoder) throws IOException {
 
     @Override
     public void write(Encoder encoder, Map<String, FileSystemLocationFingerprint> value) throws Exception {
+        write(encoder, value, new StringTable());
+    }
+
+    public void write(Encoder encoder, Map<String, FileSystemLocationFingerprint> value, StringTable strings) throws IOException {
         encoder.writeSmallInt(value.size());
-        for (String key : value.keySet()) {
-            encoder.writeString(key);
-            FileSystemLocationFingerprint fingerprint = value.get(key);
-            writeFingerprint(encoder, fingerprint);
+        String previousPath = "";
+        for (Map.Entry<String, FileSystemLocationFingerprint> entry : value.entrySet()) {
+            String absolutePath = entry.getKey();
+            int sharedPrefixLength = sharedPrefixLength(previousPath, absolutePath);
+            encoder.writeSmallInt(sharedPrefixLength);
+            encoder.writeString(absolutePath.substring(sharedPrefixLength));
+            writeFingerprint(encoder, absolutePath, entry.getValue(), strings);
+            previousPath = absolutePath;
         }
     }
 
+    private static int sharedPrefixLength(String previous, String current) {
+        int maxLength = Math.min(previous.length(), current.length());
+        int length = 0;
+        while (length < maxLength && previous.charAt(length) == current.charAt(length)) {
+            length++;
+        }
+        // Do not split surrogate pairs
+        if (length > 0 && Character.isHighSurrogate(current.charAt(length - 1))) {
+            length--;
+        }
+        return length;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (!super.equals(obj)) {
@@ -127,29 +177,42 @@ public int hashCode() {
         return Objects.hashCode(super.hashCode(), hashCodeSerializer);
     }
 
-    private void writeFingerprint(Encoder encoder, FileSystemLocationFingerprint value) throws IOException {
+    private void writeFingerprint(Encoder encoder, String absolutePath, FileSystemLocationFingerprint value, StringTable strings) throws IOException {
+        int fileKind;
         switch (value.getType()) {
             case Directory:
-                encoder.writeByte(DIR_FINGERPRINT);
+                fileKind = DIR_FINGERPRINT;
                 break;
             case Missing:
-                encoder.writeByte(MISSING_FILE_FINGERPRINT);
+                fileKind = MISSING_FILE_FINGERPRINT;
                 break;
             case RegularFile:
-                encoder.writeByte(REGULAR_FILE_FINGERPRINT);
-                hashCodeSerializer.write(encoder, value.getNormalizedContentHash());
+                fileKind = REGULAR_FILE_FINGERPRINT;
                 break;
             default:
                 throw new AssertionError();
         }
 
         if (value instanceof DefaultFileSystemLocationFingerprint) {
-            encoder.writeByte(DEFAULT_NORMALIZATION);
-            encoder.writeString(value.getNormalizedPath());
+            String normalizedPath = value.getNormalizedPath();
+            if (absolutePath.endsWith(normalizedPath)) {
+                writeHeader(encoder, fileKind, SUFFIX_NORMALIZATION, value);
+                encoder.writeSmallInt(normalizedPath.length());
+            } else {
+                writeHeader(encoder, fileKind, DEFAULT_NORMALIZATION, value);
+                strings.write(encoder, normalizedPath);
+            }
         } else if (value instanceof IgnoredPathFileSystemLocationFingerprint) {
-            encoder.writeByte(IGNORED_PATH_NORMALIZATION);
+            writeHeader(encoder, fileKind, IGNORED_PATH_NORMALIZATION, value);
         } else {
             throw new AssertionError();
         }
     }
+
+    private void writeHeader(Encoder encoder, int fileKind, int normalizationKind, FileSystemLocationFingerprint value) throws IOException {
+        encoder.writeByte((byte) (fileKind | normalizationKind << NORMALIZATION_SHIFT));
+        if (fileKind == REGULAR_FILE_FINGERPRINT) {
+            hashCodeSerializer.write(encoder, value.getNormalizedContentHash());
+        }
+    }
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.history.impl;
+
+import com.google.common.collect.ImmutableMultimap;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.fingerprint.FileCollectionFingerprint;
+import org.gradle.internal.fingerprint.FileSystemLocationFingerprint;
+import org.gradle.internal.hash.HashCode;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * A fingerprint read from the execution history whose individual file fingerprints are only decoded when first requested.
+ */
+class LazyFileCollectionFingerprint implements FileCollectionFingerprint {
+    private final ImmutableMultimap<String, HashCode> rootHashes;
+    private Callable<Map<String, FileSystemLocationFingerprint>> decoder;
+    private Map<String, FileSystemLocationFingerprint> fingerprints;
+
+    public LazyFileCollectionFingerprint(ImmutableMultimap<String, HashCode> rootHashes, Callable<Map<String, FileSystemLocationFingerprint>> decoder) {
+        this.rootHashes = rootHashes;
+        this.decoder = decoder;
+    }
+
+    @Override
+    public synchronized Map<String, FileSystemLocationFingerprint> getFingerprints() {
+        if (fingerprints == null) {
+            try {
+                fingerprints = decoder.call();
+            } catch (Exception e) {
+                throw UncheckedException.throwAsUncheckedException(e);
+            }
+            // Release the encoded fingerprints
+            decoder = null;
+        }
+        return fingerprints;
+    }
+
+    @Override
+    public ImmutableMultimap<String, HashCode> getRootHashes() {
+        return rootHashes;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.history.impl;
+
+import org.gradle.internal.serialize.Decoder;
+import org.gradle.internal.serialize.Encoder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Strings shared between the properties of a single execution history entry.
+ * The first occurrence of a string is written in full, later occurrences are written as a reference to the first one.
+ *
+ * A table is only good for either writing or reading a single entry.
+ */
+class StringTable {
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
+    public void write(Encoder encoder, String value) throws IOException {
+        Integer index = indexes.get(value);
+        if (index != null) {
+            encoder.writeSmallInt(index + 1);
+        } else {
+            encoder.writeSmallInt(0);
+            encoder.writeString(value);
+            indexes.put(value, indexes.size());
+        }
+    }
+
+    public String read(Decoder decoder) throws IOException {
+        int reference = decoder.readSmallInt();
+        if (reference == 0) {
+            String value = decoder.readString();
+            strings.add(value);
+            return value;
+        }
+        if (reference > strings.size()) {
+            throw new RuntimeException("Unable to read serialized string. Unrecognized reference found in the data stream.");
+        }
+        return strings.get(reference - 1);
+    }
+}
@@ -56,6 +56,7 @@ public class CaptureStateBeforeExecutionStep extends BuildOperationStep<AfterPre
     private final ClassLoaderHierarchyHasher classLoaderHierarchyHasher;
     private final ValueSnapshotter valueSnapshotter;
     private final OverlappingOutputDetector overlappingOutputDetector;
+    private final boolean snapshotBeforeLoadingPreviousState;
     private final Step<? super BeforeExecutionContext, ? extends CachingResult> delegate;
 
     public CaptureStateBeforeExecutionStep(
@@ -64,11 +65,27 @@ public CaptureStateBeforeExecutionStep(
         ValueSnapshotter valueSnapshotter,
         OverlappingOutputDetector overlappingOutputDetector,
         Step<? super BeforeExecutionContext, ? extends CachingResult> delegate
+    ) {
+        this(buildOperationExecutor, classLoaderHierarchyHasher, valueSnapshotter, overlappingOutputDetector, false, delegate);
+    }
+
+    /**
+     * @param snapshotBeforeLoadingPreviousState whether to snapshot the outputs and fingerprint the input files before requesting the previous execution state,
+     * so that a state that is being loaded in the background can finish in the meantime.
+     */
+    public CaptureStateBeforeExecutionStep(
+        BuildOperationExecutor buildOperationExecutor,
+        ClassLoaderHierarchyHasher classLoaderHierarchyHasher,
+        ValueSnapshotter valueSnapshotter,
+        OverlappingOutputDetector overlappingOutputDetector,
+        boolean snapshotBeforeLoadingPreviousState,
+        Step<? super BeforeExecutionContext, ? extends CachingResult> delegate
     ) {
         super(buildOperationExecutor);
         this.classLoaderHierarchyHasher = classLoaderHierarchyHasher;
         this.valueSnapshotter = valueSnapshotter;
         this.overlappingOutputDetector = overlappingOutputDetector;
+        this.snapshotBeforeLoadingPreviousState = snapshotBeforeLoadingPreviousState;
         this.delegate = delegate;
     }
 
@@ -112,7 +129,9 @@ private BeforeExecutionState captureExecutionStateOp(AfterPreviousExecutionConte
     }
 
     private BeforeExecutionState captureExecutionState(AfterPreviousExecutionContext context) {
-        Optional<AfterPreviousExecutionState> afterPreviousExecutionState = context.getAfterPreviousExecutionState();
+        Optional<AfterPreviousExecutionState> afterPreviousExecutionState = snapshotBeforeLoadingPreviousState
+            ? Optional.empty()
+            : context.getAfterPreviousExecutionState();
         UnitOfWork work = context.getWork();
 
         ImplementationsBuilder implementationsBuilder = new ImplementationsBuilder(classLoaderHierarchyHasher);
@@ -125,6 +144,15 @@ private BeforeExecutionState captureExecutionState(AfterPreviousExecutionContext
             LOGGER.debug("Additional implementations for {}: {}", work.getDisplayName(), additionalImplementations);
         }
 
+        ImmutableSortedMap<String, FileSystemSnapshot> outputFileSnapshots = null;
+        ImmutableSortedMap<String, CurrentFileCollectionFingerprint> inputFileFingerprints = null;
+        if (snapshotBeforeLoadingPreviousState) {
+            // Neither depends on the previous execution, so the previous state can finish loading in the meantime
+            outputFileSnapshots = work.snapshotOutputsBeforeExecution();
+            inputFileFingerprints = fingerprintInputFiles(work);
+            afterPreviousExecutionState = context.getAfterPreviousExecutionState();
+        }
+
         ImmutableSortedMap<String, ValueSnapshot> previousInputProperties = afterPreviousExecutionState
             .map(ExecutionState::getInputProperties)
             .orElse(ImmutableSortedMap.of());
@@ -132,7 +160,9 @@ private BeforeExecutionState captureExecutionState(AfterPreviousExecutionContext
             .map(AfterPreviousExecutionState::getOutputFileProperties)
             .orElse(ImmutableSortedMap.of());
 
-        ImmutableSortedMap<String, FileSystemSnapshot> outputFileSnapshots = work.snapshotOutputsBeforeExecution();
+        if (outputFileSnapshots == null) {
+            outputFileSnapshots = work.snapshotOutputsBeforeExecution();
+        }
 
         OverlappingOutputs overlappingOutputs;
         switch (work.getOverlappingOutputHandling()) {
@@ -147,7 +177,9 @@ private BeforeExecutionState captureExecutionState(AfterPreviousExecutionContext
         }
 
         ImmutableSortedMap<String, ValueSnapshot> inputProperties = fingerprintInputProperties(work, previousInputProperties, valueSnapshotter);
-        ImmutableSortedMap<String, CurrentFileCollectionFingerprint> inputFileFingerprints = fingerprintInputFiles(work);
+        if (inputFileFingerprints == null) {
+            inputFileFingerprints = fingerprintInputFiles(work);
+        }
         ImmutableSortedMap<String, CurrentFileCollectionFingerprint> outputFileFingerprints = fingerprintOutputFiles(
             outputSnapshotsAfterPreviousExecution,
             outputFileSnapshots,
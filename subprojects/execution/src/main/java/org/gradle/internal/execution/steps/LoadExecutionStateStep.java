@@ -16,31 +16,51 @@
 
 package org.gradle.internal.execution.steps;
 
+import org.gradle.internal.UncheckedException;
 import org.gradle.internal.execution.AfterPreviousExecutionContext;
 import org.gradle.internal.execution.ExecutionRequestContext;
 import org.gradle.internal.execution.Result;
 import org.gradle.internal.execution.Step;
 import org.gradle.internal.execution.UnitOfWork;
 import org.gradle.internal.execution.history.AfterPreviousExecutionState;
+import org.gradle.internal.execution.history.ExecutionHistoryStore;
 
+import javax.annotation.Nullable;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 public class LoadExecutionStateStep<C extends ExecutionRequestContext, R extends Result> implements Step<C, R> {
+    @Nullable
+    private final Executor loadExecutor;
     private final Step<? super AfterPreviousExecutionContext, ? extends R> delegate;
 
     public LoadExecutionStateStep(Step<? super AfterPreviousExecutionContext, ? extends R> delegate) {
+        this(null, delegate);
+    }
+
+    /**
+     * When a load executor is given, the previous execution state is loaded on it while the following steps
+     * carry on with work that does not need the state, like snapshotting the inputs and outputs.
+     * Requesting the state from the context then waits for the load to finish.
+     */
+    public LoadExecutionStateStep(@Nullable Executor loadExecutor, Step<? super AfterPreviousExecutionContext, ? extends R> delegate) {
+        this.loadExecutor = loadExecutor;
         this.delegate = delegate;
     }
 
     @Override
     public R execute(C context) {
         UnitOfWork work = context.getWork();
-        Optional<AfterPreviousExecutionState> afterPreviousExecutionState = work.getExecutionHistoryStore()
-            .flatMap(executionHistoryStore -> executionHistoryStore.load(work.getIdentity()));
+        Supplier<Optional<AfterPreviousExecutionState>> afterPreviousExecutionState = work.getExecutionHistoryStore()
+            .map(executionHistoryStore -> load(executionHistoryStore, work.getIdentity()))
+            .orElse(Optional::empty);
         return delegate.execute(new AfterPreviousExecutionContext() {
             @Override
             public Optional<AfterPreviousExecutionState> getAfterPreviousExecutionState() {
-                return afterPreviousExecutionState;
+                return afterPreviousExecutionState.get();
             }
 
             @Override
@@ -54,4 +74,19 @@ public UnitOfWork getWork() {
             }
         });
     }
+
+    private Supplier<Optional<AfterPreviousExecutionState>> load(ExecutionHistoryStore executionHistoryStore, String identity) {
+        if (loadExecutor == null) {
+            Optional<AfterPreviousExecutionState> afterPreviousExecutionState = executionHistoryStore.load(identity);
+            return () -> afterPreviousExecutionState;
+        }
+        CompletableFuture<Optional<AfterPreviousExecutionState>> pendingLoad = CompletableFuture.supplyAsync(() -> executionHistoryStore.load(identity), loadExecutor);
+        return () -> {
+            try {
+                return pendingLoad.join();
+            } catch (CompletionException e) {
+                throw UncheckedException.throwAsUncheckedException(e.getCause());
+            }
+        };
+    }
 }
@@ -30,6 +30,7 @@
 import org.gradle.internal.fingerprint.FileCollectionFingerprint;
 
 import java.util.Optional;
+import java.util.function.Supplier;
 
 public class SkipEmptyWorkStep<C extends AfterPreviousExecutionContext> implements Step<C, CachingResult> {
     private final Step<? super C, ? extends CachingResult> delegate;
@@ -41,7 +42,7 @@ public SkipEmptyWorkStep(Step<? super C, ? extends CachingResult> delegate) {
     @Override
     public CachingResult execute(C context) {
         UnitOfWork work = context.getWork();
-        ImmutableSortedMap<String, FileCollectionFingerprint> outputFilesAfterPreviousExecution = context.getAfterPreviousExecutionState()
+        Supplier<ImmutableSortedMap<String, FileCollectionFingerprint>> outputFilesAfterPreviousExecution = () -> context.getAfterPreviousExecutionState()
             .map(AfterPreviousExecutionState::getOutputFileProperties)
             .orElse(ImmutableSortedMap.of());
         return work.skipIfInputsEmpty(outputFilesAfterPreviousExecution)
@@ -90,4 +90,63 @@ class FileCollectionFingerprintSerializerTest extends SerializerSpec {
         out.fingerprints.keySet() as List == ["/3", "/2", "/1"]
         out.rootHashes.keySet() as List == ["/3", "/2", "/1"]
     }
+
+    def "reads and writes normalized paths that are not a suffix of the absolute path"() {
+        def hash = HashCode.fromInt(1234)
+
+        when:
+        def out = serialize(new SerializableFileCollectionFingerprint(
+                '/dir/a/file.txt': new DefaultFileSystemLocationFingerprint("file.txt", FileType.RegularFile, hash),
+                '/dir/b/file.txt': new DefaultFileSystemLocationFingerprint("renamed.txt", FileType.RegularFile, hash),
+                '/dir/c/file.txt': new DefaultFileSystemLocationFingerprint("renamed.txt", FileType.RegularFile, hash),
+                '/dir': new DefaultFileSystemLocationFingerprint("", FileType.Directory, FileSystemLocationFingerprint.DIR_SIGNATURE),
+                ImmutableMultimap.of("/dir", HashCode.fromInt(1), "/elsewhere", HashCode.fromInt(2))
+        ), serializer)
+
+        then:
+        out.fingerprints.keySet() as List == ['/dir/a/file.txt', '/dir/b/file.txt', '/dir/c/file.txt', '/dir']
+        out.fingerprints.values()*.normalizedPath == ["file.txt", "renamed.txt", "renamed.txt", ""]
+        out.rootHashes == ImmutableMultimap.of("/dir", HashCode.fromInt(1), "/elsewhere", HashCode.fromInt(2))
+    }
+
+    def "shares common path prefixes between fingerprints"() {
+        Map<String, FileSystemLocationFingerprint> fingerprints = [:]
+        (1..100).each {
+            def path = "/some/long/path/to/the/project/src/main/java/org/gradle/File${it}.java".toString()
+            fingerprints[path] = new DefaultFileSystemLocationFingerprint("org/gradle/File${it}.java".toString(), FileType.RegularFile, HashCode.fromInt(it))
+        }
+
+        when:
+        def bytes = toBytes(new SerializableFileCollectionFingerprint(fingerprints, ImmutableMultimap.of()), serializer)
+
+        then:
+        // Each absolute path alone is more than 60 characters long
+        bytes.length < 100 * 25
+        fromBytes(bytes, serializer).fingerprints.keySet() == fingerprints.keySet()
+    }
+
+    def "decodes the fingerprints of individual files only when requested"() {
+        def stringInterner = Spy(StringInterner)
+        def serializer = new FileCollectionFingerprintSerializer(stringInterner)
+        def rootHashes = ImmutableMultimap.of("/dir", HashCode.fromInt(1))
+        def bytes = toBytes(new SerializableFileCollectionFingerprint(
+                '/dir': new DefaultFileSystemLocationFingerprint("", FileType.Directory, FileSystemLocationFingerprint.DIR_SIGNATURE),
+                '/dir/file.txt': new DefaultFileSystemLocationFingerprint("file.txt", FileType.RegularFile, HashCode.fromInt(1234)),
+                rootHashes
+        ), serializer)
+
+        when:
+        def out = fromBytes(bytes, serializer)
+
+        then:
+        out.rootHashes == rootHashes
+        0 * stringInterner.intern("/dir/file.txt")
+
+        when:
+        def fingerprints = out.fingerprints
+
+        then:
+        fingerprints.keySet() as List == ["/dir", "/dir/file.txt"]
+        1 * stringInterner.intern("/dir/file.txt")
+    }
 }
@@ -271,6 +271,41 @@ class CaptureStateBeforeExecutionStepTest extends StepSpec<AfterPreviousExecutio
         assertOperationForInputsBeforeExecution()
     }
 
+    def "requests previous execution state before snapshotting by default"() {
+        def events = []
+
+        when:
+        step.execute(context)
+
+        then:
+        _ * context.afterPreviousExecutionState >> { events << "previous state"; Optional.empty() }
+        _ * work.snapshotOutputsBeforeExecution() >> { events << "outputs"; ImmutableSortedMap.of() }
+        _ * work.visitInputFileProperties(_ as UnitOfWork.InputFilePropertyVisitor) >> { events << "input files" }
+        interaction { fingerprintInputs() }
+        1 * delegate.execute(_)
+
+        and:
+        events == ["previous state", "outputs", "input files"]
+    }
+
+    def "snapshots outputs and input files before requesting previous execution state when loading it in the background"() {
+        def step = new CaptureStateBeforeExecutionStep(buildOperationExecutor, classloaderHierarchyHasher, valueSnapshotter, overlappingOutputDetector, true, delegate)
+        def events = []
+
+        when:
+        step.execute(context)
+
+        then:
+        _ * context.afterPreviousExecutionState >> { events << "previous state"; Optional.empty() }
+        _ * work.snapshotOutputsBeforeExecution() >> { events << "outputs"; ImmutableSortedMap.of() }
+        _ * work.visitInputFileProperties(_ as UnitOfWork.InputFilePropertyVisitor) >> { events << "input files" }
+        interaction { fingerprintInputs() }
+        1 * delegate.execute(_)
+
+        and:
+        events == ["outputs", "input files", "previous state"]
+    }
+
     void fingerprintInputs() {
         _ * context.afterPreviousExecutionState >> Optional.empty()
         _ * work.visitImplementations(_ as UnitOfWork.ImplementationVisitor) >> { UnitOfWork.ImplementationVisitor visitor ->
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.steps
+
+import org.gradle.internal.execution.AfterPreviousExecutionContext
+import org.gradle.internal.execution.ExecutionRequestContext
+import org.gradle.internal.execution.Result
+import org.gradle.internal.execution.history.AfterPreviousExecutionState
+import org.gradle.internal.execution.history.ExecutionHistoryStore
+
+import java.util.concurrent.Executor
+
+class LoadExecutionStateStepTest extends StepSpec<ExecutionRequestContext> {
+    def executionHistoryStore = Mock(ExecutionHistoryStore)
+    def afterPreviousExecutionState = Mock(AfterPreviousExecutionState)
+    def delegateResult = Mock(Result)
+    def pendingLoads = []
+    def loadExecutor = { Runnable load -> pendingLoads << load } as Executor
+
+    @Override
+    protected ExecutionRequestContext createContext() {
+        Stub(ExecutionRequestContext)
+    }
+
+    def "loads previous execution state before delegating"() {
+        def step = new LoadExecutionStateStep<>(delegate)
+
+        when:
+        def result = step.execute(context)
+
+        then:
+        result == delegateResult
+
+        _ * work.executionHistoryStore >> Optional.of(executionHistoryStore)
+        1 * executionHistoryStore.load(identity) >> Optional.of(afterPreviousExecutionState)
+
+        then:
+        1 * delegate.execute(_) >> { AfterPreviousExecutionContext delegateContext ->
+            assert delegateContext.afterPreviousExecutionState.get() == afterPreviousExecutionState
+            delegateResult
+        }
+        0 * _
+    }
+
+    def "previous execution state is empty when history is not maintained"() {
+        def step = new LoadExecutionStateStep<>(loadExecutor, delegate)
+
+        when:
+        step.execute(context)
+
+        then:
+        _ * work.executionHistoryStore >> Optional.empty()
+        1 * delegate.execute(_) >> { AfterPreviousExecutionContext delegateContext ->
+            assert !delegateContext.afterPreviousExecutionState.present
+            delegateResult
+        }
+        pendingLoads.empty
+        0 * _
+    }
+
+    def "loads previous execution state in the background when an executor is given"() {
+        def step = new LoadExecutionStateStep<>(loadExecutor, delegate)
+
+        when:
+        def result = step.execute(context)
+
+        then:
+        result == delegateResult
+
+        _ * work.executionHistoryStore >> Optional.of(executionHistoryStore)
+        1 * delegate.execute(_) >> { AfterPreviousExecutionContext delegateContext ->
+            assert pendingLoads.size() == 1
+            pendingLoads[0].run()
+            assert delegateContext.afterPreviousExecutionState.get() == afterPreviousExecutionState
+            delegateResult
+        }
+        1 * executionHistoryStore.load(identity) >> Optional.of(afterPreviousExecutionState)
+        0 * _
+    }
+
+    def "failure to load previous execution state in the background is rethrown when the state is requested"() {
+        def step = new LoadExecutionStateStep<>(loadExecutor, delegate)
+        def failure = new RuntimeException("broken history")
+
+        when:
+        step.execute(context)
+
+        then:
+        def ex = thrown RuntimeException
+        ex == failure
+
+        _ * work.executionHistoryStore >> Optional.of(executionHistoryStore)
+        1 * executionHistoryStore.load(identity) >> { throw failure }
+        1 * delegate.execute(_) >> { AfterPreviousExecutionContext delegateContext ->
+            pendingLoads.each { it.run() }
+            delegateContext.afterPreviousExecutionState
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.hash;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Compares hashing file contents through an input stream with hashing them through a file channel,
+ * using direct buffers or memory mapping.
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class FileHashingBenchmark {
+    private static final int MB = 1024 * 1024;
+
+    @Param({"1", "16", "256", "1024"})
+    int fileSizeInMb;
+
+    @Param({"MD5", "MURMUR3-128"})
+    String algorithm;
+
+    File file;
+    DefaultStreamHasher hasher;
+    DefaultStreamHasher mappingHasher;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = File.createTempFile("jmh", "hash");
+        byte[] chunk = new byte[MB];
+        Random random = new Random(1234L);
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            for (int i = 0; i < fileSizeInMb; i++) {
+                random.nextBytes(chunk);
+                output.write(chunk);
+            }
+        } finally {
+            output.close();
+        }
+        HashFunction hashFunction = Hashing.forAlgorithm(algorithm);
+        hasher = new DefaultStreamHasher(hashFunction, false);
+        mappingHasher = new DefaultStreamHasher(hashFunction, true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public HashCode input_stream() throws IOException {
+        FileInputStream input = new FileInputStream(file);
+        try {
+            return hasher.hash(input);
+        } finally {
+            input.close();
+        }
+    }
+
+    @Benchmark
+    public HashCode direct_buffer() throws IOException {
+        FileInputStream input = new FileInputStream(file);
+        try {
+            return hasher.hash(input.getChannel(), true);
+        } finally {
+            input.close();
+        }
+    }
+
+    @Benchmark
+    public HashCode memory_mapped() throws IOException {
+        FileInputStream input = new FileInputStream(file);
+        try {
+            return mappingHasher.hash(input.getChannel(), true);
+        } finally {
+            input.close();
+        }
+    }
+}
@@ -15,30 +15,43 @@
  */
 package org.gradle.internal.hash;
 
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.UncheckedIOException;
 
 public class DefaultFileHasher implements FileHasher {
     private final StreamHasher streamHasher;
+    private final Predicate<File> immutableFiles;
 
     public DefaultFileHasher(StreamHasher streamHasher) {
+        this(streamHasher, Predicates.<File>alwaysFalse());
+    }
+
+    /**
+     * @param immutableFiles identifies files that are never modified in place, which can be safely memory mapped while hashing them.
+     */
+    public DefaultFileHasher(StreamHasher streamHasher, Predicate<File> immutableFiles) {
         this.streamHasher = streamHasher;
+        this.immutableFiles = immutableFiles;
     }
 
     @Override
     public HashCode hash(File file) {
-        InputStream inputStream;
+        FileInputStream inputStream;
         try {
             inputStream = new FileInputStream(file);
         } catch (FileNotFoundException e) {
-            throw new UncheckedIOException(String.format("Failed to create MD5 hash for file '%s' as it does not exist.", file), e);
+            throw new UncheckedIOException(String.format("Failed to hash file '%s' as it does not exist.", file), e);
         }
         try {
-            return streamHasher.hash(inputStream);
+            return streamHasher.hash(inputStream.getChannel(), immutableFiles.apply(file));
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Failed to hash file '%s'.", file), e);
         } finally {
             try {
                 inputStream.close();
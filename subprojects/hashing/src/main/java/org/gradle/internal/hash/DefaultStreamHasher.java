@@ -21,20 +21,46 @@
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.util.Queue;
 import java.util.concurrent.ArrayBlockingQueue;
 
 public class DefaultStreamHasher implements StreamHasher {
     private static final HashCode SIGNATURE = Hashing.signature(DefaultStreamHasher.class);
+    private static final int DIRECT_BUFFER_SIZE = 64 * 1024;
+    private static final long MEMORY_MAPPING_THRESHOLD = 1024 * 1024;
+    private static final long MAPPED_REGION_SIZE = 64 * 1024 * 1024;
 
     private final Queue<byte[]> buffers = new ArrayBlockingQueue<byte[]>(16);
+    private final Queue<ByteBuffer> directBuffers = new ArrayBlockingQueue<ByteBuffer>(16);
+    private final HashFunction hashFunction;
+    private final boolean memoryMapLargeFiles;
+
+    public DefaultStreamHasher() {
+        this(Hashing.contentFunction());
+    }
+
+    public DefaultStreamHasher(HashFunction hashFunction) {
+        this(hashFunction, false);
+    }
+
+    /**
+     * @param memoryMapLargeFiles whether to hash large immutable files via memory mapping, when the hash function can consume mapped regions in place.
+     * Mapped regions are only released on garbage collection, so this should not be used where open mappings prevent files from being deleted.
+     */
+    public DefaultStreamHasher(HashFunction hashFunction, boolean memoryMapLargeFiles) {
+        this.hashFunction = hashFunction;
+        this.memoryMapLargeFiles = memoryMapLargeFiles;
+    }
 
     @Override
     public HashCode hash(InputStream inputStream) {
         try {
             return doHash(inputStream, ByteStreams.nullOutputStream());
         } catch (IOException e) {
-            throw new UncheckedIOException("Failed to create MD5 hash for file content.", e);
+            throw new UncheckedIOException("Failed to create " + hashFunction.getAlgorithm() + " hash for file content.", e);
         }
     }
 
@@ -43,10 +69,47 @@ public HashCode hashCopy(InputStream inputStream, OutputStream outputStream) thr
         return doHash(inputStream, outputStream);
     }
 
+    @Override
+    public HashCode hash(FileChannel channel, boolean immutable) throws IOException {
+        if (!Hashing.hashesBuffersWithoutCopying(hashFunction)) {
+            // The content would be copied to the heap anyway, so read it into a heap buffer right away
+            return doHash(Channels.newInputStream(channel), ByteStreams.nullOutputStream());
+        }
+        PrimitiveHasher hasher = hashFunction.newPrimitiveHasher();
+        hasher.putHash(SIGNATURE);
+        long position = channel.position();
+        long size = channel.size();
+        if (memoryMapLargeFiles && immutable && size - position >= MEMORY_MAPPING_THRESHOLD) {
+            try {
+                while (position < size) {
+                    long regionSize = Math.min(size - position, MAPPED_REGION_SIZE);
+                    hasher.putBytes(channel.map(FileChannel.MapMode.READ_ONLY, position, regionSize));
+                    position += regionSize;
+                }
+            } catch (InternalError e) {
+                // Reported by the JVM instead of crashing when a mapped region was truncated while reading it
+                throw new IOException("File was truncated while it was hashed.", e);
+            }
+            channel.position(position);
+        } else {
+            ByteBuffer buffer = takeDirectBuffer();
+            try {
+                while (channel.read(buffer) >= 0) {
+                    Hashing.castBuffer(buffer).flip();
+                    hasher.putBytes(buffer);
+                    Hashing.castBuffer(buffer).clear();
+                }
+            } finally {
+                returnDirectBuffer(buffer);
+            }
+        }
+        return hasher.hash();
+    }
+
     private HashCode doHash(InputStream inputStream, OutputStream outputStream) throws IOException {
         byte[] buffer = takeBuffer();
         try {
-            PrimitiveHasher hasher = Hashing.newPrimitiveHasher();
+            PrimitiveHasher hasher = hashFunction.newPrimitiveHasher();
             hasher.putHash(SIGNATURE);
             while (true) {
                 int nread = inputStream.read(buffer);
@@ -67,6 +130,19 @@ private void returnBuffer(byte[] buffer) {
         buffers.offer(buffer);
     }
 
+    private void returnDirectBuffer(ByteBuffer buffer) {
+        Hashing.castBuffer(buffer).clear();
+        directBuffers.offer(buffer);
+    }
+
+    private ByteBuffer takeDirectBuffer() {
+        ByteBuffer buffer = directBuffers.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE);
+        }
+        return buffer;
+    }
+
     private byte[] takeBuffer() {
         byte[] buffer = buffers.poll();
         if (buffer == null) {
@@ -45,4 +45,9 @@ public interface HashFunction {
      * Returns the number of hexadecimal digits needed to represent the hash.
      */
     int getHexDigits();
+
+    /**
+     * Returns the name of the algorithm implemented by the hash function.
+     */
+    String getAlgorithm();
 }
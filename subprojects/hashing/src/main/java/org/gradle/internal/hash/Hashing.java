@@ -38,8 +38,17 @@ private Hashing() {}
 
     private static final HashFunction SHA1 = MessageDigestHashFunction.of("SHA-1");
 
+    private static final HashFunction MURMUR3_128 = new Murmur3HashFunction();
+
     private static final HashFunction DEFAULT = MD5;
 
+    /**
+     * System property to select the hash function used for file contents, see {@link #contentFunction()}.
+     */
+    public static final String CONTENT_HASH_FUNCTION_PROPERTY = "org.gradle.unsafe.content-hash-function";
+
+    private static final HashFunction CONTENT = forAlgorithm(System.getProperty(CONTENT_HASH_FUNCTION_PROPERTY, DEFAULT.getAlgorithm()));
+
     /**
      * Returns a new {@link Hasher} based on the default hashing implementation.
      */
@@ -120,10 +129,45 @@ public static HashFunction sha1() {
         return SHA1;
     }
 
+    /**
+     * Non-cryptographic 128-bit MurmurHash3 (x64 variant) hashing function.
+     */
+    public static HashFunction murmur3() {
+        return MURMUR3_128;
+    }
+
+    /**
+     * The hashing function used to hash file contents.
+     *
+     * Defaults to the {@link #defaultFunction() default function}, and can be changed to any
+     * function supported by {@link #forAlgorithm(String)} via {@value #CONTENT_HASH_FUNCTION_PROPERTY}.
+     * Anything persisting content hashes must be keyed by the {@link HashFunction#getAlgorithm() algorithm} of this function.
+     *
+     * The property is read once per JVM, so the launcher treats it as an immutable daemon system property
+     * and worker daemons are started with the value of the process that spawns them.
+     */
+    public static HashFunction contentFunction() {
+        return CONTENT;
+    }
+
+    /**
+     * Returns the hashing function for the given algorithm name.
+     */
+    public static HashFunction forAlgorithm(String algorithm) {
+        for (HashFunction function : new HashFunction[]{MD5, SHA1, MURMUR3_128}) {
+            if (function.getAlgorithm().equalsIgnoreCase(algorithm)) {
+                return function;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported hash algorithm: " + algorithm);
+    }
+
     private static abstract class MessageDigestHashFunction implements HashFunction {
+        private final String algorithm;
         private final int hexDigits;
 
-        public MessageDigestHashFunction(int hashBits) {
+        public MessageDigestHashFunction(String algorithm, int hashBits) {
+            this.algorithm = algorithm;
             this.hexDigits = hashBits / 4;
         }
 
@@ -137,7 +181,7 @@ public static MessageDigestHashFunction of(String algorithm) {
             int hashBits = prototype.getDigestLength() * 8;
             try {
                 prototype.clone();
-                return new CloningMessageDigestHashFunction(prototype, hashBits);
+                return new CloningMessageDigestHashFunction(algorithm, prototype, hashBits);
             } catch (CloneNotSupportedException e) {
                 return new RegularMessageDigestHashFunction(algorithm, hashBits);
             }
@@ -174,13 +218,18 @@ public HashCode hashString(CharSequence string) {
         public int getHexDigits() {
             return hexDigits;
         }
+
+        @Override
+        public String getAlgorithm() {
+            return algorithm;
+        }
     }
 
     private static class CloningMessageDigestHashFunction extends MessageDigestHashFunction {
         private final MessageDigest prototype;
 
-        public CloningMessageDigestHashFunction(MessageDigest prototype, int hashBits) {
-            super(hashBits);
+        public CloningMessageDigestHashFunction(String algorithm, MessageDigest prototype, int hashBits) {
+            super(algorithm, hashBits);
             this.prototype = prototype;
         }
 
@@ -195,17 +244,14 @@ protected MessageDigest createDigest() {
     }
 
     private static class RegularMessageDigestHashFunction extends MessageDigestHashFunction {
-        private final String algorithm;
-
         public RegularMessageDigestHashFunction(String algorithm, int hashBits) {
-            super(hashBits);
-            this.algorithm = algorithm;
+            super(algorithm, hashBits);
         }
 
         @Override
         protected MessageDigest createDigest() {
             try {
-                return MessageDigest.getInstance(algorithm);
+                return MessageDigest.getInstance(getAlgorithm());
             } catch (NoSuchAlgorithmException e) {
                 throw new AssertionError(e);
             }
@@ -242,20 +288,16 @@ public void putBytes(byte[] bytes, int off, int len) {
             getDigest().update(bytes, off, len);
         }
 
+        @Override
+        public void putBytes(ByteBuffer bytes) {
+            getDigest().update(bytes);
+        }
+
         private void update(int length) {
             getDigest().update(buffer.array(), 0, length);
             castBuffer(buffer).clear();
         }
 
-        /**
-         * Without this cast, when the code compiled by Java 9+ is executed on Java 8, it will throw
-         * java.lang.NoSuchMethodError: Method flip()Ljava/nio/ByteBuffer; does not exist in class java.nio.ByteBuffer
-         */
-        @SuppressWarnings("RedundantCast")
-        private static <T extends Buffer> Buffer castBuffer(T byteBuffer) {
-            return (Buffer) byteBuffer;
-        }
-
         @Override
         public void putInt(int value) {
             buffer.putInt(value);
@@ -297,6 +339,268 @@ public HashCode hash() {
         }
     }
 
+    /**
+     * Whether hashers of the given function consume {@link java.nio.ByteBuffer}s in place.
+     * {@link MessageDigest} copies the content of direct buffers to the heap first.
+     */
+    static boolean hashesBuffersWithoutCopying(HashFunction hashFunction) {
+        return hashFunction instanceof Murmur3HashFunction;
+    }
+
+    private static class Murmur3HashFunction implements HashFunction {
+        @Override
+        public PrimitiveHasher newPrimitiveHasher() {
+            return new Murmur3Hasher();
+        }
+
+        @Override
+        public Hasher newHasher() {
+            return new DefaultHasher(newPrimitiveHasher());
+        }
+
+        @Override
+        public HashCode hashBytes(byte[] bytes) {
+            PrimitiveHasher hasher = newPrimitiveHasher();
+            hasher.putBytes(bytes);
+            return hasher.hash();
+        }
+
+        @Override
+        public HashCode hashString(CharSequence string) {
+            PrimitiveHasher hasher = newPrimitiveHasher();
+            hasher.putString(string);
+            return hasher.hash();
+        }
+
+        @Override
+        public int getHexDigits() {
+            return 32;
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return "MURMUR3-128";
+        }
+    }
+
+    /**
+     * Streaming implementation of MurmurHash3_x64_128 with a zero seed, producing the same hashes as
+     * Guava's {@code Hashing.murmur3_128()}.
+     */
+    private static class Murmur3Hasher implements PrimitiveHasher {
+        private static final int CHUNK_SIZE = 16;
+        private static final long C1 = 0x87c37b91114253d5L;
+        private static final long C2 = 0x4cf5ad432745937fL;
+
+        // Leaves room for a long to be added to a partially filled chunk
+        private final ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE + 7).order(ByteOrder.LITTLE_ENDIAN);
+        private long h1;
+        private long h2;
+        private long length;
+        private boolean done;
+
+        private ByteBuffer getBuffer() {
+            if (done) {
+                throw new IllegalStateException("Cannot reuse hasher!");
+            }
+            return buffer;
+        }
+
+        @Override
+        public void putByte(byte b) {
+            getBuffer().put(b);
+            processIfFull();
+        }
+
+        @Override
+        public void putBytes(byte[] bytes) {
+            putBytes(bytes, 0, bytes.length);
+        }
+
+        @Override
+        public void putBytes(byte[] bytes, int off, int len) {
+            ByteBuffer buffer = getBuffer();
+            if (len <= buffer.remaining()) {
+                buffer.put(bytes, off, len);
+                processIfFull();
+                return;
+            }
+            // Complete the partially filled chunk, then process whole chunks directly from the array
+            int bytesToCopy = CHUNK_SIZE - buffer.position();
+            buffer.put(bytes, off, bytesToCopy);
+            processBuffer();
+            int pos = off + bytesToCopy;
+            int end = off + len;
+            while (end - pos >= CHUNK_SIZE) {
+                processChunk(getLongLittleEndian(bytes, pos), getLongLittleEndian(bytes, pos + 8));
+                pos += CHUNK_SIZE;
+            }
+            buffer.put(bytes, pos, end - pos);
+        }
+
+        @Override
+        public void putBytes(ByteBuffer bytes) {
+            ByteBuffer buffer = getBuffer();
+            if (bytes.remaining() <= buffer.remaining()) {
+                buffer.put(bytes);
+                processIfFull();
+                return;
+            }
+            // Complete the partially filled chunk, then process whole chunks directly from the given buffer
+            int bytesToCopy = CHUNK_SIZE - buffer.position();
+            for (int i = 0; i < bytesToCopy; i++) {
+                buffer.put(bytes.get());
+            }
+            processBuffer();
+            ByteOrder originalOrder = bytes.order();
+            bytes.order(ByteOrder.LITTLE_ENDIAN);
+            try {
+                while (bytes.remaining() >= CHUNK_SIZE) {
+                    processChunk(bytes.getLong(), bytes.getLong());
+                }
+            } finally {
+                bytes.order(originalOrder);
+            }
+            buffer.put(bytes);
+        }
+
+        @Override
+        public void putInt(int value) {
+            getBuffer().putInt(value);
+            processIfFull();
+        }
+
+        @Override
+        public void putLong(long value) {
+            getBuffer().putLong(value);
+            processIfFull();
+        }
+
+        @Override
+        public void putDouble(double value) {
+            putLong(Double.doubleToRawLongBits(value));
+        }
+
+        @Override
+        public void putBoolean(boolean value) {
+            putByte((byte) (value ? 1 : 0));
+        }
+
+        @Override
+        public void putString(CharSequence value) {
+            putBytes(value.toString().getBytes(Charsets.UTF_8));
+        }
+
+        @Override
+        public void putHash(HashCode hashCode) {
+            putBytes(hashCode.getBytes());
+        }
+
+        @Override
+        public HashCode hash() {
+            ByteBuffer buffer = getBuffer();
+            processBuffer();
+            castBuffer(buffer).flip();
+            if (buffer.hasRemaining()) {
+                processRemaining(buffer);
+            }
+            done = true;
+
+            h1 ^= length;
+            h2 ^= length;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix64(h1);
+            h2 = fmix64(h2);
+            h1 += h2;
+            h2 += h1;
+
+            ByteBuffer result = ByteBuffer.wrap(new byte[CHUNK_SIZE]).order(ByteOrder.LITTLE_ENDIAN);
+            result.putLong(h1);
+            result.putLong(h2);
+            return HashCode.fromBytesNoCopy(result.array());
+        }
+
+        private void processIfFull() {
+            if (buffer.remaining() < 8) {
+                processBuffer();
+            }
+        }
+
+        private void processBuffer() {
+            castBuffer(buffer).flip();
+            while (buffer.remaining() >= CHUNK_SIZE) {
+                processChunk(buffer.getLong(), buffer.getLong());
+            }
+            buffer.compact();
+        }
+
+        private void processChunk(long k1, long k2) {
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+
+            length += CHUNK_SIZE;
+        }
+
+        private void processRemaining(ByteBuffer buffer) {
+            long k1 = 0;
+            long k2 = 0;
+            int remaining = buffer.remaining();
+            for (int i = 0; i < remaining; i++) {
+                long b = buffer.get() & 0xffL;
+                if (i < 8) {
+                    k1 ^= b << (8 * i);
+                } else {
+                    k2 ^= b << (8 * (i - 8));
+                }
+            }
+            h1 ^= mixK1(k1);
+            h2 ^= mixK2(k2);
+            length += remaining;
+        }
+
+        private static long getLongLittleEndian(byte[] bytes, int offset) {
+            return (bytes[offset] & 0xffL)
+                | (bytes[offset + 1] & 0xffL) << 8
+                | (bytes[offset + 2] & 0xffL) << 16
+                | (bytes[offset + 3] & 0xffL) << 24
+                | (bytes[offset + 4] & 0xffL) << 32
+                | (bytes[offset + 5] & 0xffL) << 40
+                | (bytes[offset + 6] & 0xffL) << 48
+                | (bytes[offset + 7] & 0xffL) << 56;
+        }
+
+        private static long mixK1(long k1) {
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            return k1;
+        }
+
+        private static long mixK2(long k2) {
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            return k2;
+        }
+
+        private static long fmix64(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
+
     private static class DefaultHasher implements Hasher {
         private final PrimitiveHasher hasher;
         private String invalidReason;
@@ -323,6 +627,12 @@ public void putBytes(byte[] bytes, int off, int len) {
             hasher.putBytes(bytes, off, len);
         }
 
+        @Override
+        public void putBytes(ByteBuffer bytes) {
+            hasher.putInt(bytes.remaining());
+            hasher.putBytes(bytes);
+        }
+
         @Override
         public void putHash(HashCode hashCode) {
             hasher.putInt(hashCode.length());
@@ -387,4 +697,13 @@ public HashCode hash() {
             return hasher.hash();
         }
     }
+
+    /**
+     * Without this cast, when the code compiled by Java 9+ is executed on Java 8, it will throw
+     * java.lang.NoSuchMethodError: Method flip()Ljava/nio/ByteBuffer; does not exist in class java.nio.ByteBuffer
+     */
+    @SuppressWarnings("RedundantCast")
+    static <T extends Buffer> Buffer castBuffer(T byteBuffer) {
+        return (Buffer) byteBuffer;
+    }
 }
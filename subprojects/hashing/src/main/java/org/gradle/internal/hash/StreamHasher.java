@@ -18,6 +18,7 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 
 public interface StreamHasher {
     /**
@@ -30,4 +31,13 @@ public interface StreamHasher {
      * The method will not close either stream.
      */
     HashCode hashCopy(InputStream inputStream, OutputStream outputStream) throws IOException;
+
+    /**
+     * Returns the hash of the content of the given channel from its current position.
+     * The content is not copied to the heap when the hash function can consume it in place.
+     * The method will not close the channel.
+     *
+     * @param immutable whether the file cannot be modified while it is hashed, so it is safe to memory map it.
+     */
+    HashCode hash(FileChannel channel, boolean immutable) throws IOException;
 }
@@ -16,9 +16,15 @@
 
 package org.gradle.internal.hash
 
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
 import spock.lang.Specification
+import spock.lang.Unroll
 
 class DefaultStreamHasherTest extends Specification {
+    @Rule
+    TemporaryFolder tmpDir = new TemporaryFolder()
+
     def "can hash input"() {
         def input = new ByteArrayInputStream("hello".bytes)
         when:
@@ -36,4 +42,22 @@ class DefaultStreamHasherTest extends Specification {
         hash.toString() == "af67a92e9f73b51572e9b94e343d2840"
         output.toByteArray() == "hello".bytes
     }
+
+    @Unroll
+    def "hashes file channel the same as the input stream (size: #size, memory mapped: #memoryMapped, immutable: #immutable, algorithm: #hashFunction.algorithm)"() {
+        def content = new byte[size]
+        new Random(1234L).nextBytes(content)
+        def file = tmpDir.newFile()
+        file.bytes = content
+        def hasher = new DefaultStreamHasher(hashFunction, memoryMapped)
+
+        when:
+        def hash = new FileInputStream(file).withCloseable { hasher.hash(it.channel, immutable) }
+
+        then:
+        hash == hasher.hash(new ByteArrayInputStream(content))
+
+        where:
+        [size, memoryMapped, immutable, hashFunction] << [[0, 5, 70000, 3 * 1024 * 1024 + 17], [false, true], [false, true], [Hashing.md5(), Hashing.murmur3()]].combinations()
+    }
 }
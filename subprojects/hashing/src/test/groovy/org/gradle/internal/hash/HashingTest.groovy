@@ -17,6 +17,10 @@
 package org.gradle.internal.hash
 
 import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
 
 import static java.lang.Thread.currentThread
 import static java.util.concurrent.CompletableFuture.supplyAsync
@@ -109,6 +113,84 @@ class HashingTest extends Specification {
         hashStrings(["abc", "de"]) != hashStrings(["ab", "cde"])
     }
 
+    def 'murmur3 produces reference hash'() {
+        expect:
+        Hashing.murmur3().hashString("The quick brown fox jumps over the lazy dog").toString() == "6c1b07bc7bbc4be347939ac4a93c437a"
+        Hashing.murmur3().hexDigits == 32
+    }
+
+    def 'murmur3 hash does not depend on how bytes are fed to the hasher'() {
+        def bytes = new byte[100]
+        new Random(1234L).nextBytes(bytes)
+
+        when:
+        def hasher = Hashing.murmur3().newPrimitiveHasher()
+        int offset = 0
+        chunks.each { chunk ->
+            hasher.putBytes(bytes, offset, chunk)
+            offset += chunk
+        }
+
+        then:
+        hasher.hash() == Hashing.murmur3().hashBytes(bytes)
+
+        where:
+        chunks << [[100], [1] * 100, [3, 13, 16, 17, 51], [15, 1, 32, 52], [99, 1]]
+    }
+
+    @Unroll
+    def 'hashing a byte buffer is the same as hashing a byte array (#hashFunction.algorithm)'() {
+        def bytes = new byte[100]
+        new Random(1234L).nextBytes(bytes)
+        def direct = ByteBuffer.allocateDirect(bytes.length)
+        direct.put(bytes).flip()
+
+        when:
+        def hasher = hashFunction.newHasher()
+        hasher.putInt(1)
+        hasher.putBytes(direct)
+
+        and:
+        def expected = hashFunction.newHasher()
+        expected.putInt(1)
+        expected.putBytes(bytes)
+
+        then:
+        hasher.hash() == expected.hash()
+        !direct.hasRemaining()
+        direct.order() == ByteOrder.BIG_ENDIAN
+
+        where:
+        hashFunction << [Hashing.md5(), Hashing.murmur3()]
+    }
+
+    def 'murmur3 hasher cannot be reused'() {
+        given:
+        def hasher = Hashing.murmur3().newPrimitiveHasher()
+        hasher.putInt(1)
+        hasher.hash()
+
+        when:
+        hasher.putInt(2)
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    def 'looks up hash functions by algorithm'() {
+        expect:
+        Hashing.forAlgorithm("MD5") == Hashing.md5()
+        Hashing.forAlgorithm("sha-1") == Hashing.sha1()
+        Hashing.forAlgorithm(Hashing.murmur3().algorithm) == Hashing.murmur3()
+
+        when:
+        Hashing.forAlgorithm("unknown")
+
+        then:
+        def e = thrown(IllegalArgumentException)
+        e.message == "Unsupported hash algorithm: unknown"
+    }
+
     def hashStrings(List<String> strings) {
         def hasher = Hashing.newHasher()
         strings.each { hasher.putString(it) }
@@ -19,6 +19,7 @@ package org.gradle.launcher.daemon.configuration
 import org.gradle.api.JavaVersion
 import org.gradle.api.internal.file.TestFiles
 import org.gradle.initialization.BuildLayoutParameters
+import org.gradle.internal.hash.Hashing
 import org.gradle.internal.jvm.JavaInfo
 import org.gradle.process.internal.JvmOptions
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
@@ -211,6 +212,14 @@ class BuildProcessTest extends Specification {
         !buildProcess.configureForBuild(buildParameters([], [ "file.encoding" : notDefaultEncoding.toString() ]))
     }
 
+    def "a requested content hash function is an immutable system property"() {
+        when:
+        BuildProcess buildProcess = new BuildProcess(currentJvm, new JvmOptions(fileCollectionFactory))
+
+        then:
+        !buildProcess.configureForBuild(buildParameters([], [(Hashing.CONTENT_HASH_FUNCTION_PROPERTY): "MURMUR3-128"]))
+    }
+
     def "sets all mutable system properties before running build"() {
         when:
         def parameters = buildParameters(["-Dfoo=bar", "-Dbaz"])
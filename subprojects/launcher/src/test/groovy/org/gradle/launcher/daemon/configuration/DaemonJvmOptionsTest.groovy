@@ -17,6 +17,7 @@
 package org.gradle.launcher.daemon.configuration
 
 import org.gradle.api.internal.file.TestFiles
+import org.gradle.internal.hash.Hashing
 import org.gradle.process.internal.JvmOptions
 import spock.lang.Specification
 import spock.lang.Unroll
@@ -42,6 +43,7 @@ class DaemonJvmOptionsTest extends Specification {
         "ssl truststore path"     | DaemonJvmOptions.SSL_TRUSTSTORE_KEY       | "-D${DaemonJvmOptions.SSL_TRUSTSTORE_KEY}=truststore/path"
         "ssl truststore password" | DaemonJvmOptions.SSL_TRUSTPASSWORD_KEY    | "-D${DaemonJvmOptions.SSL_TRUSTPASSWORD_KEY}=secret"
         "ssl truststore type"     | DaemonJvmOptions.SSL_TRUSTSTORETYPE_KEY   | "-D${DaemonJvmOptions.SSL_TRUSTSTORETYPE_KEY}=jks"
+        "content hash function"   | Hashing.CONTENT_HASH_FUNCTION_PROPERTY    | "-D${Hashing.CONTENT_HASH_FUNCTION_PROPERTY}=MURMUR3-128"
     }
 
     @Unroll
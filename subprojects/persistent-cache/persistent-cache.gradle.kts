@@ -31,6 +31,7 @@ dependencies {
 
     implementation(library("slf4j_api"))
     implementation(library("guava"))
+    implementation(library("fastutil"))
     implementation(library("commons_io"))
     implementation(library("commons_lang"))
 
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal;
+
+import org.gradle.cache.IndexedCacheStore;
+import org.gradle.cache.PersistentIndexedCacheParameters;
+import org.gradle.cache.internal.btree.BTreePersistentIndexedCache;
+import org.gradle.cache.internal.logstructured.LogStructuredPersistentIndexedCache;
+import org.gradle.internal.serialize.BaseSerializerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compares the B-tree and log-structured storage of persistent indexed caches for reads, writes and a mix of both.
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class IndexedCacheStoreBenchmark {
+    private static final int ENTRIES = 10000;
+
+    @Param({"BTREE", "LOG_STRUCTURED"})
+    PersistentIndexedCacheParameters.Storage storage;
+
+    File cacheDir;
+    ExecutorService compactionExecutor;
+    IndexedCacheStore<String, String> store;
+    String[] keys;
+    String[] values;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        cacheDir = Files.createTempDirectory("jmh-cache").toFile();
+        compactionExecutor = Executors.newSingleThreadExecutor();
+        store = createStore(compactionExecutor);
+        keys = new String[ENTRIES];
+        values = new String[ENTRIES];
+        Random random = new Random(1234L);
+        for (int i = 0; i < ENTRIES; i++) {
+            keys[i] = "/path/to/some/file/" + Long.toHexString(random.nextLong());
+            values[i] = Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong());
+            store.put(keys[i], values[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        store.close();
+        compactionExecutor.shutdown();
+        deleteRecursively(cacheDir);
+    }
+
+    @Benchmark
+    public void read(Blackhole bh) {
+        bh.consume(store.get(nextKey()));
+    }
+
+    @Benchmark
+    public void write() {
+        int index = nextIndex();
+        store.put(keys[index], values[(index + 1) % ENTRIES]);
+    }
+
+    @Benchmark
+    public void mixed(Blackhole bh) {
+        int index = nextIndex();
+        if (index % 4 == 0) {
+            store.put(keys[index], values[(index + 1) % ENTRIES]);
+        } else {
+            bh.consume(store.get(keys[index]));
+        }
+    }
+
+    private IndexedCacheStore<String, String> createStore(Executor executor) {
+        switch (storage) {
+            case BTREE:
+                return new BTreePersistentIndexedCache<String, String>(new File(cacheDir, "cache.bin"), BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.STRING_SERIALIZER);
+            case LOG_STRUCTURED:
+                return new LogStructuredPersistentIndexedCache<String, String>(new File(cacheDir, "cache.log"), BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.STRING_SERIALIZER, executor);
+            default:
+                throw new IllegalArgumentException("Unknown storage " + storage);
+        }
+    }
+
+    private String nextKey() {
+        return keys[nextIndex()];
+    }
+
+    private int nextIndex() {
+        next = (next + 7919) % ENTRIES;
+        return next;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -21,12 +21,29 @@
 import org.gradle.cache.FileLock;
 import org.gradle.cache.MultiProcessSafePersistentIndexedCache;
 import org.gradle.internal.Factory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Applies updates to the backing cache asynchronously.
+ *
+ * Updates that have been submitted but not yet applied are kept in a concurrent write-behind buffer, which is consulted before
+ * queueing a read behind the pending updates. An update that has been superseded by a later, successfully queued update of the same key
+ * by the time it is applied is skipped, so that a batch of updates results in fewer writes to the backing cache.
+ * When queueing an update fails, the update it superseded is pending again.
+ */
 public class AsyncCacheAccessDecoratedCache<K, V> implements MultiProcessSafeAsyncPersistentIndexedCache<K, V> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncCacheAccessDecoratedCache.class);
     private final AsyncCacheAccess asyncCacheAccess;
     private final MultiProcessSafePersistentIndexedCache<K, V> persistentCache;
+    private final ConcurrentMap<K, PendingUpdate<V>> pendingUpdates = new ConcurrentHashMap<K, PendingUpdate<V>>();
+    private final Statistics statistics = new Statistics();
 
     public AsyncCacheAccessDecoratedCache(AsyncCacheAccess asyncCacheAccess, MultiProcessSafePersistentIndexedCache<K, V> persistentCache) {
         this.asyncCacheAccess = asyncCacheAccess;
@@ -41,6 +58,12 @@ public String toString() {
     @Nullable
     @Override
     public V get(final K key) {
+        PendingUpdate<V> pendingUpdate = pendingUpdates.get(key);
+        if (pendingUpdate != null) {
+            statistics.hit();
+            return pendingUpdate.value;
+        }
+        statistics.miss();
         return asyncCacheAccess.read(new Factory<V>() {
             @Override
             public V create() {
@@ -56,42 +79,57 @@ public V get(K key, Transformer<? extends V, ? super K> producer, Runnable compl
 
     @Override
     public void putLater(final K key, final V value, final Runnable completion) {
-        try {
-            asyncCacheAccess.enqueue(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        persistentCache.put(key, value);
-                    } finally {
-                        completion.run();
-                    }
-                }
-            });
-        } catch (RuntimeException e) {
-            completion.run();
-            throw e;
-        }
+        enqueue(key, new PendingUpdate<V>(value), completion);
     }
 
     @Override
     public void removeLater(final K key, final Runnable completion) {
+        enqueue(key, new PendingUpdate<V>(null), completion);
+    }
+
+    private void enqueue(final K key, final PendingUpdate<V> update, final Runnable completion) {
+        final PendingUpdate<V> previous = pendingUpdates.put(key, update);
+        statistics.queued(pendingUpdates.size());
         try {
             asyncCacheAccess.enqueue(new Runnable() {
                 @Override
                 public void run() {
                     try {
-                        persistentCache.remove(key);
+                        apply(key, update);
                     } finally {
                         completion.run();
                     }
                 }
             });
+            update.queued = true;
         } catch (RuntimeException e) {
+            // The superseded update is still queued, unless it has been applied already
+            pendingUpdates.compute(key, (k, current) -> current != update ? current : previous == null || previous.applied ? null : previous);
             completion.run();
             throw e;
         }
     }
 
+    private void apply(K key, PendingUpdate<V> update) {
+        PendingUpdate<V> current = pendingUpdates.get(key);
+        if (current != update && current != null && current.queued) {
+            // A later update of the same key is queued behind this one
+            statistics.coalesced();
+            return;
+        }
+        try {
+            if (update.value == null) {
+                persistentCache.remove(key);
+            } else {
+                persistentCache.put(key, update.value);
+            }
+            update.applied = true;
+        } finally {
+            // Only discard the update once it is visible in the backing cache
+            pendingUpdates.remove(key, update);
+        }
+    }
+
     @Override
     public void afterLockAcquire(FileLock.State currentCacheState) {
         persistentCache.afterLockAcquire(currentCacheState);
@@ -104,6 +142,78 @@ public void finishWork() {
 
     @Override
     public void beforeLockRelease(FileLock.State currentCacheState) {
+        statistics.report(this);
         persistentCache.beforeLockRelease(currentCacheState);
     }
+
+    Statistics getStatistics() {
+        return statistics;
+    }
+
+    private static class PendingUpdate<V> {
+        @Nullable
+        private final V value;
+        // Whether this update will be applied, so that earlier updates can be skipped
+        private volatile boolean queued;
+        private volatile boolean applied;
+
+        PendingUpdate(@Nullable V value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * Counts reads served by the write-behind buffer and tracks how deep the buffer gets between two lock releases.
+     */
+    static class Statistics {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong coalesced = new AtomicLong();
+        private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+        void hit() {
+            hits.incrementAndGet();
+        }
+
+        void miss() {
+            misses.incrementAndGet();
+        }
+
+        void coalesced() {
+            coalesced.incrementAndGet();
+        }
+
+        void queued(int queueDepth) {
+            int current = maxQueueDepth.get();
+            while (queueDepth > current && !maxQueueDepth.compareAndSet(current, queueDepth)) {
+                current = maxQueueDepth.get();
+            }
+        }
+
+        long getHits() {
+            return hits.get();
+        }
+
+        long getMisses() {
+            return misses.get();
+        }
+
+        long getCoalesced() {
+            return coalesced.get();
+        }
+
+        int getMaxQueueDepth() {
+            return maxQueueDepth.get();
+        }
+
+        void report(Object cache) {
+            long hits = this.hits.getAndSet(0);
+            long misses = this.misses.getAndSet(0);
+            long coalesced = this.coalesced.getAndSet(0);
+            int maxQueueDepth = this.maxQueueDepth.getAndSet(0);
+            if (LOGGER.isDebugEnabled() && (hits != 0 || misses != 0 || maxQueueDepth != 0)) {
+                LOGGER.debug("Write-behind buffer of {}: hits: {}, misses: {}, coalesced updates: {}, max queue depth: {}", cache, hits, misses, coalesced, maxQueueDepth);
+            }
+        }
+    }
 }
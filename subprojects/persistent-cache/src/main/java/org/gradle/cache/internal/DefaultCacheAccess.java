@@ -25,12 +25,14 @@
 import org.gradle.cache.FileAccess;
 import org.gradle.cache.FileLock;
 import org.gradle.cache.FileLockManager;
+import org.gradle.cache.IndexedCacheStore;
 import org.gradle.cache.LockOptions;
 import org.gradle.cache.LockTimeoutException;
 import org.gradle.cache.MultiProcessSafePersistentIndexedCache;
 import org.gradle.cache.PersistentIndexedCacheParameters;
 import org.gradle.cache.internal.btree.BTreePersistentIndexedCache;
 import org.gradle.cache.internal.cacheops.CacheAccessOperationsStack;
+import org.gradle.cache.internal.logstructured.LogStructuredPersistentIndexedCache;
 import org.gradle.internal.Cast;
 import org.gradle.internal.Factories;
 import org.gradle.internal.Factory;
@@ -49,6 +51,7 @@
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -72,6 +75,7 @@ public class DefaultCacheAccess implements CacheCoordinator {
     private final CacheAccessOperationsStack operations;
 
     private ManagedExecutor cacheUpdateExecutor;
+    private ManagedExecutor compactionExecutor;
     private CacheAccessWorker cacheAccessWorker;
     private final Lock stateLock = new ReentrantLock(); // protects the following state
     private final Condition condition = stateLock.newCondition();
@@ -108,6 +112,13 @@ public DefaultCacheAccess(String cacheDisplayName, File lockTarget, LockOptions
         }
     }
 
+    private synchronized Executor getCompactionExecutor() {
+        if (compactionExecutor == null) {
+            compactionExecutor = executorFactory.create("Cache compaction for " + cacheDisplayName);
+        }
+        return compactionExecutor;
+    }
+
     private synchronized AsyncCacheAccess getCacheAccessWorker() {
         if (cacheAccessWorker == null) {
             cacheAccessWorker = new CacheAccessWorker(cacheDisplayName, this);
@@ -157,6 +168,11 @@ public synchronized void close() {
                 fileLockHeldByOwner.run();
             }
             crossProcessCacheAccess.close();
+            if (compactionExecutor != null) {
+                // Caches wait for their compaction to stop when they are closed, which happens when the cross-process lock is released
+                compactionExecutor.stop();
+                compactionExecutor = null;
+            }
             if (cleanupAction != null) {
                 try {
                     if (cleanupAction.requiresCleanup()) {
@@ -270,9 +286,19 @@ public <K, V> MultiProcessSafePersistentIndexedCache<K, V> newCache(final Persis
         IndexedCacheEntry<K, V> entry = Cast.uncheckedCast(caches.get(parameters.getCacheName()));
         try {
             if (entry == null) {
-                final File cacheFile = new File(baseDir, parameters.getCacheName() + ".bin");
+                final File cacheFile;
+                Factory<? extends IndexedCacheStore<K, V>> indexedCacheFactory;
+                if (parameters.getStorage() == PersistentIndexedCacheParameters.Storage.LOG_STRUCTURED) {
+                    cacheFile = new File(baseDir, parameters.getCacheName() + ".log");
+                    Executor compactionExecutor = getCompactionExecutor();
+                    // The store is reopened on every lock cycle, keep its index in memory in between
+                    LogStructuredPersistentIndexedCache.RetainedIndex retainedIndex = new LogStructuredPersistentIndexedCache.RetainedIndex();
+                    indexedCacheFactory = () -> new LogStructuredPersistentIndexedCache<>(cacheFile, parameters.getKeySerializer(), parameters.getValueSerializer(), compactionExecutor, retainedIndex);
+                } else {
+                    cacheFile = new File(baseDir, parameters.getCacheName() + ".bin");
+                    indexedCacheFactory = () -> doCreateCache(cacheFile, parameters.getKeySerializer(), parameters.getValueSerializer());
+                }
                 LOG.debug("Creating new cache for {}, path {}, access {}", parameters.getCacheName(), cacheFile, this);
-                Factory<BTreePersistentIndexedCache<K, V>> indexedCacheFactory = () -> doCreateCache(cacheFile, parameters.getKeySerializer(), parameters.getValueSerializer());
 
                 MultiProcessSafePersistentIndexedCache<K, V> indexedCache = new DefaultMultiProcessSafePersistentIndexedCache<K, V>(indexedCacheFactory, fileAccess);
                 CacheDecorator decorator = parameters.getCacheDecorator();
@@ -431,6 +457,7 @@ void assertCompatibleCacheParameters(PersistentIndexedCacheParameters<K, V> para
             checkCompatibleKeySerializer(faultMessages, parameters.getKeySerializer());
             checkCompatibleValueSerializer(faultMessages, parameters.getValueSerializer());
             checkCompatibleCacheDecorator(faultMessages, parameters.getCacheDecorator());
+            checkCompatibleStorage(faultMessages, parameters.getStorage());
 
             if (!faultMessages.isEmpty()) {
                 String lineSeparator = SystemProperties.getInstance().getLineSeparator();
@@ -466,6 +493,14 @@ private void checkCompatibleValueSerializer(Collection<String> faultMessages, Se
             }
         }
 
+        private void checkCompatibleStorage(Collection<String> faultMessages, PersistentIndexedCacheParameters.Storage storage) {
+            if (storage != parameters.getStorage()) {
+                faultMessages.add(
+                    String.format(" * Requested cache storage (%s) doesn't match current cache storage (%s)",
+                        storage, parameters.getStorage()));
+            }
+        }
+
         private void checkCompatibleCacheDecorator(Collection<String> faultMessages, CacheDecorator cacheDecorator) {
             if (!Objects.equal(cacheDecorator, parameters.getCacheDecorator())) {
                 faultMessages.add(
@@ -18,20 +18,27 @@
 
 import java.io.DataInput;
 import java.io.DataOutput;
+import java.io.EOFException;
 import java.io.IOException;
 
+/**
+ * Serializes the lock owner information. The port is written twice: the first field is only read by older versions, which can only
+ * ping owners at a UDP port, and holds -1 for other ports so they never try. The complete port is appended after all fields older versions read.
+ */
 public class LockInfoSerializer {
     public static final int INFORMATION_REGION_DESCR_CHUNK_LIMIT = 340;
+    private static final int MAX_UDP_PORT = 65535;
 
     public byte getVersion() {
         return 3;
     }
 
     public void write(DataOutput dataOutput, LockInfo lockInfo) throws IOException {
-        dataOutput.writeInt(lockInfo.port);
+        dataOutput.writeInt(lockInfo.port <= MAX_UDP_PORT ? lockInfo.port : -1);
         dataOutput.writeLong(lockInfo.lockId);
         dataOutput.writeUTF(trimIfNecessary(lockInfo.pid));
         dataOutput.writeUTF(trimIfNecessary(lockInfo.operation));
+        dataOutput.writeInt(lockInfo.port);
     }
 
     public LockInfo read(DataInput dataInput) throws IOException {
@@ -40,6 +47,11 @@ public LockInfo read(DataInput dataInput) throws IOException {
         out.lockId = dataInput.readLong();
         out.pid = dataInput.readUTF();
         out.operation = dataInput.readUTF();
+        try {
+            out.port = dataInput.readInt();
+        } catch (EOFException e) {
+            // Written by an older version, which only publishes UDP ports
+        }
         return out;
     }
 
@@ -191,6 +191,10 @@ public void start(long lockId, Action<FileLockReleasedSignal> whenContended) {
 
     @Override
     public boolean maybePingOwner(int port, long lockId, String displayName, long timeElapsed, FileLockReleasedSignal signal) {
+        if (port >= SharedMemoryFileLockContentionHandler.FIRST_SLOT_PORT) {
+            LOGGER.debug("The lock holder for {} uses shared memory lock coordination (port: {}).", displayName, port);
+            return false;
+        }
         if (Integer.valueOf(port).equals(unlocksConfirmedFrom.get(lockId))) {
             //the unlock was confirmed we are waiting
             return false;
@@ -0,0 +1,462 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.locklistener;
+
+import org.gradle.api.Action;
+import org.gradle.cache.FileLockReleasedSignal;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.concurrent.Stoppable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A contention handler that negotiates the transfer of a lock between processes on the same machine through a memory-mapped coordination file,
+ * instead of exchanging UDP packets as {@link DefaultFileLockContentionHandler} does.
+ * <p>
+ * The coordination file is divided into slots. Each process claims a slot for its lifetime by holding a file lock on the first bytes of the slot.
+ * The slot is what the process publishes as its "port" in the lock file, offset by {@link #FIRST_SLOT_PORT} so that it can never be confused
+ * with a UDP port. Older versions only read the port from a field that holds -1 for such ports, see {@link org.gradle.cache.internal.filelock.LockInfoSerializer}.
+ * A slot contains:
+ * <ul>
+ *     <li>A release sequence, which the Lock Holder increments every time it has released a contended lock.</li>
+ *     <li>One request cell per slot. A Lock Requester writes the id of the lock it is waiting for into the cell of its own slot, in the slot of the Lock Holder.</li>
+ * </ul>
+ * Every value in the file has a single writer, so no further synchronization between processes is needed.
+ * <p>
+ * A single watcher thread polls the request cells of the own slot while this process holds contended locks, and polls the release sequence
+ * of the Lock Holders this process waits for. It polls with a short interval after any activity, backing off while nothing changes.
+ * <p>
+ * All processes sharing a cache have to use the same coordination mode. A Lock Requester cannot notify a Lock Holder that uses the other mode and
+ * falls back to retrying until the lock is released or the lock timeout expires.
+ */
+public class SharedMemoryFileLockContentionHandler implements FileLockContentionHandler, Stoppable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedMemoryFileLockContentionHandler.class);
+
+    /**
+     * The port published for the first slot. Valid UDP ports are below this value.
+     */
+    public static final int FIRST_SLOT_PORT = 65536;
+
+    private static final int MAGIC = 0x474C4B43;
+    private static final int VERSION = 1;
+    private static final int SLOTS = 128;
+    private static final int HEADER_SIZE = 16;
+    private static final int OWNER_REGION_SIZE = 8;
+    private static final int RELEASE_SEQUENCE_OFFSET = OWNER_REGION_SIZE;
+    private static final int REQUEST_CELLS_OFFSET = RELEASE_SEQUENCE_OFFSET + 8;
+    private static final int SLOT_SIZE = REQUEST_CELLS_OFFSET + SLOTS * 8;
+    private static final int FILE_SIZE = HEADER_SIZE + SLOTS * SLOT_SIZE;
+
+    private static final int PING_DELAY = 1000;
+    private static final long MIN_POLL_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MAX_POLL_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final long AWAITED_RELEASE_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final Map<Long, ContendedAction> contendedActions = new HashMap<Long, ContendedAction>();
+    private final Map<Long, AwaitedRelease> awaitedReleases = new HashMap<Long, AwaitedRelease>();
+
+    private final File coordinationFile;
+    private final ExecutorFactory executorFactory;
+
+    private RandomAccessFile file;
+    private MappedByteBuffer buffer;
+    private FileLock slotLock;
+    private int slot = -1;
+    private ManagedExecutor watcher;
+    private ManagedExecutor unlockActionExecutor;
+    private boolean stopped;
+
+    public SharedMemoryFileLockContentionHandler(File coordinationFile, ExecutorFactory executorFactory) {
+        this.coordinationFile = coordinationFile;
+        this.executorFactory = executorFactory;
+    }
+
+    @Override
+    public int reservePort() {
+        lock.lock();
+        try {
+            assertNotStopped();
+            if (slot == -1) {
+                claimSlot();
+            }
+            return FIRST_SLOT_PORT + slot;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void start(long lockId, Action<FileLockReleasedSignal> whenContended) {
+        lock.lock();
+        try {
+            assertNotStopped();
+            if (slot == -1) {
+                throw new IllegalStateException("Must initialize the handler by reserving the port first.");
+            }
+            if (contendedActions.containsKey(lockId)) {
+                throw new UnsupportedOperationException("Multiple contention actions for a given lock are currently not supported.");
+            }
+            awaitedReleases.remove(lockId);
+            contendedActions.put(lockId, new ContendedAction(lockId, whenContended));
+            startWatcher();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void stop(long lockId) {
+        lock.lock();
+        try {
+            contendedActions.remove(lockId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean maybePingOwner(int port, long lockId, String displayName, long timeElapsed, @Nullable FileLockReleasedSignal signal) {
+        if (port < FIRST_SLOT_PORT || port >= FIRST_SLOT_PORT + SLOTS) {
+            LOGGER.debug("The lock holder for {} does not use shared memory lock coordination (port: {}).", displayName, port);
+            return false;
+        }
+        int ownerSlot = port - FIRST_SLOT_PORT;
+        lock.lock();
+        try {
+            assertNotStopped();
+            if (slot == -1 || ownerSlot == slot) {
+                return false;
+            }
+            AwaitedRelease awaitedRelease = awaitedReleases.get(lockId);
+            if (awaitedRelease != null && awaitedRelease.ownerSlot == ownerSlot && timeElapsed < PING_DELAY) {
+                // The release was just requested, give the owner some more time
+                return false;
+            }
+            if (!isSlotOwned(ownerSlot)) {
+                LOGGER.debug("The process that held the lock for {} (slot: {}) has gone away.", displayName, ownerSlot);
+                return false;
+            }
+            buffer.putLong(requestCellOffset(ownerSlot, slot), lockId);
+            awaitedReleases.put(lockId, new AwaitedRelease(ownerSlot, buffer.getLong(releaseSequenceOffset(ownerSlot)), System.nanoTime(), signal));
+            startWatcher();
+            workAvailable.signalAll();
+            LOGGER.debug("Requested release of lock with id {} from slot {}.", lockId, ownerSlot);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void stop() {
+        lock.lock();
+        try {
+            stopped = true;
+            contendedActions.clear();
+            awaitedReleases.clear();
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (watcher != null) {
+            watcher.stop();
+        }
+        if (unlockActionExecutor != null) {
+            unlockActionExecutor.stop();
+        }
+        lock.lock();
+        try {
+            if (file != null) {
+                try {
+                    // Also releases the slot
+                    file.close();
+                } catch (IOException e) {
+                    LOGGER.debug("Could not close {}.", coordinationFile, e);
+                }
+                file = null;
+                buffer = null;
+                slotLock = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void assertNotStopped() {
+        if (stopped) {
+            throw new IllegalStateException("Cannot start managing file contention because this handler has been closed.");
+        }
+    }
+
+    private void claimSlot() {
+        try {
+            File parentDir = coordinationFile.getParentFile();
+            if (parentDir != null && !parentDir.isDirectory() && !parentDir.mkdirs() && !parentDir.isDirectory()) {
+                throw new IOException("Could not create directory " + parentDir);
+            }
+            file = new RandomAccessFile(coordinationFile, "rw");
+            FileChannel channel = file.getChannel();
+            // Mapping beyond the end of the file grows it, filled with zeros
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+            initializeHeader(channel);
+            int first = new Random().nextInt(SLOTS);
+            for (int i = 0; i < SLOTS; i++) {
+                int candidate = (first + i) % SLOTS;
+                FileLock candidateLock = tryLockSlot(channel, candidate);
+                if (candidateLock != null) {
+                    slot = candidate;
+                    slotLock = candidateLock;
+                    LOGGER.debug("Claimed slot {} of {}.", slot, coordinationFile);
+                    return;
+                }
+            }
+            throw new IllegalStateException(String.format("All %s slots of %s are in use.", SLOTS, coordinationFile));
+        } catch (IOException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+    }
+
+    private void initializeHeader(FileChannel channel) throws IOException {
+        // Only one process at a time writes the header, a concurrent initialization writes the same values
+        FileLock headerLock = channel.lock(0, HEADER_SIZE, false);
+        try {
+            int magic = buffer.getInt(0);
+            if (magic == 0) {
+                buffer.putInt(4, VERSION);
+                buffer.putInt(8, SLOTS);
+                buffer.putInt(0, MAGIC);
+            } else if (magic != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != SLOTS) {
+                throw new IllegalStateException(String.format("%s is not a lock coordination file of a supported version.", coordinationFile));
+            }
+        } finally {
+            headerLock.release();
+        }
+    }
+
+    @Nullable
+    private static FileLock tryLockSlot(FileChannel channel, int slot) throws IOException {
+        try {
+            return channel.tryLock(slotOffset(slot), OWNER_REGION_SIZE, false);
+        } catch (OverlappingFileLockException e) {
+            // Held by another handler in this process
+            return null;
+        }
+    }
+
+    private boolean isSlotOwned(int ownerSlot) {
+        try {
+            FileLock ownerLock = tryLockSlot(file.getChannel(), ownerSlot);
+            if (ownerLock == null) {
+                return true;
+            }
+            ownerLock.release();
+            return false;
+        } catch (IOException e) {
+            // Assume the owner is alive, the request is harmless otherwise
+            return true;
+        }
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static int releaseSequenceOffset(int slot) {
+        return slotOffset(slot) + RELEASE_SEQUENCE_OFFSET;
+    }
+
+    private static int requestCellOffset(int ownerSlot, int requesterSlot) {
+        return slotOffset(ownerSlot) + REQUEST_CELLS_OFFSET + requesterSlot * 8;
+    }
+
+    private void startWatcher() {
+        if (watcher == null) {
+            watcher = executorFactory.create("File lock coordination watcher");
+            watcher.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        LOGGER.debug("Starting file lock coordination watcher thread.");
+                        watch();
+                    } catch (Throwable t) {
+                        //Logging exception here is only needed because by default Gradle does not show the stack trace
+                        LOGGER.error("Problems handling incoming cache access requests.", t);
+                    } finally {
+                        LOGGER.debug("File lock coordination watcher thread completed.");
+                    }
+                }
+            });
+        }
+        if (unlockActionExecutor == null) {
+            unlockActionExecutor = executorFactory.create("File lock release action executor");
+        }
+    }
+
+    private void watch() throws InterruptedException {
+        long pollInterval = MIN_POLL_INTERVAL_NANOS;
+        lock.lock();
+        try {
+            while (!stopped) {
+                if (contendedActions.isEmpty() && awaitedReleases.isEmpty()) {
+                    // Nothing to watch, wait until a lock is contended or a release is requested
+                    workAvailable.await();
+                    pollInterval = MIN_POLL_INTERVAL_NANOS;
+                    continue;
+                }
+                boolean activity = checkRequests() | checkReleases();
+                pollInterval = activity ? MIN_POLL_INTERVAL_NANOS : Math.min(pollInterval * 2, MAX_POLL_INTERVAL_NANOS);
+                workAvailable.awaitNanos(pollInterval);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean checkRequests() {
+        if (contendedActions.isEmpty()) {
+            return false;
+        }
+        boolean activity = false;
+        for (int requesterSlot = 0; requesterSlot < SLOTS; requesterSlot++) {
+            long requestedLockId = buffer.getLong(requestCellOffset(slot, requesterSlot));
+            if (requestedLockId == 0) {
+                continue;
+            }
+            ContendedAction contendedAction = contendedActions.get(requestedLockId);
+            if (contendedAction != null && !contendedAction.running) {
+                LOGGER.debug("Process at slot {} requested release of lock with id {}.", requesterSlot, requestedLockId);
+                contendedAction.running = true;
+                unlockActionExecutor.execute(contendedAction);
+                activity = true;
+            }
+        }
+        return activity;
+    }
+
+    private boolean checkReleases() {
+        boolean activity = false;
+        Iterator<Map.Entry<Long, AwaitedRelease>> iterator = awaitedReleases.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, AwaitedRelease> entry = iterator.next();
+            AwaitedRelease awaitedRelease = entry.getValue();
+            if (buffer.getLong(releaseSequenceOffset(awaitedRelease.ownerSlot)) != awaitedRelease.releaseSequence) {
+                LOGGER.debug("Process at slot {} released lock with id {}.", awaitedRelease.ownerSlot, entry.getKey());
+                iterator.remove();
+                withdrawRequest(awaitedRelease.ownerSlot, entry.getKey());
+                if (awaitedRelease.signal != null) {
+                    awaitedRelease.signal.trigger();
+                }
+                activity = true;
+            } else if (!isSlotOwned(awaitedRelease.ownerSlot)) {
+                // The owner has gone away, and with it its locks
+                iterator.remove();
+                if (awaitedRelease.signal != null) {
+                    awaitedRelease.signal.trigger();
+                }
+                activity = true;
+            } else if (System.nanoTime() - awaitedRelease.requestedAt > AWAITED_RELEASE_TIMEOUT_NANOS) {
+                // The requester has given up waiting, or acquired the lock without the owner noticing the request
+                iterator.remove();
+                withdrawRequest(awaitedRelease.ownerSlot, entry.getKey());
+            }
+        }
+        return activity;
+    }
+
+    private void withdrawRequest(int ownerSlot, long lockId) {
+        int offset = requestCellOffset(ownerSlot, slot);
+        if (buffer.getLong(offset) == lockId) {
+            buffer.putLong(offset, 0);
+        }
+    }
+
+    private void signalRelease() {
+        lock.lock();
+        try {
+            if (buffer != null) {
+                int offset = releaseSequenceOffset(slot);
+                buffer.putLong(offset, buffer.getLong(offset) + 1);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class AwaitedRelease {
+        private final int ownerSlot;
+        private final long releaseSequence;
+        private final long requestedAt;
+        private final FileLockReleasedSignal signal;
+
+        private AwaitedRelease(int ownerSlot, long releaseSequence, long requestedAt, @Nullable FileLockReleasedSignal signal) {
+            this.ownerSlot = ownerSlot;
+            this.releaseSequence = releaseSequence;
+            this.requestedAt = requestedAt;
+            this.signal = signal;
+        }
+    }
+
+    private class ContendedAction implements Runnable {
+        private final long lockId;
+        private final Action<FileLockReleasedSignal> action;
+        private boolean running;
+        private boolean triggered;
+
+        private ContendedAction(long lockId, Action<FileLockReleasedSignal> action) {
+            this.lockId = lockId;
+            this.action = action;
+        }
+
+        @Override
+        public void run() {
+            action.execute(new FileLockReleasedSignal() {
+                @Override
+                public void trigger() {
+                    synchronized (ContendedAction.this) {
+                        if (triggered) {
+                            throw new IllegalStateException("trigger() has already been called and must at most be called once");
+                        }
+                        triggered = true;
+                    }
+                    LOGGER.debug("Signalling release of lock with id {}.", lockId);
+                    signalRelease();
+                }
+            });
+        }
+    }
+}
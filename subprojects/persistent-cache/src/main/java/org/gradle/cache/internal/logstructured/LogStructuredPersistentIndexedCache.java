@@ -0,0 +1,916 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.logstructured;
+
+import com.google.common.primitives.Longs;
+import com.google.common.util.concurrent.Uninterruptibles;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import org.gradle.api.UncheckedIOException;
+import org.gradle.cache.IndexedCacheStore;
+import org.gradle.internal.hash.Hashing;
+import org.gradle.internal.io.BufferCaster;
+import org.gradle.internal.serialize.Serializer;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * An indexed cache that appends every update to a log of segment files and keeps an in-memory index from key hash to record location.
+ *
+ * <p>Each record is checksummed, so a partially written record at the end of the newest segment is detected and truncated when the cache is opened.
+ * The index is tied to a watermark, the segments and the size of the newest segment it covers. When the cache is opened, the index is loaded
+ * from a {@link RetainedIndex} kept in memory or from the index file written alongside the segments, and only the records appended after the watermark are replayed.
+ * Every segment carries the id of its log, so an index is never applied to a log that was discarded and recreated.
+ * The index file is only rewritten once enough records are missing from it, so that closing the cache does not cost a full write of the index every time.
+ * Once enough records have been superseded, the older segments are compacted in the background by copying their live records to the newest segment and deleting them.</p>
+ */
+public class LogStructuredPersistentIndexedCache<K, V> implements IndexedCacheStore<K, V> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LogStructuredPersistentIndexedCache.class);
+
+    private static final int SEGMENT_MAGIC = 0x4C4F4753;
+    private static final int INDEX_MAGIC = 0x4C4F4749;
+    private static final int FORMAT_VERSION = 2;
+    // magic, format version and log id
+    private static final int SEGMENT_HEADER_SIZE = 4 + 4 + 8;
+    // type, key hash and key length
+    private static final int RECORD_BODY_HEADER_SIZE = 1 + 8 + 4;
+    // body length and checksum
+    private static final int RECORD_OVERHEAD = 4 + 4;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final long NO_LOCATION = -1;
+    // The index file is rewritten once the records missing from it amount to this fraction of the entries
+    private static final int INDEX_REWRITE_RATIO = 4;
+    private static final String INDEX_FILE_NAME = "index.bin";
+    private static final Pattern SEGMENT_FILE_NAME = Pattern.compile("(\\d+)\\.seg");
+
+    private final File directory;
+    private final Serializer<K> keySerializer;
+    private final Serializer<V> valueSerializer;
+    private final Executor compactionExecutor;
+    private final long maxSegmentSize;
+    private final int compactionThreshold;
+    @Nullable
+    private final RetainedIndex retainedIndex;
+
+    private Long2LongOpenHashMap index = newIndex();
+    private long logId;
+    // Records which are not covered by the index file
+    private long unindexedRecords;
+    private final TreeMap<Integer, FileChannel> segments = new TreeMap<Integer, FileChannel>();
+    private int activeSegmentId;
+    private FileChannel activeSegment;
+    private long activeSegmentSize;
+    private long deadRecords;
+    private boolean open;
+    private CountDownLatch compactionDone;
+    private volatile boolean closing;
+
+    public LogStructuredPersistentIndexedCache(File directory, Serializer<K> keySerializer, Serializer<V> valueSerializer, Executor compactionExecutor) {
+        this(directory, keySerializer, valueSerializer, compactionExecutor, null);
+    }
+
+    /**
+     * @param retainedIndex keeps the index in memory while the cache is closed, so reopening it does not need to load the whole index again.
+     */
+    public LogStructuredPersistentIndexedCache(File directory, Serializer<K> keySerializer, Serializer<V> valueSerializer, Executor compactionExecutor, @Nullable RetainedIndex retainedIndex) {
+        this(directory, keySerializer, valueSerializer, compactionExecutor, 64 * 1024 * 1024, 10000, retainedIndex);
+    }
+
+    public LogStructuredPersistentIndexedCache(File directory, Serializer<K> keySerializer, Serializer<V> valueSerializer, Executor compactionExecutor,
+                                               long maxSegmentSize, int compactionThreshold) {
+        this(directory, keySerializer, valueSerializer, compactionExecutor, maxSegmentSize, compactionThreshold, null);
+    }
+
+    public LogStructuredPersistentIndexedCache(File directory, Serializer<K> keySerializer, Serializer<V> valueSerializer, Executor compactionExecutor,
+                                               long maxSegmentSize, int compactionThreshold, @Nullable RetainedIndex retainedIndex) {
+        this.directory = directory;
+        this.retainedIndex = retainedIndex;
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        this.compactionExecutor = compactionExecutor;
+        this.maxSegmentSize = maxSegmentSize;
+        this.compactionThreshold = compactionThreshold;
+        try {
+            open();
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not open %s.", this), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "cache " + directory.getName() + " (" + directory + ")";
+    }
+
+    private void open() throws IOException {
+        LOGGER.debug("Opening {}", this);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        List<Integer> segmentIds = findSegmentIds();
+        try {
+            for (int segmentId : segmentIds) {
+                segments.put(segmentId, openSegment(segmentId));
+            }
+            if (!segmentIds.isEmpty()) {
+                activeSegmentId = segments.lastKey();
+                activeSegment = segments.lastEntry().getValue();
+                for (Map.Entry<Integer, FileChannel> entry : segments.entrySet()) {
+                    checkSegmentHeader(entry.getKey(), entry.getValue());
+                }
+                if (!restoreRetainedIndex(segmentIds) && !readIndex(segmentIds)) {
+                    scanSegments();
+                }
+            }
+        } catch (CorruptedSegmentException e) {
+            LOGGER.warn("{} is corrupt. Discarding.", this);
+            closeSegments();
+            deleteFiles();
+        }
+        if (segments.isEmpty()) {
+            startNewSegment(1);
+        }
+        activeSegmentSize = activeSegment.size();
+        open = true;
+    }
+
+    @Nullable
+    @Override
+    public synchronized V get(K key) {
+        try {
+            byte[] keyBytes = serialize(keySerializer, key);
+            long keyHash = hashOf(keyBytes);
+            long location = index.get(keyHash);
+            if (location == NO_LOCATION) {
+                return null;
+            }
+            Record record;
+            try {
+                record = readRecord(location);
+            } catch (CorruptedSegmentException e) {
+                // Only forget this entry, the other records are still fine
+                LOGGER.warn("Could not read entry '{}' from {}, treating it as missing.", key, this, e);
+                index.remove(keyHash);
+                deadRecords++;
+                return null;
+            }
+            if (!record.hasKey(keyBytes)) {
+                // Another key with the same hash has replaced this one
+                return null;
+            }
+            return record.readValue(valueSerializer);
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not read entry '%s' from %s.", key, this), e);
+        }
+    }
+
+    @Override
+    public synchronized void put(K key, V value) {
+        try {
+            byte[] keyBytes = serialize(keySerializer, key);
+            byte[] valueBytes = serialize(valueSerializer, value);
+            long keyHash = hashOf(keyBytes);
+            long location = append(encodeRecord(PUT, keyHash, keyBytes, valueBytes));
+            unindexedRecords++;
+            if (index.put(keyHash, location) != NO_LOCATION) {
+                deadRecords++;
+            }
+            maybeStartCompaction();
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not add entry '%s' to %s.", key, this), e);
+        }
+    }
+
+    @Override
+    public synchronized void remove(K key) {
+        try {
+            byte[] keyBytes = serialize(keySerializer, key);
+            long keyHash = hashOf(keyBytes);
+            long location = index.get(keyHash);
+            if (location == NO_LOCATION || !mayHaveKey(location, keyBytes)) {
+                return;
+            }
+            append(encodeRecord(REMOVE, keyHash, keyBytes, new byte[0]));
+            unindexedRecords++;
+            index.remove(keyHash);
+            // Both the removed record and the tombstone are garbage
+            deadRecords += 2;
+            maybeStartCompaction();
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not remove entry '%s' from %s.", key, this), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        CountDownLatch runningCompaction;
+        synchronized (this) {
+            if (!open) {
+                return;
+            }
+            closing = true;
+            runningCompaction = compactionDone;
+        }
+        if (runningCompaction != null) {
+            Uninterruptibles.awaitUninterruptibly(runningCompaction);
+        }
+        synchronized (this) {
+            LOGGER.debug("Closing {}", this);
+            try {
+                if (!indexFile().isFile() || unindexedRecords > 0 && unindexedRecords >= index.size() / INDEX_REWRITE_RATIO) {
+                    writeIndex();
+                    unindexedRecords = 0;
+                }
+            } catch (IOException e) {
+                LOGGER.debug("Could not write index of {}, segments will be scanned when it is opened again.", this, e);
+            } finally {
+                if (retainedIndex != null) {
+                    retainedIndex.retain(index, new Watermark(logId, toArray(segments.keySet()), activeSegmentSize), deadRecords, unindexedRecords);
+                    index = newIndex();
+                }
+                closeSegments();
+                open = false;
+            }
+        }
+    }
+
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public synchronized void clear() {
+        closeSegments();
+        deleteFiles();
+        try {
+            startNewSegment(1);
+            activeSegmentSize = activeSegment.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Compacts all segments but the active one, on the calling thread.
+     */
+    public void compact() {
+        CountDownLatch done = new CountDownLatch(1);
+        List<Integer> segmentIds;
+        while (true) {
+            CountDownLatch runningCompaction;
+            synchronized (this) {
+                runningCompaction = compactionDone;
+                if (runningCompaction == null) {
+                    compactionDone = done;
+                    segmentIds = sealedSegmentIds();
+                    break;
+                }
+            }
+            Uninterruptibles.awaitUninterruptibly(runningCompaction);
+        }
+        try {
+            compact(segmentIds);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not compact %s.", this), e);
+        } finally {
+            compactionFinished(done);
+        }
+    }
+
+    private void maybeStartCompaction() {
+        if (compactionDone != null || closing || deadRecords < compactionThreshold || deadRecords <= index.size() || segments.size() < 2) {
+            return;
+        }
+        final List<Integer> segmentIds = sealedSegmentIds();
+        final CountDownLatch done = new CountDownLatch(1);
+        compactionDone = done;
+        compactionExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compact(segmentIds);
+                } catch (Exception e) {
+                    LOGGER.warn("Could not compact {}.", LogStructuredPersistentIndexedCache.this, e);
+                } finally {
+                    compactionFinished(done);
+                }
+            }
+        });
+    }
+
+    private synchronized void compactionFinished(CountDownLatch done) {
+        compactionDone = null;
+        done.countDown();
+    }
+
+    private List<Integer> sealedSegmentIds() {
+        return new ArrayList<Integer>(segments.headMap(activeSegmentId).keySet());
+    }
+
+    /**
+     * Copies the live records of the given sealed segments to the active segment, then deletes the segments.
+     * Tombstones are dropped, since all the segments they could shadow are deleted with them.
+     */
+    private void compact(List<Integer> segmentIds) throws IOException {
+        if (segmentIds.isEmpty()) {
+            return;
+        }
+        LOGGER.debug("Compacting {} segments of {}", segmentIds.size(), this);
+        long compactedRecords = 0;
+        for (int segmentId : segmentIds) {
+            FileChannel segment;
+            synchronized (this) {
+                segment = segments.get(segmentId);
+            }
+            // Sealed segments are never modified, so they can be read without holding the lock
+            long size = segment.size();
+            long offset = SEGMENT_HEADER_SIZE;
+            while (offset < size) {
+                if (closing) {
+                    // Leave the remaining work to the next compaction, the copied records simply supersede the originals
+                    return;
+                }
+                Record record = Record.read(segment, offset);
+                if (record.type == PUT) {
+                    long location = location(segmentId, offset);
+                    synchronized (this) {
+                        if (index.get(record.keyHash) == location) {
+                            index.put(record.keyHash, append(record.encode()));
+                            unindexedRecords++;
+                            deadRecords++;
+                        }
+                    }
+                }
+                compactedRecords++;
+                offset += record.size();
+            }
+        }
+        synchronized (this) {
+            // Make sure the copies are on disk before the originals are removed
+            activeSegment.force(false);
+            // The index file refers to the deleted segments, so it could never be used again
+            Files.deleteIfExists(indexFile().toPath());
+            // Delete the oldest segments first, so that a crash never leaves a put behind without the tombstone shadowing it
+            for (int segmentId : segmentIds) {
+                segments.remove(segmentId).close();
+                Files.delete(segmentFile(segmentId).toPath());
+            }
+            deadRecords = Math.max(0, deadRecords - compactedRecords);
+        }
+    }
+
+    private long append(ByteBuffer record) throws IOException {
+        if (activeSegmentSize > SEGMENT_HEADER_SIZE && activeSegmentSize + record.remaining() > maxSegmentSize) {
+            startNewSegment(activeSegmentId + 1);
+        }
+        long offset = activeSegmentSize;
+        activeSegmentSize += record.remaining();
+        writeFully(activeSegment, record, offset);
+        return location(activeSegmentId, offset);
+    }
+
+    private void startNewSegment(int segmentId) throws IOException {
+        File file = segmentFile(segmentId);
+        if (file.exists()) {
+            throw new IOException("Segment " + file + " already exists.");
+        }
+        if (segments.isEmpty()) {
+            logId = newLogId();
+        }
+        FileChannel segment = openSegment(segmentId);
+        writeFully(segment, segmentHeader(logId), 0);
+        segments.put(segmentId, segment);
+        activeSegmentId = segmentId;
+        activeSegment = segment;
+        activeSegmentSize = SEGMENT_HEADER_SIZE;
+    }
+
+    private FileChannel openSegment(int segmentId) throws IOException {
+        return new RandomAccessFile(segmentFile(segmentId), "rw").getChannel();
+    }
+
+    private Record readRecord(long location) throws IOException {
+        FileChannel segment = segments.get(segmentId(location));
+        if (segment == null) {
+            throw new CorruptedSegmentException("Index refers to missing segment " + segmentId(location));
+        }
+        return Record.read(segment, offset(location));
+    }
+
+    /**
+     * Whether the record at the given location may be for the given key. A record which cannot be read may be, too.
+     */
+    private boolean mayHaveKey(long location, byte[] keyBytes) throws IOException {
+        try {
+            return readRecord(location).hasKey(keyBytes);
+        } catch (CorruptedSegmentException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Rebuilds the index by replaying all segments, oldest first.
+     * A broken record in the active segment is the result of an interrupted write, so the segment is truncated there.
+     */
+    private void scanSegments() throws IOException {
+        index.clear();
+        deadRecords = 0;
+        unindexedRecords = 0;
+        for (Map.Entry<Integer, FileChannel> entry : segments.entrySet()) {
+            scanSegment(entry.getKey(), entry.getValue(), SEGMENT_HEADER_SIZE);
+        }
+    }
+
+    /**
+     * Brings an index covering the given watermark up to date by replaying the records appended after it.
+     * Returns false when the segments have been discarded or compacted since, and the index cannot be used.
+     */
+    private boolean catchUp(Watermark watermark, List<Integer> segmentIds) throws IOException {
+        int[] indexedSegmentIds = watermark.segmentIds;
+        if (watermark.logId != logId || indexedSegmentIds.length == 0 || indexedSegmentIds.length > segmentIds.size()) {
+            return false;
+        }
+        // Segments are only ever added with higher ids, and compaction deletes the lowest ones
+        for (int i = 0; i < indexedSegmentIds.length; i++) {
+            if (segmentIds.get(i) != indexedSegmentIds[i]) {
+                return false;
+            }
+        }
+        int indexedActiveSegmentId = indexedSegmentIds[indexedSegmentIds.length - 1];
+        FileChannel indexedActiveSegment = segments.get(indexedActiveSegmentId);
+        if (indexedActiveSegment.size() < watermark.activeSegmentSize) {
+            return false;
+        }
+        scanSegment(indexedActiveSegmentId, indexedActiveSegment, watermark.activeSegmentSize);
+        for (Map.Entry<Integer, FileChannel> entry : segments.tailMap(indexedActiveSegmentId, false).entrySet()) {
+            scanSegment(entry.getKey(), entry.getValue(), SEGMENT_HEADER_SIZE);
+        }
+        return true;
+    }
+
+    private boolean restoreRetainedIndex(List<Integer> segmentIds) throws IOException {
+        if (retainedIndex == null) {
+            return false;
+        }
+        RetainedIndex.State state = retainedIndex.take();
+        if (state == null) {
+            return false;
+        }
+        index = state.index;
+        deadRecords = state.deadRecords;
+        unindexedRecords = state.unindexedRecords;
+        if (!catchUp(state.watermark, segmentIds)) {
+            index = newIndex();
+            deadRecords = 0;
+            unindexedRecords = 0;
+            return false;
+        }
+        return true;
+    }
+
+    private void scanSegment(int segmentId, FileChannel segment, long from) throws IOException {
+        long size = segment.size();
+        long offset = from;
+        while (offset < size) {
+            Record record;
+            try {
+                record = Record.read(segment, offset);
+            } catch (CorruptedSegmentException e) {
+                if (segmentId != activeSegmentId) {
+                    throw e;
+                }
+                LOGGER.debug("Truncating incomplete record at offset {} of {}", offset, this);
+                segment.truncate(offset);
+                return;
+            }
+            unindexedRecords++;
+            if (record.type == PUT) {
+                if (index.put(record.keyHash, location(segmentId, offset)) != NO_LOCATION) {
+                    deadRecords++;
+                }
+            } else {
+                if (index.remove(record.keyHash) != NO_LOCATION) {
+                    deadRecords++;
+                }
+                deadRecords++;
+            }
+            offset += record.size();
+        }
+    }
+
+    /**
+     * Checks the header of the given segment. The segments must be checked oldest first, as the oldest segment determines the id of the log.
+     */
+    private void checkSegmentHeader(int segmentId, FileChannel segment) throws IOException {
+        boolean oldestSegment = segmentId == segments.firstKey();
+        if (segment.size() < SEGMENT_HEADER_SIZE) {
+            if (segmentId == activeSegmentId) {
+                // Interrupted while the segment was being created
+                if (oldestSegment) {
+                    logId = newLogId();
+                }
+                segment.truncate(0);
+                writeFully(segment, segmentHeader(logId), 0);
+                return;
+            }
+            throw new CorruptedSegmentException("Segment " + segmentId + " has no header");
+        }
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+        readFully(segment, header, 0);
+        if (header.getInt(0) != SEGMENT_MAGIC || header.getInt(4) != FORMAT_VERSION) {
+            throw new CorruptedSegmentException("Segment " + segmentId + " has an unexpected header");
+        }
+        if (oldestSegment) {
+            logId = header.getLong(8);
+        } else if (header.getLong(8) != logId) {
+            throw new CorruptedSegmentException("Segment " + segmentId + " belongs to another log");
+        }
+    }
+
+    /**
+     * Loads the index file, and replays the records appended after it was written.
+     * Records are only ever appended after the watermark of the index file, so the index file stays valid after a crash.
+     */
+    private boolean readIndex(List<Integer> segmentIds) throws IOException {
+        File indexFile = indexFile();
+        if (!indexFile.isFile()) {
+            return false;
+        }
+        Watermark watermark;
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            try {
+                if (input.readInt() != INDEX_MAGIC || input.readInt() != FORMAT_VERSION) {
+                    return false;
+                }
+                long indexedLogId = input.readLong();
+                int[] indexedSegmentIds = new int[input.readInt()];
+                for (int i = 0; i < indexedSegmentIds.length; i++) {
+                    indexedSegmentIds[i] = input.readInt();
+                }
+                watermark = new Watermark(indexedLogId, indexedSegmentIds, input.readLong());
+                if (watermark.logId != logId) {
+                    return false;
+                }
+                deadRecords = input.readLong();
+                int entries = input.readInt();
+                index.clear();
+                for (int i = 0; i < entries; i++) {
+                    index.put(input.readLong(), input.readLong());
+                }
+            } finally {
+                input.close();
+            }
+        } catch (EOFException e) {
+            // Written partially
+            index.clear();
+            deadRecords = 0;
+            return false;
+        }
+        unindexedRecords = 0;
+        if (!catchUp(watermark, segmentIds)) {
+            index.clear();
+            deadRecords = 0;
+            unindexedRecords = 0;
+            return false;
+        }
+        return true;
+    }
+
+    private void writeIndex() throws IOException {
+        File indexFile = indexFile();
+        File tempFile = new File(directory, INDEX_FILE_NAME + ".tmp");
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            output.writeInt(INDEX_MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeLong(logId);
+            output.writeInt(segments.size());
+            for (int segmentId : segments.keySet()) {
+                output.writeInt(segmentId);
+            }
+            output.writeLong(activeSegmentSize);
+            output.writeLong(deadRecords);
+            output.writeInt(index.size());
+            for (Long2LongMap.Entry entry : index.long2LongEntrySet()) {
+                output.writeLong(entry.getLongKey());
+                output.writeLong(entry.getLongValue());
+            }
+        } finally {
+            output.close();
+        }
+        Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private File indexFile() {
+        return new File(directory, INDEX_FILE_NAME);
+    }
+
+    private List<Integer> findSegmentIds() {
+        List<Integer> segmentIds = new ArrayList<Integer>();
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                Matcher matcher = SEGMENT_FILE_NAME.matcher(name);
+                if (matcher.matches()) {
+                    segmentIds.add(Integer.parseInt(matcher.group(1)));
+                }
+            }
+        }
+        Collections.sort(segmentIds);
+        return segmentIds;
+    }
+
+    private File segmentFile(int segmentId) {
+        return new File(directory, String.format("%08d.seg", segmentId));
+    }
+
+    private void closeSegments() {
+        for (FileChannel segment : segments.values()) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                LOGGER.debug("Could not close segment of {}", this, e);
+            }
+        }
+        segments.clear();
+        activeSegment = null;
+        index.clear();
+        deadRecords = 0;
+    }
+
+    private void deleteFiles() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    throw new UncheckedIOException(String.format("Could not delete %s while discarding %s.", file, this));
+                }
+            }
+        }
+    }
+
+    private static ByteBuffer segmentHeader(long logId) {
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+        header.putInt(SEGMENT_MAGIC);
+        header.putInt(FORMAT_VERSION);
+        header.putLong(logId);
+        BufferCaster.cast(header).flip();
+        return header;
+    }
+
+    private static ByteBuffer encodeRecord(byte type, long keyHash, byte[] key, byte[] value) {
+        long recordLength = (long) RECORD_BODY_HEADER_SIZE + key.length + value.length + RECORD_OVERHEAD;
+        if (recordLength > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Entry of " + recordLength + " bytes is too large.");
+        }
+        int bodyLength = (int) recordLength - RECORD_OVERHEAD;
+        ByteBuffer record = ByteBuffer.allocate((int) recordLength);
+        record.putInt(bodyLength);
+        record.put(type);
+        record.putLong(keyHash);
+        record.putInt(key.length);
+        record.put(key);
+        record.put(value);
+        record.putInt(checksum(record.array(), 4, bodyLength));
+        BufferCaster.cast(record).flip();
+        return record;
+    }
+
+    private static int checksum(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private static <T> byte[] serialize(Serializer<T> serializer, T value) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        KryoBackedEncoder encoder = new KryoBackedEncoder(bytes);
+        serializer.write(encoder, value);
+        encoder.flush();
+        return bytes.toByteArray();
+    }
+
+    private static long hashOf(byte[] keyBytes) {
+        return Longs.fromByteArray(Hashing.murmur3().hashBytes(keyBytes).toByteArray());
+    }
+
+    private static long location(int segmentId, long offset) {
+        return ((long) segmentId << 32) | offset;
+    }
+
+    private static int segmentId(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static long offset(long location) {
+        return location & 0xffffffffL;
+    }
+
+    private static int[] toArray(Collection<Integer> values) {
+        int[] result = new int[values.size()];
+        int i = 0;
+        for (int value : values) {
+            result[i++] = value;
+        }
+        return result;
+    }
+
+    private static Long2LongOpenHashMap newIndex() {
+        Long2LongOpenHashMap index = new Long2LongOpenHashMap();
+        index.defaultReturnValue(NO_LOCATION);
+        return index;
+    }
+
+    private static long newLogId() {
+        return ThreadLocalRandom.current().nextLong();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new CorruptedSegmentException("Unexpected end of segment at offset " + position);
+            }
+            position += read;
+        }
+    }
+
+    private static class Record {
+        private final byte type;
+        private final long keyHash;
+        private final byte[] body;
+        private final int keyLength;
+
+        private Record(byte type, long keyHash, byte[] body, int keyLength) {
+            this.type = type;
+            this.keyHash = keyHash;
+            this.body = body;
+            this.keyLength = keyLength;
+        }
+
+        static Record read(FileChannel segment, long offset) throws IOException {
+            long remaining = segment.size() - offset;
+            if (remaining < RECORD_OVERHEAD + RECORD_BODY_HEADER_SIZE) {
+                throw new CorruptedSegmentException("Incomplete record at offset " + offset);
+            }
+            ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+            readFully(segment, lengthBuffer, offset);
+            int bodyLength = lengthBuffer.getInt(0);
+            // A corrupt length can be close to the maximum int, so don't let the record length overflow
+            if (bodyLength < RECORD_BODY_HEADER_SIZE || (long) bodyLength + RECORD_OVERHEAD > Math.min(remaining, Integer.MAX_VALUE)) {
+                throw new CorruptedSegmentException("Incomplete record at offset " + offset);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(bodyLength + 4);
+            readFully(segment, buffer, offset + 4);
+            byte[] body = buffer.array();
+            if (checksum(body, 0, bodyLength) != buffer.getInt(bodyLength)) {
+                throw new CorruptedSegmentException("Checksum mismatch for record at offset " + offset);
+            }
+            byte type = buffer.get(0);
+            int keyLength = buffer.getInt(9);
+            if ((type != PUT && type != REMOVE) || keyLength < 0 || keyLength > bodyLength - RECORD_BODY_HEADER_SIZE) {
+                throw new CorruptedSegmentException("Malformed record at offset " + offset);
+            }
+            return new Record(type, buffer.getLong(1), body, keyLength);
+        }
+
+        int size() {
+            return body.length + 4;
+        }
+
+        boolean hasKey(byte[] key) {
+            if (key.length != keyLength) {
+                return false;
+            }
+            for (int i = 0; i < keyLength; i++) {
+                if (body[RECORD_BODY_HEADER_SIZE + i] != key[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        <V> V readValue(Serializer<V> serializer) throws Exception {
+            int valueOffset = RECORD_BODY_HEADER_SIZE + keyLength;
+            int valueLength = body.length - 4 - valueOffset;
+            return serializer.read(new KryoBackedDecoder(new ByteArrayInputStream(body, valueOffset, valueLength)));
+        }
+
+        ByteBuffer encode() {
+            ByteBuffer record = ByteBuffer.allocate(size());
+            record.putInt(body.length - 4);
+            record.put(body);
+            BufferCaster.cast(record).flip();
+            return record;
+        }
+    }
+
+    /**
+     * The part of the log covered by an index: the segments and the size of the newest of them.
+     */
+    private static class Watermark {
+        private final long logId;
+        private final int[] segmentIds;
+        private final long activeSegmentSize;
+
+        Watermark(long logId, int[] segmentIds, long activeSegmentSize) {
+            this.logId = logId;
+            this.segmentIds = segmentIds;
+            this.activeSegmentSize = activeSegmentSize;
+        }
+    }
+
+    /**
+     * Keeps the index of a closed cache in memory, so that reopening the cache in the same process only replays the records appended in the meantime.
+     */
+    public static class RetainedIndex {
+        private State state;
+
+        synchronized void retain(Long2LongOpenHashMap index, Watermark watermark, long deadRecords, long unindexedRecords) {
+            state = new State(index, watermark, deadRecords, unindexedRecords);
+        }
+
+        @Nullable
+        synchronized State take() {
+            State taken = state;
+            state = null;
+            return taken;
+        }
+
+        private static class State {
+            private final Long2LongOpenHashMap index;
+            private final Watermark watermark;
+            private final long deadRecords;
+            private final long unindexedRecords;
+
+            State(Long2LongOpenHashMap index, Watermark watermark, long deadRecords, long unindexedRecords) {
+                this.index = index;
+                this.watermark = watermark;
+                this.deadRecords = deadRecords;
+                this.unindexedRecords = unindexedRecords;
+            }
+        }
+    }
+
+    private static class CorruptedSegmentException extends IOException {
+        CorruptedSegmentException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal
+
+import org.gradle.cache.AsyncCacheAccess
+import org.gradle.cache.FileLock
+import org.gradle.cache.MultiProcessSafePersistentIndexedCache
+import org.gradle.internal.Factory
+import spock.lang.Specification
+
+class AsyncCacheAccessDecoratedCacheTest extends Specification {
+    def queue = []
+    def asyncCacheAccess = Stub(AsyncCacheAccess) {
+        enqueue(_) >> { Runnable task -> queue << task }
+        read(_) >> { Factory task -> runQueued(); task.create() }
+    }
+    def target = Mock(MultiProcessSafePersistentIndexedCache)
+    def cache = new AsyncCacheAccessDecoratedCache(asyncCacheAccess, target)
+
+    def "reads pending update without waiting for queued updates"() {
+        given:
+        cache.putLater("key", "value", Stub(Runnable))
+        cache.removeLater("other", Stub(Runnable))
+
+        when:
+        def value = cache.get("key")
+        def removed = cache.get("other")
+
+        then:
+        value == "value"
+        removed == null
+        queue.size() == 2
+        0 * target._
+
+        and:
+        cache.statistics.hits == 2
+        cache.statistics.misses == 0
+        cache.statistics.maxQueueDepth == 2
+    }
+
+    def "reads from backing cache once update has been applied"() {
+        given:
+        cache.putLater("key", "value", Stub(Runnable))
+        runQueued()
+
+        when:
+        def value = cache.get("key")
+
+        then:
+        value == "stored"
+        1 * target.get("key") >> "stored"
+        cache.statistics.misses == 1
+    }
+
+    def "applies updates in order"() {
+        def completion = Mock(Runnable)
+
+        given:
+        cache.putLater("key", "value", completion)
+        cache.removeLater("other", completion)
+
+        when:
+        runQueued()
+
+        then:
+        1 * target.put("key", "value")
+
+        then:
+        1 * completion.run()
+
+        then:
+        1 * target.remove("other")
+
+        then:
+        1 * completion.run()
+        0 * _
+    }
+
+    def "skips updates that have been superseded by a later update of the same key"() {
+        def completion = Mock(Runnable)
+
+        given:
+        cache.putLater("key", "value 1", completion)
+        cache.putLater("key", "value 2", completion)
+        cache.removeLater("key", completion)
+        cache.putLater("key", "value 3", completion)
+
+        when:
+        runQueued()
+
+        then:
+        1 * target.put("key", "value 3")
+        4 * completion.run()
+        0 * target._
+
+        and:
+        cache.statistics.coalesced == 3
+    }
+
+    def "discards pending update when it cannot be queued"() {
+        def failure = new IllegalStateException()
+        def completion = Mock(Runnable)
+        def asyncCacheAccess = Stub(AsyncCacheAccess) {
+            enqueue(_) >> { throw failure }
+            read(_) >> { Factory task -> task.create() }
+        }
+        def cache = new AsyncCacheAccessDecoratedCache(asyncCacheAccess, target)
+
+        when:
+        cache.putLater("key", "value", completion)
+
+        then:
+        def e = thrown(IllegalStateException)
+        e == failure
+        1 * completion.run()
+
+        when:
+        def value = cache.get("key")
+
+        then:
+        value == null
+        1 * target.get("key") >> null
+    }
+
+    def "applies superseded update when the later update cannot be queued"() {
+        def failure = new IllegalStateException()
+        def completion = Mock(Runnable)
+        def asyncCacheAccess = Stub(AsyncCacheAccess) {
+            enqueue(_) >> { Runnable task -> queue << task } >> { throw failure }
+            read(_) >> { Factory task -> runQueued(); task.create() }
+        }
+        def cache = new AsyncCacheAccessDecoratedCache(asyncCacheAccess, target)
+
+        given:
+        cache.putLater("key", "value 1", completion)
+
+        when:
+        cache.putLater("key", "value 2", completion)
+
+        then:
+        def e = thrown(IllegalStateException)
+        e == failure
+        1 * completion.run()
+        cache.get("key") == "value 1"
+
+        when:
+        runQueued()
+
+        then:
+        1 * target.put("key", "value 1")
+        1 * completion.run()
+        0 * target._
+        cache.statistics.coalesced == 0
+    }
+
+    def "discards pending update when it cannot be queued after the superseded update was applied"() {
+        def failure = new IllegalStateException()
+        def asyncCacheAccess = Stub(AsyncCacheAccess) {
+            enqueue(_) >> { Runnable task -> queue << task } >> { runQueued(); throw failure }
+            read(_) >> { Factory task -> runQueued(); task.create() }
+        }
+        def cache = new AsyncCacheAccessDecoratedCache(asyncCacheAccess, target)
+
+        given:
+        cache.putLater("key", "value 1", Stub(Runnable))
+
+        when:
+        cache.putLater("key", "value 2", Stub(Runnable))
+
+        then:
+        thrown(IllegalStateException)
+        1 * target.put("key", "value 1")
+
+        when:
+        def value = cache.get("key")
+
+        then:
+        value == "value 1"
+        1 * target.get("key") >> "value 1"
+    }
+
+    def "resets statistics when lock is released"() {
+        def state = Stub(FileLock.State)
+
+        given:
+        cache.putLater("key", "value", Stub(Runnable))
+        cache.get("key")
+
+        when:
+        cache.beforeLockRelease(state)
+
+        then:
+        1 * target.beforeLockRelease(state)
+        cache.statistics.hits == 0
+        cache.statistics.maxQueueDepth == 0
+    }
+
+    private void runQueued() {
+        def tasks = new ArrayList<Runnable>(queue)
+        queue.clear()
+        tasks*.run()
+    }
+}
@@ -716,6 +716,20 @@ class DefaultCacheAccessTest extends ConcurrentSpec {
         access?.close()
     }
 
+    def "throws InvalidCacheReuseException when cache storage differs"() {
+        def access = newAccess(None)
+
+        when:
+        access.newCache(PersistentIndexedCacheParameters.of('cache', String.class, Integer.class))
+        access.newCache(PersistentIndexedCacheParameters.of('cache', String.class, Integer.class).withStorage(PersistentIndexedCacheParameters.Storage.LOG_STRUCTURED))
+
+        then:
+        thrown(DefaultCacheAccess.InvalidCacheReuseException)
+
+        cleanup:
+        access?.close()
+    }
+
     def "returns the same cache object when cache decorator match"() {
         def access = newAccess(None)
         def decorator = Mock(CacheDecorator)
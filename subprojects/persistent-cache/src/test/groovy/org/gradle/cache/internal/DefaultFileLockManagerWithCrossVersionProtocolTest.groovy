@@ -42,12 +42,13 @@ class DefaultFileLockManagerWithCrossVersionProtocolTest extends AbstractFileLoc
             // state version + dirty flag
             assert str.readByte() == 1
             assert str.readBoolean() != dirty
-            // info version + port, lock-id, pid, operation-name
+            // info version + port, lock-id, pid, operation-name, port
             assert str.readByte() == 3
             assert str.readInt() == 34
             assert str.readLong() == 678L
             assert str.readUTF() == processIdentifier
             assert str.readUTF() == operationalName
+            assert str.readInt() == 34
             assert str.read() < 0
         }
     }
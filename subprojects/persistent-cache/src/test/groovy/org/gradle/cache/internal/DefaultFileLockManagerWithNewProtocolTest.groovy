@@ -270,12 +270,13 @@ class DefaultFileLockManagerWithNewProtocolTest extends AbstractFileLockManagerT
             } else {
                 assert str.readLong() != 0
             }
-            // info version + port, lock-id, pid, operation-name
+            // info version + port, lock-id, pid, operation-name, port
             assert str.readByte() == 3
             assert str.readInt() == 34
             assert str.readLong() == 678L
             assert str.readUTF() == processIdentifier
             assert str.readUTF() == operationalName
+            assert str.readInt() == 34
             assert str.read() < 0
         }
     }
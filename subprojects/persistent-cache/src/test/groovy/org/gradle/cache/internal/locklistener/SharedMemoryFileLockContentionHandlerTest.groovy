@@ -0,0 +1,300 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.locklistener
+
+import org.gradle.cache.FileLock
+import org.gradle.cache.FileLockManager
+import org.gradle.cache.internal.DefaultFileLockManager
+import org.gradle.cache.internal.ProcessMetaDataProvider
+import org.gradle.cache.internal.filelock.LockOptionsBuilder
+import org.gradle.internal.concurrent.CompositeStoppable
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.concurrent.ExecutorFactory
+import org.gradle.internal.concurrent.ManagedExecutor
+import org.gradle.internal.id.LongIdGenerator
+import org.gradle.internal.remote.internal.inet.InetAddressFactory
+import org.gradle.test.fixtures.concurrent.ConcurrentSpec
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+import static org.gradle.cache.FileLockManager.LockMode.Exclusive
+import static org.gradle.test.fixtures.ConcurrentTestUtil.poll
+
+class SharedMemoryFileLockContentionHandlerTest extends ConcurrentSpec {
+    @Rule
+    final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def coordinationFile = tmpDir.file("coordination.bin")
+    // The handlers' watcher threads run until the handlers are stopped, so they can't use the test executor
+    def handlerExecutorFactory = new DefaultExecutorFactory()
+    List<SharedMemoryFileLockContentionHandler> handlers = []
+    def handler = createHandler()
+    def client = createHandler()
+
+    def cleanup() {
+        CompositeStoppable.stoppable(handlers).add(handlerExecutorFactory).stop()
+    }
+
+    def "handlers in different processes reserve different ports outside of the UDP port range"() {
+        when:
+        int port1 = handler.reservePort()
+        int port2 = client.reservePort()
+
+        then:
+        port1 >= SharedMemoryFileLockContentionHandler.FIRST_SLOT_PORT
+        port2 >= SharedMemoryFileLockContentionHandler.FIRST_SLOT_PORT
+        port1 != port2
+        handler.reservePort() == port1
+    }
+
+    def "manages contention for multiple locks"() {
+        def action1 = new AtomicBoolean()
+        def action2 = new AtomicBoolean()
+
+        when:
+        int port = handler.reservePort()
+        handler.start(10, { action1.set(true) })
+        handler.start(11, { action2.set(true) })
+
+        client.reservePort()
+        client.maybePingOwner(port, 10, "lock 1", 50000, null)
+        client.maybePingOwner(port, 11, "lock 2", 50000, null)
+
+        then:
+        poll {
+            assert action1.get() && action2.get()
+        }
+    }
+
+    def "client receives signal when lock is released"() {
+        def signaled = new AtomicBoolean()
+
+        when:
+        int port = handler.reservePort()
+        handler.start(10) { signal ->
+            signal.trigger()
+        }
+
+        client.reservePort()
+        client.maybePingOwner(port, 10, "lock 1", 50000) {
+            signaled.set(true)
+        }
+
+        then:
+        poll {
+            assert signaled.get()
+        }
+    }
+
+    def "runs contended action only once for repeated requests"() {
+        def count = new AtomicInteger()
+        def other = createHandler()
+
+        when:
+        int port = handler.reservePort()
+        handler.start(10, { count.incrementAndGet() })
+
+        client.reservePort()
+        other.reservePort()
+        client.maybePingOwner(port, 10, "lock 1", 50000, null)
+        other.maybePingOwner(port, 10, "lock 1", 50000, null)
+        client.maybePingOwner(port, 10, "lock 1", 50000, null)
+
+        then:
+        poll {
+            assert count.get() == 1
+        }
+        sleep(100)
+        count.get() == 1
+    }
+
+    def "does not ping owner again while release was just requested"() {
+        when:
+        int port = handler.reservePort()
+        handler.start(10, {})
+        client.reservePort()
+
+        then:
+        client.maybePingOwner(port, 10, "lock 1", 0, null)
+        !client.maybePingOwner(port, 10, "lock 1", 500, null)
+        client.maybePingOwner(port, 10, "lock 1", 1500, null)
+    }
+
+    def "does not ping owner using UDP coordination or owner that has gone away"() {
+        when:
+        int port = handler.reservePort()
+        handler.start(10, {})
+        client.reservePort()
+        handler.stop()
+
+        then:
+        !client.maybePingOwner(1234, 10, "lock 1", 50000, null)
+        !client.maybePingOwner(port, 10, "lock 1", 50000, null)
+    }
+
+    def "UDP contention handler does not ping owner using shared memory coordination"() {
+        def udpHandler = new DefaultFileLockContentionHandler(executorFactory, new InetAddressFactory())
+
+        when:
+        int port = handler.reservePort()
+
+        then:
+        !udpHandler.maybePingOwner(port, 10, "lock 1", 50000, null)
+
+        cleanup:
+        udpHandler.stop()
+    }
+
+    def "older versions reading the lock file do not try to ping the owner of a lock at its slot"() {
+        def manager = new DefaultFileLockManager(Stub(ProcessMetaDataProvider), 20000, handler, new LongIdGenerator())
+        def lockFile = tmpDir.file("lock-file.bin.lock")
+
+        when:
+        def lock = manager.lock(tmpDir.file("lock-file.bin"), LockOptionsBuilder.mode(Exclusive), "lock file", "operation")
+
+        then:
+        lockFile.withDataInputStream { str ->
+            // state version + creation number + sequence number
+            assert str.readByte() == 3
+            str.readLong()
+            str.readLong()
+            // read the info region like older versions do: info version + port, lock-id, pid, operation-name
+            assert str.readByte() == 3
+            // older versions only ping the owner when the port is not -1, and would fail to send a packet to a port beyond the UDP range
+            assert str.readInt() == -1
+            str.readLong()
+            str.readUTF()
+            assert str.readUTF() == "operation"
+            // the port for newer versions follows
+            assert str.readInt() >= SharedMemoryFileLockContentionHandler.FIRST_SLOT_PORT
+        }
+
+        cleanup:
+        lock?.close()
+    }
+
+    def "cannot start contention handling when the handler was not initialized or stopped"() {
+        when:
+        handler.start(10, {})
+
+        then:
+        thrown(IllegalStateException)
+
+        when:
+        handler.reservePort()
+        handler.stop()
+        handler.start(10, {})
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    def "reserving port does not start any thread and stopping stops both executors"() {
+        def factory = Mock(ExecutorFactory)
+        def watcher = Mock(ManagedExecutor)
+        def releaseLockActionExecutor = Mock(ManagedExecutor)
+        def handler = new SharedMemoryFileLockContentionHandler(coordinationFile, factory)
+        handlers << handler
+
+        when:
+        handler.reservePort()
+
+        then:
+        0 * factory._
+
+        when:
+        handler.start(10, {})
+        handler.start(11, {})
+        handler.stop()
+
+        then:
+        1 * factory.create(_ as String) >> watcher
+        1 * factory.create(_ as String) >> releaseLockActionExecutor
+        1 * watcher.stop()
+        1 * releaseLockActionExecutor.stop()
+    }
+
+    def "stopping is safe even if the handler was not initialized"() {
+        when:
+        handler.stop()
+
+        then:
+        noExceptionThrown()
+    }
+
+    def "lock managers hand over a contended lock without exceeding the lock timeout"() {
+        def processes = 8
+        def rounds = 20
+        def file = tmpDir.file("lock-file.bin")
+        def active = new AtomicInteger()
+        def maxActive = new AtomicInteger()
+        def completed = new AtomicInteger()
+
+        when:
+        async(60) {
+            processes.times { i ->
+                // Each lock manager and handler pair behaves like a separate process sharing the coordination file
+                def manager = new DefaultFileLockManager(Stub(ProcessMetaDataProvider), 20000, createHandler(), new LongIdGenerator())
+                start {
+                    rounds.times {
+                        def holder = new LockHolder()
+                        holder.lock = manager.lock(file, LockOptionsBuilder.mode(Exclusive), "lock file", "operation ${i}") { signal ->
+                            holder.release()
+                            signal.trigger()
+                        }
+                        holder.withLock {
+                            maxActive.accumulateAndGet(active.incrementAndGet(), { a, b -> Math.max(a, b) })
+                            Thread.sleep(1)
+                            completed.incrementAndGet()
+                            active.decrementAndGet()
+                        }
+                        holder.release()
+                    }
+                }
+            }
+        }
+
+        then:
+        completed.get() == processes * rounds
+        maxActive.get() == 1
+    }
+
+    private SharedMemoryFileLockContentionHandler createHandler() {
+        def handler = new SharedMemoryFileLockContentionHandler(coordinationFile, handlerExecutorFactory)
+        handlers << handler
+        return handler
+    }
+
+    private static class LockHolder {
+        FileLock lock
+
+        synchronized void withLock(Runnable action) {
+            if (lock != null) {
+                action.run()
+            }
+        }
+
+        synchronized void release() {
+            if (lock != null) {
+                lock.close()
+                lock = null
+            }
+        }
+    }
+}
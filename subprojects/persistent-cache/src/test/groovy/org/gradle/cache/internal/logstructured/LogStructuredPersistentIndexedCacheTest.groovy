@@ -0,0 +1,352 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.logstructured
+
+import org.gradle.internal.serialize.BaseSerializerFactory
+import org.gradle.internal.serialize.DefaultSerializer
+import org.gradle.test.fixtures.file.TestFile
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.Executor
+
+class LogStructuredPersistentIndexedCacheTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    TestFile cacheDir = tmpDir.file("cache.log")
+    List<Runnable> compactions = []
+    Executor executor = { Runnable runnable -> compactions << runnable } as Executor
+    LogStructuredPersistentIndexedCache<String, Integer> cache
+
+    def cleanup() {
+        cache?.close()
+    }
+
+    def "can add, update and remove entries"() {
+        createCache()
+
+        when:
+        cache.put("a", 1)
+        cache.put("b", 2)
+        cache.put("a", 3)
+        cache.remove("b")
+
+        then:
+        cache.get("a") == 3
+        cache.get("b") == null
+        cache.get("c") == null
+    }
+
+    def "entries survive reopening the cache"() {
+        createCache()
+        (0..<100).each { cache.put("key$it".toString(), it) }
+        cache.remove("key7")
+
+        when:
+        reopen()
+
+        then:
+        (0..<100).each { assert cache.get("key$it".toString()) == (it == 7 ? null : it) }
+    }
+
+    def "rebuilds index from segments when index file is missing"() {
+        createCache()
+        (0..<100).each { cache.put("key${it % 10}".toString(), it) }
+        cache.close()
+        assert cacheDir.file("index.bin").delete()
+
+        when:
+        createCache()
+
+        then:
+        (0..<10).each { assert cache.get("key$it".toString()) == 90 + it }
+    }
+
+    def "only rewrites index file once enough records are missing from it"() {
+        createCache()
+        (0..<100).each { cache.put("key$it".toString(), it) }
+        cache.close()
+        def indexFile = cacheDir.file("index.bin")
+        indexFile.lastModified = 0
+
+        when:
+        createCache()
+        cache.get("key1")
+        cache.put("key1", 101)
+        cache.close()
+
+        then:
+        indexFile.lastModified() == 0
+
+        when:
+        createCache()
+
+        then:
+        cache.get("key1") == 101
+
+        when:
+        (0..<30).each { cache.put("key$it".toString(), 200 + it) }
+        cache.close()
+
+        then:
+        indexFile.lastModified() != 0
+
+        when:
+        createCache()
+
+        then:
+        (0..<100).each { assert cache.get("key$it".toString()) == (it < 30 ? 200 + it : it) }
+    }
+
+    def "replays records appended by another instance onto the retained index"() {
+        def retainedIndex = new LogStructuredPersistentIndexedCache.RetainedIndex()
+        createCache(64, 1000, retainedIndex)
+        (0..<10).each { cache.put("key$it".toString(), it) }
+        cache.close()
+
+        when:
+        createCache(64)
+        cache.put("key1", 101)
+        cache.remove("key2")
+        cache.put("other", 1)
+        cache.close()
+        createCache(64, 1000, retainedIndex)
+
+        then:
+        cache.get("key0") == 0
+        cache.get("key1") == 101
+        cache.get("key2") == null
+        cache.get("other") == 1
+    }
+
+    def "does not use the retained index when the log was recreated"() {
+        def retainedIndex = new LogStructuredPersistentIndexedCache.RetainedIndex()
+        createCache(1024 * 1024, 1000, retainedIndex)
+        cache.put("a", 1)
+        cache.put("b", 2)
+        cache.close()
+
+        when:
+        createCache()
+        cache.clear()
+        cache.put("b", 3)
+        cache.put("c", 4)
+        cache.close()
+        createCache(1024 * 1024, 1000, retainedIndex)
+
+        then:
+        cache.get("a") == null
+        cache.get("b") == 3
+        cache.get("c") == 4
+    }
+
+    def "treats unreadable entry as missing without discarding the other entries"() {
+        createCache()
+        cache.put("a", 1)
+        cache.put("b", 2)
+        cache.close()
+        def segment = segmentFiles().first()
+        def bytes = segment.bytes
+        // The key of the first record
+        bytes[33] = (byte) (bytes[33] ^ 0xff)
+        segment.bytes = bytes
+
+        when:
+        createCache()
+
+        then:
+        cache.get("a") == null
+        cache.get("b") == 2
+
+        when:
+        cache.put("a", 3)
+
+        then:
+        cache.get("a") == 3
+    }
+
+    def "truncates partially written record at the end of the log"() {
+        createCache()
+        cache.put("a", 1)
+        cache.put("b", 2)
+        cache.close()
+        assert cacheDir.file("index.bin").delete()
+        def segment = segmentFiles().last()
+        def length = segment.length()
+        segment << ([0, 0, 0, 42, 1, 2, 3] as byte[])
+
+        when:
+        createCache()
+
+        then:
+        cache.get("a") == 1
+        cache.get("b") == 2
+        segment.length() == length
+
+        when:
+        cache.put("c", 3)
+        reopen()
+
+        then:
+        cache.get("c") == 3
+    }
+
+    def "treats record with huge length as partially written"() {
+        createCache()
+        cache.put("a", 1)
+        cache.close()
+        assert cacheDir.file("index.bin").delete()
+        def segment = segmentFiles().last()
+        def length = segment.length()
+        segment << (([0x7f, 0xff, 0xff, 0xfc] + [0] * 20) as byte[])
+
+        when:
+        createCache()
+
+        then:
+        cache.get("a") == 1
+        segment.length() == length
+    }
+
+    def "discards cache when older segment is corrupt"() {
+        createCache(64)
+        (0..<20).each { cache.put("key$it".toString(), it) }
+        cache.close()
+        assert cacheDir.file("index.bin").delete()
+        def segment = segmentFiles().first()
+        def bytes = segment.bytes
+        bytes[20] = (byte) (bytes[20] ^ 0xff)
+        segment.bytes = bytes
+
+        when:
+        createCache(64)
+
+        then:
+        cache.get("key1") == null
+        segmentFiles().size() == 1
+
+        when:
+        cache.put("key1", 1)
+
+        then:
+        cache.get("key1") == 1
+    }
+
+    def "rolls over to new segments"() {
+        createCache(64)
+
+        when:
+        (0..<20).each { cache.put("key$it".toString(), it) }
+
+        then:
+        segmentFiles().size() > 1
+        (0..<20).each { assert cache.get("key$it".toString()) == it }
+    }
+
+    def "compacts superseded records in the background"() {
+        createCache(64, 10)
+        (0..<5).each { cache.put("key$it".toString(), it) }
+
+        when:
+        (0..<20).each { cache.put("key${it % 5}".toString(), 100 + it) }
+
+        then:
+        compactions.size() == 1
+
+        when:
+        def segmentsBefore = segmentFiles().size()
+        compactions.remove(0).run()
+
+        then:
+        segmentFiles().size() < segmentsBefore
+        (0..<5).each { assert cache.get("key$it".toString()) == 115 + it }
+
+        when:
+        reopen()
+        assert cacheDir.file("index.bin").delete()
+        reopen()
+
+        then:
+        (0..<5).each { assert cache.get("key$it".toString()) == 115 + it }
+    }
+
+    def "removed entries stay removed after compaction"() {
+        createCache(64)
+        (0..<10).each { cache.put("key$it".toString(), it) }
+        cache.remove("key3")
+        (0..<10).each { cache.put("other$it".toString(), it) }
+
+        when:
+        cache.compact()
+        cache.close()
+        assert cacheDir.file("index.bin").delete()
+        createCache(64)
+
+        then:
+        cache.get("key3") == null
+        cache.get("key4") == 4
+        cache.get("other9") == 9
+    }
+
+    def "closing waits for running compaction to stop"() {
+        createCache(64, 10)
+        (0..<30).each { cache.put("key${it % 5}".toString(), it) }
+        def compaction = compactions.remove(0)
+
+        when:
+        def closed = new Thread({ cache.close() })
+        closed.start()
+        compaction.run()
+        closed.join()
+
+        then:
+        !cache.open
+
+        when:
+        createCache(64, 10)
+
+        then:
+        (0..<5).each { assert cache.get("key$it".toString()) == 25 + it }
+    }
+
+    def "can use complex values"() {
+        def cache = new LogStructuredPersistentIndexedCache<String, List<Integer>>(cacheDir, BaseSerializerFactory.STRING_SERIALIZER, new DefaultSerializer<List<Integer>>(), executor)
+
+        when:
+        cache.put("a", [1, 2, 3])
+
+        then:
+        cache.get("a") == [1, 2, 3]
+
+        cleanup:
+        cache.close()
+    }
+
+    private void createCache(long maxSegmentSize = 1024 * 1024, int compactionThreshold = 1000, LogStructuredPersistentIndexedCache.RetainedIndex retainedIndex = null) {
+        cache = new LogStructuredPersistentIndexedCache<String, Integer>(cacheDir, BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.INTEGER_SERIALIZER, executor, maxSegmentSize, compactionThreshold, retainedIndex)
+    }
+
+    private void reopen() {
+        cache.close()
+        cache = new LogStructuredPersistentIndexedCache<String, Integer>(cacheDir, BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.INTEGER_SERIALIZER, executor, 64, 10)
+    }
+
+    private List<TestFile> segmentFiles() {
+        cacheDir.listFiles().findAll { it.name.endsWith(".seg") }.sort { it.name }.collect { new TestFile(it) }
+    }
+}
@@ -28,6 +28,7 @@
 import org.apache.http.auth.NTCredentials;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.UserTokenHandler;
 import org.apache.http.client.config.AuthSchemes;
 import org.apache.http.client.config.CookieSpecs;
 import org.apache.http.client.config.RequestConfig;
@@ -73,8 +74,10 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import javax.net.ssl.HostnameVerifier;
 import java.net.ProxySelector;
+import java.security.Principal;
 import java.util.Collection;
 import java.util.Collections;
 
@@ -113,11 +116,16 @@ public void configure(HttpClientBuilder builder) {
         configureRequestConfig(builder);
         configureSocketConfig(builder);
         configureRedirectStrategy(builder);
+        configureConnectionReuse(builder);
         builder.setDefaultCredentialsProvider(credentialsProvider);
         builder.setMaxConnTotal(MAX_HTTP_CONNECTIONS);
         builder.setMaxConnPerRoute(MAX_HTTP_CONNECTIONS);
     }
 
+    private void configureConnectionReuse(HttpClientBuilder builder) {
+        builder.setUserTokenHandler(new ConnectionBasedAuthUserTokenHandler());
+    }
+
     private void configureSslSocketConnectionFactory(HttpClientBuilder builder, SslContextFactory sslContextFactory, HostnameVerifier hostnameVerifier) {
         builder.setSSLSocketFactory(new SSLConnectionSocketFactory(sslContextFactory.createSslContext(), SSL_PROTOCOLS, null, hostnameVerifier));
     }
@@ -286,6 +294,39 @@ private String getAuthScheme(Authentication authentication) {
         }
     }
 
+    /**
+     * Only binds pooled connections to the principal of a connection based authentication scheme, such as NTLM.
+     * <p>
+     * The default handler also binds connections to the principal of the TLS client certificate. Requests start
+     * with a fresh context whenever no shared context is available, and a fresh context can not lease a connection
+     * bound to a principal. So each such request opened a new connection and performed a full handshake. All
+     * connections of a client use the same client certificate, so there is nothing to keep apart.
+     */
+    static class ConnectionBasedAuthUserTokenHandler implements UserTokenHandler {
+        @Override
+        public Object getUserToken(HttpContext context) {
+            HttpClientContext clientContext = HttpClientContext.adapt(context);
+            Principal principal = getConnectionBasedAuthPrincipal(clientContext.getTargetAuthState());
+            if (principal == null) {
+                principal = getConnectionBasedAuthPrincipal(clientContext.getProxyAuthState());
+            }
+            return principal;
+        }
+
+        @Nullable
+        private static Principal getConnectionBasedAuthPrincipal(@Nullable AuthState authState) {
+            if (authState == null) {
+                return null;
+            }
+            AuthScheme scheme = authState.getAuthScheme();
+            if (scheme == null || !scheme.isComplete() || !scheme.isConnectionBased()) {
+                return null;
+            }
+            Credentials credentials = authState.getCredentials();
+            return credentials == null ? null : credentials.getUserPrincipal();
+        }
+    }
+
     static class PreemptiveAuth implements HttpRequestInterceptor {
         private final AuthScheme authScheme;
         private final boolean alwaysSendAuth;
@@ -110,6 +110,25 @@ class HttpClientConfigurerTest extends Specification {
         httpClientBuilder.credentialsProvider.getCredentials(AuthScope.ANY) == null
     }
 
+    def "only binds connections to connection based authentication when #description"() {
+        httpSettings.authenticationSettings >> (authenticated ? [basicAuthentication] : [])
+        httpSettings.sslContextFactory >> sslContextFactory
+        credentials.username >> "user"
+        credentials.password >> "pass"
+
+        when:
+        configurer.configure(httpClientBuilder)
+
+        then:
+        httpClientBuilder.userTokenHandler instanceof HttpClientConfigurer.ConnectionBasedAuthUserTokenHandler
+        !httpClientBuilder.connectionStateDisabled
+
+        where:
+        description                       | authenticated
+        "no authentication is configured" | false
+        "authentication is configured"    | true
+    }
+
     def "configures http client with proxy credentials"() {
         httpSettings.authenticationSettings >> []
         httpSettings.sslContextFactory >> sslContextFactory
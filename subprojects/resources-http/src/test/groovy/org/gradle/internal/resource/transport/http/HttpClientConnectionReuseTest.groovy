@@ -0,0 +1,102 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.resource.transport.http
+
+import org.apache.http.conn.ssl.NoopHostnameVerifier
+import org.apache.http.ssl.SSLContexts
+import org.gradle.api.artifacts.repositories.PasswordCredentials
+import org.gradle.internal.authentication.AllSchemesAuthentication
+import org.gradle.internal.verifier.HttpRedirectVerifier
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.test.fixtures.keystore.TestKeyStore
+import org.gradle.test.fixtures.server.http.HttpServer
+import org.junit.Rule
+import spock.lang.Specification
+
+import javax.servlet.http.HttpServletRequest
+import javax.servlet.http.HttpServletResponse
+
+class HttpClientConnectionReuseTest extends Specification {
+
+    @Rule TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider()
+    @Rule HttpServer httpServer = new HttpServer()
+
+    def keyStore = TestKeyStore.init(temporaryFolder.testDirectory)
+    def remotePorts = [] as Set<Integer>
+
+    def "reuses connections authenticated with a TLS client certificate when #description"() {
+        given:
+        keyStore.enableSslWithServerAndClientCerts(httpServer)
+        3.times {
+            httpServer.expect("/entry", ["GET"], new HttpServer.ActionSupport("record connection") {
+                @Override
+                void handle(HttpServletRequest request, HttpServletResponse response) {
+                    remotePorts << request.remotePort
+                    response.contentLength = 2
+                    response.outputStream << "ok"
+                }
+            })
+        }
+        httpServer.start()
+        def client = new HttpClientHelper(httpSettings(authenticated))
+
+        when:
+        3.times {
+            def response = client.performGet("${httpServer.uri}/entry", false)
+            try {
+                assert response.content.text == "ok"
+            } finally {
+                response.close()
+            }
+        }
+
+        then:
+        remotePorts.size() == 1
+
+        cleanup:
+        client?.close()
+
+        where:
+        description                       | authenticated
+        "no authentication is configured" | false
+        "authentication is configured"    | true
+    }
+
+    private HttpSettings httpSettings(boolean authenticated) {
+        def credentials = Stub(PasswordCredentials) {
+            getUsername() >> "user"
+            getPassword() >> "pass"
+        }
+        def authentication = new AllSchemesAuthentication(credentials)
+        authentication.addHost("localhost", -1)
+        def sslContext = SSLContexts.custom()
+            .loadKeyMaterial(keyStore.keyStore, keyStore.keyStorePassword.toCharArray(), keyStore.keyStorePassword.toCharArray())
+            .loadTrustMaterial(keyStore.trustStore, keyStore.trustStorePassword.toCharArray())
+            .build()
+        Stub(HttpSettings) {
+            getProxySettings() >> Mock(HttpProxySettings)
+            getSecureProxySettings() >> Mock(HttpProxySettings)
+            getTimeoutSettings() >> { new JavaSystemPropertiesHttpTimeoutSettings() }
+            getRedirectVerifier() >> Stub(HttpRedirectVerifier)
+            getAuthenticationSettings() >> (authenticated ? [authentication] : [])
+            getHostnameVerifier() >> NoopHostnameVerifier.INSTANCE
+            getSslContextFactory() >> Stub(SslContextFactory) {
+                createSslContext() >> sslContext
+            }
+        }
+    }
+}
@@ -16,7 +16,9 @@
 
 package org.gradle.internal.fingerprint.overlap.impl;
 
+import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Iterables;
 import org.gradle.internal.file.FileType;
 import org.gradle.internal.fingerprint.FileCollectionFingerprint;
 import org.gradle.internal.fingerprint.FileSystemLocationFingerprint;
@@ -59,6 +61,10 @@ private static FileCollectionFingerprint getFingerprintAfterPreviousExecution(@N
 
     @Nullable
     private static OverlappingOutputs detect(String propertyName, FileCollectionFingerprint previous, FileSystemSnapshot before) {
+        if (unchangedSincePreviousExecution(previous, before)) {
+            // Avoid looking at the individual fingerprints, loading them from the execution history can be expensive
+            return null;
+        }
         Map<String, FileSystemLocationFingerprint> previousFingerprints = previous.getFingerprints();
         OverlappingOutputsDetectingVisitor outputsDetectingVisitor = new OverlappingOutputsDetectingVisitor(previousFingerprints);
         before.accept(outputsDetectingVisitor);
@@ -66,6 +72,31 @@ private static OverlappingOutputs detect(String propertyName, FileCollectionFing
         return overlappingPath == null ? null : new OverlappingOutputs(propertyName, overlappingPath);
     }
 
+    private static boolean unchangedSincePreviousExecution(FileCollectionFingerprint previous, FileSystemSnapshot before) {
+        ImmutableMultimap<String, HashCode> previousRootHashes = previous.getRootHashes();
+        if (previousRootHashes.isEmpty()) {
+            return false;
+        }
+        ImmutableMultimap.Builder<String, HashCode> rootHashes = ImmutableMultimap.builder();
+        before.accept(new FileSystemSnapshotVisitor() {
+            @Override
+            public boolean preVisitDirectory(CompleteDirectorySnapshot directorySnapshot) {
+                rootHashes.put(directorySnapshot.getAbsolutePath(), directorySnapshot.getHash());
+                return false;
+            }
+
+            @Override
+            public void visitFile(CompleteFileSystemLocationSnapshot fileSnapshot) {
+                rootHashes.put(fileSnapshot.getAbsolutePath(), fileSnapshot.getHash());
+            }
+
+            @Override
+            public void postVisitDirectory(CompleteDirectorySnapshot directorySnapshot) {
+            }
+        });
+        return Iterables.elementsEqual(previousRootHashes.entries(), rootHashes.build().entries());
+    }
+
     private static boolean changedSincePreviousExecution(HashCode contentHash, HashCode previousContentHash) {
         // _changed_ since last execution, possibly by another task
         return !contentHash.equals(previousContentHash);
@@ -16,7 +16,6 @@
 
 package org.gradle.internal.snapshot;
 
-import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import org.gradle.internal.file.FileType;
 import org.gradle.internal.hash.HashCode;
@@ -74,7 +73,6 @@ public void accept(NodeVisitor visitor) {
         }
     }
 
-    @VisibleForTesting
     public List<CompleteFileSystemLocationSnapshot> getChildren() {
         return children;
     }
@@ -87,13 +87,7 @@ public boolean postVisitDirectory(boolean includeEmpty) {
         if (sortingRequired) {
             children.sort(CompleteFileSystemLocationSnapshot.BY_NAME);
         }
-        Hasher hasher = Hashing.newHasher();
-        hasher.putHash(DIR_SIGNATURE);
-        for (CompleteFileSystemLocationSnapshot child : children) {
-            hasher.putString(child.getName());
-            hasher.putHash(child.getHash());
-        }
-        CompleteDirectorySnapshot directorySnapshot = new CompleteDirectorySnapshot(absolutePath, name, children, hasher.hash());
+        CompleteDirectorySnapshot directorySnapshot = directorySnapshot(absolutePath, name, children);
         List<CompleteFileSystemLocationSnapshot> siblings = levelHolder.peekLast();
         if (siblings != null) {
             siblings.add(directorySnapshot);
@@ -103,6 +97,19 @@ public boolean postVisitDirectory(boolean includeEmpty) {
         return true;
     }
 
+    /**
+     * Creates the snapshot of a directory from the snapshots of its children, which need to be sorted by name.
+     */
+    public static CompleteDirectorySnapshot directorySnapshot(String absolutePath, String name, List<CompleteFileSystemLocationSnapshot> sortedChildren) {
+        Hasher hasher = Hashing.newHasher();
+        hasher.putHash(DIR_SIGNATURE);
+        for (CompleteFileSystemLocationSnapshot child : sortedChildren) {
+            hasher.putString(child.getName());
+            hasher.putHash(child.getHash());
+        }
+        return new CompleteDirectorySnapshot(absolutePath, name, sortedChildren, hasher.hash());
+    }
+
     public boolean isRoot() {
         return relativePathSegmentsTracker.isRoot();
     }
@@ -44,6 +44,7 @@
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
 
@@ -53,16 +54,29 @@ public class DirectorySnapshotter {
     private final FileHasher hasher;
     private final Interner<String> stringInterner;
     private final DefaultExcludes defaultExcludes;
+    private final DirectorySnapshotterParallelism parallelism;
 
     public DirectorySnapshotter(FileHasher hasher, Interner<String> stringInterner, String... defaultExcludes) {
+        this(hasher, stringInterner, DirectorySnapshotterParallelism.SEQUENTIAL, defaultExcludes);
+    }
+
+    public DirectorySnapshotter(FileHasher hasher, Interner<String> stringInterner, DirectorySnapshotterParallelism parallelism, String... defaultExcludes) {
         this.hasher = hasher;
         this.stringInterner = stringInterner;
         this.defaultExcludes = new DefaultExcludes(defaultExcludes);
+        this.parallelism = parallelism;
     }
 
     public CompleteFileSystemLocationSnapshot snapshot(String absolutePath, @Nullable SnapshottingFilter.DirectoryWalkerPredicate predicate, final AtomicBoolean hasBeenFiltered) {
         try {
             Path rootPath = Paths.get(absolutePath);
+            // Filters can wrap user code like Spec closures, which doesn't need to be thread-safe,
+            // so filtered trees are always walked on the calling thread.
+            ForkJoinPool forkJoinPool = predicate == null ? parallelism.getForkJoinPool() : null;
+            if (forkJoinPool != null && Files.isDirectory(rootPath)) {
+                return new ForkJoinDirectorySnapshotter(forkJoinPool, hasher, stringInterner, defaultExcludes)
+                    .snapshot(rootPath);
+            }
             PathVisitor visitor = new PathVisitor(predicate, hasBeenFiltered, hasher, stringInterner, defaultExcludes);
             Files.walkFileTree(rootPath, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, visitor);
             return visitor.getResult();
@@ -144,6 +158,39 @@ public boolean test(String element) {
         }
     }
 
+    /**
+     * Returns whether we want to visit the given path during our walk, or ignore it completely,
+     * based on the directory/file excludes or the provided filtering predicate.
+     * Excludes won't mark this walk as `filtered`, only if the `predicate` rejects any entry.
+     **/
+    static boolean shouldVisit(
+        DefaultExcludes defaultExcludes,
+        @Nullable SnapshottingFilter.DirectoryWalkerPredicate predicate,
+        AtomicBoolean hasBeenFiltered,
+        Path path,
+        String internedName,
+        boolean isDirectory,
+        @Nullable BasicFileAttributes attrs,
+        Iterable<String> relativePath
+    ) {
+        if (isDirectory) {
+            if (defaultExcludes.excludeDir(internedName)) {
+                return false;
+            }
+        } else if (defaultExcludes.excludeFile(internedName)) {
+            return false;
+        }
+
+        if (predicate == null) {
+            return true;
+        }
+        boolean allowed = predicate.test(path, internedName, isDirectory, attrs, relativePath);
+        if (!allowed) {
+            hasBeenFiltered.set(true);
+        }
+        return allowed;
+    }
+
     private static class PathVisitor implements java.nio.file.FileVisitor<Path> {
         private final MerkleDirectorySnapshotBuilder builder;
         private final SnapshottingFilter.DirectoryWalkerPredicate predicate;
@@ -246,28 +293,8 @@ private String intern(String string) {
             return stringInterner.intern(string);
         }
 
-        /**
-         * Returns whether we want to visit the given path during our walk, or ignore it completely,
-         * based on the directory/file excludes or the provided filtering predicate.
-         * Excludes won't mark this walk as `filtered`, only if the `predicate` rejects any entry.
-         **/
         private boolean shouldVisit(Path path, String internedName, boolean isDirectory, @Nullable BasicFileAttributes attrs, Iterable<String> relativePath) {
-            if (isDirectory) {
-                if (defaultExcludes.excludeDir(internedName)) {
-                    return false;
-                }
-            } else if (defaultExcludes.excludeFile(internedName)) {
-                return false;
-            }
-
-            if (predicate == null) {
-                return true;
-            }
-            boolean allowed = predicate.test(path, internedName, isDirectory, attrs, relativePath);
-            if (!allowed) {
-                hasBeenFiltered.set(true);
-            }
-            return allowed;
+            return DirectorySnapshotter.shouldVisit(defaultExcludes, predicate, hasBeenFiltered, path, internedName, isDirectory, attrs, relativePath);
         }
 
         public CompleteFileSystemLocationSnapshot getResult() {
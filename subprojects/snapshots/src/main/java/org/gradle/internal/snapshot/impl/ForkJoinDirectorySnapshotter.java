@@ -0,0 +1,266 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.snapshot.impl;
+
+import com.google.common.collect.Interner;
+import org.gradle.internal.hash.FileHasher;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.snapshot.CompleteFileSystemLocationSnapshot;
+import org.gradle.internal.snapshot.FileMetadata;
+import org.gradle.internal.snapshot.MerkleDirectorySnapshotBuilder;
+import org.gradle.internal.snapshot.MissingFileSnapshot;
+import org.gradle.internal.snapshot.RegularFileSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Snapshots a directory tree by walking sub-directories and hashing files in a {@link ForkJoinPool}.
+ *
+ * Produces the same snapshot as the sequential walk in {@link DirectorySnapshotter}:
+ * children are sorted by name before the Merkle hash of a directory is calculated,
+ * and symbolic links are followed while skipping file system loops.
+ *
+ * Only unfiltered trees are snapshotted this way, as a {@link org.gradle.internal.snapshot.SnapshottingFilter}
+ * may wrap user code which is not safe to call from multiple threads.
+ */
+class ForkJoinDirectorySnapshotter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ForkJoinDirectorySnapshotter.class);
+
+    /**
+     * Files in a single directory are hashed in batches of this size, so big flat directories are spread across workers.
+     */
+    private static final int FILES_PER_HASHING_TASK = 32;
+
+    private final ForkJoinPool forkJoinPool;
+    private final FileHasher hasher;
+    private final Interner<String> stringInterner;
+    private final DirectorySnapshotter.DefaultExcludes defaultExcludes;
+
+    ForkJoinDirectorySnapshotter(
+        ForkJoinPool forkJoinPool,
+        FileHasher hasher,
+        Interner<String> stringInterner,
+        DirectorySnapshotter.DefaultExcludes defaultExcludes
+    ) {
+        this.forkJoinPool = forkJoinPool;
+        this.hasher = hasher;
+        this.stringInterner = stringInterner;
+        this.defaultExcludes = defaultExcludes;
+    }
+
+    public CompleteFileSystemLocationSnapshot snapshot(Path rootDirectory) {
+        String rootName = Optional.ofNullable(rootDirectory.getFileName())
+            .map(Object::toString)
+            .orElse("");
+        Object fileKey = readAttributes(rootDirectory)
+            .map(BasicFileAttributes::fileKey)
+            .orElse(null);
+        return forkJoinPool.invoke(new DirectorySnapshotTask(rootDirectory, intern(rootName), new Ancestor(rootDirectory, fileKey, null)));
+    }
+
+    private boolean shouldVisit(String internedName, boolean isDirectory) {
+        return isDirectory
+            ? !defaultExcludes.excludeDir(internedName)
+            : !defaultExcludes.excludeFile(internedName);
+    }
+
+    private CompleteFileSystemLocationSnapshot snapshotFile(Path file, String internedName, BasicFileAttributes attrs) {
+        String internedAbsolutePath = intern(file.toString());
+        if (attrs.isRegularFile()) {
+            try {
+                HashCode hash = hasher.hash(file.toFile(), attrs.size(), attrs.lastModifiedTime().toMillis());
+                return new RegularFileSnapshot(internedAbsolutePath, internedName, hash, FileMetadata.from(attrs));
+            } catch (UncheckedIOException e) {
+                LOGGER.info("Could not read file path '{}'.", file, e);
+            }
+        }
+        return new MissingFileSnapshot(internedAbsolutePath, internedName);
+    }
+
+    /**
+     * Reads the attributes following symbolic links, falling back to the attributes of the link itself for broken links.
+     */
+    private static Optional<BasicFileAttributes> readAttributes(Path path) {
+        try {
+            return Optional.of(Files.readAttributes(path, BasicFileAttributes.class));
+        } catch (IOException e) {
+            try {
+                return Optional.of(Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+            } catch (IOException ignored) {
+                return Optional.empty();
+            }
+        }
+    }
+
+    private String intern(String string) {
+        return stringInterner.intern(string);
+    }
+
+    /**
+     * The chain of directories from the root to the current directory, used to detect file system loops.
+     */
+    private static class Ancestor {
+        private final Path path;
+        private final Object fileKey;
+        private final Ancestor parent;
+
+        public Ancestor(Path path, @Nullable Object fileKey, @Nullable Ancestor parent) {
+            this.path = path;
+            this.fileKey = fileKey;
+            this.parent = parent;
+        }
+
+        public boolean wouldLoop(Path directory, @Nullable Object directoryFileKey) {
+            for (Ancestor ancestor = this; ancestor != null; ancestor = ancestor.parent) {
+                if (directoryFileKey != null && ancestor.fileKey != null) {
+                    if (directoryFileKey.equals(ancestor.fileKey)) {
+                        return true;
+                    }
+                } else {
+                    try {
+                        if (Files.isSameFile(directory, ancestor.path)) {
+                            return true;
+                        }
+                    } catch (IOException | SecurityException ignored) {
+                        // Not the same file as far as we can tell
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    private class DirectorySnapshotTask extends RecursiveTask<CompleteFileSystemLocationSnapshot> {
+        private final Path directory;
+        private final String internedName;
+        private final Ancestor ancestors;
+
+        public DirectorySnapshotTask(Path directory, String internedName, Ancestor ancestors) {
+            this.directory = directory;
+            this.internedName = internedName;
+            this.ancestors = ancestors;
+        }
+
+        @Override
+        protected CompleteFileSystemLocationSnapshot compute() {
+            List<Path> entries = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path entry : stream) {
+                    entries.add(entry);
+                }
+            } catch (DirectoryIteratorException e) {
+                throw new UncheckedIOException(String.format("Could not read directory path '%s'.", directory), e.getCause());
+            } catch (IOException e) {
+                // Unlistable directories are treated like unreadable files
+                LOGGER.info("Could not read file path '{}'.", directory);
+                return new MissingFileSnapshot(intern(directory.toString()), internedName);
+            }
+
+            List<CompleteFileSystemLocationSnapshot> children = new ArrayList<>(entries.size());
+            List<DirectorySnapshotTask> directoryTasks = new ArrayList<>();
+            List<FileEntry> files = new ArrayList<>();
+            for (Path entry : entries) {
+                String internedEntryName = intern(entry.getFileName().toString());
+                Optional<BasicFileAttributes> attributes = readAttributes(entry);
+                if (!attributes.isPresent()) {
+                    if (shouldVisit(internedEntryName, Files.isDirectory(entry))) {
+                        LOGGER.info("Could not read file path '{}'.", entry);
+                        children.add(new MissingFileSnapshot(intern(entry.toString()), internedEntryName));
+                    }
+                    continue;
+                }
+                BasicFileAttributes attrs = attributes.get();
+                if (attrs.isDirectory()) {
+                    // File system loops are ignored, so we include each file only once
+                    if (ancestors.wouldLoop(entry, attrs.fileKey())) {
+                        continue;
+                    }
+                    if (shouldVisit(internedEntryName, true)) {
+                        directoryTasks.add(new DirectorySnapshotTask(entry, internedEntryName, new Ancestor(entry, attrs.fileKey(), ancestors)));
+                    }
+                } else if (shouldVisit(internedEntryName, false)) {
+                    files.add(new FileEntry(entry, internedEntryName, attrs));
+                }
+            }
+
+            List<FileHashingTask> hashingTasks = new ArrayList<>();
+            for (int start = 0; start < files.size(); start += FILES_PER_HASHING_TASK) {
+                hashingTasks.add(new FileHashingTask(files.subList(start, Math.min(start + FILES_PER_HASHING_TASK, files.size()))));
+            }
+            List<ForkJoinTask<?>> subTasks = new ArrayList<>(directoryTasks.size() + hashingTasks.size());
+            subTasks.addAll(directoryTasks);
+            subTasks.addAll(hashingTasks);
+            ForkJoinTask.invokeAll(subTasks);
+            for (DirectorySnapshotTask directoryTask : directoryTasks) {
+                children.add(directoryTask.join());
+            }
+            for (FileHashingTask hashingTask : hashingTasks) {
+                hashingTask.join();
+                children.addAll(hashingTask.snapshots);
+            }
+
+            children.sort(CompleteFileSystemLocationSnapshot.BY_NAME);
+            return MerkleDirectorySnapshotBuilder.directorySnapshot(intern(directory.toString()), internedName, children);
+        }
+    }
+
+    private class FileHashingTask extends RecursiveAction {
+        private final List<FileEntry> files;
+        private final List<CompleteFileSystemLocationSnapshot> snapshots;
+
+        public FileHashingTask(List<FileEntry> files) {
+            this.files = files;
+            this.snapshots = new ArrayList<>(files.size());
+        }
+
+        @Override
+        protected void compute() {
+            for (FileEntry file : files) {
+                snapshots.add(snapshotFile(file.path, file.internedName, file.attrs));
+            }
+        }
+    }
+
+    private static class FileEntry {
+        private final Path path;
+        private final String internedName;
+        private final BasicFileAttributes attrs;
+
+        public FileEntry(Path path, String internedName, BasicFileAttributes attrs) {
+            this.path = path;
+            this.internedName = internedName;
+            this.attrs = attrs;
+        }
+    }
+}
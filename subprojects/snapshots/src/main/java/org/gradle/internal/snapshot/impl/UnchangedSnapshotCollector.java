@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.snapshot.impl;
+
+import org.gradle.internal.file.FileMetadataSnapshot;
+import org.gradle.internal.file.FileType;
+import org.gradle.internal.file.Stat;
+import org.gradle.internal.snapshot.CompleteDirectorySnapshot;
+import org.gradle.internal.snapshot.CompleteFileSystemLocationSnapshot;
+import org.gradle.internal.snapshot.FileMetadata;
+import org.gradle.internal.snapshot.RegularFileSnapshot;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Finds the parts of a previously captured snapshot which still match the file system, without hashing any file contents.
+ *
+ * Regular files are checked by comparing their length and modification time, directories by comparing their entries.
+ * When a directory has changed, its unchanged children are still reported individually.
+ */
+public class UnchangedSnapshotCollector {
+    private final Stat stat;
+    private final DirectorySnapshotter.DefaultExcludes defaultExcludes;
+
+    public UnchangedSnapshotCollector(Stat stat, String... defaultExcludes) {
+        this.stat = stat;
+        this.defaultExcludes = new DirectorySnapshotter.DefaultExcludes(defaultExcludes);
+    }
+
+    /**
+     * Reports the top-most snapshots within the given snapshot which are still up-to-date.
+     */
+    public void collectUnchanged(CompleteFileSystemLocationSnapshot snapshot, Consumer<CompleteFileSystemLocationSnapshot> unchangedSnapshots) {
+        if (snapshot.getType() == FileType.Missing) {
+            // A missing file at the root has been captured by a stat, so a stat is enough to check it
+            if (stat(snapshot).getType() == FileType.Missing) {
+                unchangedSnapshots.accept(snapshot);
+            }
+            return;
+        }
+        if (isUnchanged(snapshot, unchangedSnapshots)) {
+            unchangedSnapshots.accept(snapshot);
+        }
+    }
+
+    private boolean isUnchanged(CompleteFileSystemLocationSnapshot snapshot, Consumer<CompleteFileSystemLocationSnapshot> unchangedSnapshots) {
+        switch (snapshot.getType()) {
+            case RegularFile:
+                FileMetadataSnapshot fileMetadata = stat(snapshot);
+                return fileMetadata.getType() == FileType.RegularFile
+                    && FileMetadata.from(fileMetadata).equals(((RegularFileSnapshot) snapshot).getMetadata());
+            case Directory:
+                return isDirectoryUnchanged((CompleteDirectorySnapshot) snapshot, unchangedSnapshots);
+            case Missing:
+                // Missing files within a directory could not be read when snapshotting, we can't tell if they changed
+                return false;
+            default:
+                throw new AssertionError("Unknown file type: " + snapshot.getType());
+        }
+    }
+
+    private boolean isDirectoryUnchanged(CompleteDirectorySnapshot directory, Consumer<CompleteFileSystemLocationSnapshot> unchangedSnapshots) {
+        if (stat(directory).getType() != FileType.Directory) {
+            return false;
+        }
+        List<CompleteFileSystemLocationSnapshot> children = directory.getChildren();
+        Set<String> childNames = new HashSet<>();
+        for (CompleteFileSystemLocationSnapshot child : children) {
+            childNames.add(child.getName());
+        }
+        boolean unchanged = hasSameEntries(new File(directory.getAbsolutePath()), childNames);
+
+        List<CompleteFileSystemLocationSnapshot> unchangedChildren = new ArrayList<>(children.size());
+        for (CompleteFileSystemLocationSnapshot child : children) {
+            if (isUnchanged(child, unchangedSnapshots)) {
+                unchangedChildren.add(child);
+            } else {
+                unchanged = false;
+            }
+        }
+        if (!unchanged) {
+            unchangedChildren.forEach(unchangedSnapshots);
+        }
+        return unchanged;
+    }
+
+    private boolean hasSameEntries(File directory, Set<String> expectedNames) {
+        String[] entries = directory.list();
+        if (entries == null) {
+            return false;
+        }
+        int found = 0;
+        for (String entry : entries) {
+            if (expectedNames.contains(entry)) {
+                found++;
+            } else if (!isExcluded(new File(directory, entry))) {
+                return false;
+            }
+        }
+        return found == expectedNames.size();
+    }
+
+    private boolean isExcluded(File entry) {
+        String name = entry.getName();
+        return entry.isDirectory()
+            ? defaultExcludes.excludeDir(name)
+            : defaultExcludes.excludeFile(name);
+    }
+
+    private FileMetadataSnapshot stat(CompleteFileSystemLocationSnapshot snapshot) {
+        return stat.stat(new File(snapshot.getAbsolutePath()));
+    }
+}
@@ -16,6 +16,12 @@
 
 package org.gradle.internal.vfs;
 
+import org.gradle.internal.snapshot.CompleteFileSystemLocationSnapshot;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.function.Consumer;
+
 /**
  * A {@link VirtualFileSystem} that is capable of watching the file system for changes
  * while it doesn't have full control over its own contents.
@@ -24,12 +30,23 @@ public interface WatchingVirtualFileSystem extends VirtualFileSystem {
 
     /**
      * Start watching the known areas of the file system for changes.
+     *
+     * Recursive watches are never registered above the given build root directories.
+     * Locations that could only be watched that way are dropped instead.
      */
-    void startWatching();
+    void startWatching(Collection<File> buildRootDirectories);
 
     /**
      * Stop watching the known areas of the file system, and invalidate
-     * the parts that have been changed since calling {@link #startWatching()}.
+     * the parts that have been changed since calling {@link #startWatching(Collection)}.
      */
     void stopWatching();
+
+    /**
+     * Visits the top-most complete snapshots currently known to the virtual file system.
+     *
+     * This can be used to persist the state of the virtual file system, which can then be
+     * restored via {@link #updateWithKnownSnapshot(CompleteFileSystemLocationSnapshot)}.
+     */
+    void visitSnapshotRoots(Consumer<CompleteFileSystemLocationSnapshot> visitor);
 }
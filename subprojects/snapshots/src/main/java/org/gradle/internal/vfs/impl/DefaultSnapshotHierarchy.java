@@ -23,7 +23,9 @@
 import org.gradle.internal.snapshot.MetadataSnapshot;
 import org.gradle.internal.snapshot.VfsRelativePath;
 
+import java.io.File;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.gradle.internal.snapshot.SnapshotUtil.getSnapshotFromChild;
 import static org.gradle.internal.snapshot.SnapshotUtil.invalidateSingleChild;
@@ -94,6 +96,27 @@ public void visitSnapshots(SnapshotVisitor snapshotVisitor) {
         }));
     }
 
+    @Override
+    public void visitSnapshotRoots(SnapshotVisitor snapshotVisitor) {
+        // Nodes are visited depth-first, so all descendants of a complete snapshot are visited right after it
+        AtomicReference<String> currentRoot = new AtomicReference<>();
+        visitSnapshots(snapshot -> {
+            String absolutePath = snapshot.getAbsolutePath();
+            String root = currentRoot.get();
+            if (root != null && isDescendant(absolutePath, root)) {
+                return;
+            }
+            currentRoot.set(absolutePath);
+            snapshotVisitor.visitSnapshot(snapshot);
+        });
+    }
+
+    private static boolean isDescendant(String path, String ancestor) {
+        return path.length() > ancestor.length()
+            && path.startsWith(ancestor)
+            && (ancestor.endsWith(File.separator) || path.charAt(ancestor.length()) == File.separatorChar);
+    }
+
     private enum EmptySnapshotHierarchy implements SnapshotHierarchy {
         CASE_SENSITIVE(CaseSensitivity.CASE_SENSITIVE),
         CASE_INSENSITIVE(CaseSensitivity.CASE_INSENSITIVE);
@@ -126,5 +149,8 @@ public SnapshotHierarchy empty() {
 
         @Override
         public void visitSnapshots(SnapshotVisitor snapshotVisitor) {}
+
+        @Override
+        public void visitSnapshotRoots(SnapshotVisitor snapshotVisitor) {}
     }
 }
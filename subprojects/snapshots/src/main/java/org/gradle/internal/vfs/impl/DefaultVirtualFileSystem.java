@@ -31,6 +31,7 @@
 import org.gradle.internal.snapshot.RegularFileSnapshot;
 import org.gradle.internal.snapshot.SnapshottingFilter;
 import org.gradle.internal.snapshot.impl.DirectorySnapshotter;
+import org.gradle.internal.snapshot.impl.DirectorySnapshotterParallelism;
 import org.gradle.internal.snapshot.impl.FileSystemSnapshotFilter;
 
 import java.io.File;
@@ -50,8 +51,12 @@ public class DefaultVirtualFileSystem extends AbstractVirtualFileSystem {
     private final StripedProducerGuard<String> producingSnapshots = new StripedProducerGuard<>();
 
     public DefaultVirtualFileSystem(FileHasher hasher, Interner<String> stringInterner, Stat stat, CaseSensitivity caseSensitivity, String... defaultExcludes) {
+        this(hasher, stringInterner, stat, caseSensitivity, DirectorySnapshotterParallelism.SEQUENTIAL, defaultExcludes);
+    }
+
+    public DefaultVirtualFileSystem(FileHasher hasher, Interner<String> stringInterner, Stat stat, CaseSensitivity caseSensitivity, DirectorySnapshotterParallelism parallelism, String... defaultExcludes) {
         this.stat = stat;
-        this.directorySnapshotter = new DirectorySnapshotter(hasher, stringInterner, defaultExcludes);
+        this.directorySnapshotter = new DirectorySnapshotter(hasher, stringInterner, parallelism, defaultExcludes);
         this.hasher = hasher;
         this.root = new AtomicReference<>(DefaultSnapshotHierarchy.empty(caseSensitivity));
     }
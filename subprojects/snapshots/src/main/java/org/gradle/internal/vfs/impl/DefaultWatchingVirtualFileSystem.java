@@ -17,21 +17,26 @@
 package org.gradle.internal.vfs.impl;
 
 import org.gradle.internal.file.FileType;
+import org.gradle.internal.snapshot.CompleteFileSystemLocationSnapshot;
 import org.gradle.internal.vfs.WatchingVirtualFileSystem;
 import org.gradle.internal.vfs.watch.FileWatcherRegistry;
 import org.gradle.internal.vfs.watch.FileWatcherRegistryFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
-import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 
 public class DefaultWatchingVirtualFileSystem extends AbstractDelegatingVirtualFileSystem implements WatchingVirtualFileSystem, Closeable {
@@ -53,13 +58,17 @@ public DefaultWatchingVirtualFileSystem(
     }
 
     @Override
-    public void startWatching() {
+    public void startWatching(Collection<File> buildRootDirectories) {
         if (watchRegistry != null) {
             throw new IllegalStateException("Watch service already started");
         }
         try {
-            watchRegistry = watcherRegistryFactory.createRegistry();
-            Set<Path> visited = new HashSet<>();
+            boolean watchingRecursively = watcherRegistryFactory.isWatchingRecursively();
+            Set<Path> buildRoots = buildRootDirectories.stream()
+                .map(File::toPath)
+                .collect(Collectors.toSet());
+            Set<Path> directoriesToWatch = new HashSet<>();
+            Set<String> unwatchableLocations = new HashSet<>();
             getRoot().visitSnapshots(snapshot -> {
                 Path path = Paths.get(snapshot.getAbsolutePath());
 
@@ -68,34 +77,56 @@ public void startWatching() {
                     return;
                 }
 
-                try {
-                    // For existing files and directories we watch the parent directory,
-                    // so we learn if the entry itself disappears or gets modified.
-                    // In case of a missing file we need to find the closest existing
-                    // ancestor to watch so we can learn if the missing file respawns.
-                    Path ancestor = path;
-                    while (true) {
-                        ancestor = ancestor.getParent();
-                        if (ancestor == null) {
-                            break;
-                        }
-                        if (Files.exists(ancestor)) {
-                            watch(ancestor, visited);
-                            break;
-                        }
+                // For existing files and directories we watch the parent directory,
+                // so we learn if the entry itself disappears or gets modified.
+                // In case of a missing file we need to find the closest existing
+                // ancestor to watch so we can learn if the missing file respawns.
+                Set<Path> directoriesForSnapshot = new HashSet<>();
+                Path ancestor = path;
+                while (true) {
+                    ancestor = ancestor.getParent();
+                    if (ancestor == null) {
+                        break;
                     }
+                    if (Files.exists(ancestor)) {
+                        directoriesForSnapshot.add(ancestor);
+                        break;
+                    }
+                }
 
-                    // For directory entries we watch the directory itself,
-                    // so we learn about new children spawning. If the directory
-                    // has children, it would be watched through them already.
-                    // This is here to make sure we also watch empty directories.
-                    if (snapshot.getType() == FileType.Directory) {
-                        watch(path, visited);
+                // For directory entries we watch the directory itself,
+                // so we learn about new children spawning. If the directory
+                // has children, it would be watched through them already.
+                // This is here to make sure we also watch empty directories.
+                if (snapshot.getType() == FileType.Directory) {
+                    directoriesForSnapshot.add(path);
+                }
+
+                // A recursive watch on an ancestor of a build root would cover whole parts of
+                // the file system outside of the build, up to the drive root for missing files.
+                for (Path directory : directoriesForSnapshot) {
+                    Path watchRoot = watchingRecursively
+                        ? clampToBuildRoots(directory, path, buildRoots)
+                        : directory;
+                    if (watchRoot == null) {
+                        unwatchableLocations.add(snapshot.getAbsolutePath());
+                        return;
                     }
-                } catch (IOException ex) {
-                    throw new UncheckedIOException(ex);
+                    directoriesToWatch.add(watchRoot);
                 }
             });
+            if (!unwatchableLocations.isEmpty()) {
+                LOGGER.info("Dropping {} locations outside of the build root directories", unwatchableLocations.size());
+                update(unwatchableLocations, () -> {
+                });
+            }
+            Set<Path> watchRoots = watchingRecursively
+                ? topMostDirectories(directoriesToWatch)
+                : directoriesToWatch;
+            for (Path watchRoot : watchRoots) {
+                LOGGER.warn("Start watching {}", watchRoot);
+            }
+            watchRegistry = watcherRegistryFactory.startWatching(watchRoots);
         } catch (Exception ex) {
             LOGGER.error("Couldn't create watch service, not tracking changes between builds", ex);
             invalidateAll();
@@ -103,12 +134,43 @@ public void startWatching() {
         }
     }
 
-    private void watch(Path directory, Set<Path> visited) throws IOException {
-        if (!visited.add(directory)) {
-            return;
+    /**
+     * Returns the directory to watch recursively in place of the given one, so that no build root is watched from above.
+     *
+     * Returns {@code null} when the directory is above a build root, but the location it is watched for is outside of all build roots.
+     */
+    @Nullable
+    static Path clampToBuildRoots(Path directory, Path location, Set<Path> buildRoots) {
+        boolean aboveBuildRoot = false;
+        for (Path buildRoot : buildRoots) {
+            if (!buildRoot.equals(directory) && buildRoot.startsWith(directory)) {
+                if (location.startsWith(buildRoot)) {
+                    return buildRoot;
+                }
+                aboveBuildRoot = true;
+            }
         }
-        LOGGER.warn("Start watching {}", directory);
-        watchRegistry.registerWatchPoint(directory);
+        return aboveBuildRoot ? null : directory;
+    }
+
+    /**
+     * Drops every directory that has an ancestor in the given set, as the ancestor covers it already.
+     */
+    static Set<Path> topMostDirectories(Set<Path> directories) {
+        Set<Path> roots = new HashSet<>();
+        for (Path directory : directories) {
+            boolean covered = false;
+            for (Path ancestor = directory.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+                if (directories.contains(ancestor)) {
+                    covered = true;
+                    break;
+                }
+            }
+            if (!covered) {
+                roots.add(directory);
+            }
+        }
+        return roots;
     }
 
     @Override
@@ -125,8 +187,9 @@ public void handleChange(FileWatcherRegistry.Type type, Path path) {
                 }
 
                 @Override
-                public void handleOverflow() {
-                    invalidateAll();
+                public void handleOverflow(Path affectedRoot) {
+                    update(Collections.singleton(affectedRoot.toString()), () -> {
+                    });
                 }
             });
         } catch (IOException ex) {
@@ -137,6 +200,11 @@ public void handleOverflow() {
         }
     }
 
+    @Override
+    public void visitSnapshotRoots(Consumer<CompleteFileSystemLocationSnapshot> visitor) {
+        getRoot().visitSnapshotRoots(visitor::accept);
+    }
+
     @Override
     public void close() {
         if (watchRegistry != null) {
@@ -63,6 +63,11 @@ default Optional<CompleteFileSystemLocationSnapshot> getSnapshot(String absolute
 
     void visitSnapshots(SnapshotVisitor snapshotVisitor);
 
+    /**
+     * Visits the top-most complete snapshots, i.e. the ones which are not contained in another complete snapshot.
+     */
+    void visitSnapshotRoots(SnapshotVisitor snapshotVisitor);
+
     interface SnapshotVisitor {
         void visitSnapshot(CompleteFileSystemLocationSnapshot snapshot);
     }
@@ -25,7 +25,10 @@ public interface FileWatcherRegistry extends Closeable {
     interface ChangeHandler {
         void handleChange(Type type, Path path);
 
-        void handleOverflow();
+        /**
+         * Changes have been lost for the given location and everything below it.
+         */
+        void handleOverflow(Path affectedRoot);
     }
 
     enum Type {
@@ -34,11 +37,6 @@ enum Type {
         REMOVED
     }
 
-    /**
-     * Registers the given location to watch for changes.
-     */
-    void registerWatchPoint(Path path) throws IOException;
-
     /**
      * Stop watching and handle the accumulated changes.
      */
@@ -17,7 +17,19 @@
 package org.gradle.internal.vfs.watch;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Set;
 
 public interface FileWatcherRegistryFactory {
-    FileWatcherRegistry createRegistry() throws IOException;
+    /**
+     * Starts watching the given directories for changes.
+     */
+    FileWatcherRegistry startWatching(Set<Path> watchRoots) throws IOException;
+
+    /**
+     * Whether watching a directory also reports changes to all of its descendants.
+     *
+     * When this is {@code true}, only the top-most directories need to be passed to {@link #startWatching(Set)}.
+     */
+    boolean isWatchingRecursively();
 }
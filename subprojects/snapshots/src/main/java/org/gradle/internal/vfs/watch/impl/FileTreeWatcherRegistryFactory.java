@@ -0,0 +1,44 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.vfs.watch.impl;
+
+import com.sun.nio.file.ExtendedWatchEventModifier;
+import org.gradle.internal.vfs.watch.FileWatcherRegistry;
+import org.gradle.internal.vfs.watch.FileWatcherRegistryFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * Watches whole file trees with a single native watch per root.
+ *
+ * This relies on {@link ExtendedWatchEventModifier#FILE_TREE}, which the JDK only supports
+ * on file systems with native recursive change notifications (e.g. {@code ReadDirectoryChangesW} on Windows).
+ * Overflows are reported per watched tree, so only the affected tree needs to be invalidated.
+ */
+public class FileTreeWatcherRegistryFactory implements FileWatcherRegistryFactory {
+    @Override
+    public FileWatcherRegistry startWatching(Set<Path> watchRoots) throws IOException {
+        return JdkFileWatcherRegistry.start(watchRoots, ExtendedWatchEventModifier.FILE_TREE);
+    }
+
+    @Override
+    public boolean isWatchingRecursively() {
+        return true;
+    }
+}
@@ -16,16 +16,17 @@
 
 package org.gradle.internal.vfs.watch.impl;
 
-import com.sun.nio.file.SensitivityWatchEventModifier;
 import org.gradle.internal.vfs.watch.FileWatcherRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.file.FileSystems;
 import java.nio.file.Path;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
+import java.util.Set;
 
 import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
@@ -36,23 +37,39 @@ public class JdkFileWatcherRegistry implements FileWatcherRegistry {
     private static final Logger LOGGER = LoggerFactory.getLogger(JdkFileWatcherRegistry.class);
 
     private final WatchService watchService;
+    private final WatchEvent.Modifier[] modifiers;
 
-    public JdkFileWatcherRegistry(WatchService watchService) {
+    public JdkFileWatcherRegistry(WatchService watchService, WatchEvent.Modifier... modifiers) {
         this.watchService = watchService;
+        this.modifiers = modifiers;
     }
 
-    @Override
-    public void registerWatchPoint(Path path) throws IOException {
+    /**
+     * Creates a registry watching the given directories, registering each of them with the given modifiers.
+     */
+    public static JdkFileWatcherRegistry start(Set<Path> watchRoots, WatchEvent.Modifier... modifiers) throws IOException {
+        JdkFileWatcherRegistry registry = new JdkFileWatcherRegistry(FileSystems.getDefault().newWatchService(), modifiers);
+        try {
+            for (Path watchRoot : watchRoots) {
+                registry.registerWatchPoint(watchRoot);
+            }
+        } catch (IOException | RuntimeException ex) {
+            registry.close();
+            throw ex;
+        }
+        return registry;
+    }
+
+    private void registerWatchPoint(Path path) throws IOException {
         path.register(watchService,
             new WatchEvent.Kind[]{ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY, OVERFLOW},
-            SensitivityWatchEventModifier.HIGH);
+            modifiers);
     }
 
     @Override
     public void stopWatching(ChangeHandler handler) throws IOException {
         try {
-            boolean overflow = false;
-            while (!overflow) {
+            while (true) {
                 WatchKey watchKey = watchService.poll();
                 if (watchKey == null) {
                     break;
@@ -63,9 +80,8 @@ public void stopWatching(ChangeHandler handler) throws IOException {
                 for (WatchEvent<?> event : watchKey.pollEvents()) {
                     WatchEvent.Kind<?> kind = event.kind();
                     if (kind == OVERFLOW) {
-                        LOGGER.info("Too many modifications for path {} since last build, dropping all VFS state", watchRoot);
-                        handler.handleOverflow();
-                        overflow = true;
+                        LOGGER.info("Too many modifications for path {} since last build, dropping VFS state for it", watchRoot);
+                        handler.handleOverflow(watchRoot);
                         break;
                     }
                     Path changedPath = watchRoot.resolve((Path) event.context());
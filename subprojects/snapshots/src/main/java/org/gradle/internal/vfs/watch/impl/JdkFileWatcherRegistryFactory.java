@@ -16,15 +16,22 @@
 
 package org.gradle.internal.vfs.watch.impl;
 
+import com.sun.nio.file.SensitivityWatchEventModifier;
 import org.gradle.internal.vfs.watch.FileWatcherRegistry;
 import org.gradle.internal.vfs.watch.FileWatcherRegistryFactory;
 
 import java.io.IOException;
-import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.Set;
 
 public class JdkFileWatcherRegistryFactory implements FileWatcherRegistryFactory {
     @Override
-    public FileWatcherRegistry createRegistry() throws IOException {
-        return new JdkFileWatcherRegistry(FileSystems.getDefault().newWatchService());
+    public FileWatcherRegistry startWatching(Set<Path> watchRoots) throws IOException {
+        return JdkFileWatcherRegistry.start(watchRoots, SensitivityWatchEventModifier.HIGH);
+    }
+
+    @Override
+    public boolean isWatchingRecursively() {
+        return false;
     }
 }
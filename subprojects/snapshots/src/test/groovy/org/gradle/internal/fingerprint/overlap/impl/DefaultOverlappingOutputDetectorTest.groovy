@@ -16,6 +16,7 @@
 
 package org.gradle.internal.fingerprint.overlap.impl
 
+import com.google.common.collect.ImmutableMultimap
 import com.google.common.collect.ImmutableSortedMap
 import org.gradle.internal.fingerprint.FileCollectionFingerprint
 import org.gradle.internal.fingerprint.impl.AbsolutePathFingerprintingStrategy
@@ -55,4 +56,23 @@ class DefaultOverlappingOutputDetectorTest extends Specification {
         overlaps.propertyName == "output"
         overlaps.overlappedFilePath == "/absolute/path"
     }
+
+    def "does not look at previous fingerprints when outputs did not change since the previous execution"() {
+        def outputFile = new RegularFileSnapshot("/absolute/path", "path", HashCode.fromInt(1234), new FileMetadata(0, 0))
+        def previousOutput = Mock(FileCollectionFingerprint)
+        def outputFilesAfterPreviousExecution = ImmutableSortedMap.<String, FileCollectionFingerprint>of(
+            "output", previousOutput
+        )
+        def outputFilesBeforeExecution = ImmutableSortedMap.<String, FileSystemSnapshot>of(
+            "output", outputFile
+        )
+
+        when:
+        def overlaps = detector.detect(outputFilesAfterPreviousExecution, outputFilesBeforeExecution)
+
+        then:
+        overlaps == null
+        1 * previousOutput.rootHashes >> ImmutableMultimap.of("/absolute/path", HashCode.fromInt(1234))
+        0 * previousOutput.fingerprints
+    }
 }
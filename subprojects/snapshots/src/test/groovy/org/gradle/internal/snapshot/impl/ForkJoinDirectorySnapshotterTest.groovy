@@ -0,0 +1,139 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.snapshot.impl
+
+import org.apache.tools.ant.DirectoryScanner
+import org.gradle.api.internal.cache.StringInterner
+import org.gradle.api.internal.file.TestFiles
+import org.gradle.api.tasks.util.PatternSet
+import org.gradle.internal.fingerprint.impl.PatternSetSnapshottingFilter
+import org.gradle.internal.hash.TestFileHasher
+import org.gradle.internal.snapshot.CompleteDirectorySnapshot
+import org.gradle.internal.snapshot.CompleteFileSystemLocationSnapshot
+import org.gradle.internal.snapshot.SnapshottingFilter
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.util.Requires
+import org.gradle.util.TestPrecondition
+import org.gradle.util.UsesNativeServices
+import org.junit.Rule
+import spock.lang.AutoCleanup
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.atomic.AtomicBoolean
+
+@UsesNativeServices
+class ForkJoinDirectorySnapshotterTest extends Specification {
+    @Rule
+    public final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+
+    @AutoCleanup("shutdown")
+    def forkJoinPool = new ForkJoinPool(4)
+
+    def fileHasher = new TestFileHasher()
+    def sequentialSnapshotter = new DirectorySnapshotter(fileHasher, new StringInterner(), DirectoryScanner.getDefaultExcludes())
+    def parallelSnapshotter = new DirectorySnapshotter(fileHasher, new StringInterner(), { forkJoinPool } as DirectorySnapshotterParallelism, DirectoryScanner.getDefaultExcludes())
+
+    def "produces the same snapshot as the sequential walk"() {
+        def root = createTree()
+
+        when:
+        def sequentialFiltered = new AtomicBoolean()
+        def parallelFiltered = new AtomicBoolean()
+        def sequential = sequentialSnapshotter.snapshot(root.absolutePath, null, sequentialFiltered)
+        def parallel = parallelSnapshotter.snapshot(root.absolutePath, null, parallelFiltered)
+
+        then:
+        parallel.hash == sequential.hash
+        flatten(parallel) == flatten(sequential)
+        !sequentialFiltered.get()
+        !parallelFiltered.get()
+    }
+
+    def "walks filtered trees on the calling thread"() {
+        def root = createTree()
+        def patterns = new PatternSet()
+        patterns.include("**/*.txt")
+        patterns.exclude("dir3/**")
+        def patternPredicate = new PatternSetSnapshottingFilter(patterns, TestFiles.fileSystem()).asDirectoryWalkerPredicate
+        def callingThreads = [] as Set
+        def predicate = { path, name, isDirectory, attrs, relativePath ->
+            callingThreads << Thread.currentThread()
+            patternPredicate.test(path, name, isDirectory, attrs, relativePath)
+        } as SnapshottingFilter.DirectoryWalkerPredicate
+
+        when:
+        def sequentialFiltered = new AtomicBoolean()
+        def parallelFiltered = new AtomicBoolean()
+        def sequential = sequentialSnapshotter.snapshot(root.absolutePath, predicate, sequentialFiltered)
+        def parallel = parallelSnapshotter.snapshot(root.absolutePath, predicate, parallelFiltered)
+
+        then:
+        parallel.hash == sequential.hash
+        flatten(parallel) == flatten(sequential)
+        sequentialFiltered.get()
+        parallelFiltered.get()
+        callingThreads == [Thread.currentThread()] as Set
+    }
+
+    @Requires(TestPrecondition.SYMLINKS)
+    def "skips file system loops like the sequential walk"() {
+        def root = createTree()
+        Files.createSymbolicLink(root.file("dir1/loop").toPath(), root.toPath())
+
+        when:
+        def sequential = sequentialSnapshotter.snapshot(root.absolutePath, null, new AtomicBoolean())
+        def parallel = parallelSnapshotter.snapshot(root.absolutePath, null, new AtomicBoolean())
+
+        then:
+        parallel.hash == sequential.hash
+        flatten(parallel) == flatten(sequential)
+    }
+
+    def "snapshots regular files on the calling thread"() {
+        def file = tmpDir.file("file.txt") << "content"
+
+        when:
+        def snapshot = parallelSnapshotter.snapshot(file.absolutePath, null, new AtomicBoolean())
+
+        then:
+        snapshot.absolutePath == file.absolutePath
+        snapshot.hash == sequentialSnapshotter.snapshot(file.absolutePath, null, new AtomicBoolean()).hash
+    }
+
+    private File createTree() {
+        def root = tmpDir.createDir("root")
+        (1..3).each { dir ->
+            (1..50).each { file ->
+                root.file("dir${dir}/sub${file % 5}/file${file}.txt") << "content ${dir} ${file}"
+                root.file("dir${dir}/file${file}.html") << "html ${dir} ${file}"
+            }
+        }
+        root.createDir("empty")
+        root.file(".gitignore") << "ignored"
+        return root
+    }
+
+    private static List<String> flatten(CompleteFileSystemLocationSnapshot snapshot) {
+        def result = ["${snapshot.absolutePath}:${snapshot.type}:${snapshot.hash}".toString()]
+        if (snapshot instanceof CompleteDirectorySnapshot) {
+            snapshot.children.each { result.addAll(flatten(it)) }
+        }
+        return result
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.snapshot.impl
+
+import org.apache.tools.ant.DirectoryScanner
+import org.gradle.api.internal.cache.StringInterner
+import org.gradle.api.internal.file.TestFiles
+import org.gradle.internal.hash.TestFileHasher
+import org.gradle.internal.snapshot.CompleteFileSystemLocationSnapshot
+import org.gradle.internal.snapshot.MissingFileSnapshot
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.util.UsesNativeServices
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.atomic.AtomicBoolean
+
+@UsesNativeServices
+class UnchangedSnapshotCollectorTest extends Specification {
+    @Rule
+    public final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+
+    def directorySnapshotter = new DirectorySnapshotter(new TestFileHasher(), new StringInterner(), DirectoryScanner.getDefaultExcludes())
+    def collector = new UnchangedSnapshotCollector(TestFiles.fileSystem(), DirectoryScanner.getDefaultExcludes())
+
+    def "reports unchanged directory as a whole"() {
+        def root = tmpDir.createDir("root")
+        root.file("a/b.txt").createFile()
+        root.file("c.txt").createFile()
+        def snapshot = snapshot(root)
+
+        expect:
+        collectUnchanged(snapshot) == [snapshot]
+    }
+
+    def "ignores default excluded entries added to a directory"() {
+        def root = tmpDir.createDir("root")
+        root.file("a.txt").createFile()
+        def snapshot = snapshot(root)
+
+        when:
+        root.file(".gitignore").createFile()
+        root.createDir(".git")
+
+        then:
+        collectUnchanged(snapshot) == [snapshot]
+    }
+
+    def "reports unchanged children when a file has been modified"() {
+        def root = tmpDir.createDir("root")
+        root.file("unchanged/b.txt").createFile()
+        def modified = root.file("modified.txt").createFile()
+        def snapshot = snapshot(root)
+
+        when:
+        modified << "changed"
+
+        then:
+        collectUnchanged(snapshot)*.absolutePath == [root.file("unchanged").absolutePath]
+    }
+
+    def "reports unchanged children when a file has been added"() {
+        def root = tmpDir.createDir("root")
+        root.file("a.txt").createFile()
+        def snapshot = snapshot(root)
+
+        when:
+        root.file("b.txt").createFile()
+
+        then:
+        collectUnchanged(snapshot)*.absolutePath == [root.file("a.txt").absolutePath]
+    }
+
+    def "reports nothing when a file has been removed"() {
+        def root = tmpDir.createDir("root")
+        def file = root.file("a.txt").createFile()
+        def snapshot = snapshot(root)
+
+        when:
+        file.delete()
+
+        then:
+        collectUnchanged(snapshot).empty
+    }
+
+    def "reports missing file which is still missing"() {
+        def missing = tmpDir.file("missing")
+        def snapshot = new MissingFileSnapshot(missing.absolutePath, missing.name)
+
+        expect:
+        collectUnchanged(snapshot) == [snapshot]
+
+        when:
+        missing.createFile()
+
+        then:
+        collectUnchanged(snapshot).empty
+    }
+
+    private CompleteFileSystemLocationSnapshot snapshot(File root) {
+        directorySnapshotter.snapshot(root.absolutePath, null, new AtomicBoolean())
+    }
+
+    private List<CompleteFileSystemLocationSnapshot> collectUnchanged(CompleteFileSystemLocationSnapshot snapshot) {
+        def unchanged = []
+        collector.collectUnchanged(snapshot, { unchanged << it })
+        return unchanged
+    }
+}
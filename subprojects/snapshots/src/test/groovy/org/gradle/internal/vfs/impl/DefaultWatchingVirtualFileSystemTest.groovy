@@ -0,0 +1,163 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.vfs.impl
+
+import org.gradle.internal.vfs.watch.FileWatcherRegistry
+import org.gradle.internal.vfs.watch.FileWatcherRegistryFactory
+import org.gradle.test.fixtures.file.TestFile
+
+import java.nio.file.Path
+import java.nio.file.Paths
+
+class DefaultWatchingVirtualFileSystemTest extends AbstractVirtualFileSystemTest {
+    def watcherRegistry = Mock(FileWatcherRegistry)
+    def watcherRegistryFactory = Mock(FileWatcherRegistryFactory)
+    def watchingVfs = new DefaultWatchingVirtualFileSystem(watcherRegistryFactory, vfs, { true })
+    TestFile buildRoot
+
+    def setup() {
+        buildRoot = temporaryFolder.createDir("build")
+        allowFileSystemAccess(true)
+    }
+
+    def "watches parent and directory itself without recursive watches"() {
+        def sourceFile = buildRoot.file("src/main/Main.java").createFile()
+        def testDir = buildRoot.file("src/test").createDir()
+
+        when:
+        readFromVfs(sourceFile)
+        readFromVfs(testDir)
+        watchingVfs.startWatching([buildRoot])
+
+        then:
+        1 * watcherRegistryFactory.isWatchingRecursively() >> false
+        1 * watcherRegistryFactory.startWatching(paths(sourceFile.parentFile, testDir.parentFile, testDir)) >> watcherRegistry
+    }
+
+    def "only watches top-most directories with recursive watches"() {
+        def sourceFile = buildRoot.file("src/main/Main.java").createFile()
+        def testDir = buildRoot.file("src/test").createDir()
+        def otherSourceFile = buildRoot.file("lib/src/Lib.java").createFile()
+
+        when:
+        readFromVfs(sourceFile)
+        readFromVfs(testDir)
+        readFromVfs(otherSourceFile)
+        watchingVfs.startWatching([buildRoot])
+
+        then:
+        1 * watcherRegistryFactory.isWatchingRecursively() >> true
+        1 * watcherRegistryFactory.startWatching(paths(testDir.parentFile, otherSourceFile.parentFile)) >> watcherRegistry
+    }
+
+    def "does not watch above the build root with recursive watches"() {
+        buildRoot.file("src/main/Main.java").createFile()
+
+        when:
+        readFromVfs(buildRoot)
+        watchingVfs.startWatching([buildRoot])
+
+        then:
+        1 * watcherRegistryFactory.isWatchingRecursively() >> true
+        1 * watcherRegistryFactory.startWatching(paths(buildRoot)) >> watcherRegistry
+        watchingVfs.root.getSnapshot(buildRoot.absolutePath).present
+    }
+
+    def "drops locations outside of the build root that could only be watched above it"() {
+        def sourceFile = buildRoot.file("src/main/Main.java").createFile()
+        def siblingFile = temporaryFolder.file("sibling.txt").createFile()
+        def missingSibling = temporaryFolder.file("missing/file.txt")
+        def libraryFile = temporaryFolder.file("libs/library.jar").createFile()
+
+        when:
+        readFromVfs(sourceFile)
+        readFromVfs(siblingFile)
+        readFromVfs(missingSibling)
+        readFromVfs(libraryFile)
+        watchingVfs.startWatching([buildRoot])
+
+        then:
+        1 * watcherRegistryFactory.isWatchingRecursively() >> true
+        1 * watcherRegistryFactory.startWatching(paths(sourceFile.parentFile, libraryFile.parentFile)) >> watcherRegistry
+        !watchingVfs.root.getSnapshot(siblingFile.absolutePath).present
+        !watchingVfs.root.getSnapshot(missingSibling.absolutePath).present
+        watchingVfs.root.getSnapshot(libraryFile.absolutePath).present
+        watchingVfs.root.getSnapshot(sourceFile.absolutePath).present
+    }
+
+    def "invalidates only the affected watch root on overflow"() {
+        def sourceFile = buildRoot.file("src/main/Main.java").createFile()
+        def otherSourceFile = buildRoot.file("lib/src/Lib.java").createFile()
+        watcherRegistryFactory.isWatchingRecursively() >> true
+        watcherRegistryFactory.startWatching(_) >> watcherRegistry
+
+        readFromVfs(sourceFile)
+        readFromVfs(otherSourceFile)
+        watchingVfs.startWatching([buildRoot])
+
+        when:
+        watchingVfs.stopWatching()
+
+        then:
+        1 * watcherRegistry.stopWatching(_) >> { FileWatcherRegistry.ChangeHandler handler ->
+            handler.handleOverflow(sourceFile.parentFile.toPath())
+        }
+        1 * watcherRegistry.close()
+        !watchingVfs.root.getSnapshot(sourceFile.absolutePath).present
+        watchingVfs.root.getSnapshot(otherSourceFile.absolutePath).present
+    }
+
+    def "top-most directories drop directories with an ancestor in the set"() {
+        expect:
+        DefaultWatchingVirtualFileSystem.topMostDirectories(paths(directories as String[])) == paths(topMost as String[])
+
+        where:
+        directories              | topMost
+        []                       | []
+        ["/a"]                   | ["/a"]
+        ["/a", "/a/b", "/a/b/c"] | ["/a"]
+        ["/a/b", "/a/c", "/d"]   | ["/a/b", "/a/c", "/d"]
+        ["/a/b/c", "/a"]         | ["/a"]
+        ["/a/b", "/ab"]          | ["/a/b", "/ab"]
+    }
+
+    def "clamps recursive watches to build roots"() {
+        def buildRoots = [Paths.get("/work/app"), Paths.get("/work/lib")] as Set
+
+        expect:
+        DefaultWatchingVirtualFileSystem.clampToBuildRoots(Paths.get(directory), Paths.get(location), buildRoots) == (watchRoot == null ? null : Paths.get(watchRoot))
+
+        where:
+        directory       | location                 | watchRoot
+        "/work/app/src" | "/work/app/src/Main"     | "/work/app/src"
+        "/work/app"     | "/work/app/build.gradle" | "/work/app"
+        "/work"         | "/work/app"              | "/work/app"
+        "/work"         | "/work/lib"              | "/work/lib"
+        "/"             | "/work/app/missing/x"    | "/work/app"
+        "/work"         | "/work/other.txt"        | null
+        "/"             | "/missing/file"          | null
+        "/home/user"    | "/home/user/lib.jar"     | "/home/user"
+    }
+
+    private static Set<Path> paths(File... files) {
+        files.collect { it.toPath() } as Set
+    }
+
+    private static Set<Path> paths(String... paths) {
+        paths.collect { Paths.get(it) } as Set
+    }
+}
@@ -22,8 +22,12 @@
 import org.gradle.api.logging.LogLevel;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.logging.Logging;
+import org.gradle.api.internal.GradleInternal;
+import org.gradle.initialization.RootBuildLifecycleListener;
 import org.gradle.initialization.SessionLifecycleListener;
 import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
 import org.gradle.internal.concurrent.Stoppable;
 import org.gradle.internal.event.ListenerManager;
 import org.gradle.internal.exceptions.DefaultMultiCauseException;
@@ -36,19 +40,35 @@
 import org.gradle.process.internal.worker.WorkerProcess;
 import org.gradle.util.CollectionUtils;
 
+import javax.annotation.Nullable;
+import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static java.util.Comparator.*;
 
 public class WorkerDaemonClientsManager implements Stoppable {
 
+    /**
+     * When set for a build, the worker daemons used by the previous build of the same root project are started in the background once the root project is known.
+     */
+    public static final String PREWARM_PROPERTY_KEY = "org.gradle.unsafe.workers.prewarm";
+
     private static final Logger LOGGER = Logging.getLogger(WorkerDaemonClientsManager.class);
 
     private final Object lock = new Object();
     private final List<WorkerDaemonClient> allClients = new ArrayList<WorkerDaemonClient>();
     private final List<WorkerDaemonClient> idleClients = new ArrayList<WorkerDaemonClient>();
+    private final Map<WorkerDaemonClient, Class<? extends WorkerProtocol>> protocolImplementationClasses = new IdentityHashMap<WorkerDaemonClient, Class<? extends WorkerProtocol>>();
+    private final Set<WorkerDaemonClient> clientsUsedInBuild = new LinkedHashSet<WorkerDaemonClient>();
+    private final Map<File, List<DaemonUsage>> previousUsageByRootProject = new HashMap<File, List<DaemonUsage>>();
+    private final List<DaemonUsage> pendingStarts = new ArrayList<DaemonUsage>();
     private final Action<WorkerProcess> workerProcessCleanupAction = new WorkerProcessCleanupAction();
 
     private final WorkerDaemonStarter workerDaemonStarter;
@@ -56,18 +76,37 @@ public class WorkerDaemonClientsManager implements Stoppable {
     private final LoggingManagerInternal loggingManager;
     private final OsMemoryInfo memoryInfo;
     private final SessionLifecycleListener stopSessionScopeWorkers;
+    @Nullable
+    private final RootBuildLifecycleListener prewarmWorkers;
     private final OutputEventListener logLevelChangeEventListener;
     private final WorkerDaemonExpiration workerDaemonExpiration;
     private final MemoryManager memoryManager;
+    @Nullable
+    private final ManagedExecutor prewarmExecutor;
     private volatile LogLevel currentLogLevel;
+    private boolean prewarmEnabled;
+    @Nullable
+    private File currentRootProjectDir;
 
     public WorkerDaemonClientsManager(WorkerDaemonStarter workerDaemonStarter, ListenerManager listenerManager, LoggingManagerInternal loggingManager, MemoryManager memoryManager, OsMemoryInfo memoryInfo) {
+        this(workerDaemonStarter, listenerManager, loggingManager, memoryManager, memoryInfo, null);
+    }
+
+    /**
+     * @param executorFactory when not null, builds that set {@value #PREWARM_PROPERTY_KEY} start the worker daemons used by the previous build in the background.
+     */
+    public WorkerDaemonClientsManager(WorkerDaemonStarter workerDaemonStarter, ListenerManager listenerManager, LoggingManagerInternal loggingManager, MemoryManager memoryManager, OsMemoryInfo memoryInfo, @Nullable ExecutorFactory executorFactory) {
+        this.prewarmExecutor = executorFactory == null ? null : executorFactory.create("Worker daemon prewarming");
         this.workerDaemonStarter = workerDaemonStarter;
         this.listenerManager = listenerManager;
         this.loggingManager = loggingManager;
         this.memoryInfo = memoryInfo;
         this.stopSessionScopeWorkers = new StopSessionScopedWorkers();
         listenerManager.addListener(stopSessionScopeWorkers);
+        this.prewarmWorkers = prewarmExecutor == null ? null : new PrewarmWorkers();
+        if (prewarmWorkers != null) {
+            listenerManager.addListener(prewarmWorkers);
+        }
         this.logLevelChangeEventListener = new LogLevelChangeEventListener();
         loggingManager.addOutputEventListener(logLevelChangeEventListener);
         this.currentLogLevel = loggingManager.getLevel();
@@ -78,7 +117,33 @@ public WorkerDaemonClientsManager(WorkerDaemonStarter workerDaemonStarter, Liste
 
     // TODO - should supply and check for the same parameters as passed to reserveNewClient()
     public WorkerDaemonClient reserveIdleClient(DaemonForkOptions forkOptions) {
-        return reserveIdleClient(forkOptions, idleClients);
+        synchronized (lock) {
+            while (true) {
+                WorkerDaemonClient client = reserveIdleClient(forkOptions, idleClients);
+                if (client != null) {
+                    clientsUsedInBuild.add(client);
+                    return client;
+                }
+                if (!hasCompatiblePendingStart(forkOptions)) {
+                    return null;
+                }
+                // A compatible daemon is already being started in the background, which is quicker than starting another one
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    throw UncheckedException.throwAsUncheckedException(e);
+                }
+            }
+        }
+    }
+
+    private boolean hasCompatiblePendingStart(DaemonForkOptions forkOptions) {
+        for (DaemonUsage pendingStart : pendingStarts) {
+            if (pendingStart.forkOptions.isCompatibleWith(forkOptions)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     WorkerDaemonClient reserveIdleClient(DaemonForkOptions forkOptions, List<WorkerDaemonClient> clients) {
@@ -106,10 +171,31 @@ public WorkerDaemonClient reserveNewClient(Class<? extends WorkerProtocol> worke
         WorkerDaemonClient client = workerDaemonStarter.startDaemon(workerProtocolImplementationClass, forkOptions, workerProcessCleanupAction);
         synchronized (lock) {
             allClients.add(client);
+            protocolImplementationClasses.put(client, workerProtocolImplementationClass);
+            clientsUsedInBuild.add(client);
         }
         return client;
     }
 
+    private void prewarm(DaemonUsage usage) {
+        WorkerDaemonClient client = null;
+        try {
+            client = workerDaemonStarter.startDaemon(usage.protocolImplementationClass, usage.forkOptions, workerProcessCleanupAction);
+        } catch (Exception e) {
+            LOGGER.info("Could not start worker daemon in the background.", e);
+        } finally {
+            synchronized (lock) {
+                pendingStarts.remove(usage);
+                if (client != null) {
+                    allClients.add(client);
+                    protocolImplementationClasses.put(client, usage.protocolImplementationClass);
+                    idleClients.add(client);
+                }
+                lock.notifyAll();
+            }
+        }
+    }
+
     public void release(WorkerDaemonClient client) {
         synchronized (lock) {
             if (!client.isFailed()) {
@@ -120,11 +206,20 @@ public void release(WorkerDaemonClient client) {
 
     @Override
     public void stop() {
+        if (prewarmExecutor != null) {
+            // Wait for background starts before stopping, so that the daemons they start are stopped too
+            prewarmExecutor.stop();
+        }
         synchronized (lock) {
             stopWorkers(allClients);
             allClients.clear();
             idleClients.clear();
+            protocolImplementationClasses.clear();
+            clientsUsedInBuild.clear();
             listenerManager.removeListener(stopSessionScopeWorkers);
+            if (prewarmWorkers != null) {
+                listenerManager.removeListener(prewarmWorkers);
+            }
             memoryManager.removeMemoryHolder(workerDaemonExpiration);
         }
         // Do not hold lock while removing listener, as the listener may still be receiving events on another thread and will need to acquire the lock to handle these events
@@ -168,6 +263,9 @@ private void stopWorkers(List<WorkerDaemonClient> clientsToStop) {
             }
             idleClients.removeAll(clientsToStop);
             allClients.removeAll(clientsToStop);
+            for (WorkerDaemonClient client : clientsToStop) {
+                protocolImplementationClasses.remove(client);
+            }
             if (!failures.isEmpty()) {
                 if (failures.size() == 1) {
                     throw UncheckedException.throwAsUncheckedException(failures.get(0));
@@ -193,6 +291,74 @@ public void beforeComplete() {
         }
     }
 
+    private class PrewarmWorkers implements RootBuildLifecycleListener {
+        @Override
+        public void afterStart(GradleInternal gradle) {
+            boolean enabled = isPrewarmEnabled(gradle.getStartParameter().getSystemPropertiesArgs());
+            synchronized (lock) {
+                prewarmEnabled = enabled;
+                currentRootProjectDir = null;
+                clientsUsedInBuild.clear();
+            }
+            if (enabled) {
+                gradle.rootProject(rootProject -> prewarmFor(rootProject.getProjectDir()));
+            }
+        }
+
+        private void prewarmFor(File rootProjectDir) {
+            synchronized (lock) {
+                currentRootProjectDir = rootProjectDir;
+                List<DaemonUsage> previousUsage = previousUsageByRootProject.get(rootProjectDir);
+                if (previousUsage == null) {
+                    return;
+                }
+                List<WorkerDaemonClient> availableClients = new ArrayList<WorkerDaemonClient>(idleClients);
+                for (DaemonUsage usage : previousUsage) {
+                    if (reserveCompatibleClient(usage.forkOptions, availableClients)) {
+                        continue;
+                    }
+                    pendingStarts.add(usage);
+                    prewarmExecutor.execute(() -> prewarm(usage));
+                }
+                if (!pendingStarts.isEmpty()) {
+                    LOGGER.debug("Starting {} worker daemon(s) used by the previous build.", pendingStarts.size());
+                }
+            }
+        }
+
+        private boolean reserveCompatibleClient(DaemonForkOptions forkOptions, List<WorkerDaemonClient> availableClients) {
+            Iterator<WorkerDaemonClient> it = availableClients.iterator();
+            while (it.hasNext()) {
+                if (it.next().isCompatibleWith(forkOptions)) {
+                    it.remove();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void beforeComplete(GradleInternal gradle) {
+            synchronized (lock) {
+                if (prewarmEnabled && currentRootProjectDir != null) {
+                    List<DaemonUsage> usage = new ArrayList<DaemonUsage>();
+                    for (WorkerDaemonClient client : clientsUsedInBuild) {
+                        Class<? extends WorkerProtocol> protocolImplementationClass = protocolImplementationClasses.get(client);
+                        if (protocolImplementationClass != null) {
+                            usage.add(new DaemonUsage(protocolImplementationClass, client.getForkOptions()));
+                        }
+                    }
+                    previousUsageByRootProject.put(currentRootProjectDir, usage);
+                }
+                clientsUsedInBuild.clear();
+            }
+        }
+    }
+
+    private static boolean isPrewarmEnabled(Map<String, String> systemPropertiesArgs) {
+        return Boolean.parseBoolean(systemPropertiesArgs.getOrDefault(PREWARM_PROPERTY_KEY, System.getProperty(PREWARM_PROPERTY_KEY)));
+    }
+
     private class LogLevelChangeEventListener implements OutputEventListener {
         @Override
         public void onOutput(OutputEvent event) {
@@ -203,6 +369,19 @@ public void onOutput(OutputEvent event) {
         }
     }
 
+    /**
+     * A worker daemon used by a build, which can be started again for the next build.
+     */
+    private static class DaemonUsage {
+        private final Class<? extends WorkerProtocol> protocolImplementationClass;
+        private final DaemonForkOptions forkOptions;
+
+        DaemonUsage(Class<? extends WorkerProtocol> protocolImplementationClass, DaemonForkOptions forkOptions) {
+            this.protocolImplementationClass = protocolImplementationClass;
+            this.forkOptions = forkOptions;
+        }
+    }
+
     private class WorkerProcessCleanupAction implements Action<WorkerProcess> {
         @Override
         public void execute(WorkerProcess workerProcess) {
@@ -213,6 +392,7 @@ public void execute(WorkerProcess workerProcess) {
                     if (client.isProcess(workerProcess)) {
                         client.setFailed(true);
                         iterator.remove();
+                        protocolImplementationClasses.remove(client);
                     }
                 }
             }
@@ -23,6 +23,7 @@
 import org.gradle.api.logging.LoggingManager;
 import org.gradle.internal.UncheckedException;
 import org.gradle.internal.classloader.VisitableURLClassLoader;
+import org.gradle.internal.hash.Hashing;
 import org.gradle.internal.time.Time;
 import org.gradle.internal.time.Timer;
 import org.gradle.process.internal.JavaExecHandleBuilder;
@@ -66,6 +67,10 @@ public WorkerDaemonClient startDaemon(Class<? extends WorkerProtocol> workerProt
         builder.onProcessFailure(cleanupAction);
         JavaExecHandleBuilder javaCommand = builder.getJavaCommand();
         forkOptions.getJavaForkOptions().copyTo(javaCommand);
+        if (Hashing.contentFunction() != Hashing.defaultFunction()) {
+            // Worker daemons share the file hash caches, so they must hash file contents the same way as this process
+            javaCommand.systemProperty(Hashing.CONTENT_HASH_FUNCTION_PROPERTY, Hashing.contentFunction().getAlgorithm());
+        }
         builder.registerArgumentSerializer(WorkerDaemonMessageSerializer.create());
         WorkerDaemonProcess workerDaemonProcess = builder.build();
         WorkerProcess workerProcess = workerDaemonProcess.start();
@@ -16,9 +16,15 @@
 
 package org.gradle.workers.internal
 
+import org.gradle.StartParameter
+import org.gradle.api.Action
+import org.gradle.api.Project
 import org.gradle.api.Transformer
+import org.gradle.api.internal.GradleInternal
 import org.gradle.api.logging.LogLevel
+import org.gradle.initialization.RootBuildLifecycleListener
 import org.gradle.initialization.SessionLifecycleListener
+import org.gradle.internal.concurrent.DefaultExecutorFactory
 import org.gradle.internal.event.DefaultListenerManager
 import org.gradle.internal.event.ListenerManager
 import org.gradle.internal.exceptions.DefaultMultiCauseException
@@ -291,6 +297,129 @@ class WorkerDaemonClientsManagerTest extends ConcurrentSpecification {
         1 * client3.stop()
     }
 
+    def "starts the worker daemons used by the previous build in the background"() {
+        SessionLifecycleListener sessionListener
+        RootBuildLifecycleListener buildListener
+        def gradle = build(new File("root"))
+        def forkOptions = Stub(DaemonForkOptions) { isCompatibleWith(_) >> true }
+        def starter = Mock(WorkerDaemonStarter)
+        def client1 = Mock(WorkerDaemonClient) { _ * getForkOptions() >> forkOptions; _ * isCompatibleWith(_) >> true }
+        def client2 = Mock(WorkerDaemonClient) { _ * getForkOptions() >> forkOptions; _ * isCompatibleWith(_) >> true }
+        def prewarmed = Mock(WorkerDaemonClient) { _ * getForkOptions() >> forkOptions; _ * isCompatibleWith(_) >> true }
+        def stopFirst = { [it[0]] } as Transformer<List<WorkerDaemonClient>, List<WorkerDaemonClient>>
+        def stopAll = { it } as Transformer<List<WorkerDaemonClient>, List<WorkerDaemonClient>>
+        def listenerManager = Stub(ListenerManager) {
+            addListener(_ as SessionLifecycleListener) >> { args -> sessionListener = args[0] }
+            addListener(_ as RootBuildLifecycleListener) >> { args -> buildListener = args[0] }
+        }
+        def executorFactory = new DefaultExecutorFactory()
+        def manager = new WorkerDaemonClientsManager(starter, listenerManager, loggingManager, memoryManager, new MBeanOsMemoryInfo(), executorFactory)
+
+        when:
+        buildListener.afterStart(gradle)
+        manager.reserveNewClient(serverImpl.class, forkOptions)
+        manager.reserveNewClient(serverImpl.class, forkOptions)
+        [client1, client2].each { manager.release(it) }
+        buildListener.beforeComplete(gradle)
+        sessionListener.beforeComplete()
+        manager.selectIdleClientsToStop(stopFirst)
+
+        then:
+        2 * starter.startDaemon(serverImpl.class, forkOptions, _) >>> [client1, client2]
+
+        when:
+        sessionListener.afterStart()
+        buildListener.afterStart(gradle)
+        def first = manager.reserveIdleClient(forkOptions)
+        def second = manager.reserveIdleClient(forkOptions)
+
+        then:
+        1 * starter.startDaemon(serverImpl.class, forkOptions, _) >> prewarmed
+        [first, second] as Set == [client2, prewarmed] as Set
+
+        when:
+        [first, second].each { manager.release(it) }
+        manager.selectIdleClientsToStop(stopAll)
+
+        then:
+        1 * client2.stop()
+        1 * prewarmed.stop()
+
+        cleanup:
+        manager?.stop()
+        executorFactory.stop()
+    }
+
+    def "does not start worker daemons in the background when the previous build's daemons are still idle"() {
+        RootBuildLifecycleListener buildListener
+        def gradle = build(new File("root"))
+        def forkOptions = Stub(DaemonForkOptions) { isCompatibleWith(_) >> true }
+        def starter = Mock(WorkerDaemonStarter)
+        def client = Mock(WorkerDaemonClient) { _ * getForkOptions() >> forkOptions; _ * isCompatibleWith(_) >> true }
+        def listenerManager = Stub(ListenerManager) {
+            addListener(_ as RootBuildLifecycleListener) >> { args -> buildListener = args[0] }
+        }
+        def executorFactory = new DefaultExecutorFactory()
+        def manager = new WorkerDaemonClientsManager(starter, listenerManager, loggingManager, memoryManager, new MBeanOsMemoryInfo(), executorFactory)
+
+        when:
+        buildListener.afterStart(gradle)
+        manager.reserveNewClient(serverImpl.class, forkOptions)
+        manager.release(client)
+        buildListener.beforeComplete(gradle)
+        buildListener.afterStart(gradle)
+
+        then:
+        1 * starter.startDaemon(serverImpl.class, forkOptions, _) >> client
+
+        and:
+        manager.reserveIdleClient(forkOptions) == client
+        manager.reserveIdleClient(forkOptions) == null
+
+        cleanup:
+        manager?.stop()
+        executorFactory.stop()
+    }
+
+    def "only starts worker daemons in the background for a build of the same root project that enables it"() {
+        RootBuildLifecycleListener buildListener
+        def forkOptions = Stub(DaemonForkOptions) { isCompatibleWith(_) >> true }
+        def starter = Mock(WorkerDaemonStarter)
+        def client = Mock(WorkerDaemonClient) { _ * getForkOptions() >> forkOptions; _ * isCompatibleWith(_) >> true }
+        def listenerManager = Stub(ListenerManager) {
+            addListener(_ as RootBuildLifecycleListener) >> { args -> buildListener = args[0] }
+        }
+        def executorFactory = new DefaultExecutorFactory()
+        def manager = new WorkerDaemonClientsManager(starter, listenerManager, loggingManager, memoryManager, new MBeanOsMemoryInfo(), executorFactory)
+        def stopAll = { it } as Transformer<List<WorkerDaemonClient>, List<WorkerDaemonClient>>
+        def firstBuild = build(new File("root"))
+
+        when:
+        buildListener.afterStart(firstBuild)
+        manager.reserveNewClient(serverImpl.class, forkOptions)
+        manager.release(client)
+        buildListener.beforeComplete(firstBuild)
+        manager.selectIdleClientsToStop(stopAll)
+
+        then:
+        1 * starter.startDaemon(serverImpl.class, forkOptions, _) >> client
+
+        when:
+        def otherRootProject = build(new File("other"))
+        buildListener.afterStart(otherRootProject)
+        buildListener.beforeComplete(otherRootProject)
+        def notEnabled = build(new File("root"), false)
+        buildListener.afterStart(notEnabled)
+
+        then:
+        0 * starter.startDaemon(_, _, _)
+        manager.reserveIdleClient(forkOptions) == null
+
+        cleanup:
+        manager?.stop()
+        executorFactory.stop()
+    }
+
     def "registers/deregisters a worker daemon expiration with the memory manager"() {
         WorkerDaemonExpiration workerDaemonExpiration
 
@@ -306,4 +435,18 @@ class WorkerDaemonClientsManagerTest extends ConcurrentSpecification {
         then:
         1 * memoryManager.removeMemoryHolder(_) >> { args -> assert args[0] == workerDaemonExpiration }
     }
+
+    GradleInternal build(File rootProjectDir, boolean prewarm = true) {
+        def startParameter = new StartParameter()
+        if (prewarm) {
+            startParameter.systemPropertiesArgs[WorkerDaemonClientsManager.PREWARM_PROPERTY_KEY] = "true"
+        }
+        def project = Stub(Project) {
+            getProjectDir() >> rootProjectDir
+        }
+        return Stub(GradleInternal) {
+            getStartParameter() >> startParameter
+            rootProject(_ as Action) >> { Action action -> action.execute(project) }
+        }
+    }
 }